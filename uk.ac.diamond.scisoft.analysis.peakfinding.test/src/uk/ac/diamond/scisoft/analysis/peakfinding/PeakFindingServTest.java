@@ -5,12 +5,15 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.dawnsci.analysis.api.peakfinding.IPeakFinderParameter;
 import org.eclipse.january.dataset.DatasetFactory;
 import org.eclipse.january.dataset.FloatDataset;
+import org.eclipse.january.dataset.IDataset;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Rule;
@@ -18,6 +21,7 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import uk.ac.diamond.scisoft.analysis.peakfinding.peakfinders.DummyPeakFinder;
+import uk.ac.diamond.scisoft.analysis.peakfinding.peakfinders.MaximaDifference;
 
 public class PeakFindingServTest {
 	
@@ -107,4 +111,35 @@ public class PeakFindingServTest {
 		
 		assertEquals(testData, peakPosnsSigs);
 	}
+	
+	@Test
+	public void testTwoPeakFindersConcurrently() throws Exception {
+		String maximaID = MaximaDifference.class.getName();
+		peakFindData.activatePeakFinder(dummyID);
+		peakFindData.activatePeakFinder(maximaID);
+		setFakeDataOnDTO();
+		peakFindServ.findPeaks(peakFindData);
+		
+		assertEquals(DummyPeakFinder.getFakePeaks(), peakFindData.getPeaks(dummyID));
+		assertNotNull(peakFindData.getPeaks(maximaID));
+		
+		//Registered instance must not have been given the DTO parameters
+		assertEquals(2, peakFindServ.getPeakFinderParameters(dummyID).size());
+	}
+	
+	@Test
+	public void testFindPeaksInStack() throws Exception {
+		peakFindData.activatePeakFinder(dummyID);
+		IDataset xData = DatasetFactory.createRange(FloatDataset.class, 0, 10, 1);
+		List<IDataset> yStack = new ArrayList<IDataset>();
+		for (int i = 0; i < 20; i++) {
+			yStack.add(DatasetFactory.createRange(FloatDataset.class, i, i + 10, 1));
+		}
+		
+		Map<Integer, Map<String, Map<Integer, Double>>> stackPeaks = peakFindServ.findPeaks(peakFindData, xData, yStack);
+		assertEquals(yStack.size(), stackPeaks.size());
+		for (int i = 0; i < yStack.size(); i++) {
+			assertEquals(DummyPeakFinder.getFakePeaks(), stackPeaks.get(i).get(dummyID));
+		}
+	}
 }
@@ -16,6 +16,8 @@ import org.eclipse.january.dataset.IntegerDataset;
 import org.junit.Assert;
 import org.junit.Test;
 
+import uk.ac.diamond.scisoft.analysis.peakfinding.MexicanHatWavelet;
+
 
 
 /**
@@ -124,4 +126,39 @@ public class WaveletTransformPeakFindsTest {
 		assertTrue(foundPeaks.size() <= 1); // Check no peaks were found
 	}
 	
+	@Test
+	public void transformMatchesDirectConvolutionTest() {
+		WaveletTransformPeakFinds wave = new WaveletTransformPeakFinds();
+
+		ExamplePeakData peaks = new ExamplePeakData();
+		Dataset yData = peaks.getyData();
+		int dataSz = yData.getSize();
+		double scale = 1;
+		for (int j = 0; j < dataSz; j++) {
+			scale = Math.max(scale, Math.abs(yData.getDouble(j)));
+		}
+
+		Dataset widths = DatasetFactory.createRange(1.0, 6.0, 1.0);
+		Dataset mtx = wave.countinousWaveletTransform(yData, widths);
+		assertEquals(widths.getSize(), mtx.getShape()[0]);
+		assertEquals(dataSz, mtx.getShape()[1]);
+
+		for (int i = 0; i < widths.getSize(); i++) {
+			double nPoints = Math.min(10 * widths.getDouble(i), dataSz);
+			Dataset wavelet = new MexicanHatWavelet(nPoints, widths.getDouble(i))
+					.calculateValues(DatasetFactory.createRange(nPoints));
+			int m = wavelet.getSize();
+			int offset = (m - 1) / 2;
+			for (int j = 0; j < dataSz; j++) {
+				// full convolution index j + offset, cropped to the signal shape
+				int k = j + offset;
+				double sum = 0;
+				for (int l = Math.max(0, k - dataSz + 1); l <= Math.min(k, m - 1); l++) {
+					sum += yData.getDouble(k - l) * wavelet.getDouble(l);
+				}
+				assertEquals(sum, mtx.getDouble(i, j), 1e-9 * scale * m);
+			}
+		}
+	}
+
 }
@@ -10,9 +10,11 @@
 package uk.ac.diamond.scisoft.analysis.peakfinding;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.dawnsci.analysis.api.peakfinding.IPeakFinderParameter;
+import org.eclipse.january.dataset.IDataset;
 
 public interface IPeakFindingService {
 	
@@ -72,4 +74,19 @@ public interface IPeakFindingService {
 	 * @throws Exception
 	 */
 	public void findPeaks(IPeakFindingData peakFindingData) throws Exception;
+	
+	/**
+	 * Calls the findPeaks method of each of the active IPeakFinders on every
+	 * dataset of a stack, using the parameters stored with the 
+	 * IPeakFindingData DTO. The datasets are searched concurrently; the data
+	 * and found peaks of the DTO are not used.
+	 * @param peakFindingData DTO containing the active peak finders and 
+	 *        their parameters
+	 * @param xData axis shared by all datasets of the stack
+	 * @param yStack 1D datasets to find peaks in
+	 * @return Map<index in stack, Map<peak finder ID, Map<peak position, peak signal>>>
+	 * @throws Exception
+	 */
+	public Map<Integer, Map<String, Map<Integer, Double>>> findPeaks(IPeakFindingData peakFindingData, IDataset xData,
+			List<? extends IDataset> yStack) throws Exception;
 }
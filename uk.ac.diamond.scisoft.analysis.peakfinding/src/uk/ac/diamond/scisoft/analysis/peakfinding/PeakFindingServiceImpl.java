@@ -10,13 +10,15 @@
 package uk.ac.diamond.scisoft.analysis.peakfinding;
 
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.Platform;
@@ -28,7 +30,7 @@ import uk.ac.diamond.scisoft.analysis.utils.ClassUtils;
 
 public class PeakFindingServiceImpl implements IPeakFindingService {
 	
-	private final Map<String, PeakFinderInfo> PEAKFINDERS = new HashMap<String, PeakFinderInfo>();
+	private final Map<String, PeakFinderInfo> PEAKFINDERS = new ConcurrentHashMap<String, PeakFinderInfo>();
 	
 	
 	
@@ -39,7 +41,7 @@ public class PeakFindingServiceImpl implements IPeakFindingService {
 	/**
 	 * Checks whether the PEAKFINDERS is populated and if not tries to fill it.
 	 */
-	private void checkForPeakFinders() {
+	private synchronized void checkForPeakFinders() {
 		if (!PEAKFINDERS.isEmpty()) return;
 		addPeakFindersByExtension();
 	}
@@ -123,9 +125,6 @@ public class PeakFindingServiceImpl implements IPeakFindingService {
 	
 	@Override
 	public void findPeaks(IPeakFindingData peakFindingData) throws Exception {
-		Set<String> activePeakFinders;
-		Map<String, Map<String, IPeakFinderParameter>> peakFinderParameters = new TreeMap<String, Map<String, IPeakFinderParameter>>();
-		Map<String, Map<Integer, Double>> allFoundPeaks = new TreeMap<String, Map<Integer, Double>>();
 		IDataset[] searchData;
 		Integer nPeaks = peakFindingData.getNPeaks();
 		
@@ -137,38 +136,102 @@ public class PeakFindingServiceImpl implements IPeakFindingService {
 		}
 		
 		//Get the peak finders to use and their parameters
+		Map<String, Map<String, IPeakFinderParameter>> peakFinderParameters = getActivePeakFinderParameters(peakFindingData);
+		
+		//Each active IPeakFinder runs on its own instance, concurrently if there is more than one
+		Map<String, CompletableFuture<Map<Integer, Double>>> results = new TreeMap<String, CompletableFuture<Map<Integer, Double>>>();
+		for (Map.Entry<String, Map<String, IPeakFinderParameter>> pfEntry : peakFinderParameters.entrySet()) {
+			IPeakFinder currPF = createPeakFinder(pfEntry.getKey(), pfEntry.getValue());
+			if (peakFinderParameters.size() == 1) {
+				results.put(pfEntry.getKey(), CompletableFuture.completedFuture(currPF.findPeaks(searchData[0], searchData[1], nPeaks)));
+			} else {
+				results.put(pfEntry.getKey(), CompletableFuture.supplyAsync(() -> {
+					try {
+						return currPF.findPeaks(searchData[0], searchData[1], nPeaks);
+					} catch (Exception e) {
+						throw new CompletionException(e);
+					}
+				}));
+			}
+		}
+		
+		Map<String, Map<Integer, Double>> allFoundPeaks = new TreeMap<String, Map<Integer, Double>>();
+		for (Map.Entry<String, CompletableFuture<Map<Integer, Double>>> result : results.entrySet()) {
+			allFoundPeaks.put(result.getKey(), getResult(result.getValue()));
+		}
+		//TODO Add some process here which averages the results of the findPeaks calls
+		
+		//Finally set the found peaks on the IPeakFindingData DTO
+		peakFindingData.setPeaks(allFoundPeaks);
+	}
+	
+	@Override
+	public Map<Integer, Map<String, Map<Integer, Double>>> findPeaks(IPeakFindingData peakFindingData, IDataset xData,
+			List<? extends IDataset> yStack) throws Exception {
+		Integer nPeaks = peakFindingData.getNPeaks();
+		Map<String, Map<String, IPeakFinderParameter>> peakFinderParameters = getActivePeakFinderParameters(peakFindingData);
+		
+		//Slices are searched concurrently, with the peak finders for each slice run in turn
+		List<CompletableFuture<Map<String, Map<Integer, Double>>>> results = new ArrayList<CompletableFuture<Map<String, Map<Integer, Double>>>>(yStack.size());
+		for (IDataset yData : yStack) {
+			results.add(CompletableFuture.supplyAsync(() -> {
+				Map<String, Map<Integer, Double>> slicePeaks = new TreeMap<String, Map<Integer, Double>>();
+				for (Map.Entry<String, Map<String, IPeakFinderParameter>> pfEntry : peakFinderParameters.entrySet()) {
+					try {
+						IPeakFinder currPF = createPeakFinder(pfEntry.getKey(), pfEntry.getValue());
+						slicePeaks.put(pfEntry.getKey(), currPF.findPeaks(xData, yData, nPeaks));
+					} catch (Exception e) {
+						throw new CompletionException(e);
+					}
+				}
+				return slicePeaks;
+			}));
+		}
+		
+		Map<Integer, Map<String, Map<Integer, Double>>> allFoundPeaks = new TreeMap<Integer, Map<String, Map<Integer, Double>>>();
+		for (int i = 0; i < results.size(); i++) {
+			allFoundPeaks.put(i, getResult(results.get(i)));
+		}
+		return allFoundPeaks;
+	}
+	
+	private Map<String, Map<String, IPeakFinderParameter>> getActivePeakFinderParameters(IPeakFindingData peakFindingData) {
+		checkForPeakFinders();
+		Map<String, Map<String, IPeakFinderParameter>> peakFinderParameters = new TreeMap<String, Map<String, IPeakFinderParameter>>();
 		if (peakFindingData.hasActivePeakFinders()) {
-			activePeakFinders = (Set<String>)peakFindingData.getActivePeakFinders();
-			for (String pfID : activePeakFinders) {
+			for (String pfID : peakFindingData.getActivePeakFinders()) {
 				checkForPFID(pfID);
 				peakFinderParameters.put(pfID, peakFindingData.getPFParametersByPeakFinder(pfID));
 			}
 		} else {
 			throw new IllegalArgumentException("No peak finders set active");
 		}
-		
-		
-		Iterator<String> activePeakFindersIter = activePeakFinders.iterator();
-		while (activePeakFindersIter.hasNext()) {
-			//Get each active IPeakFinder in turn...
-			String currID = activePeakFindersIter.next();
-			IPeakFinder currPF = PEAKFINDERS.get(currID).getPeakFinder();
-			
-			//... set new parameters on PeakFinder ...
-			Map<String, IPeakFinderParameter> currPFParams = peakFinderParameters.get(currID);
-			for (Map.Entry<String, IPeakFinderParameter> pfParam : currPFParams.entrySet()) {
-				//Will only set parameters which are in the map (may be others unset)
-				currPF.setParameter(pfParam.getKey(), pfParam.getValue());
+		return peakFinderParameters;
+	}
+	
+	/**
+	 * Creates a new instance of a registered IPeakFinder, so that the shared 
+	 * registered instance is never modified, and sets the given parameters on it.
+	 */
+	private IPeakFinder createPeakFinder(String pfID, Map<String, IPeakFinderParameter> pfParams) throws Exception {
+		IPeakFinder pf = PEAKFINDERS.get(pfID).getPeakFinder().getClass().newInstance();
+		//Will only set parameters which are in the map (may be others unset)
+		for (Map.Entry<String, IPeakFinderParameter> pfParam : pfParams.entrySet()) {
+			pf.setParameter(pfParam.getKey(), pfParam.getValue());
+		}
+		return pf;
+	}
+	
+	private static <T> T getResult(CompletableFuture<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
 			}
-			
-			//... call the findPeaks method, record the result & reset the peak finder parameters
-			allFoundPeaks.put(currID, currPF.findPeaks(searchData[0], searchData[1], nPeaks));
-			currPF.resetParameters();
+			throw e;
 		}
-		//TODO Add some process here which averages the results of the findPeaks calls
-		
-		//Finally set the found peaks on the IPeakFindingData DTO
-		peakFindingData.setPeaks(allFoundPeaks);
 	}
 
 	private class PeakFinderInfo {
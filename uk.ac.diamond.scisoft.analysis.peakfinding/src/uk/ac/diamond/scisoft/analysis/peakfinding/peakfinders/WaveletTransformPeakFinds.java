@@ -1,23 +1,19 @@
 package uk.ac.diamond.scisoft.analysis.peakfinding.peakfinders;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 import org.apache.commons.math3.stat.descriptive.rank.Percentile;
-import org.eclipse.dawnsci.analysis.dataset.impl.Signal;
-import org.eclipse.january.dataset.Comparisons;
+import org.eclipse.dawnsci.analysis.dataset.impl.FFT;
+import org.eclipse.january.dataset.ComplexDoubleDataset;
 import org.eclipse.january.dataset.Dataset;
 import org.eclipse.january.dataset.DatasetFactory;
 import org.eclipse.january.dataset.DatasetUtils;
 import org.eclipse.january.dataset.DoubleDataset;
 import org.eclipse.january.dataset.IDataset;
-import org.eclipse.january.dataset.IndexIterator;
-import org.eclipse.january.dataset.IntegerDataset;
-import org.eclipse.january.dataset.Maths;
-import org.eclipse.january.dataset.Slice;
 
 import uk.ac.diamond.scisoft.analysis.peakfinding.MexicanHatWavelet;
 
@@ -87,14 +83,16 @@ public class WaveletTransformPeakFinds extends AbstractPeakFinder {
 	private double gapThresh; 
 	
 	/*
-	 * Ridgeline class structure to help with manipulation understanding
+	 * Wavelet spectra are reused between calls with the same data length and widths
 	 */
-	class RidgeLine {
-		public List<Integer> row = new ArrayList<Integer>();
-		public List<Integer> col = new ArrayList<Integer>();
-		public double gapVal = 0;
-	}
-	
+	private static final int MAX_CACHED_SPECTRA = 512;
+	private static final Map<WaveletKey, double[]> WAVELET_SPECTRA = new ConcurrentHashMap<WaveletKey, double[]>();
+
+	/*
+	 * Relative size of differences treated as round-off when looking for extrema
+	 */
+	private static final double EXTREMA_TOLERANCE = 1e-12;
+
 	public void setWidthParam(double widthParam) {
 		this.widthSzParam = widthParam;
 	}
@@ -135,8 +133,11 @@ public class WaveletTransformPeakFinds extends AbstractPeakFinder {
 	/**
 	 * 
 	 *  Performs a continuous wavelet transform. Components being a conv of wavelet data dependent on width[i] with the original data.
+	 *  
+	 *  The signal is Fourier transformed once and multiplied by the spectrum of the wavelet at each width, which is cached
+	 *  between calls. Each width is then transformed back in parallel. Rows match a convolution cropped to the signal 
+	 *  shape and centred as in numpy's 'same' mode.
 	 * 
-	 * @param xData axis
 	 * @param yData axis (match xData shape)
 	 * @param widths to convolve over
 	 * 
@@ -145,316 +146,284 @@ public class WaveletTransformPeakFinds extends AbstractPeakFinder {
 	 */
 	public Dataset countinousWaveletTransform(IDataset yData, IDataset widths) {
 
-		int dataSz = yData.getSize();
-		Dataset output = DatasetFactory.zeros(widths.getSize(), dataSz);
-		
-		for (int width = 0; width < widths.getSize(); ++width) {
+		final int dataSz = yData.getSize();
+		final int noWidths = widths.getSize();
+		DoubleDataset output = DatasetFactory.zeros(DoubleDataset.class, noWidths, dataSz);
+		if (dataSz == 0 || noWidths == 0) {
+			return output;
+		}
 
-			double w = 10 * widths.getDouble(width);  //widths[width];
-			double nPoints = dataSz > w ? w : yData.getSize();
+		final double[] widthValues = new double[noWidths];
+		final double[] nPoints = new double[noWidths];
+		int maxPoints = 1;
+		for (int width = 0; width < noWidths; ++width) {
+			widthValues[width] = widths.getDouble(width);
+			double w = 10 * widthValues[width];
+			nPoints[width] = dataSz > w ? w : dataSz;
+			maxPoints = Math.max(maxPoints, (int) Math.ceil(nPoints[width]));
+		}
 
-			MexicanHatWavelet wave = new MexicanHatWavelet(nPoints, widths.getDouble(width));//widths[width]);
+		// padded so the circular convolution holds the whole linear one
+		final int fftLength = nextPowerOfTwo(dataSz + maxPoints - 1);
+		final double[] signal = transform(DatasetUtils.convertToDataset(yData), fftLength);
+		final double[] buffer = output.getData();
 
-			Dataset points = DatasetFactory.createRange(nPoints);
-			Dataset waveletData = wave.calculateValues(points);
+		IntStream.range(0, noWidths).parallel().forEach(width -> {
+			double[] wavelet = getWaveletSpectrum(fftLength, nPoints[width], widthValues[width]);
 
-			//TODO: were missing a initial point as seen in the python implementation. 
-			//This is a problem with the convoleTOSameShape function. Flat line should convolve...
-			//However, zero points does work according to the unit tests...
-			Dataset convl = Signal.convolveToSameShape((Dataset) yData, waveletData, null); // might get away with null..
-				
-			output.setSlice(convl, new Slice(width,width+1));
-		}
+			// conjugate of the product, so a forward transform gives the conjugate of the inverse
+			ComplexDoubleDataset product = DatasetFactory.zeros(ComplexDoubleDataset.class, fftLength);
+			double[] p = product.getData();
+			for (int i = 0; i < p.length; i += 2) {
+				p[i] = signal[i] * wavelet[i] - signal[i + 1] * wavelet[i + 1];
+				p[i + 1] = -(signal[i] * wavelet[i + 1] + signal[i + 1] * wavelet[i]);
+			}
+			double[] convolved = transform(product, fftLength);
+
+			int offset = ((int) Math.ceil(nPoints[width]) - 1) / 2;
+			int rowStart = width * dataSz;
+			for (int i = 0; i < dataSz; i++) {
+				buffer[rowStart + i] = convolved[2 * (offset + i)] / fftLength;
+			}
+		});
 
 		return output;
 	}
 
+	/**
+	 * @return interleaved real and imaginary parts of the Fourier transform of data zero padded to length
+	 */
+	private static double[] transform(Dataset data, int length) {
+		Dataset spectrum = FFT.fftn(data, new int[] {length}, null);
+		return DatasetUtils.cast(ComplexDoubleDataset.class, spectrum).getData();
+	}
+
+	private static double[] getWaveletSpectrum(int fftLength, double nPoints, double width) {
+		WaveletKey key = new WaveletKey(fftLength, nPoints, width);
+		double[] spectrum = WAVELET_SPECTRA.get(key);
+		if (spectrum == null) {
+			MexicanHatWavelet wave = new MexicanHatWavelet(nPoints, width);
+			Dataset waveletData = wave.calculateValues(DatasetFactory.createRange(nPoints));
+			spectrum = transform(waveletData, fftLength);
+			if (WAVELET_SPECTRA.size() >= MAX_CACHED_SPECTRA) {
+				WAVELET_SPECTRA.clear();
+			}
+			WAVELET_SPECTRA.put(key, spectrum);
+		}
+		return spectrum;
+	}
+
+	private static int nextPowerOfTwo(int n) {
+		int p = Integer.highestOneBit(n);
+		return p == n ? n : p << 1;
+	}
+
+	private static class WaveletKey {
+		private final int fftLength;
+		private final double nPoints;
+		private final double width;
+
+		private WaveletKey(int fftLength, double nPoints, double width) {
+			this.fftLength = fftLength;
+			this.nPoints = nPoints;
+			this.width = width;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = fftLength;
+			long temp = Double.doubleToLongBits(nPoints);
+			result = 31 * result + (int) (temp ^ (temp >>> 32));
+			temp = Double.doubleToLongBits(width);
+			result = 31 * result + (int) (temp ^ (temp >>> 32));
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof WaveletKey))
+				return false;
+			WaveletKey other = (WaveletKey) obj;
+			return fftLength == other.fftLength
+					&& Double.doubleToLongBits(nPoints) == Double.doubleToLongBits(other.nPoints)
+					&& Double.doubleToLongBits(width) == Double.doubleToLongBits(other.width);
+		}
+	}
+
 	/**
 	 * Creates a 2D relative extreme matrix determining which points could be considered extremes
 	 * 
-	 * @param mtx 2D dataset
-	 * @param axis to determine the relative extremes on
+	 * A point is a maximum when it is greater than both of its neighbours along a row, with neighbours
+	 * wrapping around at the ends of the row. Differences below a small fraction of the largest value
+	 * in the row are treated as round-off from the transform.
+	 * 
+	 * @param mtx row-major 2D matrix
+	 * @param noRows
+	 * @param noCols
 	 * 
-	 * @return boolean matrix that is True with each point classed as a extrema, Shape matches @param mtx
+	 * @return matrix that is true for each point classed as a extrema, laid out as @param mtx
 	 */
-	private Dataset boolRelativeExtrema(Dataset mtx, int axis) {
-		int order = 1; //The windows size to check against 
-		int size = mtx.getShape()[axis];
-		Dataset locs = DatasetFactory.createRange(IntegerDataset.class, size);
-
-		Dataset resultsMtx = DatasetFactory.ones(mtx, IntegerDataset.class);
-		Dataset main = DatasetUtils.take(mtx,locs, axis);
-
-		for (int shift = 1; shift < order + 1; ++shift) {
-			
-			Dataset above = DatasetUtils.take(mtx, Maths.add(locs,shift),  axis);
-
-			Dataset below = DatasetUtils.take(mtx, Maths.subtract(locs, shift), axis); // TODO:
-			
-			// Compare values and set true results value true -
-			Dataset cmp = null;
-			cmp = Comparisons.greaterThan(main, above);
-			resultsMtx = Maths.bitwiseAnd(resultsMtx, cmp.cast(IntegerDataset.class));
-
-			cmp = Comparisons.greaterThan(main, below);
-			resultsMtx = Maths.bitwiseAnd(resultsMtx, cmp.cast(IntegerDataset.class));
-
-//			if (Maths.bitwiseInvert(resultsMtx).any())
-//				return resultsMtx;
+	private static boolean[] relativeMaxima(double[] mtx, int noRows, int noCols) {
+		boolean[] maxima = new boolean[noRows * noCols];
+
+		for (int row = 0; row < noRows; row++) {
+			int start = row * noCols;
+
+			double tolerance = 0;
+			for (int col = 0; col < noCols; col++) {
+				tolerance = Math.max(tolerance, Math.abs(mtx[start + col]));
+			}
+			tolerance *= EXTREMA_TOLERANCE;
+
+			for (int col = 0; col < noCols; col++) {
+				double main = mtx[start + col];
+				double above = mtx[start + (col + 1 == noCols ? 0 : col + 1)];
+				double below = mtx[start + (col == 0 ? noCols - 1 : col - 1)];
+				maxima[start + col] = main - above > tolerance && main - below > tolerance;
+			}
 		}
 
-		return resultsMtx;
+		return maxima;
 	}
 
 	/**
-	 * @param convolveMtx
-	 *            2D (0 - col, 1 - row) matrix to id ridge lines on. THis is
-	 *            typically the result of the convolution of wavelet and signal
-	 *            data
+	 * @param maxima
+	 *            row-major 2D (0 - col, 1 - row) matrix of the relative maxima of the
+	 *            convolution of wavelet and signal data
 	 * @param maxDistances
 	 *            between points to connect the dots in becoming lines. Must
-	 *            have at least as many rows as input @param convoleMtx
+	 *            have at least as many rows as input @param maxima
 	 * @param gapThresh
 	 *            the threshold by which a connection between ridge lines would not be made
 	 *
-	 * @return needs to return back a set of x,y coords but also there is a gap
-	 *         number given that is then used in filterRidgesToPeaks
-	 *         
+	 * @return the ridge lines found, those that were closed off by the gap threshold first
 	 */
-	private List<IDataset> identifyRidgeLines(Dataset convolveMtx, IDataset maxDistances, double gapThresh) {
-
-		/*Gather extrame based on neighbour values away from a given order*/
- 		Dataset allRelMaxCols = boolRelativeExtrema(convolveMtx, 1);
+	private static RidgeLines identifyRidgeLines(boolean[] maxima, int noRows, int noCols, double[] maxDistances, double gapThresh) {
 
-		int startRow = allRelMaxCols.getShape()[0] -1; 
+		int startRow = noRows - 1;
 
-		List<RidgeLine> ridgeLines = new ArrayList<RidgeLine>();
-
-		Dataset ridgeStartSlice = allRelMaxCols.getSlice(new Slice(startRow,startRow+1));	
-		
 		/*
-		 * Generate a slice based on the starting point. Based on these create starting ridges to then be adjusted and filtered on.
-		 * */
-		IndexIterator all = ridgeStartSlice.getIterator();
-		while (all.hasNext()) {
-			int pos = all.index;
-			
-			if (ridgeStartSlice.getElementBooleanAbs(pos)) {
-				RidgeLine ridge = new RidgeLine();
-				ridge.row.add(startRow);
-				ridge.col.add(all.index);
-				ridgeLines.add(ridge);
+		 * Create the starting ridges from the maxima of the widest wavelet
+		 */
+		RidgeLines ridgeLines = new RidgeLines();
+		int start = startRow * noCols;
+		for (int col = 0; col < noCols; col++) {
+			if (maxima[start + col]) {
+				ridgeLines.add(startRow, col);
 			}
 		}
-		
-		
-		List<RidgeLine> finalRidges = new ArrayList<RidgeLine>();
 
-		Dataset rows = (startRow > 1) ? DatasetFactory.createRange(IntegerDataset.class, startRow, -1, -1) :
-			DatasetFactory.createRange(0);
-		Dataset cols = convolveMtx.all(0).getIndices();
+		RidgeLines finalRidges = new RidgeLines();
 
 		/*
 		 * The bulk of the conditioning. Will go through each ridge line attempting to connect with neighbours or other rows.
-		 * 
-		*/
-		IndexIterator rowItr = rows.getIterator();
-		while (rowItr.hasNext()) {
-			
-			int rowIdx = rows.getInt(rowItr.index);
-			
-			//Get all true max vol
-			Dataset thisRow = allRelMaxCols.getSlice(new Slice(rowIdx, rowIdx+1));
-			Dataset thisMaxCols = cols.getByBoolean(thisRow);
-
-			// Increment all gap values
-			for (RidgeLine lineIt : ridgeLines) {
-				lineIt.gapVal += 1;
-			}
-
-			// XXX these should always be allMaxCols[row]
-			List<Integer> prevRidgesCols = new ArrayList<Integer>();
-			for (RidgeLine lineItr : ridgeLines) {
-				List<Integer> ridgeCols = lineItr.col;
-				int col = ridgeCols.get(ridgeCols.size()-1);
-				prevRidgesCols.add(col);
+		 * Rows are only walked for more than two widths, and then the walk starts at the start row itself.
+		 */
+		int firstRow = startRow > 1 ? startRow : -1;
+		int[] prevRidgesCols = new int[0];
+		for (int row = firstRow; row >= 0; --row) {
+
+			ridgeLines.incrementGaps();
+
+			// last column of each ridge before this row is added to
+			int noPrev = ridgeLines.size;
+			if (prevRidgesCols.length < noPrev) {
+				prevRidgesCols = new int[ridgeLines.lastCol.length];
 			}
+			System.arraycopy(ridgeLines.lastCol, 0, prevRidgesCols, 0, noPrev);
 
 			// Look through every relative maximum found at current row
 			// attempt to connect them with existing ridge lines
-			IndexIterator colItr = thisMaxCols.getIterator();
-			while (colItr.hasNext()) {
-				// if previous ridge line within the maxDistance to connect to,
-				// do so otherwise start a new one
-				RidgeLine line = null;
-				int colIdx = thisMaxCols.getInt(colItr.index);
-				
-				if (prevRidgesCols.size() > 0) {
-					List<Integer> diffsLst =  new ArrayList<Integer>();
-					for (int i = 0; i < prevRidgesCols.size(); ++i){
-						int diff = Math.abs(colIdx - prevRidgesCols.get(i));
-						diffsLst.add(diff);
-					}
-					
-					int closest =  diffsLst.indexOf(Collections.min(diffsLst));
-					
-					if (diffsLst.get(closest) <= maxDistances.getDouble(rowIdx)) {
-						line = ridgeLines.get(closest);
+			int rowStart = row * noCols;
+			for (int col = 0; col < noCols; col++) {
+				if (!maxima[rowStart + col]) {
+					continue;
+				}
+
+				int closest = -1;
+				int minDiff = Integer.MAX_VALUE;
+				for (int i = 0; i < noPrev; i++) {
+					int diff = Math.abs(col - prevRidgesCols[i]);
+					if (diff < minDiff) {
+						minDiff = diff;
+						closest = i;
 					}
 				}
 
-				if (line != null) {
+				if (closest >= 0 && minDiff <= maxDistances[row]) {
 					// Found a point close enough extend current ridge lines
-					line.col.add(colIdx);
-					line.row.add(rowIdx);
-					line.gapVal = 0;
+					ridgeLines.extend(closest, row, col);
 				} else {
-					// newLine=[[row]
-					RidgeLine nLine = new RidgeLine();
-					nLine.col.add(colIdx);
-					nLine.row.add(rowIdx);
-					nLine.gapVal = 0;
-					ridgeLines.add(nLine);
+					ridgeLines.add(row, col);
 				}
 			}
 
-			// Remove the ridge lines with gapNumber too high
-			// XXX modifying a list whilst iterating
-			for (int i = ridgeLines.size()-1; i > 0; --i) {
-				RidgeLine line = ridgeLines.get(i);
-				if (line.gapVal > gapThresh) {
-					finalRidges.add(line);
-					ridgeLines.remove(i);
+			// Remove the ridge lines with gapNumber too high (the first line is kept)
+			for (int i = ridgeLines.size - 1; i > 0; --i) {
+				if (ridgeLines.gap[i] > gapThresh) {
+					ridgeLines.moveTo(i, finalRidges);
 				}
 			}
 		}
 
-		List<RidgeLine> entireLines = new ArrayList<RidgeLine>();
-		entireLines.addAll(finalRidges);
-		entireLines.addAll(ridgeLines);
-		
-		List<IDataset> output = new ArrayList<IDataset>();
- 		
-		/*
-		 * Filter out low gapValue lines and 
-		 * format these ridglines into output.
-		 * */
-		for(RidgeLine line : entireLines){
-	
-			List<Integer> sortArgs = new ArrayList<Integer>(line.row);
-			Collections.sort(sortArgs);	
-
-			Dataset ridgeLine = DatasetFactory.zeros(sortArgs.size(), 2);
-			
-			//TODO: not the most efficent, just needed them to be ordered for filtering later
-			for (int i = 0; i < sortArgs.size(); ++i){
-				
-				int rVal = sortArgs.get(i);
-				int idxOrg = line.row.indexOf(rVal);
-				int cVal = line.col.get(idxOrg); 
-				
-				ridgeLine.set(rVal, i, 0);
-				ridgeLine.set(cVal, i, 1);
-			}
-
-			output.add(ridgeLine);
+		for (int i = 0; i < ridgeLines.size; i++) {
+			ridgeLines.copyTo(i, finalRidges);
 		}
-		
-		return output;
+
+		return finalRidges;
 	}
 
 	/**
 	 * 
-	 * Take peaks from the ridges top value
-	 * 
-	 * RidgeLines -> line -> Points -> x,y,gap val
-	 * 
+	 * Generate the noise floor about each point of the narrowest wavelet's row
 	 * 
 	 *@param mtx
-	 *            2D (0 - col, 1 - row) matrix to id ridge lines on. THis is
+	 *            row-major 2D (0 - col, 1 - row) matrix to id ridge lines on. This is
 	 *            typically the result of the convolution of wavelet and signal
 	 *            data.
-	 *
-	 * @param ridges
-	 * 		Sequence of ridges contains 2 sequences of the respective rows and columns that creates the ridge line respectively. 
 	 * 
 	 * @param windowSz
 	 * 		Size of window to use to calculate noise floor. 
 	 * 		Default is col /20 -> TODO: why?
 	 * 
-	 * @param minLength
-	 * 		min length a ridge line need to be acceptable.
-	 * 
-	 * @param minSignalNoiseRatio
-	 * 		Min signal to noise ratio. The signal is a value of the cwt matrix at the shortest length scale (cwt[0.loc]) the 
-	 * 		noise the 'noise perc'th percentiles of data points contained within a window of 'window_size' around 'cwt[0,loc]'	
-	 * 
 	 * @param noisePerc
 	 * 		When calculating the noise floor, percentile of data points examined below which to consider noise. 
 	 * 		Calculated using HOPEFULLY apache math3 percentile functions.
 	 * 
-	 * 
-	 * 
-	 * @return List of 2D dataset (0 - col, 1 - row) with respect to the original @mtx 
+	 * @return noise value for each column
 	 */
-	private List<IDataset> filterRidgesToPeaks(Dataset mtx, List<IDataset> ridges, int windowSz, double minLength, double minSignalNoiseRatio, double noisePerc) {
-		
-		//Conditions generated based on parameter input
-		int numPoints = mtx.getShape()[1];
+	private static double[] noiseFloor(double[] mtx, int noCols, int windowSz, double noisePerc) {
 		int odd = windowSz % 2;
 		int hfWindow = windowSz / 2;
-		
-		Dataset startRow = mtx.getSlice(new Slice(0, 1)).flatten();
-		Dataset noises = DatasetFactory.zeros(startRow, DoubleDataset.class);
-		
-		/*
-		 * Generate noise at slices about rows and on the windowsSz given
-		 * */
-		IndexIterator itr= startRow.getIterator();
-		while(itr.hasNext()){
-			int idx = itr.index;
-			
-			int windowStart= Math.max(idx - hfWindow, 0);
-			int windowEnd = Math.min(idx + hfWindow + odd, numPoints);
-
-			Dataset sliceWindow = startRow.getSlice(new Slice(windowStart,windowEnd));
-			
-			double[] args = (double[]) DatasetUtils.createJavaArray(sliceWindow);
-			
-			//Calculate percentile based on this slice. This can be compared later to see if this area was too low to be considered significant.
-			double score = new Percentile().evaluate(args, noisePerc);
-	
-			noises.set(score, idx);
-			
-		}
-		
-		/*
-		 * Based on noises parameter filter out ridges.
-		 * */
-		List<IDataset> filteredRidges = new ArrayList<IDataset>();
-		for(int i = 0; i < ridges.size(); ++i){
-			IDataset ridgeLine = ridges.get(i);
-			if (isFilteredRidgeAPeak(mtx, ridgeLine, noises, minLength, minSignalNoiseRatio)){
-				filteredRidges.add(ridgeLine);
-			}
+
+		double[] noises = new double[noCols];
+		Percentile percentile = new Percentile();
+		for (int idx = 0; idx < noCols; idx++) {
+			int windowStart = Math.max(idx - hfWindow, 0);
+			int windowEnd = Math.min(idx + hfWindow + odd, noCols);
+
+			//Calculate percentile based on this window. This can be compared later to see if this area was too low to be considered significant.
+			noises[idx] = percentile.evaluate(mtx, windowStart, windowEnd - windowStart, noisePerc);
 		}
-		
-		return filteredRidges;
+
+		return noises;
 	}
-	
-	
-	
+
 	/**
 	 * 
 	 * Check against value and conditions to see if could consider point a peak.
 	 * 
 	 * @param mtx
-	 * 		2D (0 - col, 1 - row) matrix to id ridge lines on. This is
+	 * 		row-major 2D (0 - col, 1 - row) matrix to id ridge lines on. This is
 	 * 		typically the result of the convolution of wavelet and signal data.
 	 * 
-	 * @param ridgeLine
-	 * 		Sequence of ridges contains 2 sequences of the respective rows and columns that creates the ridge line respectively. 
+	 * @param ridges
+	 * 		ridge lines
 	 * 
+	 * @param ridge
+	 * 		index of the ridge line to check
 	 * 
 	 * @param noises
 	 * 		1D set of noise values produced based on @param mtx(1) 
@@ -469,18 +438,18 @@ public class WaveletTransformPeakFinds extends AbstractPeakFinder {
 	 * 
 	 * @return 
 	 */
-	private Boolean isFilteredRidgeAPeak(IDataset mtx, IDataset ridgeLine, IDataset noises, double minLength, double minSignalNoiseRatio){
+	private static boolean isFilteredRidgeAPeak(double[] mtx, int noCols, RidgeLines ridges, int ridge, double[] noises, double minLength, double minSignalNoiseRatio){
 
-		if ((ridgeLine.getShape()[0]) < minLength){
+		if (ridges.length[ridge] < minLength){
 			return false;
 		}
 		
 		//TODO: need to take a better slice of the noise mtx
-		int c = ridgeLine.getInt(0,0);
-		int r = ridgeLine.getInt(0,1);
+		int c = ridges.minRow[ridge];
+		int r = ridges.minRowCol[ridge];
 		
-		double signal =  mtx.getDouble(c,r);
-		double noise = noises.getDouble(ridgeLine.getInt(0,1));
+		double signal = mtx[c * noCols + r];
+		double noise = noises[r];
 		double snr  = Math.abs( signal/noise);
 
 		if (snr < minSignalNoiseRatio){
@@ -490,9 +459,78 @@ public class WaveletTransformPeakFinds extends AbstractPeakFinder {
 		
 		return true;
 	}
-	
-	
-	
+
+	/**
+	 * Ridge lines held as parallel primitive arrays. For each line only what the peak filter
+	 * uses is kept: its number of points, the last column added, the gap count and the first
+	 * point found on its lowest row.
+	 */
+	private static class RidgeLines {
+		private int size = 0;
+		private int[] lastCol = new int[16];
+		private int[] gap = new int[16];
+		private int[] length = new int[16];
+		private int[] minRow = new int[16];
+		private int[] minRowCol = new int[16];
+
+		private void add(int row, int col) {
+			ensureCapacity(size + 1);
+			lastCol[size] = col;
+			gap[size] = 0;
+			length[size] = 1;
+			minRow[size] = row;
+			minRowCol[size] = col;
+			size++;
+		}
+
+		private void extend(int i, int row, int col) {
+			lastCol[i] = col;
+			gap[i] = 0;
+			length[i]++;
+			if (row < minRow[i]) {
+				minRow[i] = row;
+				minRowCol[i] = col;
+			}
+		}
+
+		private void incrementGaps() {
+			for (int i = 0; i < size; i++) {
+				gap[i]++;
+			}
+		}
+
+		private void copyTo(int i, RidgeLines other) {
+			other.ensureCapacity(other.size + 1);
+			int j = other.size++;
+			other.lastCol[j] = lastCol[i];
+			other.gap[j] = gap[i];
+			other.length[j] = length[i];
+			other.minRow[j] = minRow[i];
+			other.minRowCol[j] = minRowCol[i];
+		}
+
+		private void moveTo(int i, RidgeLines other) {
+			copyTo(i, other);
+			int n = size - i - 1;
+			System.arraycopy(lastCol, i + 1, lastCol, i, n);
+			System.arraycopy(gap, i + 1, gap, i, n);
+			System.arraycopy(length, i + 1, length, i, n);
+			System.arraycopy(minRow, i + 1, minRow, i, n);
+			System.arraycopy(minRowCol, i + 1, minRowCol, i, n);
+			size--;
+		}
+
+		private void ensureCapacity(int n) {
+			if (n > lastCol.length) {
+				int capacity = Math.max(n, 2 * lastCol.length);
+				lastCol = Arrays.copyOf(lastCol, capacity);
+				gap = Arrays.copyOf(gap, capacity);
+				length = Arrays.copyOf(length, capacity);
+				minRow = Arrays.copyOf(minRow, capacity);
+				minRowCol = Arrays.copyOf(minRowCol, capacity);
+			}
+		}
+	}
 	
 	@Override
 	public Map<Integer, Double> findPeaks(IDataset xData, IDataset yData, Integer maxPeaks) {
@@ -501,28 +539,36 @@ public class WaveletTransformPeakFinds extends AbstractPeakFinder {
 		
 		//Generate width set to step through for convolution 
 		IDataset widths = DatasetFactory.createRange(1.0, widthSzParam+1.0, 1.0);
-		IDataset maxDis = Maths.divide(widths, 4.0);
 		
 		// Pass over data given width and produce waveletConvolve
-		Dataset mtx = countinousWaveletTransform(yData, widths);
+		DoubleDataset mtx = (DoubleDataset) countinousWaveletTransform(yData, widths);
+		int noRows = mtx.getShape()[0];
+		int noCols = mtx.getShape()[1];
+		double[] cwt = mtx.getData();
+
+		double[] maxDis = new double[noRows];
+		for (int i = 0; i < noRows; i++) {
+			maxDis[i] = widths.getDouble(i) / 4.0;
+		}
 		
- 		List<IDataset> ridges = identifyRidgeLines(mtx, maxDis,gapThresh);
+		boolean[] maxima = relativeMaxima(cwt, noRows, noCols);
+		RidgeLines ridges = identifyRidgeLines(maxima, noRows, noCols, maxDis, gapThresh);
 		
 		if (minLength == 0)
-			minLength = Math.ceil(mtx.getShape()[0] /4.0);
+			minLength = Math.ceil(noRows /4.0);
 		
-		
-		int windowSz = (int) Math.ceil((double) mtx.getShape()[1] / 20.0);
-		
-		List<IDataset> ridgesFiltered = filterRidgesToPeaks(mtx, ridges, windowSz, minLength, minSNR, noisePerc);
+		int windowSz = (int) Math.ceil((double) noCols / 20.0);
+		double[] noises = noiseFloor(cwt, noCols, windowSz, noisePerc);
 		
 		Map<Integer, Double> peaks = new TreeMap<Integer,Double>();
-		for(IDataset ridge : ridgesFiltered){
-			int peakPos = ridge.getInt(0,1);
-			peaks.put(peakPos, yData.getDouble(peakPos));
+		for (int i = 0; i < ridges.size; i++) {
+			if (isFilteredRidgeAPeak(cwt, noCols, ridges, i, noises, minLength, minSNR)) {
+				int peakPos = ridges.minRowCol[i];
+				peaks.put(peakPos, yData.getDouble(peakPos));
+			}
 		}
 		
 		return peaks;
 	}
 
-}
\ No newline at end of file
+}
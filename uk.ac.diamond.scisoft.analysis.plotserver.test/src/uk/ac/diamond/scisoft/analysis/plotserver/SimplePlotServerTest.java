@@ -0,0 +1,107 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.plotserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.january.dataset.Dataset;
+import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DoubleDataset;
+import org.junit.Test;
+
+import gda.observable.IObserver;
+
+public class SimplePlotServerTest {
+
+	private static DataBean createBean(double value, int... shape) throws Exception {
+		DataBean bean = new DataBean(shape.length == 1 ? GuiPlotMode.ONED : GuiPlotMode.TWOD);
+		Dataset d = DatasetFactory.zeros(DoubleDataset.class, shape).fill(value);
+		if (shape.length == 1) {
+			bean.addAxis(AxisMapBean.XAXIS, DatasetFactory.createRange(DoubleDataset.class, shape[0]));
+			bean.addData(DatasetWithAxisInformation.createAxisDataSet(d));
+		} else {
+			bean.addData(DatasetWithAxisInformation.createAxisDataSet(d, new String[0], null));
+		}
+		return bean;
+	}
+
+	@Test
+	public void testCoalescedUpdates() throws Exception {
+		final SimplePlotServer server = new SimplePlotServer();
+		server.setMaximumUpdateRate(20);
+
+		final AtomicInteger updates = new AtomicInteger();
+		final AtomicReference<Double> latest = new AtomicReference<>();
+		server.addIObserver(new IObserver() {
+			@Override
+			public void update(Object source, Object arg) {
+				if (!"Plot 1".equals(arg)) {
+					return;
+				}
+				try {
+					Thread.sleep(30); // slow observer
+					latest.set(server.getData("Plot 1").getData().get(0).getData().getDouble(0, 0));
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+				updates.incrementAndGet();
+			}
+		});
+
+		int n = 200;
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++) {
+			server.setData("Plot 1", createBean(i, 32, 32));
+		}
+		long time = System.nanoTime() - start;
+		assertTrue("Producer should not wait for observer", time < n * 30 * 1000000L / 4);
+
+		long end = System.currentTimeMillis() + 5000;
+		while ((latest.get() == null || latest.get() != n - 1) && System.currentTimeMillis() < end) {
+			Thread.sleep(20);
+		}
+		assertEquals(n - 1, latest.get(), 0);
+		assertTrue("Updates should be coalesced: " + updates.get(), updates.get() < n / 4);
+
+		server.setMaximumUpdateRate(0);
+		int before = updates.get();
+		server.updateData("Plot 1");
+		assertEquals(before + 1, updates.get());
+	}
+
+	@Test
+	public void testDownsample() throws Exception {
+		SimplePlotServer server = new SimplePlotServer();
+		DataBean image = createBean(1, 1000, 300);
+		server.setData("Image", image);
+		assertSame(image, server.getData("Image"));
+
+		server.setMaximumPoints(256);
+		DataBean small = server.getData("Image");
+		assertArrayEquals(new int[] {250, 150}, small.getData().get(0).getData().getShape());
+		assertArrayEquals(new int[] {1000, 300}, image.getData().get(0).getData().getShape());
+
+		DataBean line = createBean(2, 1000);
+		server.setData("Line", line);
+		small = server.getData("Line");
+		assertArrayEquals(new int[] {250}, small.getData().get(0).getData().getShape());
+		assertArrayEquals(new int[] {250}, small.getAxis(AxisMapBean.XAXIS).getShape());
+		assertEquals(996, small.getAxis(AxisMapBean.XAXIS).getDouble(249), 0);
+
+		server.setData("Short", createBean(3, 100));
+		assertArrayEquals(new int[] {100}, server.getData("Short").getData().get(0).getData().getShape());
+	}
+}
@@ -35,12 +35,12 @@ abstract public class AbstractPlotServer implements PlotServer {
 	}
 
 	@Override
-	public DataBean getData(String guiName) throws Exception {
+	public synchronized DataBean getData(String guiName) throws Exception {
 		return removeOnGet ? dataStore.remove(guiName):  dataStore.get(guiName);
 	}
 
 	@Override
-	public void setData(String guiName, DataBean data) throws Exception {
+	public synchronized void setData(String guiName, DataBean data) throws Exception {
 		if (data == null) {
 			dataStore.remove(guiName);
 			return;
@@ -66,7 +66,7 @@ abstract public class AbstractPlotServer implements PlotServer {
 	}
 
 	@Override
-	public GuiBean getGuiState(String guiName) throws Exception {
+	public synchronized GuiBean getGuiState(String guiName) throws Exception {
 		if (removeOnGet) {
 			return guiStore.remove(guiName);
 		}
@@ -80,13 +80,13 @@ abstract public class AbstractPlotServer implements PlotServer {
 	}
 
 	@Override
-	public void updateGui(String guiName, GuiBean guiData) throws Exception {
+	public synchronized void updateGui(String guiName, GuiBean guiData) throws Exception {
 		guiData.remove(GuiParameters.QUIET_UPDATE);
 		guiStore.put(guiName, guiData);
 	}
 
 	@Override
-	public String[] getGuiNames() throws Exception {
+	public synchronized String[] getGuiNames() throws Exception {
 		Set<String> names = new HashSet<String>();
 		names.addAll(guiStore.keySet());
 		names.addAll(dataStore.keySet());
@@ -14,12 +14,27 @@ import gda.observable.IObserver;
 import gda.observable.ObservableComponent;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.january.dataset.Dataset;
+import org.eclipse.january.dataset.Slice;
 
 import uk.ac.diamond.scisoft.analysis.PlotServer;
 
 public class SimplePlotServer extends AbstractPlotServer {
+	/**
+	 * System property for maximum number of data updates per second for each GUI name.
+	 * Zero or less means observers are notified synchronously on every update
+	 */
+	public static final String MAX_UPDATE_RATE = "uk.ac.diamond.scisoft.analysis.plotserver.maxupdaterate";
+
 	private ObservableComponent observableComponent = new ObservableComponent();	
 	private String basePath;
+	private volatile UpdateCoalescer coalescer;
+	private volatile int maximumPoints = 0;
 
 	/**
 	 * Constructor to initialise all the collection objects
@@ -31,6 +46,97 @@ public class SimplePlotServer extends AbstractPlotServer {
 	public SimplePlotServer(boolean removeOnGet) {
 		super(removeOnGet);
 		basePath = System.getProperty(LocalProperties.GDA_DATA);
+		setMaximumUpdateRate(Double.parseDouble(System.getProperty(MAX_UPDATE_RATE, "0")));
+	}
+
+	/**
+	 * Set maximum rate of data update notifications for each GUI name. When positive, setting data
+	 * does not wait for observers: notifications are delivered on another thread and updates that
+	 * arrive while one is pending are coalesced so observers only fetch the latest data
+	 * @param rate updates per second, zero or less to notify synchronously on every update
+	 */
+	public synchronized void setMaximumUpdateRate(double rate) {
+		if (coalescer != null) {
+			coalescer.shutdown();
+			coalescer = null;
+		}
+		if (rate > 0) {
+			coalescer = new UpdateCoalescer(n -> notifyIObservers(this, n), (long) (1e9 / rate));
+		}
+	}
+
+	/**
+	 * Set maximum number of points along each dimension of data given to observers. Larger
+	 * datasets, and axes of matching length, are downsampled by picking every n-th point
+	 * @param points zero or less to leave data unchanged
+	 */
+	public void setMaximumPoints(int points) {
+		maximumPoints = points;
+	}
+
+	@Override
+	public DataBean getData(String guiName) throws Exception {
+		DataBean bean = super.getData(guiName);
+		int max = maximumPoints;
+		return bean == null || max <= 0 ? bean : downsample(bean, max);
+	}
+
+	private static int step(int size, int max) {
+		return (size + max - 1) / max;
+	}
+
+	private static Dataset downsample(Dataset d, int max) {
+		int[] shape = d.getShapeRef();
+		Slice[] slices = new Slice[shape.length];
+		boolean reduce = false;
+		for (int i = 0; i < shape.length; i++) {
+			int step = step(shape[i], max);
+			slices[i] = new Slice(null, null, step);
+			reduce |= step > 1;
+		}
+		if (!reduce) {
+			return d;
+		}
+		Dataset r = d.getSlice(slices);
+		r.setName(d.getName());
+		return r;
+	}
+
+	/**
+	 * @param bean
+	 * @param max
+	 * @return copy of bean with datasets and axes downsampled or bean if nothing is downsampled
+	 */
+	static DataBean downsample(DataBean bean, int max) {
+		boolean reduce = false;
+		List<DatasetWithAxisInformation> data = new ArrayList<>();
+		for (DatasetWithAxisInformation d : bean.getData()) {
+			Dataset s = d.getData() == null ? null : downsample(d.getData(), max);
+			if (s != d.getData()) {
+				reduce = true;
+				DatasetWithAxisInformation n = new DatasetWithAxisInformation();
+				n.setData(s);
+				n.setAxisMap(d.getAxisMap());
+				data.add(n);
+			} else {
+				data.add(d);
+			}
+		}
+		if (!reduce) {
+			return bean;
+		}
+
+		// axes are stepped like any data dimension of the same length
+		DataBean copy = bean.copy();
+		copy.setData(data);
+		Map<String, Dataset> axes = copy.getAxisData();
+		for (Entry<String, Dataset> e : axes.entrySet()) {
+			Dataset a = e.getValue();
+			if (a != null && a.getRank() == 1) {
+				e.setValue(downsample(a, max));
+			}
+		}
+		return copy;
 	}
 
 	public void setBasePath(String basePath) {
@@ -44,12 +150,21 @@ public class SimplePlotServer extends AbstractPlotServer {
 	@Override
 	public void setData(String guiName, DataBean data) throws Exception {
 		super.setData(guiName, data);
-		notifyIObservers(this, guiName);
+		notifyData(guiName);
 	}
 	
 	@Override
 	public void updateData(String guiName) throws Exception {
-		notifyIObservers(this, guiName);
+		notifyData(guiName);
+	}
+
+	private void notifyData(String guiName) {
+		UpdateCoalescer c = coalescer;
+		if (c == null) {
+			notifyIObservers(this, guiName);
+		} else {
+			c.post(guiName);
+		}
 	}
 
 	@Override
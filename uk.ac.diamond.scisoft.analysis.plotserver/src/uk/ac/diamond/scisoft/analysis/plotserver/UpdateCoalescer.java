@@ -0,0 +1,97 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.plotserver;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers update notifications for GUI names asynchronously and at most once per interval for
+ * each name. Posting never blocks: while a notification for a name is pending, further posts for
+ * that name are dropped, as observers fetch the latest data when notified.
+ */
+class UpdateCoalescer {
+
+	private static final Logger logger = LoggerFactory.getLogger(UpdateCoalescer.class);
+
+	private final Consumer<String> delivery;
+	private final long interval;
+	private final Set<String> pending = ConcurrentHashMap.newKeySet();
+	private final Map<String, Long> delivered = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * @param delivery called with GUI name on delivery thread
+	 * @param interval minimum time between notifications for a name in nanoseconds
+	 */
+	UpdateCoalescer(Consumer<String> delivery, long interval) {
+		this.delivery = delivery;
+		this.interval = interval;
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "Plot server updates");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Request notification for GUI name
+	 * @param guiName
+	 */
+	void post(final String guiName) {
+		if (!pending.add(guiName)) {
+			return;
+		}
+
+		Long last = delivered.get(guiName);
+		long delay = last == null ? 0 : Math.max(0, last + interval - System.nanoTime());
+		try {
+			executor.schedule(() -> deliver(guiName), delay, TimeUnit.NANOSECONDS);
+		} catch (Exception e) {
+			pending.remove(guiName);
+			logger.error("Could not schedule update for {}", guiName, e);
+		}
+	}
+
+	private void deliver(String guiName) {
+		// clear before notifying so updates arriving meanwhile are not lost
+		pending.remove(guiName);
+		delivered.put(guiName, System.nanoTime());
+		try {
+			delivery.accept(guiName);
+		} catch (Exception e) {
+			logger.error("Could not deliver update for {}", guiName, e);
+		}
+	}
+
+	/**
+	 * @param guiName
+	 * @return true if a notification is waiting to be delivered
+	 */
+	boolean isPending(String guiName) {
+		return pending.contains(guiName);
+	}
+
+	/**
+	 * Stop delivering notifications, dropping any pending ones
+	 */
+	void shutdown() {
+		executor.shutdownNow();
+		pending.clear();
+	}
+}
@@ -0,0 +1,84 @@
+package uk.ac.diamond.scisoft.analysis.powder.indexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.IDataset;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.diamond.scisoft.analysis.powder.indexer.indexers.CellParameter;
+import uk.ac.diamond.scisoft.analysis.powder.indexer.indexers.IPowderIndexerListener;
+import uk.ac.diamond.scisoft.analysis.powder.indexer.stubs.FastStubIndexer;
+import uk.ac.diamond.scisoft.analysis.powder.indexer.stubs.SlowStubIndexer;
+
+public class PowderIndexerServiceTest {
+
+	private static final List<String> STUBS = Arrays.asList(FastStubIndexer.class.getName(),
+			SlowStubIndexer.class.getName());
+
+	private IPowderIndexerService service;
+
+	private IDataset peaks = DatasetFactory.createFromObject(new double[] { 10.7569, 9.72681, 7.22681, 7.20256,
+			6.62982, 6.62892, 6.48072, 6.47279, 5.37845, 4.99818 });
+
+	private class CountingListener implements IPowderIndexerListener {
+		AtomicInteger lines = new AtomicInteger();
+		AtomicInteger cells = new AtomicInteger();
+
+		@Override
+		public void statusLine(String indexerId, String line) {
+			lines.incrementAndGet();
+		}
+
+		@Override
+		public void cellFound(CellParameter cell) {
+			cells.incrementAndGet();
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		service = new PowderIndexerServiceImpl();
+		service.addIndexersByClass(service.getClass().getClassLoader(),
+				"uk.ac.diamond.scisoft.analysis.powder.indexer.stubs");
+		service.clearCachedRuns();
+	}
+
+	@Test(timeout = 30000)
+	public void slowIndexerStoppedOnceAcceptableCellFound() throws Exception {
+		CountingListener listener = new CountingListener();
+		List<CellParameter> cells = service.runIndexers(STUBS, peaks, 1.54, 20, listener);
+
+		assertTrue(cells.size() >= 1);
+		CellParameter best = cells.get(0);
+		assertEquals("FastStubIndexer", best.getIndexerIdentifer());
+		assertEquals(50.0, best.getFigureMerit(), 1e-12);
+		assertEquals(5.43, best.getA(), 1e-12);
+		assertTrue(listener.lines.get() > 0);
+		assertEquals(cells.size(), listener.cells.get());
+	}
+
+	@Test(timeout = 30000)
+	public void repeatedRunUsesCache() throws Exception {
+		List<String> fast = Arrays.asList(FastStubIndexer.class.getName());
+		List<CellParameter> first = service.runIndexers(fast, peaks, 1.54, 20, null);
+
+		CountingListener listener = new CountingListener();
+		List<CellParameter> second = service.runIndexers(fast, peaks, 1.54, 20, listener);
+		assertEquals(first.size(), second.size());
+		assertEquals(first.get(0).getFigureMerit(), second.get(0).getFigureMerit(), 1e-12);
+		assertEquals("Cached run should not start the indexer", 0, listener.lines.get());
+		assertEquals(second.size(), listener.cells.get());
+
+		listener = new CountingListener();
+		service.runIndexers(fast, peaks, 1.0, 20, listener);
+		assertTrue("Different wavelength should run the indexer", listener.lines.get() > 0);
+	}
+
+}
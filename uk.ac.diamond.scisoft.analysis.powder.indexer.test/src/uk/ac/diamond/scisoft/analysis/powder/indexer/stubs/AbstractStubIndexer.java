@@ -0,0 +1,104 @@
+package uk.ac.diamond.scisoft.analysis.powder.indexer.stubs;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.january.dataset.IDataset;
+
+import uk.ac.diamond.scisoft.analysis.powder.indexer.IPowderIndexerParam;
+import uk.ac.diamond.scisoft.analysis.powder.indexer.PowderIndexerParam;
+import uk.ac.diamond.scisoft.analysis.powder.indexer.indexers.AbstractPowderIndexerProcess;
+import uk.ac.diamond.scisoft.analysis.powder.indexer.indexers.CellParameter;
+import uk.ac.diamond.scisoft.analysis.powder.indexer.indexers.ICellOutputParser;
+import uk.ac.diamond.scisoft.analysis.powder.indexer.indexers.StandardConstantParameters;
+
+/**
+ * Stand in for an external indexer. Runs a shell script that prints cells to
+ * standard output as lines of "CELL a b c alpha beta gamma merit".
+ */
+public abstract class AbstractStubIndexer extends AbstractPowderIndexerProcess {
+
+	private static final File STUB_DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "powderIndexerStubs");
+
+	protected AbstractStubIndexer(String stubName, String script) {
+		binName = stubName;
+		indexerDirectory = STUB_DIRECTORY.getAbsolutePath() + "/";
+		outFileTitle = stubName;
+		writeScript(stubName, script);
+	}
+
+	private static synchronized void writeScript(String stubName, String script) {
+		File f = new File(STUB_DIRECTORY, stubName);
+		if (f.exists())
+			return;
+		STUB_DIRECTORY.mkdirs();
+		try {
+			PrintWriter writer = new PrintWriter(f, "UTF-8");
+			writer.print(script);
+			writer.close();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to write stub indexer " + f, e);
+		}
+		f.setExecutable(true);
+		f.deleteOnExit();
+	}
+
+	@Override
+	public String getPowderRoutineID() {
+		return getClass().getSimpleName();
+	}
+
+	@Override
+	protected ICellOutputParser createOutputParser() {
+		return new ICellOutputParser() {
+			@Override
+			public CellParameter parseLine(String line) {
+				if (!line.startsWith("CELL"))
+					return null;
+				String[] v = line.trim().split("\\s+");
+				return new CellParameter(Double.parseDouble(v[1]), Double.parseDouble(v[2]), Double.parseDouble(v[3]),
+						Double.parseDouble(v[4]), Double.parseDouble(v[5]), Double.parseDouble(v[6]),
+						Double.parseDouble(v[7]), getPowderRoutineID());
+			}
+		};
+	}
+
+	@Override
+	public void generateIndexFile(String inputDataSavePath) {
+		//Not Applicable
+	}
+
+	@Override
+	public void commsSpecificIndexer(BufferedWriter bw, String relativeDataPath) {
+		//Not Applicable
+	}
+
+	@Override
+	public List<CellParameter> extractResults(String resultFilePath) {
+		//No result file written
+		return plausibleCells;
+	}
+
+	@Override
+	public String getResultsDataPath() {
+		return fileOutPath + outFileTitle + resultsExtension;
+	}
+
+	@Override
+	public boolean isPeakDataValid(IDataset peakData) {
+		return true;
+	}
+
+	@Override
+	public Map<String, IPowderIndexerParam> getInitialParamaters() {
+		Map<String, IPowderIndexerParam> intialParams = new TreeMap<String, IPowderIndexerParam>();
+		intialParams.put(StandardConstantParameters.wavelength, new PowderIndexerParam("wave", 1.0));
+		return intialParams;
+	}
+
+}
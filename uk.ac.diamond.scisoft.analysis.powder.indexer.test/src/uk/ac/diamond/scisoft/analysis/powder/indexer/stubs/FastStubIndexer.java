@@ -0,0 +1,14 @@
+package uk.ac.diamond.scisoft.analysis.powder.indexer.stubs;
+
+/**
+ * Reports a good cell straight away
+ */
+public class FastStubIndexer extends AbstractStubIndexer {
+
+	public FastStubIndexer() {
+		super("fastStubIndexer.sh", "#!/bin/sh\n"
+				+ "echo \"searching\"\n"
+				+ "echo \"CELL 5.43 5.43 5.43 90 90 90 50.0\"\n");
+	}
+
+}
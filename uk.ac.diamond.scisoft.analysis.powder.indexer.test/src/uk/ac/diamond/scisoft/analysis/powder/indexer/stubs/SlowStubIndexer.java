@@ -0,0 +1,15 @@
+package uk.ac.diamond.scisoft.analysis.powder.indexer.stubs;
+
+/**
+ * Reports a poor cell then searches for much longer than a test should take
+ */
+public class SlowStubIndexer extends AbstractStubIndexer {
+
+	public SlowStubIndexer() {
+		super("slowStubIndexer.sh", "#!/bin/sh\n"
+				+ "echo \"searching\"\n"
+				+ "echo \"CELL 7.35 10.28 11.35 83.9 71.3 71.2 5.0\"\n"
+				+ "exec sleep 60\n");
+	}
+
+}
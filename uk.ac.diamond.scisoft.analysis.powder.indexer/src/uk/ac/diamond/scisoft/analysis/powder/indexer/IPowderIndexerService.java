@@ -1,8 +1,14 @@
 package uk.ac.diamond.scisoft.analysis.powder.indexer;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
+import org.eclipse.january.dataset.IDataset;
+
+import uk.ac.diamond.scisoft.analysis.powder.indexer.indexers.CellParameter;
+import uk.ac.diamond.scisoft.analysis.powder.indexer.indexers.IPowderIndexerListener;
+
 
 //TODO: service setup for indexer path?
 
@@ -52,4 +58,34 @@ public interface IPowderIndexerService {
 	 */
 	public void addPowderIndexersByExtension();
 	
+	/**
+	 * Run several indexers concurrently over the same peak positions.
+	 * 
+	 * Each indexer runs as a new instance with a copy of the registered
+	 * indexer's current parameters, so the registered parameters are left
+	 * unchanged. Output is parsed while the indexers run and, as soon as one
+	 * of them finds a cell with a figure of merit of at least acceptableMerit,
+	 * the indexers still running are stopped.
+	 * 
+	 * Completed runs are cached against the peak positions, wavelength and
+	 * parameters used, so repeating a run returns its cells without starting
+	 * the indexer again.
+	 * 
+	 * @param ids of registered indexers to run
+	 * @param peakData peak positions to index
+	 * @param wavelength in Angstroms, set on indexers that take a wavelength
+	 * @param acceptableMerit figure of merit at which remaining indexers are stopped
+	 * @param listener notified of status lines and cells as they are found
+	 * @return cells found by all the indexers, best figure of merit first
+	 * @throws IllegalArgumentException if an indexer is not registered
+	 * @throws InterruptedException
+	 */
+	public List<CellParameter> runIndexers(Collection<String> ids, IDataset peakData, double wavelength,
+			double acceptableMerit, IPowderIndexerListener listener) throws InterruptedException;
+
+	/**
+	 * Forget the cells of all cached indexing runs.
+	 */
+	public void clearCachedRuns();
+	
 }
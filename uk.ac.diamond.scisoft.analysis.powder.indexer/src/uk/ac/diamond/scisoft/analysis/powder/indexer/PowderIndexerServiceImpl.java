@@ -1,13 +1,37 @@
 package uk.ac.diamond.scisoft.analysis.powder.indexer;
 
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.january.dataset.IDataset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import uk.ac.diamond.scisoft.analysis.powder.indexer.indexers.AbstractPowderIndexerProcess;
+import uk.ac.diamond.scisoft.analysis.powder.indexer.indexers.CellParameter;
 import uk.ac.diamond.scisoft.analysis.powder.indexer.indexers.IPowderIndexer;
+import uk.ac.diamond.scisoft.analysis.powder.indexer.indexers.IPowderIndexerListener;
+import uk.ac.diamond.scisoft.analysis.powder.indexer.indexers.StandardConstantParameters;
+import uk.ac.diamond.scisoft.analysis.utils.ClassUtils;
 
 /**
  * @author Dean P. Ottewell
@@ -15,13 +39,46 @@ import uk.ac.diamond.scisoft.analysis.powder.indexer.indexers.IPowderIndexer;
  */
 public class PowderIndexerServiceImpl implements IPowderIndexerService {
 
-	private final Map<String, PowderIndexerInfo> INDEXERSLOADED = new HashMap<String, PowderIndexerInfo>();
+	private static final Logger logger = LoggerFactory.getLogger(PowderIndexerServiceImpl.class);
+
+	private static final int MAX_CACHED_RUNS = 64;
+
+	private static final IPowderIndexerListener NO_LISTENER = new IPowderIndexerListener() {
+	};
+
+	private static final Comparator<CellParameter> BEST_MERIT_FIRST = new Comparator<CellParameter>() {
+		@Override
+		public int compare(CellParameter c1, CellParameter c2) {
+			return Double.compare(c2.getFigureMerit(), c1.getFigureMerit());
+		}
+	};
+
+	/**
+	 * Indexers mostly wait on external processes so runs are given their own
+	 * threads rather than sharing a pool sized to the processors
+	 */
+	private static final ExecutorService INDEXER_RUNNERS = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "powder-indexer-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private static final AtomicInteger RUN_COUNT = new AtomicInteger();
+
+	private final Map<String, PowderIndexerInfo> INDEXERSLOADED = new ConcurrentHashMap<String, PowderIndexerInfo>();
+
+	private final Map<IndexingRunKey, List<CellParameter>> CACHEDRUNS = new ConcurrentHashMap<IndexingRunKey, List<CellParameter>>();
 	
 	public PowderIndexerServiceImpl() {
 		checkIndexers();
 	}
 	
-	private void checkIndexers() {
+	private synchronized void checkIndexers() {
 		if (!INDEXERSLOADED.isEmpty()) return;
 		addPowderIndexersByExtension();
 	}
@@ -52,7 +109,15 @@ public class PowderIndexerServiceImpl implements IPowderIndexerService {
 	@Override
 	public void addIndexersByClass(ClassLoader cl, String pakage)
 			throws ClassNotFoundException, IllegalAccessException, InstantiationException {
-		// TODO Auto-generated method stub
+		final List<Class<?>> clazzes = ClassUtils.getClassesForPackage(cl, pakage);
+		for (Class<?> clazz : clazzes) {
+			if (Modifier.isAbstract(clazz.getModifiers())) continue;
+			if (IPowderIndexer.class.isAssignableFrom(clazz)) {
+				IPowderIndexer indexer = (IPowderIndexer) clazz.newInstance();
+
+				registerIndexer(null, null, indexer);
+			}
+		}
 	}
 
 	@Override
@@ -83,6 +148,258 @@ public class PowderIndexerServiceImpl implements IPowderIndexerService {
 	}
 	
 
+	@Override
+	public List<CellParameter> runIndexers(Collection<String> ids, IDataset peakData, double wavelength,
+			double acceptableMerit, IPowderIndexerListener listener) throws InterruptedException {
+		checkIndexers();
+
+		double[] peaks = new double[peakData.getSize()];
+		for (int i = 0; i < peaks.length; ++i) {
+			peaks[i] = peakData.getDouble(i);
+		}
+
+		IndexingSearch search = new IndexingSearch(listener == null ? NO_LISTENER : listener, acceptableMerit);
+		List<CellParameter> cells = new ArrayList<CellParameter>();
+
+		// Cached runs first, a good enough cell there means nothing need be run
+		List<IndexingRun> runs = new ArrayList<IndexingRun>();
+		for (String id : ids) {
+			IPowderIndexer indexer = createIndexer(id, wavelength);
+			IndexingRunKey key = new IndexingRunKey(id, peaks, wavelength, indexer.getParameters());
+			List<CellParameter> cached = CACHEDRUNS.get(key);
+			if (cached != null) {
+				logger.debug("Using cached cells for indexer {}", id);
+				cells.addAll(cached);
+				for (CellParameter cell : cached) {
+					search.cellFound(null, cell);
+				}
+			} else {
+				runs.add(new IndexingRun(indexer, key, peakData, search));
+			}
+		}
+
+		if (search.isAccepted() || runs.isEmpty()) {
+			Collections.sort(cells, BEST_MERIT_FIRST);
+			return cells;
+		}
+
+		search.runs.addAll(runs);
+		List<Future<List<CellParameter>>> futures = new ArrayList<Future<List<CellParameter>>>(runs.size());
+		try {
+			for (IndexingRun run : runs) {
+				futures.add(INDEXER_RUNNERS.submit(run));
+			}
+
+			for (int i = 0; i < futures.size(); ++i) {
+				try {
+					cells.addAll(futures.get(i).get());
+				} catch (ExecutionException e) {
+					logger.error("Indexer " + runs.get(i).key.id + " failed", e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			for (IndexingRun run : runs) {
+				run.cancel();
+			}
+			for (Future<List<CellParameter>> f : futures) {
+				f.cancel(true);
+			}
+			throw e;
+		}
+
+		Collections.sort(cells, BEST_MERIT_FIRST);
+		return cells;
+	}
+
+	@Override
+	public void clearCachedRuns() {
+		CACHEDRUNS.clear();
+	}
+
+	/**
+	 * New instance of a registered indexer holding a copy of its parameters
+	 */
+	private IPowderIndexer createIndexer(String id, double wavelength) {
+		PowderIndexerInfo info = INDEXERSLOADED.get(id);
+		if (info == null)
+			throw new IllegalArgumentException("No indexer registered with id " + id);
+		IPowderIndexer registered = info.getPowderIndexer();
+
+		IPowderIndexer indexer;
+		try {
+			indexer = registered.getClass().newInstance();
+			for (Entry<String, IPowderIndexerParam> entry : registered.getParameters().entrySet()) {
+				IPowderIndexerParam param = entry.getValue();
+				PowderIndexerParam copy = new PowderIndexerParam(param.getName(), param.getValue());
+				if (entry.getKey().equals(StandardConstantParameters.wavelength))
+					copy.setValue(wavelength);
+				indexer.setParameter(copy, entry.getKey());
+			}
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Unable to create indexer " + id, e);
+		}
+
+		if (registered.getIndexerDirectory() != null)
+			indexer.setIndexerDirectory(registered.getIndexerDirectory());
+
+		// Concurrent runs must not share input and output files
+		if (indexer instanceof AbstractPowderIndexerProcess) {
+			AbstractPowderIndexerProcess process = (AbstractPowderIndexerProcess) indexer;
+			process.setOutFileTitle(process.getOutFileTitle() + RUN_COUNT.incrementAndGet());
+		}
+		return indexer;
+	}
+
+	/**
+	 * Shared state of the indexers run by a call to runIndexers
+	 */
+	private static class IndexingSearch {
+
+		private final IPowderIndexerListener listener;
+		private final double acceptableMerit;
+		private final List<IndexingRun> runs = new ArrayList<IndexingRun>();
+		private final AtomicBoolean accepted = new AtomicBoolean();
+
+		public IndexingSearch(IPowderIndexerListener listener, double acceptableMerit) {
+			this.listener = listener;
+			this.acceptableMerit = acceptableMerit;
+		}
+
+		public boolean isAccepted() {
+			return accepted.get();
+		}
+
+		/**
+		 * @param source run that found the cell, null if it came from the cache
+		 * @param cell
+		 */
+		public void cellFound(IndexingRun source, CellParameter cell) {
+			listener.cellFound(cell);
+			if (cell.getFigureMerit() >= acceptableMerit && accepted.compareAndSet(false, true)) {
+				// runs is only filled before any run is started
+				for (IndexingRun run : runs) {
+					if (run != source)
+						run.cancel();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Single indexer run, stopped early if another run finds an acceptable cell
+	 */
+	private class IndexingRun implements Callable<List<CellParameter>>, IPowderIndexerListener {
+
+		private final IPowderIndexer indexer;
+		private final IndexingRunKey key;
+		private final IDataset peakData;
+		private final IndexingSearch search;
+		private volatile boolean cancelled = false;
+
+		public IndexingRun(IPowderIndexer indexer, IndexingRunKey key, IDataset peakData, IndexingSearch search) {
+			this.indexer = indexer;
+			this.key = key;
+			this.peakData = peakData;
+			this.search = search;
+		}
+
+		@Override
+		public List<CellParameter> call() throws Exception {
+			if (cancelled)
+				return Collections.emptyList();
+
+			indexer.setPeakData(peakData);
+			indexer.configureIndexer();
+			if (cancelled)
+				return Collections.emptyList();
+
+			List<CellParameter> cells;
+			if (indexer instanceof AbstractPowderIndexerProcess) {
+				cells = ((AbstractPowderIndexerProcess) indexer).runIndexerStreaming(this);
+			} else {
+				indexer.runIndexer();
+				cells = new ArrayList<CellParameter>(indexer.getResultCells());
+				for (CellParameter cell : cells) {
+					cellFound(cell);
+				}
+			}
+
+			if (cancelled) {
+				logger.debug("Indexer {} stopped after an acceptable cell was found", key.id);
+			} else {
+				if (CACHEDRUNS.size() >= MAX_CACHED_RUNS) {
+					CACHEDRUNS.clear();
+				}
+				CACHEDRUNS.put(key, Collections.unmodifiableList(new ArrayList<CellParameter>(cells)));
+			}
+			return cells;
+		}
+
+		public void cancel() {
+			cancelled = true;
+			try {
+				indexer.stopIndexer();
+			} catch (Exception e) {
+				logger.debug("Unable to stop indexer " + key.id, e);
+			}
+		}
+
+		@Override
+		public void statusLine(String indexerId, String line) {
+			search.listener.statusLine(indexerId, line);
+		}
+
+		@Override
+		public void cellFound(CellParameter cell) {
+			search.cellFound(this, cell);
+		}
+	}
+
+	/**
+	 * Identifies an indexing run by indexer, peak positions, wavelength and
+	 * the values of all the indexer parameters
+	 */
+	private static final class IndexingRunKey {
+
+		private final String id;
+		private final double[] peaks;
+		private final double wavelength;
+		private final Map<String, String> parameters = new TreeMap<String, String>();
+		private final int hash;
+
+		public IndexingRunKey(String id, double[] peaks, double wavelength, Map<String, IPowderIndexerParam> params) {
+			this.id = id;
+			this.peaks = peaks;
+			this.wavelength = wavelength;
+			for (Entry<String, IPowderIndexerParam> entry : params.entrySet()) {
+				IPowderIndexerParam param = entry.getValue();
+				parameters.put(entry.getKey(), param.getName() + "=" + param.getValue());
+			}
+
+			int result = id.hashCode();
+			result = 31 * result + Arrays.hashCode(peaks);
+			result = 31 * result + Double.hashCode(wavelength);
+			result = 31 * result + parameters.hashCode();
+			hash = result;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof IndexingRunKey))
+				return false;
+			IndexingRunKey other = (IndexingRunKey) obj;
+			return hash == other.hash && id.equals(other.id) && Arrays.equals(peaks, other.peaks)
+					&& Double.compare(wavelength, other.wavelength) == 0 && parameters.equals(other.parameters);
+		}
+	}
+
 	private class PowderIndexerInfo {
 		
 		private String name;
@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
@@ -12,6 +13,8 @@ import java.io.OutputStreamWriter;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,7 +36,7 @@ public abstract class AbstractPowderIndexerProcess extends AbstractPowderIndexer
 	
 	protected String fileOutPath = System.getProperty("java.io.tmpdir") + "/"; //- TODO: until can properly kill process if i cancel during dev shouldn't place here
 
-	protected static String binName = null;
+	protected String binName = null;
 
 	protected String resultsExtension = ".dat";
 
@@ -41,13 +44,15 @@ public abstract class AbstractPowderIndexerProcess extends AbstractPowderIndexer
 	
 	// -- Calling Process Configuration --/
 	ProcessBuilder procBuilder;
-	Process indexerProcess;
+	volatile Process indexerProcess;
 	BufferedReader readerIndexer;
 	DataOutputStream outputIndexer;
 	BufferedWriter writerIndexer;
 	BufferedReader errIndexer;
 
-	List<String> rawCommsOutput = new ArrayList<String>();
+	List<String> rawCommsOutput = new CopyOnWriteArrayList<String>();
+
+	private volatile boolean stopped = false;
 
 	private void startProcessStream() {
 
@@ -56,6 +61,7 @@ public abstract class AbstractPowderIndexerProcess extends AbstractPowderIndexer
 		} catch (IOException e1) {
 			logger.debug("Indexer process unable to start");
 			e1.printStackTrace();
+			return;
 		}
 
 		try {
@@ -81,6 +87,7 @@ public abstract class AbstractPowderIndexerProcess extends AbstractPowderIndexer
 
 		generateIndexFile(fullPath);
 
+		stopped = false;
 		procBuilder = new ProcessBuilder(indexerDirectory + binName);
 	}
 
@@ -125,6 +132,8 @@ public abstract class AbstractPowderIndexerProcess extends AbstractPowderIndexer
 	public void runIndexer() {
 
 		startProcessStream();
+		if (indexerProcess == null)
+			return;
 
 		String relativePath = Paths.get(System.getProperty("user.dir") + "/").relativize(Paths.get(fileOutPath))
 				.toString();
@@ -145,7 +154,14 @@ public abstract class AbstractPowderIndexerProcess extends AbstractPowderIndexer
 
 	@Override
 	public void stopIndexer() {
-		// Close stream manually first if they are not already closed
+		stopped = true;
+		Process process = indexerProcess;
+		if (process == null)
+			return;
+
+		// Kill the process first so a reader blocked on its output is released
+		process.destroy();
+		process.destroyForcibly();
 		try {
 			writerIndexer.close();
 			readerIndexer.close();
@@ -155,8 +171,141 @@ public abstract class AbstractPowderIndexerProcess extends AbstractPowderIndexer
 			logger.debug("Closing streams unaccesible");
 			e.printStackTrace();
 		}
-		indexerProcess.destroy();
-		indexerProcess.destroyForcibly();
+	}
+
+	/**
+	 * Run the configured indexer and parse its output as it is produced.
+	 * 
+	 * Standard output is passed line by line to the listener and through
+	 * {@link #createOutputParser()}, so cells are reported while the indexer
+	 * is still searching. Once the process finishes the result file is parsed
+	 * as well, and is preferred as it holds the complete set of cells.
+	 * 
+	 * Blocks until the indexer finishes or {@link #stopIndexer()} is called
+	 * from another thread. Require set up through configureIndexer first.
+	 * 
+	 * @param listener
+	 *            notified of each status line and cell found
+	 * @return plausible cells found, only those reported so far if stopped
+	 * @throws IOException
+	 *             if the process could not be started or read from
+	 * @throws InterruptedException
+	 */
+	public List<CellParameter> runIndexerStreaming(IPowderIndexerListener listener)
+			throws IOException, InterruptedException {
+		plausibleCells.clear();
+		rawCommsOutput.clear();
+
+		runIndexer();
+		Process process = indexerProcess;
+		if (process == null)
+			throw new IOException("Indexer process " + indexerDirectory + binName + " unable to start");
+		if (stopped) {
+			stopIndexer();
+			return new ArrayList<CellParameter>();
+		}
+
+		// Errors read separately so a full error pipe never blocks the indexer
+		Thread errorReader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				String line;
+				try {
+					while ((line = errIndexer.readLine()) != null) {
+						rawCommsOutput.add(line);
+						logger.error("Executable error: {}", line);
+					}
+				} catch (IOException e) {
+					logger.debug("Auto indexer error stream closed");
+				}
+			}
+		}, getPowderRoutineID() + "-stderr");
+		errorReader.setDaemon(true);
+		errorReader.start();
+
+		ICellOutputParser parser = createOutputParser();
+		List<CellParameter> streamedCells = new ArrayList<CellParameter>();
+		try {
+			String line;
+			while ((line = readerIndexer.readLine()) != null) {
+				rawCommsOutput.add(line);
+				listener.statusLine(getPowderRoutineID(), line);
+				CellParameter cell = parser.parseLine(line);
+				if (cell != null) {
+					streamedCells.add(cell);
+					listener.cellFound(cell);
+				}
+			}
+		} catch (IOException e) {
+			if (!stopped)
+				throw e;
+		}
+
+		if (stopped)
+			return streamedCells;
+
+		process.waitFor();
+		errorReader.join(1000);
+
+		List<CellParameter> fileCells = new ArrayList<CellParameter>();
+		String resultPath = fileOutPath + outFileTitle + resultsExtension;
+		if (new File(resultPath).isFile())
+			fileCells.addAll(extractResults(resultPath));
+
+		if (fileCells.isEmpty())
+			return streamedCells;
+
+		if (streamedCells.isEmpty()) {
+			for (CellParameter cell : fileCells)
+				listener.cellFound(cell);
+		}
+		return fileCells;
+	}
+
+	/**
+	 * Parser used on standard output during {@link #runIndexerStreaming}.
+	 * 
+	 * Indexers that print their cells as they are found should return the
+	 * parser they use on their result file. The default recognises no cells.
+	 * 
+	 * @return new parser
+	 */
+	protected ICellOutputParser createOutputParser() {
+		return new ICellOutputParser() {
+			@Override
+			public CellParameter parseLine(String line) {
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Feed each line of a result file through an output parser.
+	 * 
+	 * @param filepath
+	 * @param parser
+	 * @return cells completed while reading the file
+	 */
+	protected static List<CellParameter> parseResultFile(String filepath, ICellOutputParser parser) {
+		List<CellParameter> cells = new ArrayList<CellParameter>();
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(filepath));
+			try {
+				String line;
+				while ((line = br.readLine()) != null) {
+					CellParameter cell = parser.parseLine(line);
+					if (cell != null)
+						cells.add(cell);
+				}
+			} finally {
+				br.close();
+			}
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return cells;
 	}
 
 	@Override
@@ -169,6 +318,10 @@ public abstract class AbstractPowderIndexerProcess extends AbstractPowderIndexer
 		return outFileTitle;
 	}
 
+	public void setOutFileTitle(String outFileTitle) {
+		this.outFileTitle = outFileTitle;
+	}
+
 
 	/*
 	 * Helper Functions
@@ -176,31 +176,62 @@ public class Dicvol extends AbstractPowderIndexerProcess implements IPowderProce
 	@Override
 	public List<CellParameter> extractResults(String resultFilePath) {
 		//TODO: check the addition of "o"
-		List<String> rawUnitCell = extractRawCellInfo(resultFilePath, CELLFILEINDETIFIER, 1);
+		plausibleCells.addAll(parseResultFile(resultFilePath, createOutputParser()));
+		return this.plausibleCells;
+	}
 
-		List<String> rawFigureMerit = extractRawCellInfo(resultFilePath, "FIGURES OF MERIT", 1);
+	@Override
+	protected ICellOutputParser createOutputParser() {
+		return new DicvolCellParser();
+	}
 
-		for (int i = 0; i < rawUnitCell.size(); ++i)
-		{
-			Map<String, Double> rawCell = extractKeyVal(rawUnitCell.get(i));
-
-			// Key sets for Dicvol extraction A, B, C, ALP, BET, GAM, VOL TODO: these constant values put aside somewhere else
-			double a = rawCell.get("A");
-			double b = rawCell.get("B");
-			double c = rawCell.get("C");
-			double al = rawCell.get("ALP");
-			double be = rawCell.get("BET");
-			double ga = rawCell.get("GAM");
-
-			String[] out = rawFigureMerit.get(i).split("=");
-			double merit = Double.parseDouble(out[1]);
-			
-			CellParameter cell = new CellParameter(a, b, c, al, be, ga, merit, ID);
+	/**
+	 * Pairs the line after each reduced cell heading with the first merit
+	 * line following it.
+	 */
+	private class DicvolCellParser implements ICellOutputParser {
 
-			this.plausibleCells.add(cell);
-		}
+		private boolean cellLineNext = false;
 
-		return this.plausibleCells;
+		private boolean meritLineNext = false;
+
+		private Map<String, Double> rawCell = null;
+
+		@Override
+		public CellParameter parseLine(String line) {
+			if (cellLineNext) {
+				cellLineNext = false;
+				rawCell = extractKeyVal(line);
+				return null;
+			}
+
+			if (meritLineNext) {
+				meritLineNext = false;
+				if (rawCell == null)
+					return null;
+
+				// Key sets for Dicvol extraction A, B, C, ALP, BET, GAM, VOL TODO: these constant values put aside somewhere else
+				double a = rawCell.get("A");
+				double b = rawCell.get("B");
+				double c = rawCell.get("C");
+				double al = rawCell.get("ALP");
+				double be = rawCell.get("BET");
+				double ga = rawCell.get("GAM");
+				rawCell = null;
+
+				String[] out = line.split("=");
+				double merit = Double.parseDouble(out[1]);
+
+				return new CellParameter(a, b, c, al, be, ga, merit, ID);
+			}
+
+			if (line.contains(CELLFILEINDETIFIER)) {
+				cellLineNext = true;
+			} else if (line.contains("FIGURES OF MERIT")) {
+				meritLineNext = true;
+			}
+			return null;
+		}
 	}
 
 	private Map<String, Double> extractKeyVal(String rawCellData) {
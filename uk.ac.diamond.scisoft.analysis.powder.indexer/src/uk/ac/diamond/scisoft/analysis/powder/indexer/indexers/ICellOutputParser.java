@@ -0,0 +1,21 @@
+package uk.ac.diamond.scisoft.analysis.powder.indexer.indexers;
+
+/**
+ * 
+ *         Incremental parser for the text an indexer produces. Lines are fed in
+ *         the order they were written, either from a finished result file or
+ *         as they are streamed from a running indexer process.
+ * 
+ *         A parser holds the state of a partly read cell so a new one is
+ *         needed for each pass over the output.
+ */
+public interface ICellOutputParser {
+
+	/**
+	 * @param line
+	 *            next line of indexer output
+	 * @return the cell completed by this line, otherwise null
+	 */
+	public CellParameter parseLine(String line);
+
+}
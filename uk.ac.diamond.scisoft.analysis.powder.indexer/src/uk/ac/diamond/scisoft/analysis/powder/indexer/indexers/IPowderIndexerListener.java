@@ -0,0 +1,27 @@
+package uk.ac.diamond.scisoft.analysis.powder.indexer.indexers;
+
+/**
+ * 
+ *         Receives the progress of indexers as they run. Methods may be called
+ *         from several indexer threads at once.
+ */
+public interface IPowderIndexerListener {
+
+	/**
+	 * @param indexerId
+	 *            routine that produced the line
+	 * @param line
+	 *            status line read from the indexer
+	 */
+	default void statusLine(String indexerId, String line) {
+	}
+
+	/**
+	 * @param cell
+	 *            plausible cell found, its indexer identifier gives the
+	 *            routine that found it
+	 */
+	default void cellFound(CellParameter cell) {
+	}
+
+}
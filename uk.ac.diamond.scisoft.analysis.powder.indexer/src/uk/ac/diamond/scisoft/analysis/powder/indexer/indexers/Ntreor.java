@@ -1,12 +1,8 @@
 package uk.ac.diamond.scisoft.analysis.powder.indexer.indexers;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -125,104 +121,47 @@ public class Ntreor extends AbstractPowderIndexerProcess {
 	}
 
 	public List<CellParameter> extractResults(String resultFilePath) {
+		plausibleCells.addAll(parseResultFile(resultFilePath, createOutputParser()));
+		return this.plausibleCells;
+	}
 
-		// List<String> rawIndexes = extractRawCellInfo(resultFilePath,
-		// CELLFILEINDETIFIER, 3);
-
-		//TODO: move to filescanner
-//		Scanner filescanner = null;
-//		try {
-//			filescanner = new Scanner(new File(resultFilePath));
-//		} catch (FileNotFoundException e1) {
-//			// TODO Auto-generated catch block
-//			logger.debug("File not avalaible: " + resultFilePath);
-//			e1.printStackTrace();
-//		}
-//
-//		// filescanner.findInLine(CELLFILEINDETIFIER);
-//
-//		List<String> rawUnitCellResults = new ArrayList<String>(); // Some
-//																	// output
-//																	// has
-//		while (filescanner.hasNextLine()) {
-//			Scanner lineScanner = new Scanner(filescanner.nextLine());
-//			if (lineScanner.hasNext(CELLFILEINDETIFIER)) {
-//				
-//				lineScanner = new Scanner(filescanner.nextLine());
-//	
-//				String id = "Crystal system: ";
-//				String rawcrystalsys = filescanner.next(id);
-//				String crystalSystem = rawcrystalsys.substring(id.length() + 1, rawcrystalsys.length()); // Until
-//				// reach
-//				// space
-//	
-//				Map<String, Double> cellParam = new HashMap<String, Double>();
-//				for (int i = 0; i < 3; ++i) {
-//					String unitCellLine = filescanner.nextLine();
-//					cellParam = extractDataKeyVal(unitCellLine);
-//				}
-//	
-//				Scanner findLine = new Scanner(filescanner.findInLine("  M(20)"));
-//	
-//				// use the lineScanner to extract tokens from the line
-//				Scanner meritLine = findLine.useDelimiter("=");
-//	
-//				lineScanner.close();
-//			}
-//		}
-//		filescanner.close(); // likely done in a finally block after null check
-
-		List<String> rawIndexes = new ArrayList<String>(); // Some output has
-		// order value
-		try {
-			BufferedReader br = new BufferedReader(new FileReader(resultFilePath));
-			String line = null; // line variable
+	@Override
+	protected ICellOutputParser createOutputParser() {
+		return new NtreorCellParser();
+	}
 
-			while ((line = br.readLine()) != null) {
-				//a = a.replaceAll("\\s","") remove spaces
-				
-				// Process line based of core cell params
-				if (line.contains(CELLFILEINDETIFIER)) {
+	/**
+	 * Reads the block following each cell header. The third line and the six
+	 * lines starting at the fifth hold the crystal system, cell parameters and
+	 * M(20) merit.
+	 */
+	private class NtreorCellParser implements ICellOutputParser {
+
+		private static final int BLOCK_LINES = 10;
 
-					String rawInfoLines = "";
-
-					br.readLine();
-					br.readLine();
-					rawInfoLines  += br.readLine();
-					
-					br.readLine();
-					//Map<String, Double> cellParam = new HashMap<String, Double>();
-					for (int i = 0; i < 6; ++i) {
-						String unitCellLine = br.readLine();
-						//cellParam.putAll(extractDataKeyValunitCellLine));
-						rawInfoLines += unitCellLine;
-					}
-					rawIndexes.add(rawInfoLines);
-					
-//					br.skip(3);
-//					String rawmerit = br.readLine();
-//		
-					//Scanner findLine = new Scanner(filescanner.findInLine("  M(20)"));
-		
-					// use the lineScanner to extract tokens from the line
-					//Scanner meritLine = findLine.useDelimiter("=");
+		private StringBuilder rawInfoLines = null;
 
+		private int lineInBlock;
+
+		@Override
+		public CellParameter parseLine(String line) {
+			if (rawInfoLines == null) {
+				if (line.contains(CELLFILEINDETIFIER)) {
+					rawInfoLines = new StringBuilder();
+					lineInBlock = 0;
 				}
+				return null;
 			}
-			br.close();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
 
-		for (String i : rawIndexes) {
+			++lineInBlock;
+			if (lineInBlock == 3 || lineInBlock >= 5)
+				rawInfoLines.append(line);
 
-			String id = "Crystal system: ";
-			String crystalSys = i.substring(id.length() + 1, i.length()); // Until
-																			// reach
-																			// space
-			Map<String, Double> raw = extractDataKeyVal(i);
+			if (lineInBlock < BLOCK_LINES)
+				return null;
+
+			Map<String, Double> raw = extractDataKeyVal(rawInfoLines.toString());
+			rawInfoLines = null;
 
 			double a = raw.get("A");
 			double b = raw.get("B");
@@ -232,14 +171,10 @@ public class Ntreor extends AbstractPowderIndexerProcess {
 			double ga = raw.get("Gamma");
 
 			// Extract & set figure of merit
-			double merit = (Double) raw.get("M(20)");
-
-			CellParameter cell = new CellParameter(a, b, c, al, be, ga, merit, ID);
+			double merit = raw.get("M(20)");
 
-			plausibleCells.add(cell);
+			return new CellParameter(a, b, c, al, be, ga, merit, ID);
 		}
-
-		return this.plausibleCells;
 	}
 
 	private Map<String, Double> extractDataKeyVal(String rawCellData) {
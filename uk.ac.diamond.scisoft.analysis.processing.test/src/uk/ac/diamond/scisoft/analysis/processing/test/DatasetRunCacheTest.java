@@ -0,0 +1,74 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.processing.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.dawnsci.analysis.api.tree.Node;
+import org.eclipse.january.dataset.DatasetUtils;
+import org.eclipse.january.dataset.IDataset;
+import org.junit.Test;
+
+import uk.ac.diamond.scisoft.analysis.io.LoaderServiceImpl;
+import uk.ac.diamond.scisoft.analysis.processing.LocalServiceManager;
+import uk.ac.diamond.scisoft.analysis.processing.operations.utils.ProcessingUtils;
+
+public class DatasetRunCacheTest {
+
+	@Test
+	public void testRunCache() throws Exception {
+		new LocalServiceManager().setLoaderService(new LoaderServiceImpl());
+		final String DATA = "data";
+		final String FULL_DATA = TestHDF5DataUtils.ROOT + Node.SEPARATOR + DATA;
+
+		File file = File.createTempFile("runcachetest", ".h5");
+		file.deleteOnExit();
+		Map<String, int[]> nameShapeMap = new HashMap<>();
+		nameShapeMap.put(DATA, new int[] {4, 5});
+		TestHDF5DataUtils.makeHDF5File(file.getAbsolutePath(), nameShapeMap);
+
+		String path = file.getAbsolutePath();
+		IDataset expected = ProcessingUtils.getDataset(null, path, FULL_DATA);
+		assertEquals(0, ProcessingUtils.getRunCacheSize());
+
+		ProcessingUtils.startRun();
+		try {
+			IDataset a = ProcessingUtils.getDataset(null, path, FULL_DATA);
+			assertEquals(1, ProcessingUtils.getRunCacheSize());
+			IDataset b = ProcessingUtils.getDataset(null, path, FULL_DATA);
+			assertEquals(expected, b);
+
+			// callers get their own copies
+			assertNotSame(a, b);
+			DatasetUtils.convertToDataset(a).iadd(1);
+			assertEquals(expected, ProcessingUtils.getDataset(null, path, FULL_DATA));
+
+			// nested run does not clear cache
+			ProcessingUtils.startRun();
+			ProcessingUtils.endRun();
+			assertEquals(1, ProcessingUtils.getRunCacheSize());
+
+			// modified file is read again
+			assertArrayEquals(new int[] {4, 5}, b.getShape());
+			file.setLastModified(file.lastModified() - 10000);
+			ProcessingUtils.getDataset(null, path, FULL_DATA);
+			assertEquals(2, ProcessingUtils.getRunCacheSize());
+		} finally {
+			ProcessingUtils.endRun();
+		}
+		assertEquals(0, ProcessingUtils.getRunCacheSize());
+	}
+}
@@ -0,0 +1,171 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.processing.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.eclipse.dawnsci.analysis.api.processing.ExecutionType;
+import org.eclipse.dawnsci.analysis.api.processing.IExecutionVisitor;
+import org.eclipse.dawnsci.analysis.api.processing.OperationData;
+import org.eclipse.dawnsci.analysis.api.processing.OperationException;
+import org.eclipse.dawnsci.analysis.api.processing.OperationRank;
+import org.eclipse.dawnsci.analysis.api.processing.model.EmptyModel;
+import org.eclipse.dawnsci.analysis.api.tree.Node;
+import org.eclipse.dawnsci.analysis.dataset.operations.AbstractOperation;
+import org.eclipse.january.IMonitor;
+import org.eclipse.january.dataset.IDataset;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uk.ac.diamond.scisoft.analysis.io.LoaderServiceImpl;
+import uk.ac.diamond.scisoft.analysis.processing.LocalServiceManager;
+import uk.ac.diamond.scisoft.analysis.processing.OperationBatch;
+import uk.ac.diamond.scisoft.analysis.processing.OperationBatch.FileResult;
+import uk.ac.diamond.scisoft.analysis.processing.OperationBatch.Report;
+import uk.ac.diamond.scisoft.analysis.processing.OperationServiceImpl;
+import uk.ac.diamond.scisoft.analysis.processing.runner.OperationRunnerImpl;
+import uk.ac.diamond.scisoft.analysis.processing.runner.SeriesRunner;
+import uk.ac.diamond.scisoft.analysis.processing.scalar.AddScalarOperation;
+import uk.ac.diamond.scisoft.analysis.processing.scalar.ScalarModel;
+
+public class OperationBatchTest {
+
+	private static final String DATA = "data";
+	private static final int FILES = 6;
+	private static final int FRAMES = 5;
+
+	private static OperationServiceImpl service;
+	private static List<String> files;
+
+	@BeforeClass
+	public static void before() throws Exception {
+		service = new OperationServiceImpl();
+		new LocalServiceManager().setLoaderService(new LoaderServiceImpl());
+		OperationRunnerImpl.setRunner(ExecutionType.SERIES, new SeriesRunner());
+
+		files = new ArrayList<>();
+		Map<String, int[]> nameShapeMap = new HashMap<>();
+		nameShapeMap.put(DATA, new int[] {FRAMES, 4, 6});
+		for (int i = 0; i < FILES; i++) {
+			File file = File.createTempFile("batchtest", ".h5");
+			file.deleteOnExit();
+			TestHDF5DataUtils.makeHDF5File(file.getAbsolutePath(), nameShapeMap);
+			files.add(file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Stateful operation so is copied for each file
+	 */
+	public static class CountingOperation extends AbstractOperation<EmptyModel, OperationData> {
+		static final Set<CountingOperation> instances = Collections.newSetFromMap(new ConcurrentHashMap<CountingOperation, Boolean>());
+		int frames;
+		boolean initialised;
+
+		@Override
+		public String getId() {
+			return getClass().getName();
+		}
+
+		@Override
+		public void init() {
+			initialised = true;
+			instances.add(this);
+		}
+
+		@Override
+		public OperationRank getInputRank() {
+			return OperationRank.TWO;
+		}
+
+		@Override
+		public OperationRank getOutputRank() {
+			return OperationRank.TWO;
+		}
+
+		@Override
+		protected OperationData process(IDataset input, IMonitor monitor) throws OperationException {
+			frames++;
+			return new OperationData(input);
+		}
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		AddScalarOperation add = new AddScalarOperation();
+		ScalarModel model = new ScalarModel();
+		model.setValue(1);
+		add.setModel(model);
+		CountingOperation counter = new CountingOperation();
+		CountingOperation.instances.clear();
+
+		final Map<String, AtomicInteger> outputs = new ConcurrentHashMap<>();
+		OperationBatch batch = new OperationBatch(service, add, counter);
+		batch.setDatasetName(TestHDF5DataUtils.ROOT + Node.SEPARATOR + DATA);
+		batch.setDataDimensions(1, 2);
+		batch.setPoolSize(3);
+		batch.setVisitors(new Function<String, IExecutionVisitor>() {
+			@Override
+			public IExecutionVisitor apply(String path) {
+				final AtomicInteger count = new AtomicInteger();
+				outputs.put(path, count);
+				return new IExecutionVisitor.Stub() {
+					@Override
+					public void executed(OperationData result, IMonitor monitor) throws Exception {
+						assertNotNull(result);
+						count.incrementAndGet();
+					}
+				};
+			}
+		});
+
+		List<String> all = new ArrayList<>(files);
+		all.add(new File(files.get(0)).getParent() + File.separator + "missing.h5");
+		Report report = batch.execute(all, null);
+
+		List<FileResult> results = report.getResults();
+		assertEquals(FILES + 1, results.size());
+		for (int i = 0; i < FILES; i++) {
+			FileResult r = results.get(i);
+			assertEquals(files.get(i), r.getPath());
+			assertNull(r.getError());
+			assertEquals(FRAMES, r.getFrames());
+			assertEquals(FRAMES, outputs.get(r.getPath()).get());
+			assertTrue(r.getTime() > 0);
+		}
+		assertNotNull(results.get(FILES).getError());
+		assertEquals(1, report.getFailures());
+		assertTrue(report.getFileThroughput() > 0);
+		System.out.println(report);
+
+		// stateful operation is copied for each file and the original is not run
+		assertTrue(!counter.initialised && counter.frames == 0);
+		assertEquals(FILES, CountingOperation.instances.size());
+		List<Integer> frames = new ArrayList<>();
+		for (CountingOperation c : CountingOperation.instances) {
+			frames.add(c.frames);
+		}
+		assertEquals(Collections.nCopies(FILES, FRAMES), frames);
+	}
+}
@@ -0,0 +1,100 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.processing.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.dawnsci.analysis.api.processing.ExecutionType;
+import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DoubleDataset;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uk.ac.diamond.scisoft.analysis.processing.OperationContextImpl;
+import uk.ac.diamond.scisoft.analysis.processing.OperationServiceImpl;
+import uk.ac.diamond.scisoft.analysis.processing.runner.OperationMetrics;
+import uk.ac.diamond.scisoft.analysis.processing.runner.OperationMetrics.Stats;
+import uk.ac.diamond.scisoft.analysis.processing.runner.OperationRunnerImpl;
+import uk.ac.diamond.scisoft.analysis.processing.runner.SeriesRunner;
+import uk.ac.diamond.scisoft.analysis.processing.scalar.AddScalarOperation;
+import uk.ac.diamond.scisoft.analysis.processing.scalar.ScalarModel;
+import uk.ac.diamond.scisoft.analysis.processing.scalar.SubtractScalarOperation;
+
+public class OperationMetricsTest {
+
+	private static final int FRAMES = 12;
+
+	private static OperationServiceImpl service;
+
+	@BeforeClass
+	public static void before() throws Exception {
+		service = new OperationServiceImpl();
+		OperationRunnerImpl.setRunner(ExecutionType.SERIES, new SeriesRunner());
+		OperationRunnerImpl.setRunner(ExecutionType.PARALLEL, new SeriesRunner());
+	}
+
+	private static ScalarModel scalar(double value) {
+		ScalarModel m = new ScalarModel();
+		m.setValue(value);
+		return m;
+	}
+
+	private static void run(ExecutionType type) throws Exception {
+		AddScalarOperation add = new AddScalarOperation();
+		add.setModel(scalar(2));
+		add.setStoreOutput(true);
+		SubtractScalarOperation sub = new SubtractScalarOperation();
+		sub.setModel(scalar(1));
+		AddScalarOperation last = new AddScalarOperation();
+		last.setModel(scalar(3));
+
+		OperationContextImpl context = (OperationContextImpl) service.createContext();
+		assertNull(context.getMetrics());
+		OperationMetrics metrics = new OperationMetrics();
+		context.setMetrics(metrics);
+		context.setData(DatasetFactory.createRange(DoubleDataset.class, FRAMES * 16 * 8).reshape(FRAMES, 16, 8));
+		context.setDataDimensions(new int[] {1, 2});
+		context.setExecutionType(type);
+		context.setSeries(add, sub, last);
+		service.execute(context);
+
+		Stats[] stats = metrics.getStats();
+		assertEquals(3, stats.length);
+
+		// first operation stores its output so is not fused while the last two are
+		assertEquals(FRAMES, stats[0].getCount());
+		assertEquals(FRAMES, stats[1].getCount());
+		assertEquals(0, stats[2].getCount());
+		for (int i = 0; i < 2; i++) {
+			Stats s = stats[i];
+			assertEquals(FRAMES * 16 * 8 * 8, s.getOutputBytes());
+			assertTrue(s.getWallTime() > 0);
+			long total = 0;
+			for (long h : s.getHistogram()) {
+				total += h;
+			}
+			assertEquals(FRAMES, total);
+			assertTrue(s.getWallTimeQuantile(0.5) <= s.getWallTimeQuantile(0.99));
+		}
+		System.out.println(metrics);
+	}
+
+	@Test
+	public void testSeriesMetrics() throws Exception {
+		run(ExecutionType.SERIES);
+	}
+
+	@Test
+	public void testParallelMetrics() throws Exception {
+		run(ExecutionType.PARALLEL);
+	}
+}
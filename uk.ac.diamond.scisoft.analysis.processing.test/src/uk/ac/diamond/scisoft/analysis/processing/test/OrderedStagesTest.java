@@ -0,0 +1,214 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.processing.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.dawnsci.analysis.api.processing.Atomic;
+import org.eclipse.dawnsci.analysis.api.processing.ExecutionType;
+import org.eclipse.dawnsci.analysis.api.processing.IExecutionVisitor;
+import org.eclipse.dawnsci.analysis.api.processing.IOperationContext;
+import org.eclipse.dawnsci.analysis.api.processing.OperationData;
+import org.eclipse.dawnsci.analysis.api.processing.OperationException;
+import org.eclipse.dawnsci.analysis.api.processing.OperationRank;
+import org.eclipse.dawnsci.analysis.api.processing.model.EmptyModel;
+import org.eclipse.dawnsci.analysis.dataset.operations.AbstractOperation;
+import org.eclipse.january.IMonitor;
+import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DoubleDataset;
+import org.eclipse.january.dataset.IDataset;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uk.ac.diamond.scisoft.analysis.processing.IThreadLocalOperation;
+import uk.ac.diamond.scisoft.analysis.processing.OperationServiceImpl;
+import uk.ac.diamond.scisoft.analysis.processing.runner.OperationRunnerImpl;
+import uk.ac.diamond.scisoft.analysis.processing.runner.SeriesRunner;
+
+public class OrderedStagesTest {
+
+	private static final int FRAMES = 40;
+	private static final int SIZE = 8;
+
+	private static OperationServiceImpl service;
+
+	@BeforeClass
+	public static void before() throws Exception {
+		service = new OperationServiceImpl();
+		OperationRunnerImpl.setRunner(ExecutionType.SERIES, new SeriesRunner());
+		OperationRunnerImpl.setRunner(ExecutionType.PARALLEL, new SeriesRunner());
+	}
+
+	private static abstract class TestOperation extends AbstractOperation<EmptyModel, OperationData> {
+		final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+		@Override
+		public String getId() {
+			return getClass().getName();
+		}
+
+		@Override
+		public OperationRank getInputRank() {
+			return OperationRank.TWO;
+		}
+
+		@Override
+		public OperationRank getOutputRank() {
+			return OperationRank.TWO;
+		}
+
+		protected int frame(IDataset input) {
+			threads.add(Thread.currentThread().getName());
+			return input.getInt(0, 0) / (SIZE * SIZE);
+		}
+	}
+
+	/**
+	 * Pure operation that takes longer for earlier frames so frames arrive out of order
+	 */
+	@Atomic
+	private static class SlowOperation extends TestOperation {
+		@Override
+		protected OperationData process(IDataset input, IMonitor monitor) throws OperationException {
+			try {
+				Thread.sleep(((FRAMES - frame(input)) % 5) * 2);
+			} catch (InterruptedException e) {
+				throw new OperationException(this, e);
+			}
+			return new OperationData(input);
+		}
+	}
+
+	/**
+	 * Stateful operation that must see frames one at a time in order
+	 */
+	private static class RecordingOperation extends TestOperation {
+		final List<Integer> frames = Collections.synchronizedList(new ArrayList<Integer>());
+		final AtomicInteger active = new AtomicInteger();
+		volatile boolean overlapped;
+
+		@Override
+		protected OperationData process(IDataset input, IMonitor monitor) throws OperationException {
+			if (active.incrementAndGet() > 1) {
+				overlapped = true;
+			}
+			frames.add(frame(input));
+			active.decrementAndGet();
+			return new OperationData(input);
+		}
+	}
+
+	private static class ThreadLocalOperation extends SlowOperation implements IThreadLocalOperation {
+	}
+
+	private IOperationContext createContext() throws Exception {
+		IOperationContext context = service.createContext();
+		context.setData(DatasetFactory.createRange(DoubleDataset.class, FRAMES * SIZE * SIZE).reshape(FRAMES, SIZE, SIZE));
+		context.setDataDimensions(new int[] {1, 2});
+		context.setExecutionType(ExecutionType.PARALLEL);
+		context.setNumberOfCores(4);
+		return context;
+	}
+
+	@Test
+	public void testOrderedStage() throws Exception {
+		SlowOperation slow = new SlowOperation();
+		RecordingOperation recorder = new RecordingOperation();
+		ThreadLocalOperation after = new ThreadLocalOperation();
+
+		assertFalse(SeriesRunner.isOrdered(slow));
+		assertTrue(SeriesRunner.isOrdered(recorder));
+		assertFalse(SeriesRunner.isOrdered(after));
+
+		IOperationContext context = createContext();
+		final AtomicInteger count = new AtomicInteger();
+		context.setVisitor(new IExecutionVisitor.Stub() {
+			@Override
+			public void executed(OperationData result, IMonitor monitor) throws Exception {
+				count.incrementAndGet();
+			}
+		});
+		context.setSeries(slow, recorder, after);
+		service.execute(context);
+
+		assertEquals(ExecutionType.PARALLEL, context.getExecutionType());
+		assertEquals(FRAMES, count.get());
+		assertFalse(recorder.overlapped);
+		assertEquals(FRAMES, recorder.frames.size());
+		for (int i = 0; i < FRAMES; i++) {
+			assertEquals(i, recorder.frames.get(i).intValue());
+		}
+		assertTrue("Pure stage should use several threads", slow.threads.size() > 1);
+	}
+
+	@Test
+	public void testOrderedStageAfterFailure() throws Exception {
+		@Atomic
+		class FailingOperation extends SlowOperation {
+			@Override
+			protected OperationData process(IDataset input, IMonitor monitor) throws OperationException {
+				if (frame(input) == 3) {
+					return null;
+				}
+				return super.process(input, monitor);
+			}
+		}
+
+		RecordingOperation recorder = new RecordingOperation();
+		IOperationContext context = createContext();
+		context.setSeries(new FailingOperation(), recorder);
+		service.execute(context);
+
+		assertEquals(FRAMES - 1, recorder.frames.size());
+		assertFalse(recorder.frames.contains(3));
+		for (int i = 1; i < recorder.frames.size(); i++) {
+			assertTrue(recorder.frames.get(i - 1) < recorder.frames.get(i));
+		}
+	}
+
+	@Test
+	public void testOrderedStageTimeout() throws Exception {
+		@Atomic
+		class StallingOperation extends SlowOperation {
+			@Override
+			protected OperationData process(IDataset input, IMonitor monitor) throws OperationException {
+				if (frame(input) == 0) {
+					try {
+						Thread.sleep(1000);
+					} catch (InterruptedException e) {
+						throw new OperationException(this, e);
+					}
+				}
+				return new OperationData(input);
+			}
+		}
+
+		RecordingOperation recorder = new RecordingOperation();
+		IOperationContext context = createContext();
+		context.setParallelTimeout(100);
+		context.setSeries(new StallingOperation(), recorder);
+		try {
+			service.execute(context);
+			fail("Later frames should time out waiting for first frame");
+		} catch (OperationException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Timed out"));
+		}
+	}
+}
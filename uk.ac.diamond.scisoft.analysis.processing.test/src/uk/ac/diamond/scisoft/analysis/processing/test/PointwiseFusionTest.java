@@ -0,0 +1,161 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.processing.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.eclipse.dawnsci.analysis.api.processing.IOperation;
+import org.eclipse.dawnsci.analysis.api.processing.OperationData;
+import org.eclipse.dawnsci.analysis.dataset.slicer.SliceFromSeriesMetadata;
+import org.eclipse.dawnsci.analysis.dataset.slicer.SliceInformation;
+import org.eclipse.january.IMonitor;
+import org.eclipse.january.dataset.Dataset;
+import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DatasetUtils;
+import org.eclipse.january.dataset.DoubleDataset;
+import org.eclipse.january.dataset.IDataset;
+import org.eclipse.january.dataset.IntegerDataset;
+import org.eclipse.january.dataset.Maths;
+import org.eclipse.january.dataset.Slice;
+import org.junit.Test;
+
+import uk.ac.diamond.scisoft.analysis.processing.IPointwiseOperation.Kernel;
+import uk.ac.diamond.scisoft.analysis.processing.operations.PhotonCountingErrorOperation;
+import uk.ac.diamond.scisoft.analysis.processing.runner.PointwiseFusion;
+import uk.ac.diamond.scisoft.analysis.processing.scalar.AddScalarOperation;
+import uk.ac.diamond.scisoft.analysis.processing.scalar.DivideScalarOperation;
+import uk.ac.diamond.scisoft.analysis.processing.scalar.MutliplyScalarOperation;
+import uk.ac.diamond.scisoft.analysis.processing.scalar.ScalarModel;
+import uk.ac.diamond.scisoft.analysis.processing.scalar.SubtractScalarOperation;
+
+public class PointwiseFusionTest {
+
+	private static ScalarModel scalar(double value) {
+		ScalarModel m = new ScalarModel();
+		m.setValue(value);
+		return m;
+	}
+
+	private static IOperation<?, ?>[] createSeries() {
+		SubtractScalarOperation sub = new SubtractScalarOperation();
+		sub.setModel(scalar(5));
+		PhotonCountingErrorOperation pc = new PhotonCountingErrorOperation();
+		MutliplyScalarOperation mul = new MutliplyScalarOperation();
+		mul.setModel(scalar(-2.5));
+		DivideScalarOperation div = new DivideScalarOperation();
+		div.setModel(scalar(3));
+		AddScalarOperation add = new AddScalarOperation();
+		add.setModel(scalar(0.5));
+		return new IOperation<?, ?>[] {sub, pc, mul, div, add};
+	}
+
+	private static Dataset createFrame() {
+		Dataset frame = Maths.sin(DatasetFactory.createRange(DoubleDataset.class, 64 * 48)).imultiply(20).reshape(64, 48);
+		frame.setMetadata(new SliceFromSeriesMetadata((SliceInformation) null));
+		return frame;
+	}
+
+	private static IDataset executeEach(IOperation<?, ?>[] series, int from, int to, IDataset frame) {
+		IMonitor monitor = new IMonitor.Stub();
+		IDataset d = frame;
+		for (int i = from; i < to; i++) {
+			d = series[i].execute(d, monitor).getData();
+		}
+		return d;
+	}
+
+	private static void checkSame(IDataset expected, IDataset actual) {
+		Dataset e = DatasetUtils.convertToDataset(expected);
+		Dataset a = DatasetUtils.convertToDataset(actual);
+		assertArrayEquals(e.getShape(), a.getShape());
+		assertArrayEquals((double[]) DatasetUtils.cast(DoubleDataset.class, e).getBuffer(), (double[]) a.getBuffer(), 0);
+		if (e.getErrors() == null) {
+			assertNull(a.getErrors());
+		} else {
+			assertNotNull(a.getErrors());
+			assertArrayEquals((double[]) DatasetUtils.cast(DoubleDataset.class, e.getErrors().getSlice()).getBuffer(),
+					(double[]) DatasetUtils.cast(DoubleDataset.class, a.getErrors().getSlice()).getBuffer(), 1e-14);
+		}
+	}
+
+	@Test
+	public void testFindRuns() {
+		IOperation<?, ?>[] series = createSeries();
+		assertArrayEquals(new int[] {5, 0, 0, 0, 0}, PointwiseFusion.findRuns(series));
+
+		series[2].setStoreOutput(true);
+		assertArrayEquals(new int[] {3, 0, 0, 5, 0}, PointwiseFusion.findRuns(series));
+
+		series[3].setPassUnmodifiedData(true);
+		assertArrayEquals(new int[] {3, 0, 0, 0, 0}, PointwiseFusion.findRuns(series));
+	}
+
+	@Test
+	public void testFusedMatchesSeries() {
+		IOperation<?, ?>[] series = createSeries();
+
+		// without input errors
+		Dataset frame = createFrame();
+		Kernel[] kernels = PointwiseFusion.getKernels(series, 0, series.length, frame);
+		assertNotNull(kernels);
+		OperationData fused = PointwiseFusion.execute(kernels, frame);
+		checkSame(executeEach(series, 0, series.length, frame), fused.getData());
+		assertNotNull(fused.getData().getFirstMetadata(SliceFromSeriesMetadata.class));
+
+		// with input errors and no error-creating operation
+		frame = createFrame();
+		frame.setErrors(Maths.abs(frame).imultiply(0.1));
+		kernels = PointwiseFusion.getKernels(series, 2, series.length, frame);
+		assertNotNull(kernels);
+		checkSame(executeEach(series, 2, series.length, frame), PointwiseFusion.execute(kernels, frame).getData());
+
+		// without errors at all
+		frame = createFrame();
+		kernels = PointwiseFusion.getKernels(series, 2, series.length, frame);
+		checkSame(executeEach(series, 2, series.length, frame), PointwiseFusion.execute(kernels, frame).getData());
+	}
+
+	@Test
+	public void testUnfusableFrame() {
+		IOperation<?, ?>[] series = createSeries();
+		Dataset frame = DatasetFactory.zeros(IntegerDataset.class, 4, 5);
+		assertNull(PointwiseFusion.getKernels(series, 0, series.length, frame));
+		assertNull(PointwiseFusion.getKernels(series, 0, series.length, createFrame().getSliceView(new Slice(null, null, -1))));
+	}
+
+	@Test
+	public void testFusionTiming() {
+		IOperation<?, ?>[] series = createSeries();
+		Dataset frame = Maths.sin(DatasetFactory.createRange(DoubleDataset.class, 2048 * 2048)).imultiply(20).reshape(2048, 2048);
+		frame.setMetadata(new SliceFromSeriesMetadata((SliceInformation) null));
+
+		int n = 5;
+		long[] each = new long[n];
+		long[] fused = new long[n];
+		for (int i = 0; i < n; i++) {
+			each[i] = -System.nanoTime();
+			executeEach(series, 0, series.length, frame);
+			each[i] += System.nanoTime();
+
+			fused[i] = -System.nanoTime();
+			PointwiseFusion.execute(PointwiseFusion.getKernels(series, 0, series.length, frame), frame);
+			fused[i] += System.nanoTime();
+		}
+		Arrays.sort(each);
+		Arrays.sort(fused);
+		System.out.printf("Series of %d operations took %.1fms separately and %.1fms fused\n", series.length, each[0] * 1e-6, fused[0] * 1e-6);
+		assertEquals(series.length, PointwiseFusion.getKernels(series, 0, series.length, frame).length);
+	}
+}
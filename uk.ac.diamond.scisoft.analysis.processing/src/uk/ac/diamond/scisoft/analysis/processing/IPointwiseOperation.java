@@ -0,0 +1,47 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.processing;
+
+import org.eclipse.january.dataset.IDataset;
+
+/**
+ * An operation whose output has the shape of its input and where each output item (and its
+ * error) depends only on the input item at the same position. Consecutive runs of these are
+ * fused by the series runner into a single pass over each frame.
+ */
+public interface IPointwiseOperation {
+
+	/**
+	 * Calculates an item's value and error in place
+	 */
+	public interface Kernel {
+
+		/**
+		 * @param index position of item in frame in row-major order
+		 * @param ve value and error of item
+		 * @param errors true if the input has errors
+		 */
+		public void apply(int index, double[] ve, boolean errors);
+
+		/**
+		 * @param errors true if the input has errors
+		 * @return true if the output has errors
+		 */
+		public boolean hasErrors(boolean errors);
+	}
+
+	/**
+	 * Get kernel for a frame of double values. It must give the same values and errors as
+	 * executing the operation on the frame
+	 * @param frame input to the run of fused operations
+	 * @return kernel or null if the operation must be executed on this frame
+	 */
+	public Kernel getKernel(IDataset frame);
+}
@@ -0,0 +1,20 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.processing;
+
+/**
+ * Marks an operation that is not {@link org.eclipse.dawnsci.analysis.api.processing.Atomic}
+ * but keeps any mutable state per thread (for example, in {@link ThreadLocal} fields) and does
+ * not depend on the order of frames. The parallel runner then passes frames to it concurrently
+ * instead of one at a time in frame order.
+ */
+public interface IThreadLocalOperation {
+
+}
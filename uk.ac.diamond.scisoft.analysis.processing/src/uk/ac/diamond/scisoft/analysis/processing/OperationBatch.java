@@ -0,0 +1,345 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.processing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.eclipse.dawnsci.analysis.api.io.IDataHolder;
+import org.eclipse.dawnsci.analysis.api.processing.ExecutionType;
+import org.eclipse.dawnsci.analysis.api.processing.IExecutionVisitor;
+import org.eclipse.dawnsci.analysis.api.processing.IOperation;
+import org.eclipse.dawnsci.analysis.api.processing.IOperationContext;
+import org.eclipse.dawnsci.analysis.api.processing.OperationData;
+import org.eclipse.dawnsci.analysis.api.processing.model.IOperationModel;
+import org.eclipse.dawnsci.analysis.dataset.operations.AbstractOperationBase;
+import org.eclipse.dawnsci.analysis.dataset.slicer.SliceFromSeriesMetadata;
+import org.eclipse.dawnsci.analysis.dataset.slicer.SourceInformation;
+import org.eclipse.january.IMonitor;
+import org.eclipse.january.dataset.ILazyDataset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.diamond.scisoft.analysis.processing.runner.SeriesRunner;
+
+/**
+ * Processes many files with one series of operations. Files are run concurrently on a bounded
+ * pool, each one in series with its own output visitor.
+ * <p>
+ * Operations that can run concurrently (atomic or keeping only thread-local state) are shared by
+ * all files so any caches they build, such as integration geometry, are reused. Other operations
+ * are copied for each file, sharing the model of the original.
+ */
+public class OperationBatch {
+
+	private static final Logger logger = LoggerFactory.getLogger(OperationBatch.class);
+
+	/**
+	 * Outcome of processing one file
+	 */
+	public static class FileResult {
+		private final String path;
+		private final long time;
+		private final int frames;
+		private final Exception error;
+
+		FileResult(String path, long time, int frames, Exception error) {
+			this.path = path;
+			this.time = time;
+			this.frames = frames;
+			this.error = error;
+		}
+
+		/**
+		 * @return path of file
+		 */
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * @return time taken to process file in nanoseconds
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * @return number of frames processed
+		 */
+		public int getFrames() {
+			return frames;
+		}
+
+		/**
+		 * @return exception that stopped processing or null if file was processed
+		 */
+		public Exception getError() {
+			return error;
+		}
+	}
+
+	/**
+	 * Outcome of processing a batch
+	 */
+	public static class Report {
+		private final List<FileResult> results;
+		private final long time;
+
+		Report(List<FileResult> results, long time) {
+			this.results = Collections.unmodifiableList(results);
+			this.time = time;
+		}
+
+		/**
+		 * @return results in order of files given
+		 */
+		public List<FileResult> getResults() {
+			return results;
+		}
+
+		/**
+		 * @return time taken to process batch in nanoseconds
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * @return number of files that could not be processed
+		 */
+		public int getFailures() {
+			int n = 0;
+			for (FileResult r : results) {
+				if (r.error != null) {
+					n++;
+				}
+			}
+			return n;
+		}
+
+		/**
+		 * @return number of files processed per second
+		 */
+		public double getFileThroughput() {
+			return time == 0 ? 0 : (results.size() - getFailures()) * 1e9 / time;
+		}
+
+		/**
+		 * @return number of frames processed per second
+		 */
+		public double getFrameThroughput() {
+			long frames = 0;
+			for (FileResult r : results) {
+				frames += r.frames;
+			}
+			return time == 0 ? 0 : frames * 1e9 / time;
+		}
+
+		/**
+		 * @return longest time taken by a file in nanoseconds
+		 */
+		public long getMaximumLatency() {
+			long max = 0;
+			for (FileResult r : results) {
+				max = Math.max(max, r.time);
+			}
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d files (%d failed) in %.3f s: %.2f files/s, %.1f frames/s, slowest file took %.3f s",
+					results.size(), getFailures(), time * 1e-9, getFileThroughput(), getFrameThroughput(), getMaximumLatency() * 1e-9);
+		}
+	}
+
+	private final OperationServiceImpl service;
+	private final IOperation<? extends IOperationModel, ? extends OperationData>[] series;
+	private String datasetName;
+	private int[] dataDimensions;
+	private Function<String, IExecutionVisitor> visitors;
+	private int poolSize = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * @param service
+	 * @param series operations to run on each file
+	 */
+	@SafeVarargs
+	public OperationBatch(OperationServiceImpl service, IOperation<? extends IOperationModel, ? extends OperationData>... series) {
+		this.service = service;
+		this.series = series;
+	}
+
+	/**
+	 * @param datasetName name of dataset to process in each file
+	 */
+	public void setDatasetName(String datasetName) {
+		this.datasetName = datasetName;
+	}
+
+	/**
+	 * @param dataDimensions dimensions of each frame
+	 */
+	public void setDataDimensions(int... dataDimensions) {
+		this.dataDimensions = dataDimensions;
+	}
+
+	/**
+	 * @param visitors creates output visitor for a file path. It may return null
+	 */
+	public void setVisitors(Function<String, IExecutionVisitor> visitors) {
+		this.visitors = visitors;
+	}
+
+	/**
+	 * @param poolSize maximum number of files processed at once
+	 */
+	public void setPoolSize(int poolSize) {
+		this.poolSize = Math.max(1, poolSize);
+	}
+
+	/**
+	 * Process files, returning when all have finished
+	 * @param files
+	 * @param monitor may be null
+	 * @return report
+	 * @throws Exception if the operations could not be initialised
+	 */
+	public Report execute(List<String> files, final IMonitor monitor) throws Exception {
+		if (datasetName == null || dataDimensions == null) {
+			throw new IllegalStateException("Dataset name and data dimensions must be set");
+		}
+
+		final boolean[] shared = new boolean[series.length];
+		List<IOperation<?, ?>> initialised = new ArrayList<>();
+		final AtomicInteger count = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(poolSize, Math.max(1, files.size())), r -> {
+			Thread t = new Thread(r, "Operation batch " + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+
+		long start = System.nanoTime();
+		try {
+			for (int i = 0; i < series.length; i++) {
+				shared[i] = !SeriesRunner.isOrdered(series[i]);
+				if (shared[i]) {
+					series[i].init();
+					initialised.add(series[i]);
+				}
+			}
+
+			List<Future<FileResult>> futures = new ArrayList<>(files.size());
+			for (final String f : files) {
+				futures.add(pool.submit(() -> process(f, shared, monitor)));
+			}
+
+			List<FileResult> results = new ArrayList<>(files.size());
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					results.add(futures.get(i).get());
+				} catch (ExecutionException e) {
+					Throwable t = e.getCause();
+					results.add(new FileResult(files.get(i), 0, 0, t instanceof Exception ? (Exception) t : e));
+				}
+			}
+			Report report = new Report(results, System.nanoTime() - start);
+			logger.info("Processed {}", report);
+			return report;
+		} finally {
+			pool.shutdownNow();
+			for (IOperation<?, ?> op : initialised) {
+				op.dispose();
+			}
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private IOperation copy(IOperation op) throws Exception {
+		IOperation c = op.getClass().newInstance();
+		c.setModel(op.getModel());
+		if (c instanceof AbstractOperationBase && op instanceof AbstractOperationBase) {
+			((AbstractOperationBase) c).setName(op.getName());
+			((AbstractOperationBase) c).setDescription(op.getDescription());
+		}
+		c.setStoreOutput(op.isStoreOutput());
+		c.setPassUnmodifiedData(op.isPassUnmodifiedData());
+		return c;
+	}
+
+	private FileResult process(String path, boolean[] shared, final IMonitor batchMonitor) {
+		final AtomicInteger frames = new AtomicInteger();
+		long start = System.nanoTime();
+		List<IOperation<?, ?>> copies = new ArrayList<>();
+		try {
+			if (batchMonitor != null && batchMonitor.isCancelled()) {
+				throw new InterruptedException("Batch cancelled");
+			}
+
+			IDataHolder dh = LocalServiceManager.getLoaderService().getData(path, null);
+			ILazyDataset lz = dh == null ? null : dh.getLazyDataset(datasetName);
+			if (lz == null) {
+				throw new IllegalArgumentException("No dataset " + datasetName + " in " + path);
+			}
+			lz = lz.getSliceView();
+			lz.setMetadata(new SliceFromSeriesMetadata(new SourceInformation(path, datasetName, lz)));
+
+			@SuppressWarnings("unchecked")
+			IOperation<? extends IOperationModel, ? extends OperationData>[] fileSeries = new IOperation[series.length];
+			for (int i = 0; i < series.length; i++) {
+				if (shared[i]) {
+					fileSeries[i] = series[i];
+				} else {
+					fileSeries[i] = copy(series[i]);
+					fileSeries[i].init();
+					copies.add(fileSeries[i]);
+				}
+			}
+
+			IOperationContext context = service.createContext();
+			context.setData(lz);
+			context.setDataDimensions(dataDimensions);
+			context.setSeries(fileSeries);
+			context.setExecutionType(ExecutionType.SERIES);
+			context.setVisitor(visitors == null ? null : visitors.apply(path));
+			context.setMonitor(new IMonitor.Stub() {
+				@Override
+				public void worked(int amount) {
+					frames.addAndGet(amount);
+					if (batchMonitor != null) {
+						batchMonitor.worked(amount);
+					}
+				}
+
+				@Override
+				public boolean isCancelled() {
+					return batchMonitor != null && batchMonitor.isCancelled();
+				}
+			});
+			service.execute(context, false);
+			return new FileResult(path, System.nanoTime() - start, frames.get(), null);
+		} catch (Exception e) {
+			logger.error("Could not process {}", path, e);
+			return new FileResult(path, System.nanoTime() - start, frames.get(), e);
+		} finally {
+			for (IOperation<?, ?> op : copies) {
+				op.dispose();
+			}
+		}
+	}
+}
@@ -16,6 +16,7 @@ import org.eclipse.january.dataset.ILazyDataset;
 import org.eclipse.january.dataset.SliceND;
 
 import uk.ac.diamond.scisoft.analysis.io.LoaderFactory;
+import uk.ac.diamond.scisoft.analysis.processing.runner.OperationMetrics;
 
 public class OperationContextImpl implements IOperationContext {
 
@@ -60,6 +61,11 @@ public class OperationContextImpl implements IOperationContext {
 	 */
 	private ExecutionType executionType = ExecutionType.SERIES;
 	private int numberOfCores = 1;
+
+	/**
+	 * Gathered by the series runner when not null
+	 */
+	private OperationMetrics metrics = Boolean.getBoolean(OperationMetrics.METRICS) ? new OperationMetrics() : null;
 	
 	/* (non-Javadoc)
 	 * @see uk.ac.diamond.scisoft.analysis.processing.IOperationContext#getSeries()
@@ -259,6 +265,20 @@ public class OperationContextImpl implements IOperationContext {
 		this.poolSize = slugCount;
 	}
 
+	/**
+	 * @return per-operation metrics of last run or null if not gathered
+	 */
+	public OperationMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @param metrics set to gather per-operation metrics when run, null to not gather them
+	 */
+	public void setMetrics(OperationMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	@Override
 	public int[] getDataDimensions() {
 		return dataDimensions;
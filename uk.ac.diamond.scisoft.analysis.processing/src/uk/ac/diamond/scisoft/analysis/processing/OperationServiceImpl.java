@@ -23,7 +23,6 @@ import java.util.TreeSet;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.Platform;
-import org.eclipse.dawnsci.analysis.api.processing.Atomic;
 import org.eclipse.dawnsci.analysis.api.processing.ExecutionType;
 import org.eclipse.dawnsci.analysis.api.processing.IOperation;
 import org.eclipse.dawnsci.analysis.api.processing.IOperationBean;
@@ -50,6 +49,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.ac.diamond.scisoft.analysis.processing.bean.OperationBean;
+import uk.ac.diamond.scisoft.analysis.processing.operations.utils.ProcessingUtils;
+import uk.ac.diamond.scisoft.analysis.processing.runner.SeriesRunner;
+import uk.ac.diamond.scisoft.analysis.processing.visitor.NexusFileExecutionVisitor;
 import uk.ac.diamond.scisoft.analysis.utils.ClassUtils;
 
 /**
@@ -90,6 +92,15 @@ public class OperationServiceImpl implements IOperationService {
 	 */
 	@Override
 	public void execute(final IOperationContext context) throws OperationException {
+		execute(context, true);
+	}
+
+	/**
+	 * @param context
+	 * @param lifecycle if true, initialise the operations before the run and dispose of them afterwards
+	 * @throws OperationException
+	 */
+	void execute(final IOperationContext context, final boolean lifecycle) throws OperationException {
 				
 		if (context.getSeries()==null || context.getSeries().length<1) {
 			throw new OperationException(null, "No operation list defined, call setSeries(...) with something meaningful please!");
@@ -148,15 +159,18 @@ public class OperationServiceImpl implements IOperationService {
 	        
 	        
 	        if (context.getExecutionType() == ExecutionType.PARALLEL){
-	        	IOperation[] operationSeries = context.getSeries();
-				for (IOperation op : operationSeries) {
-					Atomic atomic = op.getClass().getAnnotation(Atomic.class);
-					if (atomic == null) {
-						context.setExecutionType(ExecutionType.SERIES);
-						logger.info("Switching to series runner!");
-						break;
+	        	// operations that are not atomic see one frame at a time in frame order
+	        	// while the other operations run in parallel
+	        	StringBuilder ordered = new StringBuilder();
+				for (IOperation<?, ?> op : context.getSeries()) {
+					if (SeriesRunner.isOrdered(op)) {
+						if (ordered.length() > 0) ordered.append(", ");
+						ordered.append(op.getName());
 					}
 				}
+				if (ordered.length() > 0) {
+					logger.info("Running in frame order: {}", ordered);
+				}
 	        }
 	
 			List<SliceFromSeriesMetadata> meta = firstSlice.getMetadata(SliceFromSeriesMetadata.class);
@@ -178,11 +192,21 @@ public class OperationServiceImpl implements IOperationService {
 				logger.error("Unable to set slice from service metadata on full data.");
 			}
 			
-			for (IOperation op : context.getSeries()) op.init();
+			if (lifecycle) {
+				for (IOperation op : context.getSeries()) op.init();
+			}
+			if (context instanceof OperationContextImpl && context.getVisitor() instanceof NexusFileExecutionVisitor) {
+				((NexusFileExecutionVisitor) context.getVisitor()).setMetrics(((OperationContextImpl) context).getMetrics());
+			}
+			ProcessingUtils.startRun();
 			
-			IOperationRunner runner = rservice.getRunner(context.getExecutionType());
-			runner.init(context);
-			runner.execute();
+			try {
+				IOperationRunner runner = rservice.getRunner(context.getExecutionType());
+				runner.init(context);
+				runner.execute();
+			} finally {
+				ProcessingUtils.endRun();
+			}
 			
 		} catch (OperationException o) {
 			throw o;
@@ -199,7 +223,9 @@ public class OperationServiceImpl implements IOperationService {
 				}
 			}
 			
-			for (IOperation op : context.getSeries()) op.dispose();
+			if (lifecycle) {
+				for (IOperation op : context.getSeries()) op.dispose();
+			}
 		}
 		
 		logmem();
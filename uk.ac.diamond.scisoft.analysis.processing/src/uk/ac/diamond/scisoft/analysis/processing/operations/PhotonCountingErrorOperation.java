@@ -14,8 +14,10 @@ import org.eclipse.january.dataset.DoubleDataset;
 import org.eclipse.january.dataset.IDataset;
 import org.eclipse.january.dataset.IndexIterator;
 
+import uk.ac.diamond.scisoft.analysis.processing.IPointwiseOperation;
+
 @Atomic
-public class PhotonCountingErrorOperation extends AbstractOperation<EmptyModel, OperationData> {
+public class PhotonCountingErrorOperation extends AbstractOperation<EmptyModel, OperationData> implements IPointwiseOperation {
 
 	@Override
 	public String getId() {
@@ -48,6 +50,22 @@ public class PhotonCountingErrorOperation extends AbstractOperation<EmptyModel,
 	}
 	
 
+	@Override
+	public Kernel getKernel(IDataset frame) {
+		return new Kernel() {
+			@Override
+			public void apply(int index, double[] ve, boolean errors) {
+				double val = ve[0];
+				ve[1] = val > 0 ? Math.sqrt(val) : (val == 0 ? 1.0d : 0);
+			}
+
+			@Override
+			public boolean hasErrors(boolean errors) {
+				return true;
+			}
+		};
+	}
+
 	@Override
 	public OperationRank getInputRank() {
 		return OperationRank.TWO;
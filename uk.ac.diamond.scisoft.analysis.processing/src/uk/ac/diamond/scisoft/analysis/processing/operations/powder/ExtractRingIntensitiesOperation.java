@@ -9,6 +9,10 @@
 
 package uk.ac.diamond.scisoft.analysis.processing.operations.powder;
 
+import java.util.Arrays;
+
+import org.eclipse.dawnsci.analysis.api.diffraction.DetectorProperties;
+import org.eclipse.dawnsci.analysis.api.diffraction.DiffractionCrystalEnvironment;
 import org.eclipse.dawnsci.analysis.api.metadata.IDiffractionMetadata;
 import org.eclipse.dawnsci.analysis.api.processing.OperationData;
 import org.eclipse.dawnsci.analysis.api.processing.OperationException;
@@ -27,9 +31,34 @@ import org.eclipse.january.metadata.MetadataFactory;
 
 import uk.ac.diamond.scisoft.analysis.diffraction.QSpace;
 import uk.ac.diamond.scisoft.analysis.diffraction.powder.PixelIntegrationUtils;
+import uk.ac.diamond.scisoft.analysis.processing.IThreadLocalOperation;
 import uk.ac.diamond.scisoft.analysis.roi.XAxis;
 
-public class ExtractRingIntensitiesOperation extends AbstractOperation<DiffractionEllipseFitModel, OperationData> {
+public class ExtractRingIntensitiesOperation extends AbstractOperation<DiffractionEllipseFitModel, OperationData> implements IThreadLocalOperation {
+
+	/**
+	 * Coordinate arrays of the last calibration and shape seen by a thread
+	 */
+	private static class CoordData {
+		private final DetectorProperties detector;
+		private final DiffractionCrystalEnvironment environment;
+		private final int[] shape;
+		private final Dataset[] data;
+
+		public CoordData(IDiffractionMetadata dm, int[] shape, Dataset[] data) {
+			this.detector = dm.getDetector2DProperties().clone();
+			this.environment = dm.getDiffractionCrystalEnvironment().clone();
+			this.shape = shape.clone();
+			this.data = data;
+		}
+
+		public boolean matches(IDiffractionMetadata dm, int[] shape) {
+			return Arrays.equals(this.shape, shape) && detector.equals(dm.getDetector2DProperties()) &&
+					environment.equals(dm.getDiffractionCrystalEnvironment());
+		}
+	}
+
+	private final ThreadLocal<CoordData> coordData = new ThreadLocal<>();
 
 	@Override
 	public String getId() {
@@ -113,6 +142,15 @@ public class ExtractRingIntensitiesOperation extends AbstractOperation<Diffracti
 	}
 
 	private Dataset[] getCoordData(IDiffractionMetadata dm, int[] shape) {
+		CoordData c = coordData.get();
+		if (c == null || !c.matches(dm, shape)) {
+			c = new CoordData(dm, shape, calculateCoordData(dm, shape));
+			coordData.set(c);
+		}
+		return c.data;
+	}
+
+	private Dataset[] calculateCoordData(IDiffractionMetadata dm, int[] shape) {
 		Dataset qArray = PixelIntegrationUtils.generateRadialArray(shape, new QSpace(dm.getDetector2DProperties(), dm.getDiffractionCrystalEnvironment()), XAxis.Q);
 		Dataset az = PixelIntegrationUtils.generateAzimuthalArray(shape,dm,false);
 		
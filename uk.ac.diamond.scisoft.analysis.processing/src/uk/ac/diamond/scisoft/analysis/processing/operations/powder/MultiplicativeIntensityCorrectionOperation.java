@@ -26,12 +26,13 @@ import org.eclipse.january.dataset.IDataset;
 import org.eclipse.january.dataset.IndexIterator;
 
 import uk.ac.diamond.scisoft.analysis.diffraction.powder.PixelIntegrationUtils;
+import uk.ac.diamond.scisoft.analysis.processing.IPointwiseOperation;
 
 @Atomic
 public class MultiplicativeIntensityCorrectionOperation extends
-		AbstractOperation<MultiplicativeIntensityCorrectionModel, OperationData> {
+		AbstractOperation<MultiplicativeIntensityCorrectionModel, OperationData> implements IPointwiseOperation {
 
-	private volatile Dataset correction;
+	private volatile DoubleDataset correction;
 	private IDiffractionMetadata metadata;
 	private PropertyChangeListener listener;
 	
@@ -43,20 +44,10 @@ public class MultiplicativeIntensityCorrectionOperation extends
 	@Override
 	protected OperationData process(IDataset input, IMonitor monitor) throws OperationException {
 		
-		if (!model.isApplyDetectorTransmissionCorrection() && !model.isApplyPolarisationCorrection() &&
-				!model.isApplySolidAngleCorrection()) return new OperationData(input);
-		
-		
-		IDiffractionMetadata md = getFirstDiffractionMetadata(input);
-		
-		if (metadata == null || !(metadata.getDetector2DProperties().equals(md.getDetector2DProperties()) &&
-				metadata.getDiffractionCrystalEnvironment().equals(md.getDiffractionCrystalEnvironment()))) {
-			metadata = md;
-			correction = null;
-		}
+		if (!isCorrecting()) return new OperationData(input);
 		
 		Dataset in = DatasetUtils.convertToDataset(input);
-		Dataset lCorrection = getCorrectionArray(in, metadata);
+		Dataset lCorrection = getCorrectionArray(in);
 		
 		DoubleDataset out = DatasetFactory.zeros(DoubleDataset.class, in.getShape());
 		Dataset error = in.getErrors();
@@ -78,6 +69,49 @@ public class MultiplicativeIntensityCorrectionOperation extends
 		return new OperationData(out);
 	}
 
+	@Override
+	public Kernel getKernel(IDataset frame) {
+		if (!isCorrecting()) {
+			return new Kernel() {
+				@Override
+				public void apply(int index, double[] ve, boolean errors) {
+				}
+
+				@Override
+				public boolean hasErrors(boolean errors) {
+					return errors;
+				}
+			};
+		}
+
+		final double[] cor;
+		try {
+			cor = getCorrectionArray(frame.getSliceView().squeeze()).getData();
+		} catch (OperationException e) {
+			return null;
+		}
+		if (cor.length != frame.getSize()) {
+			return null;
+		}
+		return new Kernel() {
+			@Override
+			public void apply(int index, double[] ve, boolean errors) {
+				ve[0] *= cor[index];
+				ve[1] *= cor[index];
+			}
+
+			@Override
+			public boolean hasErrors(boolean errors) {
+				return errors;
+			}
+		};
+	}
+
+	private boolean isCorrecting() {
+		return model.isApplyDetectorTransmissionCorrection() || model.isApplyPolarisationCorrection() ||
+				model.isApplySolidAngleCorrection();
+	}
+
 	@Override
 	public OperationRank getInputRank() {
 		return OperationRank.TWO;
@@ -108,9 +142,17 @@ public class MultiplicativeIntensityCorrectionOperation extends
 	}
 	
 	
-	private Dataset getCorrectionArray(IDataset input,IDiffractionMetadata metadata) {
+	private DoubleDataset getCorrectionArray(IDataset input) {
+
+		IDiffractionMetadata md = getFirstDiffractionMetadata(input);
+		
+		if (metadata == null || !(metadata.getDetector2DProperties().equals(md.getDetector2DProperties()) &&
+				metadata.getDiffractionCrystalEnvironment().equals(md.getDiffractionCrystalEnvironment()))) {
+			metadata = md;
+			correction = null;
+		}
 
-		Dataset lcorrection = correction;
+		DoubleDataset lcorrection = correction;
 		if (lcorrection == null) {
 			synchronized(this) {
 				lcorrection = correction;
@@ -123,7 +165,7 @@ public class MultiplicativeIntensityCorrectionOperation extends
 	}
 	
 	
-	private Dataset calculateCorrectionArray(IDataset data, IDiffractionMetadata md) {
+	private DoubleDataset calculateCorrectionArray(IDataset data, IDiffractionMetadata md) {
 		
 		MultiplicativeIntensityCorrectionModel m = (MultiplicativeIntensityCorrectionModel)model;
 		
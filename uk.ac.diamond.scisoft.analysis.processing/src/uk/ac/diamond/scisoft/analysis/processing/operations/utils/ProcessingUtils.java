@@ -9,10 +9,15 @@
 
 package uk.ac.diamond.scisoft.analysis.processing.operations.utils;
 
+import java.io.File;
 import java.io.Serializable;
+import java.lang.ref.SoftReference;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.dawnsci.analysis.api.io.IDataHolder;
 import org.eclipse.dawnsci.analysis.api.processing.IOperation;
@@ -33,7 +38,89 @@ import uk.ac.diamond.scisoft.analysis.io.NexusTreeUtils;
 import uk.ac.diamond.scisoft.analysis.processing.LocalServiceManager;
 
 public class ProcessingUtils {
-	
+
+	/**
+	 * Identifies a dataset in a given version of a file
+	 */
+	private static class DatasetKey {
+		private final String path;
+		private final String name;
+		private final long length;
+		private final long modified;
+
+		private DatasetKey(String path, String name, long length, long modified) {
+			this.path = path;
+			this.name = name;
+			this.length = length;
+			this.modified = modified;
+		}
+
+		/**
+		 * @param filepath
+		 * @param datasetName
+		 * @return key or null if path is not a file
+		 */
+		static DatasetKey create(String filepath, String datasetName) {
+			if (filepath == null || datasetName == null) {
+				return null;
+			}
+			File f = new File(filepath);
+			long modified = f.lastModified();
+			if (modified == 0 || !f.isFile()) {
+				return null;
+			}
+			return new DatasetKey(f.getAbsolutePath(), datasetName, f.length(), modified);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = path.hashCode();
+			result = 31 * result + name.hashCode();
+			result = 31 * result + Long.hashCode(length);
+			result = 31 * result + Long.hashCode(modified);
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof DatasetKey)) {
+				return false;
+			}
+			DatasetKey other = (DatasetKey) obj;
+			return length == other.length && modified == other.modified && path.equals(other.path) && name.equals(other.name);
+		}
+	}
+
+	private static final AtomicInteger RUNS = new AtomicInteger();
+	private static final Map<DatasetKey, SoftReference<IDataset>> RUN_CACHE = new ConcurrentHashMap<>();
+
+	/**
+	 * Start caching datasets read by {@link #getDataset(IOperation, String, String)}. Each call
+	 * must be matched by a call to {@link #endRun()}
+	 */
+	public static void startRun() {
+		RUNS.incrementAndGet();
+	}
+
+	/**
+	 * End a run, discarding all cached datasets once no run is in progress
+	 */
+	public static void endRun() {
+		if (RUNS.updateAndGet(r -> r > 0 ? r - 1 : 0) == 0) {
+			RUN_CACHE.clear();
+		}
+	}
+
+	/**
+	 * @return number of datasets cached for the current runs
+	 */
+	public static int getRunCacheSize() {
+		return RUN_CACHE.size();
+	}
+
 	public static ILazyDataset getLazyDataset(IOperation<?, ?> op, String filepath, String datasetName) throws OperationException {
 		
 		IDataHolder dh = null;
@@ -53,13 +140,37 @@ public class ProcessingUtils {
 		return lz;
 	}
 
+	/**
+	 * Read a dataset from a file. While a run is in progress, datasets are cached by
+	 * file path, dataset name and the file's length and modification time so repeated
+	 * reads in each frame only load the data once
+	 * @param op
+	 * @param filepath
+	 * @param datasetName
+	 * @return dataset that can be modified by the caller
+	 * @throws OperationException
+	 */
 	public static IDataset getDataset(IOperation<?, ?> op, String filepath, String datasetName) throws OperationException {
+		DatasetKey key = RUNS.get() > 0 ? DatasetKey.create(filepath, datasetName) : null;
+		if (key != null) {
+			SoftReference<IDataset> ref = RUN_CACHE.get(key);
+			IDataset d = ref == null ? null : ref.get();
+			if (d != null) {
+				return d.getSlice();
+			}
+		}
+
 		ILazyDataset lz = getLazyDataset(op, filepath, datasetName);
+		IDataset d;
 		try {
-			return lz.getSlice();
+			d = lz.getSlice();
 		} catch (DatasetException e) {
 			throw new OperationException(op, e);
 		}
+		if (key != null && RUNS.get() > 0) {
+			RUN_CACHE.put(key, new SoftReference<>(d.getSlice()));
+		}
+		return d;
 	}
 
 	/**
@@ -0,0 +1,244 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.processing.runner;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.dawnsci.analysis.api.processing.IOperation;
+import org.eclipse.dawnsci.analysis.api.processing.OperationData;
+import org.eclipse.january.dataset.DatasetUtils;
+import org.eclipse.january.dataset.IDataset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-operation timings gathered by the series runner for each slice: wall time, thread CPU time,
+ * bytes allocated by the thread (where the JVM supports it) and size of output data.
+ * <p>
+ * Wall times are also counted in a histogram of power-of-two microsecond bins. A run of fused
+ * operations is recorded against its first operation. Metrics are gathered when set on the
+ * operation context, which is done by default if the system property {@value #METRICS} is true.
+ */
+public class OperationMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(OperationMetrics.class);
+
+	/**
+	 * System property to gather metrics for every run
+	 */
+	public static final String METRICS = "uk.ac.diamond.scisoft.analysis.processing.metrics";
+
+	/**
+	 * Number of histogram bins. Bin i counts times from 2^(i-1) to 2^i microseconds, with the
+	 * first bin counting times under one microsecond and the last counting all longer times
+	 */
+	public static final int BINS = 32;
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+	// allocation counting is an extension of the JDK's bean so is found reflectively
+	private static final Method ALLOCATED;
+
+	static {
+		Method allocated = null;
+		try {
+			Class<?> c = Class.forName("com.sun.management.ThreadMXBean", false, THREADS.getClass().getClassLoader());
+			if (c.isInstance(THREADS) && (Boolean) c.getMethod("isThreadAllocatedMemoryEnabled").invoke(THREADS)) {
+				allocated = c.getMethod("getThreadAllocatedBytes", long.class);
+			}
+		} catch (Exception e) {
+			logger.debug("Thread allocation not available", e);
+		}
+		ALLOCATED = allocated;
+	}
+
+	/**
+	 * Metrics of one operation
+	 */
+	public static class Stats {
+		private final String name;
+		private final LongAdder count = new LongAdder();
+		private final LongAdder wallTime = new LongAdder();
+		private final LongAdder cpuTime = new LongAdder();
+		private final LongAdder allocated = new LongAdder();
+		private final LongAdder outputBytes = new LongAdder();
+		private final AtomicLongArray histogram = new AtomicLongArray(BINS);
+
+		Stats(String name) {
+			this.name = name;
+		}
+
+		void add(long wall, long cpu, long bytes, long output) {
+			count.increment();
+			wallTime.add(wall);
+			cpuTime.add(cpu);
+			allocated.add(bytes);
+			outputBytes.add(output);
+			long us = wall / 1000;
+			histogram.incrementAndGet(Math.min(BINS - 1, 64 - Long.numberOfLeadingZeros(us)));
+		}
+
+		/**
+		 * @return name of operation
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return number of slices processed
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+
+		/**
+		 * @return total wall time in nanoseconds
+		 */
+		public long getWallTime() {
+			return wallTime.sum();
+		}
+
+		/**
+		 * @return total thread CPU time in nanoseconds or zero if not supported
+		 */
+		public long getCpuTime() {
+			return cpuTime.sum();
+		}
+
+		/**
+		 * @return total bytes allocated or zero if not supported
+		 */
+		public long getAllocatedBytes() {
+			return allocated.sum();
+		}
+
+		/**
+		 * @return total bytes of output data
+		 */
+		public long getOutputBytes() {
+			return outputBytes.sum();
+		}
+
+		/**
+		 * @return histogram of wall times (see {@link OperationMetrics#BINS})
+		 */
+		public long[] getHistogram() {
+			long[] h = new long[BINS];
+			for (int i = 0; i < BINS; i++) {
+				h[i] = histogram.get(i);
+			}
+			return h;
+		}
+
+		/**
+		 * @param fraction between 0 and 1
+		 * @return upper bound in microseconds of bin containing given fraction of wall times
+		 */
+		public long getWallTimeQuantile(double fraction) {
+			long[] h = getHistogram();
+			long n = 0;
+			for (long c : h) {
+				n += c;
+			}
+			long target = (long) Math.ceil(fraction * n);
+			long total = 0;
+			for (int i = 0; i < BINS; i++) {
+				total += h[i];
+				if (total >= target && total > 0) {
+					return 1L << i;
+				}
+			}
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			long n = Math.max(1, getCount());
+			return String.format("%s: %d slices, mean %.3f ms wall, %.3f ms CPU, %d bytes allocated, %d bytes output; median < %d us, 99%% < %d us",
+					name, getCount(), getWallTime() * 1e-6 / n, getCpuTime() * 1e-6 / n, getAllocatedBytes() / n, getOutputBytes() / n,
+					getWallTimeQuantile(0.5), getWallTimeQuantile(0.99));
+		}
+	}
+
+	private volatile Stats[] stats = new Stats[0];
+
+	/**
+	 * Clear metrics and prepare for a run of given series
+	 * @param series
+	 */
+	public void init(IOperation<?, ?>[] series) {
+		Stats[] s = new Stats[series.length];
+		for (int i = 0; i < series.length; i++) {
+			s[i] = new Stats(series[i].getName());
+		}
+		stats = s;
+	}
+
+	/**
+	 * @return metrics of each operation in series
+	 */
+	public Stats[] getStats() {
+		return stats.clone();
+	}
+
+	/**
+	 * @return current thread CPU time in nanoseconds or zero if not supported
+	 */
+	public static long getCpuTime() {
+		return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0;
+	}
+
+	/**
+	 * @return bytes allocated by current thread or zero if not supported
+	 */
+	public static long getAllocatedBytes() {
+		if (ALLOCATED != null) {
+			try {
+				return (Long) ALLOCATED.invoke(THREADS, Thread.currentThread().getId());
+			} catch (Exception e) {
+				// ignore
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Record metrics of an operation executed on one slice
+	 * @param index position of operation in series
+	 * @param wall wall time in nanoseconds
+	 * @param cpu CPU time in nanoseconds
+	 * @param bytes bytes allocated
+	 * @param output output of operation (can be null)
+	 */
+	public void record(int index, long wall, long cpu, long bytes, OperationData output) {
+		Stats[] s = stats;
+		if (index < 0 || index >= s.length) {
+			return;
+		}
+		IDataset d = output == null ? null : output.getData();
+		s[index].add(wall, cpu, bytes, d == null ? 0 : DatasetUtils.convertToDataset(d).getNbytes());
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder();
+		Stats[] s = stats;
+		for (int i = 0; i < s.length; i++) {
+			b.append(i).append(". ").append(s[i]).append('\n');
+		}
+		return b.toString();
+	}
+}
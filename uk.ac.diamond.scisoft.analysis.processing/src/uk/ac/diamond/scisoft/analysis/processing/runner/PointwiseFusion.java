@@ -0,0 +1,159 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.processing.runner;
+
+import org.eclipse.dawnsci.analysis.api.processing.IOperation;
+import org.eclipse.dawnsci.analysis.api.processing.OperationData;
+import org.eclipse.january.dataset.Dataset;
+import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DoubleDataset;
+import org.eclipse.january.dataset.IDataset;
+
+import uk.ac.diamond.scisoft.analysis.processing.IPointwiseOperation;
+import uk.ac.diamond.scisoft.analysis.processing.IPointwiseOperation.Kernel;
+
+/**
+ * Fuses runs of consecutive pointwise operations in a series so that each frame is walked
+ * once with values and errors propagated item by item, instead of each operation creating
+ * its own intermediate datasets.
+ * <p>
+ * An operation can only end a run if its output is stored, as intermediate results of a run
+ * are never created, and operations that pass on unmodified data are not fused. Fusion can be
+ * switched off with the system property {@value #NO_FUSION}.
+ */
+public class PointwiseFusion {
+
+	/**
+	 * System property to switch off fusion
+	 */
+	public static final String NO_FUSION = "uk.ac.diamond.scisoft.analysis.processing.nofusion";
+
+	private static volatile boolean enabled = !Boolean.getBoolean(NO_FUSION);
+
+	private PointwiseFusion() {
+	}
+
+	/**
+	 * @param enable if true, fuse runs of pointwise operations
+	 */
+	public static void setEnabled(boolean enable) {
+		enabled = enable;
+	}
+
+	/**
+	 * @return true if runs of pointwise operations are fused
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	private static boolean isFusable(IOperation<?, ?> op) {
+		return op instanceof IPointwiseOperation && !op.isPassUnmodifiedData();
+	}
+
+	/**
+	 * Find runs of two or more operations that can be fused
+	 * @param series
+	 * @return array where each item is the end (exclusive) of the run starting at that operation
+	 * or zero if no run starts there
+	 */
+	public static int[] findRuns(IOperation<?, ?>[] series) {
+		int n = series.length;
+		int[] ends = new int[n];
+		if (!enabled) {
+			return ends;
+		}
+
+		int i = 0;
+		while (i < n) {
+			int j = i;
+			while (j < n && isFusable(series[j])) {
+				if (series[j++].isStoreOutput()) {
+					break;
+				}
+			}
+			if (j - i > 1) {
+				ends[i] = j;
+			}
+			i = Math.max(j, i + 1);
+		}
+		return ends;
+	}
+
+	/**
+	 * Get kernels of a run of operations for a frame
+	 * @param series
+	 * @param from start of run
+	 * @param to end of run (exclusive)
+	 * @param frame
+	 * @return kernels or null if the run cannot be fused for this frame
+	 */
+	public static Kernel[] getKernels(IOperation<?, ?>[] series, int from, int to, IDataset frame) {
+		if (!(frame instanceof DoubleDataset) || ((Dataset) frame).getStrides() != null) {
+			return null;
+		}
+		Dataset errors = ((Dataset) frame).getErrors();
+		if (errors != null && (!(errors instanceof DoubleDataset) || errors.getStrides() != null || errors.getSize() != frame.getSize())) {
+			return null;
+		}
+
+		Kernel[] kernels = new Kernel[to - from];
+		for (int i = from; i < to; i++) {
+			Kernel k = ((IPointwiseOperation) series[i]).getKernel(frame);
+			if (k == null) {
+				return null;
+			}
+			kernels[i - from] = k;
+		}
+		return kernels;
+	}
+
+	/**
+	 * Apply kernels to frame in a single pass. The output is a copy of the frame (so retains its
+	 * metadata) that is overwritten in place
+	 * @param kernels
+	 * @param frame contiguous double dataset as accepted by {@link #getKernels(IOperation[], int, int, IDataset)}
+	 * @return output
+	 */
+	public static OperationData execute(Kernel[] kernels, IDataset frame) {
+		DoubleDataset in = (DoubleDataset) frame;
+		Dataset inErrors = in.getErrors();
+
+		int n = kernels.length;
+		boolean[] errors = new boolean[n + 1];
+		errors[0] = inErrors != null;
+		for (int k = 0; k < n; k++) {
+			errors[k + 1] = kernels[k].hasErrors(errors[k]);
+		}
+
+		DoubleDataset out = (DoubleDataset) in.getSlice();
+		double[] v = out.getData();
+		double[] e = inErrors == null ? null : ((DoubleDataset) inErrors).getData();
+		DoubleDataset outErrors = errors[n] ? DatasetFactory.zeros(DoubleDataset.class, in.getShapeRef()) : null;
+		double[] eo = outErrors == null ? null : outErrors.getData();
+
+		double[] ve = new double[2];
+		int size = in.getSize();
+		for (int i = 0; i < size; i++) {
+			ve[0] = v[i];
+			ve[1] = e == null ? 0 : e[i];
+			for (int k = 0; k < n; k++) {
+				kernels[k].apply(i, ve, errors[k]);
+			}
+			v[i] = ve[0];
+			if (eo != null) {
+				eo[i] = ve[1];
+			}
+		}
+
+		out.setErrors(outErrors);
+		return new OperationData(out);
+	}
+}
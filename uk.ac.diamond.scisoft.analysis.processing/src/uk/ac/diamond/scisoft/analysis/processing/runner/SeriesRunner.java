@@ -2,8 +2,18 @@ package uk.ac.diamond.scisoft.analysis.processing.runner;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 
+import org.eclipse.dawnsci.analysis.api.processing.Atomic;
 import org.eclipse.dawnsci.analysis.api.processing.ExecutionType;
 import org.eclipse.dawnsci.analysis.api.processing.IExecutionVisitor;
 import org.eclipse.dawnsci.analysis.api.processing.IOperation;
@@ -23,6 +33,9 @@ import org.eclipse.january.dataset.IDataset;
 import org.eclipse.january.dataset.IDynamicDataset;
 import org.eclipse.january.dataset.Slice;
 
+import uk.ac.diamond.scisoft.analysis.processing.IPointwiseOperation.Kernel;
+import uk.ac.diamond.scisoft.analysis.processing.OperationContextImpl;
+import uk.ac.diamond.scisoft.analysis.processing.IThreadLocalOperation;
 import uk.ac.diamond.scisoft.analysis.processing.metadata.OperationMetadataImpl;
 
 /**
@@ -49,6 +62,8 @@ public class SeriesRunner implements IOperationRunner {
 	@Override
 	public void execute() throws Exception {
 		final IExecutionVisitor visitor = context.getVisitor() ==null ? new IExecutionVisitor.Stub() : context.getVisitor();
+		final IOperation<?,?>[] series = context.getSeries();
+		final int[] runs = PointwiseFusion.findRuns(series);
 
 		// determine data axes to populate origin metadata
 		SourceInformation ssource = null; 
@@ -61,11 +76,40 @@ public class SeriesRunner implements IOperationRunner {
 		
 		final SourceInformation finalSource = ssource;
 		
+		final OrderedStage[] stages = context.getExecutionType() == ExecutionType.PARALLEL ? createStages(series) : null;
+		final OperationMetrics metrics = context instanceof OperationContextImpl ? ((OperationContextImpl) context).getMetrics() : null;
+		if (metrics != null) metrics.init(series);
+
 		// Create the slice visitor
-		SliceVisitor sv = new SliceVisitor() {
+		class FrameVisitor implements SliceVisitor {
 
 			@Override
 			public void visit(IDataset slice) throws Exception {
+				visit(slice, -1);
+			}
+
+			/**
+			 * @param slice
+			 * @param frame position of slice in iteration, used to pass ordered stages in frame order
+			 * @throws Exception
+			 */
+			public void visit(IDataset slice, long frame) throws Exception {
+				boolean[] passed = stages == null ? null : new boolean[stages.length];
+				try {
+					process(slice, frame, passed);
+				} finally {
+					if (passed != null) {
+						// let later frames through stages this one did not reach
+						for (int k = 0; k < stages.length; k++) {
+							if (stages[k] != null && !passed[k]) {
+								stages[k].skip(frame);
+							}
+						}
+					}
+				}
+			}
+
+			private void process(IDataset slice, long frame, boolean[] passed) throws Exception {
 
 				List<SliceFromSeriesMetadata> meta = slice.getMetadata(SliceFromSeriesMetadata.class);
 				SliceFromSeriesMetadata ssm = meta!=null && meta.size()>0 ? meta.get(0) : null;
@@ -96,7 +140,14 @@ public class SeriesRunner implements IOperationRunner {
 				
 				OperationData  data = new OperationData(slice, (Serializable[]) null);
 				long start = System.currentTimeMillis();
-				for (IOperation<?,?> i : context.getSeries()) {
+				int runEnd = 0;
+				for (int k = 0; k < series.length; k++) {
+
+					// fuse the rest of a run when the frame allows it
+					if (runs[k] > 0) runEnd = runs[k];
+					Kernel[] kernels = runEnd - k > 1 ? PointwiseFusion.getKernels(series, k, runEnd, data.getData()) : null;
+					if (kernels != null) k = runEnd - 1;
+					IOperation<?,?> i = series[k];
 
 					OperationMetadataImpl operationMeta = new OperationMetadataImpl(outputFile, context.getSeries(), i);
 					data.getData().setMetadata(operationMeta);
@@ -117,7 +168,34 @@ public class SeriesRunner implements IOperationRunner {
 						
 					}
 
-					OperationData tmp = i.execute(data.getData(), context.getMonitor());
+					OperationData tmp;
+					final boolean gated = kernels == null && passed != null && stages[k] != null;
+					if (gated && !stages[k].enter(frame, context.getParallelTimeout())) {
+						throw new OperationException(i, "Timed out waiting for earlier frames before frame " + frame);
+					}
+					try {
+						long wall = 0, cpu = 0, bytes = 0;
+						if (metrics != null) {
+							wall = System.nanoTime();
+							cpu = OperationMetrics.getCpuTime();
+							bytes = OperationMetrics.getAllocatedBytes();
+						}
+						if (kernels != null) {
+							tmp = PointwiseFusion.execute(kernels, data.getData());
+						} else {
+							tmp = i.execute(data.getData(), context.getMonitor());
+						}
+						if (metrics != null) {
+							// fused runs are recorded against their first operation
+							metrics.record(kernels == null ? k : k + 1 - kernels.length, System.nanoTime() - wall,
+									OperationMetrics.getCpuTime() - cpu, OperationMetrics.getAllocatedBytes() - bytes, tmp);
+						}
+					} finally {
+						if (gated) {
+							stages[k].leave(frame);
+							passed[k] = true;
+						}
+					}
 					//TODO only set metadata if doesnt already contain it!
 					//TODO continue if null;
 					if (tmp == null || tmp.getData() == null) {
@@ -150,7 +228,9 @@ public class SeriesRunner implements IOperationRunner {
 			public boolean isCancelled() {
 				return context.getMonitor()!=null ? context.getMonitor().isCancelled() : false;
 			}
-		};
+		}
+
+		final FrameVisitor sv = new FrameVisitor();
 
 		visitor.init(context.getSeries(), context.getData());
 		long start = System.currentTimeMillis();
@@ -168,14 +248,151 @@ public class SeriesRunner implements IOperationRunner {
 		if (context.getExecutionType()==ExecutionType.SERIES) {
 			Slicer.visit(iterator,sv);
 		} else if (context.getExecutionType()==ExecutionType.PARALLEL) {
-			Slicer.visitParallel(iterator,sv,context.getNumberOfCores());
+			if (stages == null) {
+				Slicer.visitParallel(iterator,sv,context.getNumberOfCores());
+			} else {
+				visitOrdered(iterator, sv::visit, sv::isCancelled);
+			}
 		} else {
 			throw new OperationException(context.getSeries()[0], "The edges are needed to execute a graph using ptolemy!");
 		}
 		logger.debug("Data ran in: " +(System.currentTimeMillis()-start)/1000. + " s");
+		if (metrics != null) logger.info("Operation metrics:\n{}", metrics);
 		
 	}
 
+	/**
+	 * An operation is run one frame at a time in frame order unless it is atomic or only
+	 * keeps thread-local state
+	 * @param op
+	 * @return true if operation must see frames in order
+	 */
+	public static boolean isOrdered(IOperation<?, ?> op) {
+		return op.getClass().getAnnotation(Atomic.class) == null && !(op instanceof IThreadLocalOperation);
+	}
+
+	/**
+	 * @param series
+	 * @return stages for ordered operations or null if there are none
+	 */
+	private static OrderedStage[] createStages(IOperation<?, ?>[] series) {
+		OrderedStage[] stages = new OrderedStage[series.length];
+		boolean any = false;
+		for (int i = 0; i < series.length; i++) {
+			if (isOrdered(series[i])) {
+				stages[i] = new OrderedStage();
+				any = true;
+			}
+		}
+		return any ? stages : null;
+	}
+
+	/**
+	 * Lets frames through one at a time in frame order
+	 */
+	private static class OrderedStage {
+		private long next = 0;
+		private final Set<Long> skipped = new HashSet<>();
+
+		/**
+		 * Wait until all earlier frames have left or skipped stage
+		 * @param frame
+		 * @param timeout in milliseconds, no limit if not positive
+		 * @return false if timed out
+		 * @throws InterruptedException
+		 */
+		public synchronized boolean enter(long frame, long timeout) throws InterruptedException {
+			long remaining = timeout;
+			while (next < frame) {
+				if (timeout <= 0) {
+					wait();
+				} else if (remaining <= 0) {
+					return false;
+				} else {
+					long start = System.currentTimeMillis();
+					wait(remaining);
+					remaining -= System.currentTimeMillis() - start;
+				}
+			}
+			return true;
+		}
+
+		public synchronized void leave(long frame) {
+			next = frame + 1;
+			advance();
+		}
+
+		/**
+		 * Let later frames through without this frame entering stage
+		 * @param frame
+		 */
+		public synchronized void skip(long frame) {
+			if (frame == next) {
+				next++;
+				advance();
+			} else if (frame > next) {
+				skipped.add(frame);
+			}
+		}
+
+		private void advance() {
+			while (skipped.remove(next)) {
+				next++;
+			}
+			notifyAll();
+		}
+	}
+
+	private interface FrameTask {
+		public void visit(IDataset slice, long frame) throws Exception;
+	}
+
+	/**
+	 * Visit slices concurrently. Slices are read in order and handed to a fixed pool of threads
+	 * in that order so the earliest frame in flight can always pass through the ordered stages
+	 * @param iterator
+	 * @param task
+	 * @param cancelled
+	 * @throws Exception
+	 */
+	private void visitOrdered(ISliceViewIterator iterator, FrameTask task, BooleanSupplier cancelled) throws Exception {
+		final int cores = Math.max(1, context.getNumberOfCores());
+		final AtomicInteger count = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(cores, r -> {
+			Thread t = new Thread(r, "Series runner " + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+
+		final Semaphore inFlight = new Semaphore(2 * cores);
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+		long frame = 0;
+		try {
+			while (failure.get() == null && !cancelled.getAsBoolean() && iterator.hasNext()) {
+				final IDataset slice = iterator.next().getSlice();
+				final long f = frame++;
+				inFlight.acquire();
+				pool.execute(() -> {
+					try {
+						task.visit(slice, f);
+					} catch (Exception e) {
+						logger.error("Could not process frame {}", f, e);
+						failure.compareAndSet(null, e);
+					} finally {
+						inFlight.release();
+					}
+				});
+			}
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+	}
+
 	@Override
 	public ExecutionType[] getExecutionTypes() {
 		return new ExecutionType[]{ExecutionType.SERIES, ExecutionType.PARALLEL};
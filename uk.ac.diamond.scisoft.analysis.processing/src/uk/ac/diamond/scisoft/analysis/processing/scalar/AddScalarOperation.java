@@ -13,8 +13,10 @@ import org.eclipse.dawnsci.analysis.api.processing.Atomic;
 import org.eclipse.january.dataset.DatasetUtils;
 import org.eclipse.january.dataset.IDataset;
 
+import uk.ac.diamond.scisoft.analysis.processing.IPointwiseOperation;
+
 @Atomic
-public class AddScalarOperation extends AbstractScalarMathsOperation<ScalarModel> {
+public class AddScalarOperation extends AbstractScalarMathsOperation<ScalarModel> implements IPointwiseOperation {
 
 	@Override
 	public String getId() {
@@ -30,4 +32,19 @@ public class AddScalarOperation extends AbstractScalarMathsOperation<ScalarModel
 		return output;
 	}
 
+	@Override
+	public Kernel getKernel(IDataset frame) {
+		final double value = model.getValue();
+		return new Kernel() {
+			@Override
+			public void apply(int index, double[] ve, boolean errors) {
+				ve[0] += value;
+			}
+
+			@Override
+			public boolean hasErrors(boolean errors) {
+				return errors;
+			}
+		};
+	}
 }
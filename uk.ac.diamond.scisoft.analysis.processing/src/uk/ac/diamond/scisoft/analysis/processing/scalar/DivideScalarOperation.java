@@ -14,10 +14,12 @@ import org.eclipse.january.dataset.DatasetFactory;
 import org.eclipse.january.dataset.DatasetUtils;
 import org.eclipse.january.dataset.IDataset;
 
+import uk.ac.diamond.scisoft.analysis.processing.IPointwiseOperation;
 import uk.ac.diamond.scisoft.analysis.utils.ErrorPropagationUtils;
+import uk.ac.diamond.scisoft.analysis.utils.SimpleUncertaintyPropagationMath;
 
 @Atomic
-public class DivideScalarOperation extends AbstractScalarMathsOperation<ScalarModel> {
+public class DivideScalarOperation extends AbstractScalarMathsOperation<ScalarModel> implements IPointwiseOperation {
 
 	@Override
 	public String getId() {
@@ -29,4 +31,23 @@ public class DivideScalarOperation extends AbstractScalarMathsOperation<ScalarMo
 		return ErrorPropagationUtils.divideWithUncertainty(DatasetUtils.convertToDataset(data), DatasetFactory.createFromObject(value));
 	}
 
+	@Override
+	public Kernel getKernel(IDataset frame) {
+		final double value = model.getValue();
+		return new Kernel() {
+			@Override
+			public void apply(int index, double[] ve, boolean errors) {
+				if (errors) {
+					SimpleUncertaintyPropagationMath.divide(ve[0], value, ve[1], ve);
+				} else {
+					ve[0] = ve[0] / value;
+				}
+			}
+
+			@Override
+			public boolean hasErrors(boolean errors) {
+				return errors;
+			}
+		};
+	}
 }
@@ -13,8 +13,10 @@ import org.eclipse.dawnsci.analysis.api.processing.Atomic;
 import org.eclipse.january.dataset.DatasetUtils;
 import org.eclipse.january.dataset.IDataset;
 
+import uk.ac.diamond.scisoft.analysis.processing.IPointwiseOperation;
+
 @Atomic
-public class SubtractScalarOperation extends AbstractScalarMathsOperation<ScalarModel> {
+public class SubtractScalarOperation extends AbstractScalarMathsOperation<ScalarModel> implements IPointwiseOperation {
 
 	@Override
 	public String getId() {
@@ -31,4 +33,19 @@ public class SubtractScalarOperation extends AbstractScalarMathsOperation<Scalar
 
 	}
 
+	@Override
+	public Kernel getKernel(IDataset frame) {
+		final double value = model.getValue();
+		return new Kernel() {
+			@Override
+			public void apply(int index, double[] ve, boolean errors) {
+				ve[0] -= value;
+			}
+
+			@Override
+			public boolean hasErrors(boolean errors) {
+				return errors;
+			}
+		};
+	}
 }
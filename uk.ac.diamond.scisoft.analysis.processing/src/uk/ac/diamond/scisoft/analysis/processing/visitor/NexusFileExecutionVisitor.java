@@ -68,6 +68,8 @@ import uk.ac.diamond.scisoft.analysis.io.Utils;
 import uk.ac.diamond.scisoft.analysis.processing.Activator;
 import uk.ac.diamond.scisoft.analysis.processing.IFlushMonitor;
 import uk.ac.diamond.scisoft.analysis.processing.LocalServiceManager;
+import uk.ac.diamond.scisoft.analysis.processing.runner.OperationMetrics;
+import uk.ac.diamond.scisoft.analysis.processing.runner.OperationMetrics.Stats;
 
 public class NexusFileExecutionVisitor implements IExecutionVisitor, ISavesToFile {
 	
@@ -87,6 +89,7 @@ public class NexusFileExecutionVisitor implements IExecutionVisitor, ISavesToFil
 	private static final String LIVE = "live";
 	private static final String FINISHED = "finished";
 	public static final String DATA_NAME = "data";
+	public static final String METRICS_NOTE = "metrics";
 
 	private Map<IOperation<?, ?>, AtomicBoolean> firstNotifyMap;
 	private Map<IOperation<?, ?>, Integer> positionMap;
@@ -105,6 +108,7 @@ public class NexusFileExecutionVisitor implements IExecutionVisitor, ISavesToFil
 	
 	private boolean swmring = false;
 	private String templatePath;
+	private OperationMetrics metrics;
 
 	private final static Logger logger = LoggerFactory.getLogger(NexusFileExecutionVisitor.class);
 	
@@ -853,11 +857,72 @@ public class NexusFileExecutionVisitor implements IExecutionVisitor, ISavesToFil
 		}
 	}
 
+	/**
+	 * @param metrics if not null, written as a note in the process group when closed. This is
+	 * skipped when writing in SWMR mode as no groups or datasets can be created once that has
+	 * started (the runner logs the metrics instead)
+	 */
+	public void setMetrics(OperationMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Write per-operation metrics as an NXnote
+	 */
+	private void writeMetrics() {
+		try {
+			GroupNode g = requireNXclass(Tree.ROOT + ENTRY + Node.SEPARATOR + "process" + Node.SEPARATOR + METRICS_NOTE, NexusConstants.NOTE);
+			Stats[] stats = metrics.getStats();
+			String[] names = new String[stats.length];
+			long[][] values = new long[5][stats.length];
+			long[][] histograms = new long[stats.length][];
+			for (int i = 0; i < stats.length; i++) {
+				names[i] = stats[i].getName();
+				values[0][i] = stats[i].getCount();
+				values[1][i] = stats[i].getWallTime();
+				values[2][i] = stats[i].getCpuTime();
+				values[3][i] = stats[i].getAllocatedBytes();
+				values[4][i] = stats[i].getOutputBytes();
+				histograms[i] = stats[i].getHistogram();
+			}
+
+			String[] fields = {"count", "wall_time", "cpu_time", "allocated_bytes", "output_bytes"};
+			List<Dataset> datasets = new ArrayList<>();
+			datasets.add(DatasetFactory.createFromObject(METRICS_NOTE).reshape(1));
+			datasets.get(0).setName("name");
+			datasets.add(DatasetFactory.createFromObject("text/plain").reshape(1));
+			datasets.get(1).setName("type");
+			datasets.add(DatasetFactory.createFromObject(metrics.toString()).reshape(1));
+			datasets.get(2).setName("data");
+			datasets.add(DatasetFactory.createFromObject(names));
+			datasets.get(3).setName("operation");
+			for (int i = 0; i < fields.length; i++) {
+				Dataset d = DatasetFactory.createFromObject(values[i]);
+				d.setName(fields[i]);
+				datasets.add(d);
+			}
+			if (stats.length > 0) {
+				Dataset h = DatasetFactory.createFromObject(histograms);
+				h.setName("wall_time_histogram");
+				datasets.add(h);
+			}
+			for (Dataset d : datasets) {
+				nexusFile.createData(g, d);
+			}
+		} catch (Exception e) {
+			logger.error("Could not write operation metrics", e);
+		}
+	}
+
 	@Override
 	public void close() throws Exception {
 		
 		if (nexusFile != null) {
 			
+			if (metrics != null && !swmring) {
+				writeMetrics();
+			}
+			
 			if (swmring) {
 				DataNode dn = nexusFile.getData(Node.SEPARATOR + ENTRY + Node.SEPARATOR + LIVE + Node.SEPARATOR + FINISHED);
 				dn.getWriteableDataset().setSlice(null, DatasetFactory.ones(IntegerDataset.class, 1), new SliceND(dn.getWriteableDataset().getShape()));
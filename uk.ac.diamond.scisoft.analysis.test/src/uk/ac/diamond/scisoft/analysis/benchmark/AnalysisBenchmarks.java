@@ -0,0 +1,329 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.eclipse.dawnsci.analysis.api.diffraction.DetectorProperties;
+import org.eclipse.dawnsci.analysis.api.diffraction.DiffractionCrystalEnvironment;
+import org.eclipse.dawnsci.analysis.api.io.IDataHolder;
+import org.eclipse.dawnsci.analysis.api.metadata.IDiffractionMetadata;
+import org.eclipse.dawnsci.analysis.api.tree.GroupNode;
+import org.eclipse.dawnsci.analysis.dataset.roi.LinearROI;
+import org.eclipse.dawnsci.analysis.dataset.roi.RectangularROI;
+import org.eclipse.dawnsci.analysis.dataset.roi.SectorROI;
+import org.eclipse.dawnsci.hdf5.nexus.NexusFileHDF5;
+import org.eclipse.dawnsci.nexus.NexusFile;
+import org.eclipse.january.dataset.Dataset;
+import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DoubleDataset;
+import org.eclipse.january.dataset.IntegerDataset;
+
+import uk.ac.diamond.scisoft.analysis.diffraction.PixelSplitterBenchmark;
+import uk.ac.diamond.scisoft.analysis.diffraction.powder.IPixelIntegrationCache;
+import uk.ac.diamond.scisoft.analysis.diffraction.powder.PixelIntegration;
+import uk.ac.diamond.scisoft.analysis.diffraction.powder.PixelIntegrationBean;
+import uk.ac.diamond.scisoft.analysis.diffraction.powder.PixelIntegrationCache;
+import uk.ac.diamond.scisoft.analysis.fitting.functions.Add;
+import uk.ac.diamond.scisoft.analysis.fitting.functions.Gaussian;
+import uk.ac.diamond.scisoft.analysis.fitting.functions.Offset;
+import uk.ac.diamond.scisoft.analysis.io.DataHolder;
+import uk.ac.diamond.scisoft.analysis.io.DiffractionMetadata;
+import uk.ac.diamond.scisoft.analysis.io.LoaderFactory;
+import uk.ac.diamond.scisoft.analysis.io.TIFFImageSaver;
+import uk.ac.diamond.scisoft.analysis.optimize.ApacheOptimizer;
+import uk.ac.diamond.scisoft.analysis.optimize.ApacheOptimizer.Optimizer;
+import uk.ac.diamond.scisoft.analysis.roi.ROIProfile;
+import uk.ac.diamond.scisoft.analysis.roi.XAxis;
+
+/**
+ * Benchmarks of analysis hot paths on synthetic detector frames and generated files:
+ * pixel integration, Miller space pixel splitting, peak fitting, file loading and ROI profiles.
+ * <p>
+ * Run as a Java application with the bundle and its dependencies on the class path. Arguments are
+ * <pre>
+ *  [-o results.json] [-w warmup iterations] [-i iterations] [-t iteration time in ms] [regex]
+ * </pre>
+ * where the regular expression selects benchmarks by name. Results are written in JMH's JSON
+ * format (to "benchmark.json" by default).
+ */
+public class AnalysisBenchmarks {
+
+	private static final int SIZE = 1024;
+
+	private final Dataset frame;
+	private final File directory;
+
+	/**
+	 * @param directory for generated files
+	 */
+	public AnalysisBenchmarks(File directory) {
+		this.directory = directory;
+		frame = createFrame(SIZE, SIZE, 12357L);
+	}
+
+	/**
+	 * Create a detector frame of powder rings with Poisson-like noise
+	 * @param height
+	 * @param width
+	 * @param seed
+	 * @return frame
+	 */
+	public static Dataset createFrame(int height, int width, long seed) {
+		Random r = new Random(seed);
+		int[] values = new int[height * width];
+		double cy = height / 2.;
+		double cx = width / 2.;
+		int k = 0;
+		for (int i = 0; i < height; i++) {
+			for (int j = 0; j < width; j++) {
+				double d = Math.hypot(i - cy, j - cx) % 80 - 40;
+				double v = 50 + 1000 * Math.exp(-d * d / 18);
+				values[k++] = (int) Math.max(0, v + Math.sqrt(v) * r.nextGaussian());
+			}
+		}
+		return DatasetFactory.createFromObject(IntegerDataset.class, values, height, width);
+	}
+
+	private static IDiffractionMetadata createMetadata(int height, int width) {
+		DetectorProperties dp = new DetectorProperties(200, width / 2., height / 2., height, width, 0.172, 0.172);
+		return new DiffractionMetadata("benchmark", dp, new DiffractionCrystalEnvironment(1.0));
+	}
+
+	/**
+	 * Add benchmarks to runner, generating any files needed
+	 * @param runner
+	 * @throws Exception
+	 */
+	public void addAll(BenchmarkRunner runner) throws Exception {
+		addPixelIntegration(runner);
+		addPixelSplitting(runner);
+		addFitting(runner);
+		addLoading(runner);
+		addROIProfiles(runner);
+	}
+
+	private void addPixelIntegration(BenchmarkRunner runner) {
+		final IDiffractionMetadata md = createMetadata(SIZE, SIZE);
+		for (final boolean split : new boolean[] {false, true}) {
+			final PixelIntegrationBean bean = new PixelIntegrationBean();
+			bean.setAzimuthalIntegration(true);
+			bean.setUsePixelSplitting(split);
+			bean.setNumberOfBinsRadial(1000);
+			bean.setxAxis(XAxis.Q);
+			String kind = split ? "splitting" : "nonSplitting";
+			runner.add("PixelIntegration.cache." + kind, () -> new PixelIntegrationCache(md, bean));
+
+			final IPixelIntegrationCache cache = new PixelIntegrationCache(md, bean);
+			runner.add("PixelIntegration.integrate." + kind, () -> PixelIntegration.integrate(frame, null, cache));
+
+			final PixelIntegrationBean cake = bean.clone();
+			cake.setTo1D(false);
+			cake.setNumberOfBinsAzimuthal(360);
+			final IPixelIntegrationCache cakeCache = new PixelIntegrationCache(md, cake);
+			runner.add("PixelIntegration.cake." + kind, () -> PixelIntegration.integrate(frame, null, cakeCache));
+		}
+	}
+
+	private void addPixelSplitting(BenchmarkRunner runner) {
+		for (String s : new String[] {"nearest", "inverse", "gaussian"}) {
+			runner.add("MillerSpaceMapper.split." + s, new PixelSplitterBenchmark(s, 0.5, 128, 100000));
+		}
+	}
+
+	private void addFitting(BenchmarkRunner runner) {
+		final DoubleDataset x = DatasetFactory.createRange(DoubleDataset.class, 0, 50, 0.1);
+		Add truth = new Add();
+		truth.addFunction(new Gaussian(23.7, 4.2, 120));
+		truth.addFunction(new Offset(3.5));
+		final DoubleDataset y = truth.calculateValues(x);
+		Random r = new Random(12357L);
+		for (int i = 0; i < y.getSize(); i++) {
+			y.setAbs(i, y.getAbs(i) + 0.2 * r.nextGaussian());
+		}
+
+		for (final Optimizer o : new Optimizer[] {Optimizer.LEVENBERG_MARQUARDT, Optimizer.SIMPLEX_NM, Optimizer.BOBYQA}) {
+			runner.add("ApacheOptimizer.fit." + o, () -> {
+				Gaussian g = new Gaussian(25, 3, 100);
+				g.getParameter(0).setLimits(0, 50);
+				g.getParameter(1).setLimits(0, 20);
+				g.getParameter(2).setLimits(0, 1000);
+				Offset off = new Offset(0);
+				off.getParameter(0).setLimits(-10, 10);
+				Add f = new Add();
+				f.addFunction(g);
+				f.addFunction(off);
+				new ApacheOptimizer(o, 12357L).optimize(new DoubleDataset[] {x}, y, f);
+				return f;
+			});
+		}
+	}
+
+	private void addLoading(BenchmarkRunner runner) throws Exception {
+		File nexus = new File(directory, "benchmark.nxs");
+		try (NexusFile file = NexusFileHDF5.createNexusFile(nexus.getAbsolutePath())) {
+			GroupNode group = file.getGroup("/entry/data", true);
+			Dataset stack = DatasetFactory.zeros(IntegerDataset.class, 4, SIZE, SIZE);
+			for (int i = 0; i < 4; i++) {
+				stack.setSlice(createFrame(SIZE, SIZE, i), new int[] {i, 0, 0}, new int[] {i + 1, SIZE, SIZE}, null);
+			}
+			stack.setName("data");
+			file.createData(group, stack);
+		}
+		addLoad(runner, "nexus", nexus, "/entry/data/data");
+
+		File tiff = new File(directory, "benchmark.tif");
+		DataHolder dh = new DataHolder();
+		dh.addDataset("image", frame);
+		new TIFFImageSaver(tiff.getAbsolutePath(), 32).saveFile(dh);
+		addLoad(runner, "tiff", tiff, null);
+
+		File cbf = new File(directory, "benchmark.cbf");
+		writeCBF(cbf, frame);
+		addLoad(runner, "cbf", cbf, null);
+	}
+
+	private static void addLoad(BenchmarkRunner runner, String kind, File file, final String name) {
+		final String path = file.getAbsolutePath();
+		runner.add("LoaderFactory.load." + kind, () -> {
+			LoaderFactory.clear(path);
+			IDataHolder h = LoaderFactory.getData(path, false, false, false, null);
+			return name == null ? h.getLazyDataset(0).getSlice() : h.getLazyDataset(name).getSlice();
+		});
+	}
+
+	/**
+	 * Write a frame as a mini-CBF file with byte-offset compression, as written by Pilatus detectors
+	 * @param file
+	 * @param image 2D integer data
+	 * @throws IOException
+	 */
+	public static void writeCBF(File file, Dataset image) throws IOException {
+		int[] shape = image.getShapeRef();
+		int n = image.getSize();
+
+		ByteArrayOutputStream data = new ByteArrayOutputStream(n + 1024);
+		int previous = 0;
+		for (int i = 0; i < n; i++) {
+			int v = image.getElementLongAbs(i) > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) image.getElementLongAbs(i);
+			long delta = (long) v - previous;
+			if (delta >= -127 && delta <= 127) {
+				data.write((int) delta);
+			} else {
+				data.write(0x80);
+				if (delta >= -32767 && delta <= 32767) {
+					writeLittleEndian(data, delta, 2);
+				} else {
+					writeLittleEndian(data, 0x8000, 2);
+					writeLittleEndian(data, delta, 4);
+				}
+			}
+			previous = v;
+		}
+
+		String eol = "\r\n";
+		StringBuilder header = new StringBuilder();
+		header.append("###CBF: VERSION 1.5").append(eol);
+		header.append(eol);
+		header.append("data_benchmark").append(eol);
+		header.append(eol);
+		header.append("_array_data.data").append(eol);
+		header.append(";").append(eol);
+		header.append("--CIF-BINARY-FORMAT-SECTION--").append(eol);
+		header.append("Content-Type: application/octet-stream;").append(eol);
+		header.append("     conversions=\"x-CBF_BYTE_OFFSET\"").append(eol);
+		header.append("Content-Transfer-Encoding: BINARY").append(eol);
+		header.append("X-Binary-Size: ").append(data.size()).append(eol);
+		header.append("X-Binary-ID: 1").append(eol);
+		header.append("X-Binary-Element-Type: \"signed 32-bit integer\"").append(eol);
+		header.append("X-Binary-Element-Byte-Order: LITTLE_ENDIAN").append(eol);
+		header.append("X-Binary-Number-of-Elements: ").append(n).append(eol);
+		header.append("X-Binary-Size-Fastest-Dimension: ").append(shape[1]).append(eol);
+		header.append("X-Binary-Size-Second-Dimension: ").append(shape[0]).append(eol);
+		header.append("X-Binary-Size-Padding: 4095").append(eol);
+		header.append(eol);
+
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+			out.write(header.toString().getBytes(StandardCharsets.US_ASCII));
+			out.write(new byte[] {0x0c, 0x1a, 0x04, (byte) 0xd5});
+			data.writeTo(out);
+			out.write(new byte[4095]);
+			out.write((eol + "--CIF-BINARY-FORMAT-SECTION----" + eol + ";" + eol + eol).getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+
+	private static void writeLittleEndian(ByteArrayOutputStream out, long value, int bytes) {
+		for (int i = 0; i < bytes; i++) {
+			out.write((int) (value >> (8 * i)));
+		}
+	}
+
+	private void addROIProfiles(BenchmarkRunner runner) {
+		final Dataset data = frame;
+		final LinearROI line = new LinearROI(new double[] {10, 20}, new double[] {SIZE - 30, SIZE - 10});
+		runner.add("ROIProfile.line", () -> ROIProfile.line(data, line, 1.0));
+
+		final RectangularROI box = new RectangularROI(100, 150, 600, 400, Math.PI / 7);
+		runner.add("ROIProfile.box", () -> ROIProfile.box(data, box));
+
+		final SectorROI sector = new SectorROI(SIZE / 2., SIZE / 2., 50, 450, -Math.PI / 4, Math.PI / 3);
+		runner.add("ROIProfile.sector", () -> ROIProfile.sector(data, null, sector, true, true, false));
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		File output = new File("benchmark.json");
+		Pattern filter = null;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-o":
+				output = new File(args[++i]);
+				break;
+			case "-w":
+				runner.setWarmupIterations(Integer.parseInt(args[++i]));
+				break;
+			case "-i":
+				runner.setIterations(Integer.parseInt(args[++i]));
+				break;
+			case "-t":
+				runner.setIterationTime(Long.parseLong(args[++i]));
+				break;
+			default:
+				filter = Pattern.compile(args[i]);
+			}
+		}
+
+		File directory = Files.createTempDirectory("benchmark").toFile();
+		try {
+			new AnalysisBenchmarks(directory).addAll(runner);
+			List<BenchmarkRunner.Result> results = runner.run(filter);
+			runner.writeJson(results, output);
+			System.out.println("Results written to " + output.getAbsolutePath());
+		} finally {
+			File[] files = directory.listFiles();
+			if (files != null) {
+				for (File f : files) {
+					f.delete();
+				}
+			}
+			directory.delete();
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Pattern;
+
+import org.apache.commons.math3.distribution.TDistribution;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Minimal benchmark harness that measures average time per operation in the manner of JMH:
+ * each benchmark runs for a number of timed warm-up iterations then measurement iterations,
+ * where an iteration calls the task repeatedly until a given time has elapsed.
+ * <p>
+ * Results are written as JSON in the layout used by JMH's JSON result format, so runs from
+ * different commits can be compared with the same tools.
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Benchmarked code. Its return value is consumed so the work cannot be optimised away
+	 */
+	public interface Task {
+		public Object run() throws Exception;
+	}
+
+	/**
+	 * Measurements of one benchmark
+	 */
+	public static class Result {
+		private final String name;
+		private final double[] raw;
+
+		Result(String name, double[] raw) {
+			this.name = name;
+			this.raw = raw;
+		}
+
+		/**
+		 * @return name of benchmark
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return nanoseconds per operation in each measurement iteration
+		 */
+		public double[] getRawData() {
+			return raw.clone();
+		}
+
+		/**
+		 * @return mean nanoseconds per operation
+		 */
+		public double getScore() {
+			double s = 0;
+			for (double r : raw) {
+				s += r;
+			}
+			return s / raw.length;
+		}
+
+		/**
+		 * @return half-width of 99.9% confidence interval of score or NaN if too few iterations
+		 */
+		public double getScoreError() {
+			int n = raw.length;
+			if (n < 2) {
+				return Double.NaN;
+			}
+			double m = getScore();
+			double v = 0;
+			for (double r : raw) {
+				v += (r - m) * (r - m);
+			}
+			double t = new TDistribution(n - 1).inverseCumulativeProbability(1 - 0.0005);
+			return t * Math.sqrt(v / (n - 1) / n);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-50s %15.1f +- %12.1f ns/op", name, getScore(), getScoreError());
+		}
+	}
+
+	private static volatile int sink;
+
+	private final Map<String, Task> tasks = new LinkedHashMap<>();
+	private int warmupIterations = 3;
+	private int iterations = 5;
+	private long iterationTime = 1000;
+
+	/**
+	 * @param warmupIterations number of iterations before measurement
+	 */
+	public void setWarmupIterations(int warmupIterations) {
+		this.warmupIterations = warmupIterations;
+	}
+
+	/**
+	 * @param iterations number of measured iterations
+	 */
+	public void setIterations(int iterations) {
+		this.iterations = Math.max(1, iterations);
+	}
+
+	/**
+	 * @param iterationTime minimum duration of each iteration in milliseconds
+	 */
+	public void setIterationTime(long iterationTime) {
+		this.iterationTime = iterationTime;
+	}
+
+	/**
+	 * Add benchmark
+	 * @param name
+	 * @param task
+	 */
+	public void add(String name, Task task) {
+		tasks.put(name, task);
+	}
+
+	/**
+	 * Run benchmarks whose names match filter
+	 * @param filter can be null to run all
+	 * @return results
+	 * @throws Exception
+	 */
+	public List<Result> run(Pattern filter) throws Exception {
+		List<Result> results = new ArrayList<>();
+		for (Entry<String, Task> e : tasks.entrySet()) {
+			String name = e.getKey();
+			if (filter != null && !filter.matcher(name).find()) {
+				continue;
+			}
+
+			Task task = e.getValue();
+			for (int i = 0; i < warmupIterations; i++) {
+				iterate(task);
+			}
+			double[] raw = new double[iterations];
+			for (int i = 0; i < iterations; i++) {
+				raw[i] = iterate(task);
+			}
+			Result r = new Result(name, raw);
+			System.out.println(r);
+			results.add(r);
+		}
+		return results;
+	}
+
+	/**
+	 * @param task
+	 * @return nanoseconds per operation
+	 * @throws Exception
+	 */
+	private double iterate(Task task) throws Exception {
+		long end = iterationTime * 1000000;
+		long ops = 0;
+		long start = System.nanoTime();
+		long time;
+		do {
+			Object o = task.run();
+			sink ^= System.identityHashCode(o);
+			ops++;
+			time = System.nanoTime() - start;
+		} while (time < end);
+		return time / (double) ops;
+	}
+
+	/**
+	 * Write results in JMH's JSON format
+	 * @param results
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeJson(List<Result> results, File file) throws IOException {
+		List<Map<String, Object>> list = new ArrayList<>();
+		for (Result r : results) {
+			Map<String, Object> m = new LinkedHashMap<>();
+			m.put("benchmark", r.getName());
+			m.put("mode", "avgt");
+			m.put("threads", 1);
+			m.put("forks", 1);
+			m.put("jvm", System.getProperty("java.home"));
+			m.put("jdkVersion", System.getProperty("java.version"));
+			m.put("vmName", System.getProperty("java.vm.name"));
+			m.put("vmVersion", System.getProperty("java.vm.version"));
+			m.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version"));
+			m.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+			m.put("warmupIterations", warmupIterations);
+			m.put("warmupTime", iterationTime + " ms");
+			m.put("measurementIterations", iterations);
+			m.put("measurementTime", iterationTime + " ms");
+
+			Map<String, Object> p = new LinkedHashMap<>();
+			double score = r.getScore();
+			double error = r.getScoreError();
+			p.put("score", score);
+			p.put("scoreError", Double.isNaN(error) ? "NaN" : error);
+			p.put("scoreConfidence", Double.isNaN(error) ? new double[] {score, score} : new double[] {score - error, score + error});
+			double[] sorted = r.getRawData();
+			Arrays.sort(sorted);
+			Map<String, Object> percentiles = new LinkedHashMap<>();
+			percentiles.put("0.0", sorted[0]);
+			percentiles.put("50.0", sorted[sorted.length / 2]);
+			percentiles.put("100.0", sorted[sorted.length - 1]);
+			p.put("scorePercentiles", percentiles);
+			p.put("scoreUnit", "ns/op");
+			p.put("rawData", new double[][] {r.getRawData()});
+			m.put("primaryMetric", p);
+			m.put("secondaryMetrics", new LinkedHashMap<>());
+			list.add(m);
+		}
+
+		new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, list);
+	}
+}
@@ -0,0 +1,76 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.benchmark;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.eclipse.january.dataset.Dataset;
+import org.eclipse.january.dataset.DatasetUtils;
+import org.eclipse.january.dataset.IntegerDataset;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import uk.ac.diamond.scisoft.analysis.io.CBFLoader;
+
+public class BenchmarkRunnerTest {
+
+	@Test
+	public void testRunAndWrite() throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		runner.setWarmupIterations(1);
+		runner.setIterations(3);
+		runner.setIterationTime(20);
+		runner.add("sum", () -> {
+			double s = 0;
+			for (int i = 0; i < 1000; i++) {
+				s += Math.sqrt(i);
+			}
+			return s;
+		});
+		runner.add("skipped", () -> null);
+
+		List<BenchmarkRunner.Result> results = runner.run(Pattern.compile("^sum$"));
+		assertEquals(1, results.size());
+		assertEquals(3, results.get(0).getRawData().length);
+		assertTrue(results.get(0).getScore() > 0);
+
+		File file = File.createTempFile("benchmark", ".json");
+		file.deleteOnExit();
+		runner.writeJson(results, file);
+		JsonNode json = new ObjectMapper().readTree(file);
+		assertEquals(1, json.size());
+		assertEquals("sum", json.get(0).get("benchmark").asText());
+		assertEquals("ns/op", json.get(0).get("primaryMetric").get("scoreUnit").asText());
+		assertEquals(3, json.get(0).get("primaryMetric").get("rawData").get(0).size());
+	}
+
+	@Test
+	public void testWriteCBF() throws Exception {
+		Dataset frame = AnalysisBenchmarks.createFrame(64, 48, 1);
+		frame.setItem(100000, 3, 4);
+		frame.setItem(0, 3, 5);
+
+		File file = File.createTempFile("benchmark", ".cbf");
+		file.deleteOnExit();
+		AnalysisBenchmarks.writeCBF(file, frame);
+
+		Dataset loaded = DatasetUtils.convertToDataset(new CBFLoader(file.getAbsolutePath()).loadFile().getDataset(0));
+		assertArrayEquals(frame.getShape(), loaded.getShape());
+		assertArrayEquals((int[]) frame.getBuffer(), (int[]) DatasetUtils.cast(IntegerDataset.class, loaded).getBuffer());
+	}
+}
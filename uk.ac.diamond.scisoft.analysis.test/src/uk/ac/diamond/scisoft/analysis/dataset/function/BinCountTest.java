@@ -17,8 +17,13 @@ import java.util.List;
 
 import org.eclipse.january.dataset.Dataset;
 import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DatasetUtils;
+import org.eclipse.january.dataset.IntegerDataset;
 import org.eclipse.january.dataset.LongDataset;
 import org.eclipse.january.dataset.Maths;
+import org.eclipse.january.dataset.Random;
+import org.eclipse.january.dataset.ShortDataset;
+import org.eclipse.january.dataset.Slice;
 import org.junit.Test;
 
 public class BinCountTest {
@@ -96,4 +101,17 @@ public class BinCountTest {
 
 		assertNull(checkBinCount(input, 0, DatasetFactory.ones(3)));
 	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testLargeBinCount() {
+		Random.seed(4123);
+		Dataset values = Random.randint(0, 4096, new int[] {2 << 20});
+		for (Class<? extends Dataset> clazz : new Class[] {ShortDataset.class, IntegerDataset.class, LongDataset.class}) {
+			Dataset view = DatasetUtils.cast(clazz, values).getSliceView(new Slice(null, null, 2));
+			Dataset c = checkBinCount(view.getSlice(), 0, null);
+			assertDatasetEquals(checkBinCount(view, 0, null), c);
+			assertEquals(view.getSize(), ((Number) c.sum()).intValue());
+		}
+	}
 }
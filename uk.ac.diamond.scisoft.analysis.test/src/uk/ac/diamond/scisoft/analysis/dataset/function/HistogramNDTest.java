@@ -21,6 +21,7 @@ import org.eclipse.january.dataset.DatasetFactory;
 import org.eclipse.january.dataset.DatasetUtils;
 import org.eclipse.january.dataset.DoubleDataset;
 import org.eclipse.january.dataset.IntegerDataset;
+import org.eclipse.january.dataset.Maths;
 import org.eclipse.january.dataset.Random;
 import org.junit.Before;
 import org.junit.Test;
@@ -441,4 +442,21 @@ public class HistogramNDTest {
 		assertEquals(32 / 2, h.sum(1, true).argMax(true));
 		assertEquals(10 / 2 - 1, h.sum(0, true).argMax(true));
 	}
+
+	@Test
+	public void testLargeHistogram2D() {
+		Random.seed(7121);
+		Dataset xy = Maths.floor(Random.randn(1 << 20, 2).imultiply(1000));
+		Dataset ixy = DatasetUtils.cast(IntegerDataset.class, xy); // counted through iterator
+
+		HistogramND hnd = new HistogramND(64, 32);
+		hnd.setBinEdges(DatasetFactory.createLinearSpace(DoubleDataset.class, -3000, 3000, 65),
+				DatasetFactory.createFromObject(new double[] {-4000, -100, 0, 50, 2000}));
+		assertDatasetEquals(hnd.value(ixy).get(0), hnd.value(xy).get(0));
+
+		hnd.setIgnoreOutliers(false);
+		Dataset h = hnd.value(xy).get(0);
+		assertDatasetEquals(hnd.value(ixy).get(0), h);
+		assertEquals(xy.getShapeRef()[0], ((Number) h.sum()).intValue());
+	}
 }
@@ -9,12 +9,21 @@
 
 package uk.ac.diamond.scisoft.analysis.dataset.function;
 
+import static org.eclipse.january.asserts.TestUtils.assertDatasetEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.util.Arrays;
+
 import org.eclipse.january.dataset.Dataset;
 import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DatasetUtils;
 import org.eclipse.january.dataset.DoubleDataset;
+import org.eclipse.january.dataset.FloatDataset;
 import org.eclipse.january.dataset.IntegerDataset;
+import org.eclipse.january.dataset.Maths;
+import org.eclipse.january.dataset.Random;
+import org.eclipse.january.dataset.ShortDataset;
+import org.eclipse.january.dataset.Slice;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -307,4 +316,60 @@ public class HistogramTest {
 
 		System.out.printf("H = %s, %sms\n", a.sum().toString(), start*1e-6);
 	}
+
+	@SuppressWarnings("unchecked")
+	private static final Class<? extends Dataset>[] TYPES = new Class[] {ShortDataset.class, IntegerDataset.class, FloatDataset.class, DoubleDataset.class};
+
+	/**
+	 * Compare histograms of contiguous datasets with those of strided views that
+	 * go through the iterator
+	 */
+	@Test
+	public void testHistogramPrimitiveTypes() {
+		Random.seed(12371);
+		int size = 3 << 18;
+		Dataset every = Maths.multiply(Random.randn(2 * size), 5000);
+		Dataset unequal = DatasetFactory.createFromObject(new double[] {-20000, -3000, -10, 0, 7, 150, 8000});
+
+		for (Class<? extends Dataset> clazz : TYPES) {
+			Dataset view = DatasetUtils.cast(clazz, every).getSliceView(new Slice(null, null, 2));
+			Dataset contiguous = view.getSlice();
+			for (boolean ignore : new boolean[] {true, false}) {
+				Histogram h = new Histogram(256, -8000, 8000, ignore);
+				assertDatasetEquals(h.value(view).get(0), h.value(contiguous).get(0));
+
+				h = new Histogram(unequal, ignore);
+				assertDatasetEquals(h.value(view).get(0), h.value(contiguous).get(0));
+			}
+			Dataset count = new Histogram(100).value(contiguous).get(0);
+			assertEquals(size, ((Number) count.sum()).intValue());
+		}
+	}
+
+	/**
+	 * Time histograms of large images of different types
+	 */
+	@Test
+	public void testHistogramTypeTimings() {
+		Random.seed(12371);
+		Dataset image = Maths.multiply(Random.rand(2048, 2048), 30000);
+		Histogram h = new Histogram(1000, 0, 30000);
+
+		int REPEAT = 5;
+		long[] times = new long[REPEAT]; // in nanoseconds
+		for (Class<? extends Dataset> clazz : TYPES) {
+			Dataset d = DatasetUtils.cast(clazz, image);
+			Dataset reversed = d.getSliceView(null, new Slice(null, null, -1)); // strided so iterated
+			for (boolean contiguous : new boolean[] {false, true}) {
+				Dataset in = contiguous ? d : reversed;
+				for (int i = 0; i < REPEAT; i++) {
+					times[i] = -System.nanoTime();
+					h.value(in);
+					times[i] += System.nanoTime();
+				}
+				Arrays.sort(times);
+				System.out.printf("Histogram of %s (%s) took %.2fms\n", clazz.getSimpleName(), contiguous ? "primitive" : "iterator", times[0]/1e6);
+			}
+		}
+	}
 }
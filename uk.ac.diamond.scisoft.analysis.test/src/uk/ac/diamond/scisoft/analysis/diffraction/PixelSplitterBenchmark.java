@@ -0,0 +1,64 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.diffraction;
+
+import java.util.Random;
+
+import javax.vecmath.Vector3d;
+
+import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DoubleDataset;
+
+import uk.ac.diamond.scisoft.analysis.benchmark.BenchmarkRunner.Task;
+
+/**
+ * Splits pixel values into a Miller space volume as the inner loop of {@link MillerSpaceMapper} does
+ */
+public class PixelSplitterBenchmark implements Task {
+
+	private final PixelSplitter splitter;
+	private final DoubleDataset volume;
+	private final DoubleDataset weight;
+	private final double[] vsize;
+	private final int[][] positions;
+	private final Vector3d[] offsets;
+	private final double[] values;
+
+	/**
+	 * @param splitter name of splitter (see {@link MillerSpaceMapper.MillerSpaceMapperBean#setSplitterName(String)})
+	 * @param parameter splitter parameter
+	 * @param side number of voxels along each side of volume
+	 * @param pixels number of pixel values split in each operation
+	 */
+	public PixelSplitterBenchmark(String splitter, double parameter, int side, int pixels) {
+		this.splitter = MillerSpaceMapper.createSplitter(splitter, parameter);
+		volume = DatasetFactory.zeros(DoubleDataset.class, side, side, side);
+		weight = DatasetFactory.zeros(DoubleDataset.class, side, side, side);
+		vsize = new double[] {0.01, 0.01, 0.01};
+
+		Random r = new Random(12357L);
+		positions = new int[pixels][];
+		offsets = new Vector3d[pixels];
+		values = new double[pixels];
+		for (int i = 0; i < pixels; i++) {
+			positions[i] = new int[] {r.nextInt(side - 1), r.nextInt(side - 1), r.nextInt(side - 1)};
+			offsets[i] = new Vector3d(r.nextDouble() * vsize[0], r.nextDouble() * vsize[1], r.nextDouble() * vsize[2]);
+			values[i] = 100 * r.nextDouble();
+		}
+	}
+
+	@Override
+	public Object run() {
+		for (int i = 0; i < values.length; i++) {
+			splitter.splitValue(volume, weight, vsize, offsets[i], positions[i], values[i]);
+		}
+		return volume;
+	}
+}
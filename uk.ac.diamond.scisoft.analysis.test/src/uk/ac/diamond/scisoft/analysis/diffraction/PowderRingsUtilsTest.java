@@ -97,6 +97,56 @@ public class PowderRingsUtilsTest {
 		System.err.println(PowderRingsUtils.fitAndTrimOutliers(null, points, false));
 	}
 
+	/**
+	 * @return image with rings of Gaussian profile centred on given point
+	 */
+	private static Dataset createRingImage(int h, int w, double xc, double yc, double... radii) {
+		DoubleDataset image = DatasetFactory.zeros(DoubleDataset.class, h, w);
+		double[] data = image.getData();
+		Random rnd = new Random(123);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				double r = Math.hypot(x + 0.5 - xc, y + 0.5 - yc);
+				double v = rnd.nextDouble();
+				for (double rr : radii) {
+					double d = (r - rr) / 1.5;
+					v += 100 * Math.exp(-d * d);
+				}
+				data[y * w + x] = v;
+			}
+		}
+		return image;
+	}
+
+	@Test
+	public void findPOIsOnRings() {
+		Dataset image = createRingImage(800, 900, 470.2, 380.7, 150, 260, 330);
+
+		CircularROI roi = new CircularROI(260, 470.2, 380.7);
+		PolylineROI points = PowderRingsUtils.findPOIsNearCircle(null, image, null, roi);
+		Assert.assertTrue(points.getNumberOfPoints() > 100);
+		for (int i = 0; i < points.getNumberOfPoints(); i++) {
+			double[] p = points.getPoint(i).getPointRef();
+			Assert.assertEquals(260, Math.hypot(p[0] - 470.2, p[1] - 380.7), 2);
+		}
+		PolylineROI again = PowderRingsUtils.findPOIsNearCircle(null, image, null, roi);
+		Assert.assertEquals(points.getNumberOfPoints(), again.getNumberOfPoints());
+		for (int i = 0; i < points.getNumberOfPoints(); i++) {
+			Assert.assertArrayEquals(points.getPoint(i).getPointRef(), again.getPoint(i).getPointRef(), 0);
+		}
+
+		// outer rings are searched from initial ring
+		List<EllipticalROI> ells = PowderRingsUtils.findOtherEllipses(null, image, null, new EllipticalROI(roi));
+		Assert.assertFalse(ells.isEmpty());
+		double last = 0;
+		for (EllipticalROI e : ells) {
+			double a = e.getSemiAxis(0);
+			Assert.assertTrue(a > last);
+			Assert.assertTrue("Ring at " + a, Math.abs(a - 260) < 3 || Math.abs(a - 330) < 3);
+			last = a;
+		}
+	}
+
 	private static final int N_W = 128;
 	private static final int N_D = 128;
 //	private static final int N_T = 64;
@@ -311,6 +361,36 @@ public class PowderRingsUtilsTest {
 		}
 	}
 
+	@Test
+	public void fitRingsToSpacings() {
+		double pixel = 0.25; // in mm
+		double distance = 153.0; // in mm
+		DetectorProperties det = new DetectorProperties(new Vector3d(0, 0, distance), 3000, 3000, pixel, pixel, null);
+		DiffractionCrystalEnvironment env = new DiffractionCrystalEnvironment(WAVELENGTH);
+
+		for (int i = 0; i < 10; i += 5) {
+			det.setNormalAnglesInDegrees(i, 0, 30);
+			// omit innermost ring so its spacing must be rejected
+			List<EllipticalROI> ells = new ArrayList<EllipticalROI>();
+			for (HKL d : spacings.subList(1, spacings.size())) {
+				try {
+					ells.add((EllipticalROI) DSpacing.conicFromDSpacing(det, env.getWavelength(),
+							d.getD().to(NonSI.ANGSTROM).getValue().doubleValue()));
+				} catch (Exception ex) {
+					continue;
+				}
+			}
+
+			DetectorProperties rdet = det.clone();
+			rdet.setDetectorDistance(distance * 1.01);
+			QSpace q = PowderRingsUtils.fitEllipsesToQSpace(null, rdet, env, ells, spacings, true);
+			QSpace p = PowderRingsUtils.fitEllipsesToQSpace(null, rdet, env, ells, spacings, true);
+			Assert.assertEquals("Same result", q.getResidual(), p.getResidual(), 0);
+			Assert.assertEquals("Distance", distance, q.getDetectorProperties().getDetectorDistance(), 5);
+			Assert.assertEquals("Wavelength", WAVELENGTH, q.getWavelength(), 1e-9);
+		}
+	}
+
 	@Test
 	public void calibrateDetectors() {
 		double pixel = 0.25; // in mm
@@ -9,10 +9,12 @@
 
 package uk.ac.diamond.scisoft.analysis.diffraction.powder;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.eclipse.january.dataset.Dataset;
 import org.eclipse.january.dataset.IDataset;
+import org.eclipse.january.dataset.Maths;
 import org.eclipse.dawnsci.analysis.api.metadata.IDiffractionMetadata;
 import org.junit.Assert;
 import org.junit.Test;
@@ -155,6 +157,55 @@ public class PixelSplitting2DCacheTest extends AbstractPixelIntegrationTestBase
 		
 	}
 	
+	@Test
+	public void testPixelSplitting2DBatch() {
+		IDataset data = getData();
+		if (data == null) {
+			Assert.fail("Could not load test data");
+			return;
+		}
+
+		IDiffractionMetadata meta = getDiffractionMetadata();
+		PixelIntegrationBean bean = new PixelIntegrationBean();
+		bean.setUsePixelSplitting(true);
+		bean.setTo1D(false);
+		bean.setNumberOfBinsAzimuthal(360);
+		bean.setNumberOfBinsRadial(1000);
+		IPixelIntegrationCache info = new PixelIntegrationCache(meta, bean);
+
+		Dataset scaled = Maths.multiply(data, 2.5);
+		Dataset holed = Maths.add(data, 0.0);
+		for (int i = 0; i < holed.getSize(); i += 7) {
+			holed.setObjectAbs(i, Double.NaN);
+		}
+		List<IDataset> frames = Arrays.asList(data, scaled, holed);
+
+		long before = System.currentTimeMillis();
+		List<List<Dataset>> batch = PixelIntegration.integrate(frames, null, info);
+		long after = System.currentTimeMillis();
+		System.out.println("Pixel splitting (batch of " + frames.size() + ") in "+(after-before));
+
+		Assert.assertEquals(frames.size(), batch.size());
+		for (int f = 0; f < frames.size(); f++) {
+			List<Dataset> single = PixelIntegration.integrate(frames.get(f), null, info);
+			List<Dataset> out = batch.get(f);
+			Assert.assertEquals(3, out.size());
+			Assert.assertEquals(single.get(0), out.get(0));
+			Assert.assertEquals(single.get(2), out.get(2));
+			double[] expected = (double[]) single.get(1).getBuffer();
+			double[] actual = (double[]) out.get(1).getBuffer();
+			for (int i = 0; i < expected.length; i++) {
+				Assert.assertEquals(expected[i], actual[i], 1e-9 * Math.max(1, Math.abs(expected[i])));
+			}
+		}
+
+		double[] once = (double[]) batch.get(0).get(1).getBuffer();
+		double[] twice = (double[]) batch.get(1).get(1).getBuffer();
+		for (int i = 0; i < once.length; i++) {
+			Assert.assertEquals(2.5 * once[i], twice[i], 1e-9 * Math.max(1, Math.abs(twice[i])));
+		}
+	}
+
 	private double testWholeImage(IDataset data, IDataset mask, IPixelIntegrationCache info) {
 		long before = System.currentTimeMillis();
 		List<Dataset> out = PixelIntegration.integrate(data,mask,info);
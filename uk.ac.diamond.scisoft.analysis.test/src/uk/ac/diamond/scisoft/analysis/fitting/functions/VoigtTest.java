@@ -9,6 +9,10 @@
 
 package uk.ac.diamond.scisoft.analysis.fitting.functions;
 
+import java.util.Arrays;
+
+import org.apache.commons.math3.complex.Complex;
+import org.eclipse.dawnsci.analysis.api.fitting.functions.IParameter;
 import org.eclipse.january.asserts.TestUtils;
 import org.eclipse.january.dataset.Dataset;
 import org.eclipse.january.dataset.DatasetFactory;
@@ -16,6 +20,8 @@ import org.eclipse.january.dataset.DoubleDataset;
 import org.junit.Assert;
 import org.junit.Test;
 
+import uk.ac.diamond.scisoft.analysis.utils.Faddeeva;
+
 
 public class VoigtTest {
 
@@ -76,4 +82,80 @@ public class VoigtTest {
 
 		FunctionTestUtils.checkPartialDerivatives(f);
 	}
+
+	@Test
+	public void testFunctionDerivativeNearPeak() {
+		Voigt f = new Voigt();
+		f.setParameterValues(23., 2., 1.2, 2.3);
+
+		DoubleDataset coord = DatasetFactory.createRange(DoubleDataset.class, 15, 31, 0.25);
+		for (IParameter p : f.getParameters()) {
+			FunctionTestUtils.assertPartialDerivEquals(f, p, coord);
+			FunctionTestUtils.assertPartialDerivEquals(f, p, 23.4);
+		}
+	}
+
+	@Test
+	public void testValuesMatchComplex() {
+		Voigt f = new Voigt();
+		f.setParameterValues(23., 2., 1.2, 2.3);
+
+		DoubleDataset x = DatasetFactory.createRange(DoubleDataset.class, -20 + 23, 20 + 23, 0.01);
+		DoubleDataset v = f.calculateValues(x);
+		DoubleDataset c = complexValues(23., 2., 1.2, 2.3, x);
+		TestUtils.assertDatasetEquals(c, v, REL_TOL, 1e-17);
+	}
+
+	/**
+	 * Evaluate using complex numbers as was done originally
+	 */
+	private static DoubleDataset complexValues(double posn, double lfwhm, double area, double gfwhm, DoubleDataset x) {
+		double sigma = gfwhm / Math.sqrt(8 * Math.log(2.));
+		double fr = Math.sqrt(0.5) / sigma;
+		double zi = fr * lfwhm / 2;
+		double ft = fr * area / Math.sqrt(Math.PI);
+		double[] xd = x.getData();
+		DoubleDataset result = DatasetFactory.zeros(x);
+		double[] rd = result.getData();
+		for (int i = 0; i < xd.length; i++) {
+			rd[i] = ft * Faddeeva.w(new Complex(fr * (xd[i] - posn), zi), 0).getReal();
+		}
+		return result;
+	}
+
+	/**
+	 * Compares times for evaluating values and derivatives
+	 */
+	@Test
+	public void testTimings() {
+		Voigt f = new Voigt();
+		f.setParameterValues(23., 2., 1.2, 2.3);
+		DoubleDataset x = DatasetFactory.createRange(DoubleDataset.class, -20 + 23, 20 + 23, 1e-4);
+
+		int REPEAT = 10;
+		long[] times = new long[REPEAT]; // in nanoseconds
+		for (int i = 0; i < REPEAT; i++) {
+			times[i] = -System.nanoTime();
+			complexValues(23., 2., 1.2, 2.3, x);
+			times[i] += System.nanoTime();
+		}
+		Arrays.sort(times);
+		System.out.printf("Complex values took %.2fms\n", times[0]/1e6);
+
+		for (int i = 0; i < REPEAT; i++) {
+			times[i] = -System.nanoTime();
+			f.calculateValues(x);
+			times[i] += System.nanoTime();
+		}
+		Arrays.sort(times);
+		System.out.printf("Values took %.2fms\n", times[0]/1e6);
+
+		for (int i = 0; i < REPEAT; i++) {
+			times[i] = -System.nanoTime();
+			f.calculatePartialDerivativeValues(f.getParameter(3), x);
+			times[i] += System.nanoTime();
+		}
+		Arrays.sort(times);
+		System.out.printf("Derivatives took %.2fms\n", times[0]/1e6);
+	}
 }
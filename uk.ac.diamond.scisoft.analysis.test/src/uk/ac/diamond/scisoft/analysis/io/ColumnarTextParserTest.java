@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2012 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.eclipse.dawnsci.analysis.api.io.ScanFileHolderException;
+import org.eclipse.january.dataset.ByteDataset;
+import org.eclipse.january.dataset.Dataset;
+import org.eclipse.january.dataset.DoubleDataset;
+import org.eclipse.january.dataset.IntegerDataset;
+import org.eclipse.january.dataset.ShortDataset;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uk.ac.diamond.scisoft.analysis.IOTestUtils;
+
+public class ColumnarTextParserTest {
+
+	private static File scratch;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		scratch = IOTestUtils.createClassScratchDirectory(ColumnarTextParserTest.class);
+	}
+
+	private static ByteBuffer wrap(String text) {
+		return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testWhitespace() throws Exception {
+		ColumnarTextParser parser = new ColumnarTextParser(ColumnarTextParser.Delimiter.WHITESPACE);
+		parser.setMinimumColumns(2);
+		ColumnarTextParser.Result r = parser.parse(wrap("1 2.5\r\n  -3\t4e2  \rnot data\n.5 1.\n7"), null);
+		assertEquals(3, r.getLineCount());
+		assertEquals(2, r.getColumnCount());
+		assertArrayEquals(new double[] {1, -3, 0.5}, (double[]) r.getDataset(0).getBuffer(), 0);
+		assertArrayEquals(new double[] {2.5, 400, 1}, (double[]) r.getDataset(1).getBuffer(), 0);
+	}
+
+	@Test
+	public void testComma() throws Exception {
+		ColumnarTextParser parser = new ColumnarTextParser(ColumnarTextParser.Delimiter.COMMA);
+		parser.setMinimumColumns(2);
+		ColumnarTextParser.Result r = parser.parse(wrap("a,b\n1,2\n3 , 4\n5,,6\n7 8\n9,10,\n"), null);
+		assertEquals(2, r.getLineCount());
+		assertArrayEquals(new double[] {1, 3}, (double[]) r.getDataset(0).getBuffer(), 0);
+		assertArrayEquals(new double[] {2, 4}, (double[]) r.getDataset(1).getBuffer(), 0);
+	}
+
+	@Test
+	public void testExactDoubles() throws Exception {
+		Random rnd = new Random(12);
+		StringBuilder text = new StringBuilder();
+		double[] expected = new double[10000];
+		for (int i = 0; i < expected.length; i++) {
+			String s = i % 2 == 0 ? Double.toString(rnd.nextGaussian() * Math.pow(10, rnd.nextInt(40) - 20))
+					: String.format("%.7f", rnd.nextDouble() * 1e5);
+			expected[i] = Double.parseDouble(s);
+			text.append(s).append('\n');
+		}
+		ColumnarTextParser.Result r = new ColumnarTextParser(ColumnarTextParser.Delimiter.WHITESPACE).parse(wrap(text.toString()), null);
+		assertArrayEquals(expected, (double[]) r.getDataset(0).getBuffer(), 0);
+	}
+
+	@Test
+	public void testStopAtInvalidLine() throws Exception {
+		ColumnarTextParser parser = new ColumnarTextParser(ColumnarTextParser.Delimiter.WHITESPACE);
+		parser.setSkipInvalidLines(false);
+		assertNull(parser.parse(wrap("1 2\n3 4\nimage.tif 5\n"), null));
+	}
+
+	@Test
+	public void testBlankAndNonFinite() throws Exception {
+		ColumnarTextParser parser = new ColumnarTextParser(ColumnarTextParser.Delimiter.WHITESPACE);
+		parser.setSkipInvalidLines(false);
+		parser.setAllowNonFinite(true);
+		ColumnarTextParser.Result r = parser.parse(wrap("1 2\n\n  \t\n3 NaN\n4 -Infinity\n"), null);
+		assertEquals(3, r.getLineCount());
+		assertArrayEquals(new double[] {1, 3, 4}, (double[]) r.getDataset(0).getBuffer(), 0);
+		assertArrayEquals(new double[] {2, Double.NaN, Double.NEGATIVE_INFINITY}, (double[]) r.getDataset(1).getBuffer(), 0);
+
+		// first token must be a number
+		assertNull(parser.parse(wrap("1 2\nNaN 3\n"), null));
+		parser.setAllowNonFinite(false);
+		assertNull(parser.parse(wrap("1 2\n3 NaN\n"), null));
+	}
+
+	@Test(expected = ScanFileHolderException.class)
+	public void testExpectedColumns() throws Exception {
+		ColumnarTextParser parser = new ColumnarTextParser(ColumnarTextParser.Delimiter.WHITESPACE);
+		parser.setExpectedColumns(2);
+		parser.parse(wrap("1 2\n3 4 5\n"), null);
+	}
+
+	@Test
+	public void testIntegers() throws Exception {
+		ColumnarTextParser parser = new ColumnarTextParser(ColumnarTextParser.Delimiter.WHITESPACE);
+		parser.setKeepIntegers(true);
+		parser.setMaximumColumns(4);
+		ColumnarTextParser.Result r = parser.parse(wrap("1 -128 1000 70000 ignored\n2 127 -1000 1.5\n3\n"), null);
+		assertEquals(3, r.getLineCount());
+		assertTrue(r.getDataset(0) instanceof ByteDataset);
+		assertTrue(r.getDataset(1) instanceof ByteDataset);
+		assertTrue(r.getDataset(2) instanceof ShortDataset);
+		assertTrue(r.getDataset(3) instanceof DoubleDataset);
+		assertEquals(3, r.getLength(0));
+		assertEquals(2, r.getLength(3));
+		assertArrayEquals(new double[] {70000, 1.5}, (double[]) r.getDataset(3).getBuffer(), 0);
+	}
+
+	@Test
+	public void testSelectedColumn() throws Exception {
+		ColumnarTextParser parser = new ColumnarTextParser(ColumnarTextParser.Delimiter.WHITESPACE);
+		parser.setSelectedColumn(1);
+		ColumnarTextParser.Result r = parser.parse(wrap("1 2 3\n4 5 6\n"), null);
+		assertEquals(0, r.getLength(0));
+		assertArrayEquals(new double[] {2, 5}, (double[]) r.getDataset(1).getBuffer(), 0);
+	}
+
+	@Test
+	public void testParallel() throws Exception {
+		int rows = 400000;
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < rows; i++) {
+			text.append(i).append(' ').append(i * 0.25).append(i % 7 == 0 ? "\r\n" : "\n");
+		}
+		ByteBuffer buffer = wrap(text.toString());
+
+		ColumnarTextParser parser = new ColumnarTextParser(ColumnarTextParser.Delimiter.WHITESPACE);
+		parser.setKeepIntegers(true);
+		parser.setParallelThreshold(0);
+		ColumnarTextParser.Result r = parser.parse(buffer, null);
+		assertEquals(rows, r.getLineCount());
+		Dataset first = r.getDataset(0);
+		assertTrue(first instanceof IntegerDataset);
+		int[] ints = (int[]) first.getBuffer();
+		double[] doubles = (double[]) r.getDataset(1).getBuffer();
+		for (int i = 0; i < rows; i++) {
+			assertEquals(i, ints[i]);
+			assertEquals(i * 0.25, doubles[i], 0);
+		}
+	}
+
+	@Test
+	public void testSkipLines() {
+		ByteBuffer buffer = wrap("a\r\nb\rc\nd");
+		assertEquals(7, ColumnarTextParser.skipLines(buffer, 0, 3));
+		assertEquals(8, ColumnarTextParser.skipLines(buffer, 0, 5));
+	}
+
+	private static File writeFile(String name, String header, int rows, int columns) throws Exception {
+		File f = new File(scratch, name);
+		Random rnd = new Random(rows);
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(f))) {
+			out.write(header);
+			for (int i = 0; i < rows; i++) {
+				out.write(Integer.toString(i));
+				for (int j = 1; j < columns; j++) {
+					out.write('\t');
+					out.write(String.format("%.6f", rnd.nextGaussian() * 1000));
+				}
+				out.write('\n');
+			}
+		}
+		return f;
+	}
+
+	private static String header(String prefix, String separator, int columns) {
+		StringBuilder h = new StringBuilder(prefix);
+		for (int j = 0; j < columns; j++) {
+			if (j > 0) {
+				h.append(separator);
+			}
+			h.append("col").append(j);
+		}
+		return h.append('\n').toString();
+	}
+
+	/**
+	 * Compares loading times of the columnar parser with the line by line parsing
+	 */
+	@Test
+	public void testLoaderTimings() throws Exception {
+		int rows = 200000;
+		int columns = 10;
+		File dat = writeFile("timing.dat", "# Timing test\n" + header("# ", "\t", columns), rows, columns);
+		File srs = writeFile("timing.srs", " &SRS\n SRSRUN=1\n &END\n" + header("", "\t", columns), rows, columns);
+
+		int REPEAT = 3;
+		long[] times = new long[REPEAT]; // in nanoseconds
+		for (boolean columnar : new boolean[] {false, true}) {
+			DataHolder dh = null;
+			for (int i = 0; i < REPEAT; i++) {
+				DatLoader loader = new DatLoader(dat.getAbsolutePath());
+				loader.setUseColumnarParser(columnar);
+				times[i] = -System.nanoTime();
+				dh = loader.loadFile();
+				times[i] += System.nanoTime();
+			}
+			assertEquals(columns, dh.size());
+			assertEquals(rows, dh.getDataset("col3").getSize());
+			Arrays.sort(times);
+			System.out.printf("DatLoader (%s) took %.1fms\n", columnar ? "columnar" : "lines", times[0]/1e6);
+
+			for (int i = 0; i < REPEAT; i++) {
+				SRSLoader loader = new SRSLoader(srs.getAbsolutePath());
+				loader.setUseColumnarParser(columnar);
+				times[i] = -System.nanoTime();
+				dh = loader.loadFile();
+				times[i] += System.nanoTime();
+			}
+			assertEquals(columns, dh.size());
+			assertEquals(rows, dh.getDataset("col3").getSize());
+			Arrays.sort(times);
+			System.out.printf("SRSLoader (%s) took %.1fms\n", columnar ? "columnar" : "lines", times[0]/1e6);
+		}
+	}
+
+	@Test
+	public void testLoadersAgree() throws Exception {
+		int rows = 2000;
+		int columns = 4;
+		File dat = writeFile("agree.dat", "# Agreement test\n" + header("# ", "\t", columns), rows, columns);
+		File srs = writeFile("agree.srs", " &SRS\n &END\n" + header("", "\t", columns), rows, columns);
+
+		DatLoader datLines = new DatLoader(dat.getAbsolutePath());
+		datLines.setUseColumnarParser(false);
+		DataHolder expected = datLines.loadFile();
+		DataHolder actual = new DatLoader(dat.getAbsolutePath()).loadFile();
+		for (int j = 0; j < columns; j++) {
+			assertEquals(expected.getDataset(j), actual.getDataset(j));
+		}
+		assertEquals(expected.getDataset("col2"), new DatLoader(dat.getAbsolutePath()).loadSet(dat.getAbsolutePath(), "col2", null));
+
+		SRSLoader srsLines = new SRSLoader(srs.getAbsolutePath());
+		srsLines.setUseColumnarParser(false);
+		expected = srsLines.loadFile();
+		actual = new SRSLoader(srs.getAbsolutePath()).loadFile();
+		for (int j = 0; j < columns; j++) {
+			assertEquals(expected.getDataset(j).getClass(), actual.getDataset(j).getClass());
+			assertEquals(expected.getDataset(j), actual.getDataset(j));
+		}
+	}
+
+	private static File writeText(String name, String text) throws Exception {
+		File f = new File(scratch, name);
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(f))) {
+			out.write(text);
+		}
+		return f;
+	}
+
+	@Test
+	public void testRaggedDat() throws Exception {
+		File dat = writeText("ragged.dat", "# Ragged test\n# a\tb\tc\n1\t2\t3\n4\t5\n6\t7\t8\t9\n10\t11\t12\n");
+
+		for (boolean columnar : new boolean[] {false, true}) {
+			// lazy loading only counts lines
+			DatLoader loader = new DatLoader(dat.getAbsolutePath());
+			loader.setUseColumnarParser(columnar);
+			loader.setLoadAllLazily(true);
+			DataHolder dh = loader.loadFile();
+			assertEquals(3, dh.size());
+			assertEquals(4, dh.getLazyDataset("b").getSize());
+
+			loader = new DatLoader(dat.getAbsolutePath());
+			loader.setUseColumnarParser(columnar);
+			try {
+				loader.loadFile();
+				fail("Ragged lines should not load eagerly");
+			} catch (ScanFileHolderException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testSrsBlankNaNAndRaggedLines() throws Exception {
+		File srs = writeText("blank.srs", " &SRS\n &END\nx\ty\tz\n1\t2.5\t3\n\n2\tNaN\t4\n  \n3\t-Infinity\n4\t5.5\t6\t7\n");
+
+		SRSLoader lines = new SRSLoader(srs.getAbsolutePath());
+		lines.setUseColumnarParser(false);
+		DataHolder expected = lines.loadFile();
+		DataHolder actual = new SRSLoader(srs.getAbsolutePath()).loadFile();
+		assertEquals(3, actual.size());
+		for (int j = 0; j < 3; j++) {
+			assertEquals(expected.getDataset(j).getClass(), actual.getDataset(j).getClass());
+		}
+		assertEquals(expected.getDataset("x"), actual.getDataset("x"));
+		assertEquals(expected.getDataset("z"), actual.getDataset("z"));
+		assertEquals(3, actual.getDataset("z").getSize());
+		double[] y = new double[] {2.5, Double.NaN, Double.NEGATIVE_INFINITY, 5.5};
+		assertArrayEquals(y, (double[]) expected.getDataset("y").getBuffer(), 0);
+		assertArrayEquals(y, (double[]) actual.getDataset("y").getBuffer(), 0);
+
+		SRSLoader lazy = new SRSLoader(srs.getAbsolutePath());
+		lazy.setLoadAllLazily(true);
+		assertEquals(4, lazy.loadFile().getLazyDataset("x").getSize());
+	}
+}
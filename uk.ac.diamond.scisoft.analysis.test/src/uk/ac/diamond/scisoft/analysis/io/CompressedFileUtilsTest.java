@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2012 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.io;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CompressedFileUtilsTest {
+
+	private static final String BZIP2_DIR = "testfiles/gda/analysis/io/CompressedFileUtilsTest/";
+
+	private static byte[] original;
+
+	@BeforeClass
+	public static void createData() {
+		Random rnd = new Random(1);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 50000; i++) {
+			text.append(i).append('\t').append(rnd.nextDouble()).append('\t').append(rnd.nextGaussian()).append('\n');
+		}
+		original = text.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Contents of the bzip2 test files. The multi-stream file holds three
+	 * streams written separately as by pbzip2
+	 */
+	private static byte[] bzip2Original() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			text.append(i).append('\t').append((i * 7919) % 10007).append('\n');
+		}
+		return text.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] readBzip2(String name) throws IOException {
+		return Files.readAllBytes(Paths.get(BZIP2_DIR + name));
+	}
+
+	private static byte[] toArray(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private static byte[] gzip(byte[] data, int from, int to) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(bytes);
+		out.write(data, from, to - from);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Write as blocked gzip, i.e. gzip members of at most 64k with a BC extra
+	 * field holding the member size
+	 */
+	private static byte[] bgzf(byte[] data) {
+		ByteBuffer out = ByteBuffer.allocate(data.length + 1024 * 1024).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+		byte[] deflated = new byte[70000];
+		for (int i = 0; i <= data.length; i += 0xff00) {
+			int len = Math.min(0xff00, data.length - i);
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			deflater.setInput(data, i, len);
+			deflater.finish();
+			int n = deflater.deflate(deflated);
+			deflater.end();
+
+			out.put(new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff });
+			out.putShort((short) 6);
+			out.put(new byte[] { 'B', 'C' });
+			out.putShort((short) 2);
+			out.putShort((short) (n + 25));
+			out.put(deflated, 0, n);
+			CRC32 crc = new CRC32();
+			crc.update(data, i, len);
+			out.putInt((int) crc.getValue());
+			out.putInt(len);
+		}
+		return Arrays.copyOf(out.array(), out.position());
+	}
+
+	@Test
+	public void testGzip() throws Exception {
+		byte[] result = toArray(CompressedFileUtils.decompress(gzip(original, 0, original.length), "gz"));
+		assertArrayEquals(original, result);
+	}
+
+	@Test
+	public void testMultiMemberGzip() throws Exception {
+		int half = original.length / 2;
+		byte[] first = gzip(original, 0, half);
+		byte[] second = gzip(original, half, original.length);
+		byte[] both = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, both, first.length, second.length);
+
+		assertArrayEquals(original, toArray(CompressedFileUtils.decompress(both, "gz")));
+	}
+
+	@Test
+	public void testBlockedGzip() throws Exception {
+		assertArrayEquals(original, toArray(CompressedFileUtils.decompress(bgzf(original), "gz")));
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptBlockedGzip() throws Exception {
+		byte[] data = bgzf(original);
+		data[data.length / 2] ^= 0x55;
+		CompressedFileUtils.decompress(data, "gz");
+	}
+
+	@Test
+	public void testHighlyCompressedGzip() throws Exception {
+		byte[] zeros = new byte[8 * 1024 * 1024];
+		assertArrayEquals(zeros, toArray(CompressedFileUtils.decompress(gzip(zeros, 0, zeros.length), "gz")));
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptGzipSize() throws Exception {
+		byte[] data = gzip(original, 0, original.length);
+		ByteBuffer.wrap(data, data.length - 4, 4).order(java.nio.ByteOrder.LITTLE_ENDIAN).putInt(0x7fff0000);
+		CompressedFileUtils.decompress(data, "gz");
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptBlockedGzipSize() throws Exception {
+		byte[] data = bgzf(original);
+		ByteBuffer.wrap(data, data.length - 4, 4).order(java.nio.ByteOrder.LITTLE_ENDIAN).putInt(0x7fff0000);
+		CompressedFileUtils.decompress(data, "gz");
+	}
+
+	@Test
+	public void testZip() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ZipOutputStream out = new ZipOutputStream(bytes);
+		out.putNextEntry(new ZipEntry("test.dat"));
+		out.write(original);
+		out.closeEntry();
+		out.close();
+
+		assertArrayEquals(original, toArray(CompressedFileUtils.decompress(bytes.toByteArray(), "zip")));
+	}
+
+	@Test
+	public void testBzip2() throws Exception {
+		assertArrayEquals(bzip2Original(), toArray(CompressedFileUtils.decompress(readBzip2("single.dat.bz2"), "bz2")));
+	}
+
+	@Test
+	public void testMultiStreamBzip2() throws Exception {
+		assertArrayEquals(bzip2Original(), toArray(CompressedFileUtils.decompress(readBzip2("multi.dat.bz2"), "bz2")));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedBzip2() throws Exception {
+		byte[] data = readBzip2("single.dat.bz2");
+		CompressedFileUtils.decompress(Arrays.copyOf(data, data.length / 2), "bz2");
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedMultiStreamBzip2() throws Exception {
+		byte[] data = readBzip2("multi.dat.bz2");
+		CompressedFileUtils.decompress(Arrays.copyOf(data, data.length - 1000), "bz2");
+	}
+}
@@ -17,6 +17,9 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -582,4 +585,39 @@ public class HDF5LoaderTest {
 		GroupNode g = l.tFile.getGroupNode();
 		assertEquals(1, g.getNumberOfNodelinks());
 	}
+
+	private static HDF5Loader createCachingLoader(String name) {
+		HDF5Loader l = new HDF5Loader(name);
+		l.setUseTreeCache(true);
+		return l;
+	}
+
+	@Test
+	public void testTreeCache() throws Exception {
+		File dir = IOTestUtils.createClassScratchDirectory(HDF5LoaderTest.class);
+		File f = new File(dir, "cached.nxs");
+		Files.copy(new File(TestFileFolder + "testlinks.nxs").toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		String n = f.getAbsolutePath();
+		HDF5Loader.clearTreeCache(n);
+
+		Tree tree = createCachingLoader(n).loadTree(null);
+		assertTrue(tree == createCachingLoader(n).loadTree(null));
+
+		// off by default
+		assertFalse(tree == new HDF5Loader(n).loadTree(null));
+
+		HDF5Loader l = createCachingLoader(n);
+		l.setLoadAllLazily(true);
+		Tree lazy = l.loadTree(null);
+		assertFalse(tree == lazy);
+
+		assertTrue(f.setLastModified(f.lastModified() - 10000));
+		Tree reloaded = createCachingLoader(n).loadTree(null);
+		assertFalse(tree == reloaded);
+		assertEquals(1, reloaded.getGroupNode().getDatasets("d1").size());
+		assertTrue(reloaded == createCachingLoader(n).loadTree(null));
+
+		HDF5Loader.clearTreeCache(n);
+		assertFalse(reloaded == createCachingLoader(n).loadTree(null));
+	}
 }
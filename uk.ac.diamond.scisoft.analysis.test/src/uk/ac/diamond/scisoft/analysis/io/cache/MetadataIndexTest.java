@@ -0,0 +1,127 @@
+/*-
+ * Copyright 2015 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.io.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.january.metadata.IMetadata;
+import org.eclipse.january.metadata.Metadata;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uk.ac.diamond.scisoft.analysis.IOTestUtils;
+import uk.ac.diamond.scisoft.analysis.io.LoaderFactory;
+
+public class MetadataIndexTest {
+
+	private static File scratch;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		scratch = IOTestUtils.createClassScratchDirectory(MetadataIndexTest.class);
+	}
+
+	private static void write(File f, int length) throws Exception {
+		try (FileOutputStream out = new FileOutputStream(f)) {
+			out.write(new byte[length]);
+		}
+	}
+
+	@Test
+	public void testPersistence() throws Exception {
+		File store = new File(scratch, "persist.idx");
+		store.delete();
+		File f = new File(scratch, "image.dat");
+		write(f, 100);
+
+		Map<String, String> header = new HashMap<>();
+		header.put("Dim_1", "3");
+		header.put("Dim_2", "2");
+		Metadata m = new Metadata();
+		m.initialize(header);
+		m.addDataInfo("data", 2, 3);
+		m.addDataInfo("names", null);
+		m.setFilePath(f.getAbsolutePath());
+
+		MetadataIndex index = new MetadataIndex(store);
+		assertTrue(index.isStale(f));
+		assertTrue(index.put(f, f.length(), f.lastModified(), m));
+		assertFalse(index.isStale(f));
+		IMetadata got = index.get(f);
+		assertNotNull(got);
+		assertTrue(got != m);
+		index.save();
+		assertTrue(store.isFile());
+
+		index = new MetadataIndex(store);
+		assertEquals(1, index.size());
+		got = index.get(f);
+		assertNotNull(got);
+		assertEquals("3", got.getMetaValue("Dim_1"));
+		assertArrayEquals(new int[] {2, 3}, got.getDataShapes().get("data"));
+		assertTrue(got.getDataNames().contains("names"));
+		assertEquals(f.getAbsolutePath(), got.getFilePath());
+
+		write(f, 120);
+		assertTrue(index.isStale(f));
+		assertNull(index.get(f));
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	public void testCorruptStore() throws Exception {
+		File store = new File(scratch, "corrupt.idx");
+		write(store, 64);
+		MetadataIndex index = new MetadataIndex(store);
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	public void testLoaderFactory() throws Exception {
+		File store = new File(scratch, "loader.idx");
+		store.delete();
+		File f = new File(scratch, "diff6105.edf");
+		Files.copy(new File("testfiles/gda/analysis/io/EdfLoaderTest/diff6105.edf").toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		try {
+			LoaderFactory.setMetadataIndex(store.getAbsolutePath());
+			LoaderFactory.refreshMetadataIndex(Collections.singletonList(f.getAbsolutePath())).get();
+			LoaderFactory.flushMetadataIndex();
+
+			MetadataIndex index = new MetadataIndex(store);
+			assertFalse(index.isStale(f));
+			assertEquals("2048", index.get(f).getMetaValue("Dim_1"));
+
+			// served from index after in-memory cache is cleared
+			LoaderFactory.setMetadataIndex(null);
+			LoaderFactory.clear();
+			LoaderFactory.setMetadataIndex(store.getAbsolutePath());
+			IMetadata meta = LoaderFactory.getMetadata(f.getAbsolutePath(), null);
+			assertEquals("UnsignedShort", meta.getMetaValue("DataType"));
+			assertArrayEquals(new int[] {2048, 2048}, meta.getDataShapes().values().iterator().next());
+		} finally {
+			LoaderFactory.setMetadataIndex(null);
+			LoaderFactory.clear();
+		}
+	}
+}
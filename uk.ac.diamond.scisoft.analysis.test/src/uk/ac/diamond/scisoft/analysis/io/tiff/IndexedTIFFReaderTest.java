@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2012 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.io.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.january.dataset.Dataset;
+import org.eclipse.january.dataset.FloatDataset;
+import org.eclipse.january.dataset.IDataset;
+import org.eclipse.january.dataset.ILazyDataset;
+import org.eclipse.january.dataset.IntegerDataset;
+import org.eclipse.january.dataset.ShortDataset;
+import org.eclipse.january.dataset.Slice;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uk.ac.diamond.scisoft.analysis.IOTestUtils;
+import uk.ac.diamond.scisoft.analysis.io.TIFFImageLoader;
+
+public class IndexedTIFFReaderTest {
+
+	private static final int IMAGES = 20;
+	private static final int HEIGHT = 37;
+	private static final int WIDTH = 53;
+	private static final int ROWS_PER_STRIP = 5;
+
+	private static File stripped;
+	private static File tiled;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		File dir = IOTestUtils.createClassScratchDirectory(IndexedTIFFReaderTest.class);
+		stripped = new File(dir, "stripped.tif");
+		tiled = new File(dir, "tiled.tif");
+		writeStack(stripped, false);
+		writeStack(tiled, true);
+	}
+
+	private static int value(int n, int y, int x) {
+		return (n * 7919 + y * 104729 + x * 31) & 0xffff;
+	}
+
+	private static void putEntry(ByteBuffer b, int tag, int type, int count, int value) {
+		b.putShort((short) tag);
+		b.putShort((short) type);
+		b.putInt(count);
+		if (type == 3 && count == 1) {
+			b.putShort((short) value);
+			b.putShort((short) 0);
+		} else {
+			b.putInt(value);
+		}
+	}
+
+	/**
+	 * Write a stack of unsigned 16-bit images in strips or 16x16 tiles
+	 */
+	private static void writeStack(File file, boolean tiles) throws Exception {
+		int tw = 16;
+		int segmentWidth = tiles ? tw : WIDTH;
+		int segmentHeight = tiles ? tw : ROWS_PER_STRIP;
+		int across = (WIDTH + segmentWidth - 1) / segmentWidth;
+		int down = (HEIGHT + segmentHeight - 1) / segmentHeight;
+		int segments = across * down;
+
+		ByteBuffer b = ByteBuffer.allocate(IMAGES * (segments * (segmentWidth * segmentHeight * 2 + 8) + 512) + 8).order(ByteOrder.LITTLE_ENDIAN);
+		b.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+		for (int n = 0; n < IMAGES; n++) {
+			int ifd = b.position();
+			int entries = 10;
+			int offsetsPosition = ifd + 2 + entries * 12 + 4;
+			int countsPosition = offsetsPosition + 4 * segments;
+			int data = countsPosition + 4 * segments;
+
+			b.putShort((short) entries);
+			putEntry(b, 256, 3, 1, WIDTH);
+			putEntry(b, 257, 3, 1, HEIGHT);
+			putEntry(b, 258, 3, 1, 16);
+			putEntry(b, 259, 3, 1, 1);
+			putEntry(b, 262, 3, 1, 1);
+			if (tiles) {
+				putEntry(b, 277, 3, 1, 1);
+				putEntry(b, 322, 3, 1, tw);
+				putEntry(b, 323, 3, 1, tw);
+				putEntry(b, 324, 4, segments, offsetsPosition);
+				putEntry(b, 325, 4, segments, countsPosition);
+			} else {
+				putEntry(b, 273, 4, segments, offsetsPosition);
+				putEntry(b, 277, 3, 1, 1);
+				putEntry(b, 278, 3, 1, segmentHeight);
+				putEntry(b, 279, 4, segments, countsPosition);
+				putEntry(b, 339, 3, 1, 1);
+			}
+			int next = b.position();
+			b.putInt(0);
+
+			int position = data;
+			for (int s = 0; s < segments; s++) {
+				int rows = tiles ? segmentHeight : Math.min(segmentHeight, HEIGHT - s * segmentHeight);
+				int bytes = rows * segmentWidth * 2;
+				b.putInt(offsetsPosition + 4 * s, position);
+				b.putInt(countsPosition + 4 * s, bytes);
+				int y0 = (s / across) * segmentHeight;
+				int x0 = (s % across) * segmentWidth;
+				for (int y = 0; y < rows; y++) {
+					for (int x = 0; x < segmentWidth; x++) {
+						boolean inside = y0 + y < HEIGHT && x0 + x < WIDTH;
+						b.putShort(position + 2 * (y * segmentWidth + x), (short) (inside ? value(n, y0 + y, x0 + x) : 0));
+					}
+				}
+				position += bytes;
+			}
+			b.position(position);
+			if (n < IMAGES - 1) {
+				b.putInt(next, position);
+			}
+		}
+
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(b.array(), 0, b.position());
+		}
+	}
+
+	private static void checkSlice(IDataset d, int[] start, int[] step) {
+		int[] shape = d.getShape();
+		for (int i = 0; i < shape[0]; i++) {
+			for (int j = 0; j < shape[1]; j++) {
+				for (int k = 0; k < shape[2]; k++) {
+					assertEquals(value(start[0] + i * step[0], start[1] + j * step[1], start[2] + k * step[2]), d.getInt(i, j, k));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testIndex() throws Exception {
+		for (File f : new File[] {stripped, tiled}) {
+			IndexedTIFFReader reader = IndexedTIFFReader.create(f.getAbsolutePath());
+			assertEquals(IMAGES, reader.getNumImages());
+			assertEquals(HEIGHT, reader.getHeight(IMAGES - 1));
+			assertEquals(WIDTH, reader.getWidth(IMAGES - 1));
+			assertTrue(reader.canRead(IntegerDataset.class));
+			assertTrue(reader.canRead(ShortDataset.class));
+			assertFalse(reader.canRead(FloatDataset.class));
+
+			int[] start = new int[] {3, 2, 5};
+			int[] step = new int[] {4, 3, 7};
+			Dataset d = reader.read(IntegerDataset.class, null, start, new int[] {4, 11, 7}, step);
+			assertTrue(d instanceof IntegerDataset);
+			assertArrayEquals(new int[] {4, 11, 7}, d.getShape());
+			checkSlice(d, start, step);
+
+			d = reader.read(IntegerDataset.class, null, new int[] {IMAGES - 1, 0, 0}, new int[] {1, HEIGHT, WIDTH}, new int[] {1, 1, 1});
+			checkSlice(d, new int[] {IMAGES - 1, 0, 0}, new int[] {1, 1, 1});
+		}
+	}
+
+	@Test
+	public void testLazyStack() throws Exception {
+		for (File f : new File[] {stripped, tiled}) {
+			ILazyDataset image = new TIFFImageLoader(f.getAbsolutePath()).loadFile().getLazyDataset(0);
+			assertArrayEquals(new int[] {IMAGES, HEIGHT, WIDTH}, image.getShape());
+
+			IDataset d = image.getSlice(new Slice(IMAGES - 3, IMAGES), new Slice(1, null, 2), new Slice(null, null, 5));
+			assertEquals(Integer.class, d.getElementClass());
+			checkSlice(d, new int[] {IMAGES - 3, 1, 0}, new int[] {1, 2, 5});
+		}
+	}
+
+	@Test
+	public void testConcurrentReads() throws Exception {
+		final IndexedTIFFReader reader = IndexedTIFFReader.create(tiled.getAbsolutePath());
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Dataset>> futures = new ArrayList<>();
+			for (int n = 0; n < IMAGES; n++) {
+				final int num = n;
+				futures.add(pool.submit(() -> reader.read(IntegerDataset.class, null, new int[] {num, 0, 0},
+						new int[] {1, HEIGHT, WIDTH}, new int[] {1, 1, 1})));
+			}
+			for (int n = 0; n < IMAGES; n++) {
+				checkSlice(futures.get(n).get(), new int[] {n, 0, 0}, new int[] {1, 1, 1});
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -22,6 +22,8 @@
 
 package uk.ac.diamond.scisoft.analysis.utils;
 
+import java.util.Arrays;
+
 import org.apache.commons.math3.complex.Complex;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -295,6 +297,99 @@ public class FaddeevaTest {
 			errmax_all = errmax;
 	}
 
+	// real and imaginary parts of w(x + iy) from the original complex number implementation
+	private static final double[] WX = { -35.5, -6.1, -2.5, -0.3, 0, 1e-5, 0.4, 1.7, 5.2, 7.9, 40, 1e4 };
+	private static final double[] WY = { -2.3, -1e-3, 0, 1e-6, 0.05, 0.8, 3.1, 12 };
+	private static final double[][] WRE = {
+			{-0.0010265724577732467, -0.0314675530605786, 0.2526269171728184, 68.52920441466614, 396.4601092565945, 396.46010879723417, -90.12685822643375, 0.5882899118956603, -0.04165605641177341, -0.01955936314420924, -8.091030947439445E-4, -1.2976359929794341E-8},
+			{-4.4821459230919847E-7, -1.581900908371773E-5, 0.0018001960163559524, 0.9148689649572121, 1.001129379919849, 1.0011293798196228, 0.8529478257518025, 0.0552750061202211, -2.2146246789112154E-5, -9.266555210722697E-6, -3.5294958699447134E-7, -5.641895920105945E-12},
+			{0.0, 6.916753975541492E-17, 0.0019304541362277093, 0.9139311852712282, 1.0, 0.9999999999, 0.8521437889662113, 0.055576212611483086, 1.8058314375132107E-12, 7.8646859357664195E-28, 0.0, 0.0},
+			{4.4821459266584504E-10, 1.5819009624452396E-8, 0.0019305843721614724, 0.91393024824222, 0.9999988716218327, 0.9999988715218328, 0.8521429855098045, 0.05557651355195715, 2.214805537670405E-8, 9.266555368258491E-9, 3.5294958721554864E-10, 5.641895920106001E-15},
+			{2.241068505251638E-5, 7.908915451581571E-4, 0.008382382909067764, 0.8688919819891234, 0.9459900435549613, 0.9459900434655312, 0.813377909309601, 0.06997135623698653, 0.0011071936905106478, 4.6330807728647193E-4, 1.7647451726129222E-5, 2.820947959982477E-10},
+			{3.5838916400278127E-4, 0.012418622853952713, 0.08211149960036312, 0.4704521366774314, 0.48910058922311495, 0.4891005892018704, 0.45657879125388706, 0.1737249486768941, 0.017244740269357805, 0.0073334854872802654, 2.8224652349064314E-4, 4.5135167071982925E-9},
+			{0.0013789211247576566, 0.03824454308012168, 0.11188068897504985, 0.1724120750924093, 0.17371840860540827, 0.17371840860394716, 0.17140785902465924, 0.1390091454945861, 0.04901203469294488, 0.024709903840568426, 0.0010875970560009114, 1.748987567155149E-8},
+			{0.0048257262946674855, 0.03734241091535531, 0.044935854070247264, 0.046825450323437864, 0.04685422101489376, 0.04685422101486178, 0.0468030972117505, 0.04594745910530486, 0.03953996315719719, 0.0328161034820302, 0.0038850130559375954, 6.770265354944749E-8}
+	};
+	private static final double[][] WIM = {
+			{-0.01583238771736476, -0.08144598434744509, 0.5532451906651653, -355.99091593733397, 0.0, 0.018248448809214217, 325.8927538619185, 22.13988456614357, 0.09118918143076439, 0.06617180471326153, 0.014062584415708707, 5.641895565230759E-5},
+			{-0.01589897719423492, -0.09378673308182763, -0.2517326029851168, -0.3194646420231717, 0.0, 1.1303814257799272E-5, 0.4068351695232727, 0.4205770756256165, 0.11062743937473338, 0.07200289262392867, 0.014109151449702071, 5.641895863686986E-5},
+			{-0.015898977206875744, -0.093786735791049, -0.25172302461185764, -0.3189156827715659, 0.0, 1.1283791670202872E-5, 0.40615272634714766, 0.4203882078890175, 0.11062744390776731, 0.07200289382682094, 0.014109151458534083, 5.641895863687042E-5},
+			{-0.01589897720687574, -0.09378673579104732, -0.25172301495951344, -0.3189151344134546, 0.0, 1.1283771670225447E-5, 0.40615204463284416, 0.4203880189298035, 0.11062744390776358, 0.07200289382682105, 0.014109151458534093, 5.641895863687043E-5},
+			{-0.015898945604856763, -0.09377996325638523, -0.25105961273847915, -0.2929356513656239, 0.0, 1.0337801626740791E-5, 0.37381230713854974, 0.41073332843037186, 0.11061611255091773, 0.07199988672298681, 0.01410912937849348, 5.641895863545995E-5},
+			{-0.015890891195005606, -0.09208631017435234, -0.21261435308749943, -0.10064667519837252, 0.0, 3.458182243268047E-6, 0.13110143973695737, 0.2634177751423893, 0.10780745719511543, 0.0712414729818766, 0.01410350122575097, 5.641895827578907E-5},
+			{-0.015778421386461166, -0.07362524026347991, -0.08489706869282046, -0.015289614467738312, 0.0, 5.132503374157952E-7, 0.020275487695595545, 0.07083769807576852, 0.0799458172666182, 0.062084136795291046, 0.014024783809461597, 5.6418953215008886E-5},
+			{-0.014265932697799867, -0.018878602863112492, -0.009300276764398386, -0.0011626492416665598, 0.0, 3.877862738059644E-8, 0.0015494639154878193, 0.006465623477492748, 0.017034891294861687, 0.02149992488349233, 0.012942613049515389, 5.641887739368494E-5}
+	};
+
+	@Test
+	public void testWPrimitive() {
+		double[] out = new double[3];
+		double[] x = new double[WX.length];
+		double[] re = new double[WX.length];
+		double[] im = new double[WX.length];
+		for (int j = 0; j < WY.length; j++) {
+			double y = WY[j];
+			for (int i = 0; i < WX.length; i++) {
+				Faddeeva.w(WX[i], y, 0., out, 1);
+				Assert.assertEquals(WRE[j][i], out[1], 0);
+				Assert.assertEquals(WIM[j][i], out[2], 0);
+
+				Complex fw = Faddeeva.w(C(WX[i], y), 0.);
+				Assert.assertEquals(WRE[j][i], creal(fw), 0);
+				Assert.assertEquals(WIM[j][i], cimag(fw), 0);
+			}
+
+			Faddeeva.w(WX, y, 0., re, im);
+			Assert.assertArrayEquals(WRE[j], re, 0);
+			Assert.assertArrayEquals(WIM[j], im, 0);
+
+			System.arraycopy(WX, 0, x, 0, x.length);
+			Faddeeva.w(x, y, 0., x, null);
+			Assert.assertArrayEquals(WRE[j], x, 0);
+		}
+	}
+
+	/**
+	 * Compares throughput of the bulk primitive evaluation with the complex number version
+	 */
+	@Test
+	public void testWTimings() {
+		int n = 200000;
+		double y = 0.7;
+		double[] x = new double[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = (i - n / 2) * 1e-4;
+		}
+		double[] re = new double[n];
+		double[] im = new double[n];
+
+		int REPEAT = 10;
+		long[] times = new long[REPEAT]; // in nanoseconds
+		double sum = 0;
+		for (int j = 0; j < REPEAT; j++) {
+			times[j] = -System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				sum += Faddeeva.w(C(x[i], y), 0.).getReal();
+			}
+			times[j] += System.nanoTime();
+		}
+		Arrays.sort(times);
+		printf("Complex w(z) took %.2fms for %d points\n", times[0]/1e6, n);
+
+		double bsum = 0;
+		for (int j = 0; j < REPEAT; j++) {
+			times[j] = -System.nanoTime();
+			Faddeeva.w(x, y, 0., re, im);
+			for (int i = 0; i < n; i++) {
+				bsum += re[i];
+			}
+			times[j] += System.nanoTime();
+		}
+		Arrays.sort(times);
+		printf("Bulk w(z) took %.2fms for %d points\n", times[0]/1e6, n);
+		Assert.assertEquals(sum, bsum, 1e-12 * Math.abs(sum));
+	}
+
 	@Test
 	public void testErf() {
 		final Complex z[] = { C(1, 2), C(-1, 2), C(1, -2), C(-1, -2), C(9, -28), C(21, -33), C(1e3, 1e3),
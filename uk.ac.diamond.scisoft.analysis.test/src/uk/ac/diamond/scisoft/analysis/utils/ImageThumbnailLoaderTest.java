@@ -0,0 +1,140 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.january.dataset.BooleanDataset;
+import org.eclipse.january.dataset.Dataset;
+import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DoubleDataset;
+import org.eclipse.january.dataset.IDataset;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.diamond.scisoft.analysis.io.DataHolder;
+import uk.ac.diamond.scisoft.analysis.io.NumPyFileSaver;
+
+public class ImageThumbnailLoaderTest {
+
+	private File dir;
+	private File cache;
+	private File oldCache;
+	private long oldSize;
+	private long oldAge;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("thumbnails", "");
+		dir.delete();
+		dir.mkdirs();
+		cache = new File(dir, "cache");
+		oldCache = ImageThumbnailLoader.getCacheDirectory();
+		oldSize = ImageThumbnailLoader.getCacheSizeLimit();
+		oldAge = ImageThumbnailLoader.getCacheAgeLimit();
+		ImageThumbnailLoader.setCacheDirectory(cache);
+	}
+
+	@After
+	public void tearDown() {
+		ImageThumbnailLoader.clearCache();
+		ImageThumbnailLoader.setCacheDirectory(oldCache);
+		ImageThumbnailLoader.setCacheLimits(oldSize, oldAge);
+		cache.delete();
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	private static int countCached(File cache) {
+		String[] names = cache.list();
+		return names == null ? 0 : names.length;
+	}
+
+	private List<String> writeImages() throws Exception {
+		List<String> files = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			File f = new File(dir, "image" + i + ".npy");
+			Dataset image = DatasetFactory.createRange(DoubleDataset.class, 200 * 300).reshape(200, 300).iadd(i);
+			DataHolder holder = new DataHolder();
+			holder.addDataset("image", image);
+			new NumPyFileSaver(f.getAbsolutePath()).saveFile(holder);
+			files.add(f.getAbsolutePath());
+		}
+		return files;
+	}
+
+	@Test
+	public void testBatchAndCache() throws Exception {
+		List<String> files = writeImages();
+		File text = new File(dir, "bad.npy");
+		try (FileWriter w = new FileWriter(text)) {
+			w.write("not an image");
+		}
+		files.add(text.getAbsolutePath());
+
+		Map<String, IDataset> thumbnails = ImageThumbnailLoader.loadThumbnails(files, 96, null);
+		assertEquals(files.size(), thumbnails.size());
+		for (int i = 0; i < 3; i++) {
+			IDataset t = thumbnails.get(files.get(i));
+			assertArrayEquals(new int[] {50, 75}, t.getShape());
+			assertEquals(files.get(i), t.getName());
+			assertEquals(3 * 300 * 4 + 4 * 4 + i, t.getDouble(3, 4), 0);
+		}
+		assertTrue(thumbnails.get(text.getAbsolutePath()) instanceof BooleanDataset);
+		assertEquals(3, countCached(cache));
+
+		IDataset cached = ImageThumbnailLoader.loadThumbnail(files.get(1), 96);
+		assertArrayEquals(new int[] {50, 75}, cached.getShape());
+		assertEquals(3 * 300 * 4 + 4 * 4 + 1, cached.getDouble(3, 4), 0);
+		assertEquals(3, countCached(cache));
+
+		// modified files and other sizes have new entries
+		new File(files.get(0)).setLastModified(System.currentTimeMillis() + 10000);
+		ImageThumbnailLoader.loadThumbnail(files.get(0), 96);
+		assertArrayEquals(new int[] {40, 60}, ImageThumbnailLoader.loadThumbnail(files.get(0), 64).getShape());
+		assertEquals(5, countCached(cache));
+	}
+
+	@Test
+	public void testPruneCache() throws Exception {
+		List<String> files = writeImages();
+		ImageThumbnailLoader.loadThumbnails(files, 96, null);
+		File[] cached = cache.listFiles();
+		assertEquals(3, cached.length);
+
+		// unused thumbnails are removed
+		long now = System.currentTimeMillis();
+		cached[0].setLastModified(now - 2 * 86400000L);
+		ImageThumbnailLoader.setCacheLimits(Long.MAX_VALUE, 86400000L);
+		ImageThumbnailLoader.pruneCache();
+		assertEquals(2, countCached(cache));
+		assertFalse(cached[0].exists());
+
+		// least recently used are removed first
+		cached[1].setLastModified(now - 1000);
+		cached[2].setLastModified(now);
+		ImageThumbnailLoader.setCacheLimits(cached[2].length() + 1, 86400000L);
+		ImageThumbnailLoader.pruneCache();
+		assertEquals(1, countCached(cache));
+		assertTrue(cached[2].exists());
+	}
+}
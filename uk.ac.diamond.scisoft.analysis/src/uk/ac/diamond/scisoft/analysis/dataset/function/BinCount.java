@@ -93,6 +93,12 @@ public class BinCount implements DatasetToDatasetFunction {
 
 		if (wShape == null) {
 			IntegerDataset icount = DatasetFactory.zeros(IntegerDataset.class, shape);
+			HistogramKernels.Counter counter = HistogramKernels.occurrences(HistogramKernels.getBuffer(d));
+			if (counter != null) {
+				HistogramKernels.count(d.getSize(), icount.getData(), counter);
+				return icount;
+			}
+
 			final IndexIterator it = d.getIterator();
 			while (it.hasNext()) {
 				int i = (int) d.getElementLongAbs(it.index);
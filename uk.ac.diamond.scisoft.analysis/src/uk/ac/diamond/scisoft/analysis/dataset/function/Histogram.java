@@ -140,6 +140,15 @@ public class Histogram extends HistogramBase {
 				}
 				final double f = be.f;
 
+				HistogramKernels.Counter counter = cData == null ? null :
+					HistogramKernels.equalSpans(HistogramKernels.getBuffer(ds), lo, hi, edges[nbins], f, nbins - 1, ignoreOutliers);
+				if (counter != null) {
+					HistogramKernels.count(ds.getSize(), cData, counter);
+					result.add(count);
+					result.add(be.origEdges);
+					continue;
+				}
+
 				final BroadcastIterator bit = w == null ? null : BroadcastIterator.createIterator(ds, w);
 				if (bit != null) {
 					bit.setOutputDouble(true);
@@ -202,6 +211,15 @@ public class Histogram extends HistogramBase {
 					continue;
 				}
 
+				HistogramKernels.Counter counter = cData == null ? null :
+					HistogramKernels.search(HistogramKernels.getBuffer(ds), edges, binEdges.lastBin, binEdges.isIncreasing, ignoreOutliers);
+				if (counter != null) {
+					HistogramKernels.count(ds.getSize(), cData, counter);
+					result.add(count);
+					result.add(binEdges.origEdges);
+					continue;
+				}
+
 				final BroadcastIterator bit = w == null ? null : BroadcastIterator.createIterator(ds, w);
 				if (bit != null) {
 					bit.setOutputDouble(true);
@@ -0,0 +1,313 @@
+/*-
+ * Copyright 2015 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.dataset.function;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.eclipse.january.dataset.Dataset;
+
+/**
+ * Counting loops over the primitive buffers of contiguous datasets. There is one loop per
+ * element type so no element is read through a virtual accessor. Large buffers are split
+ * into chunks that are counted concurrently on the common fork-join pool into partial
+ * counts which are then summed
+ */
+final class HistogramKernels {
+
+	private HistogramKernels() {
+	}
+
+	/**
+	 * Minimum number of items in a chunk
+	 */
+	static final int MIN_CHUNK = 1 << 18;
+
+	/**
+	 * Counts items in a range into given array
+	 */
+	interface Counter {
+		void count(int from, int to, int[] counts);
+	}
+
+	/**
+	 * @param d
+	 * @return buffer of single-element dataset whose items are stored contiguously from start, or null
+	 */
+	static Object getBuffer(Dataset d) {
+		if (d.getElementsPerItem() != 1 || d.getStrides() != null) {
+			return null;
+		}
+		Object b = d.getBuffer();
+		return b != null && Array.getLength(b) >= d.getSize() ? b : null;
+	}
+
+	/**
+	 * Count all items, adding to given counts
+	 * @param size number of items
+	 * @param counts
+	 * @param counter
+	 */
+	static void count(final int size, final int[] counts, final Counter counter) {
+		int chunks = Math.min(4 * ForkJoinPool.getCommonPoolParallelism(), size / MIN_CHUNK);
+		if (chunks <= 1) {
+			counter.count(0, size, counts);
+			return;
+		}
+
+		final int chunk = (size + chunks - 1) / chunks;
+		final int n = counts.length;
+		int[] sum = IntStream.range(0, chunks).parallel().mapToObj(i -> {
+			int[] part = new int[n];
+			counter.count(i * chunk, Math.min(size, (i + 1) * chunk), part);
+			return part;
+		}).reduce((a, b) -> {
+			for (int i = 0; i < n; i++) {
+				a[i] += b[i];
+			}
+			return a;
+		}).get();
+
+		for (int i = 0; i < n; i++) {
+			counts[i] += sum[i];
+		}
+	}
+
+	/**
+	 * @param v
+	 * @param lo lowest edge
+	 * @param hi value just less than highest edge
+	 * @param top highest edge
+	 * @param f reciprocal of bin span
+	 * @param last bin
+	 * @param ignore outliers
+	 * @return bin of value in equally-spaced bins or -1 if ignored
+	 */
+	static int equalSpanBin(double v, double lo, double hi, double top, double f, int last, boolean ignore) {
+		if (v < lo) {
+			return ignore ? -1 : 0;
+		}
+		if (v >= hi) {
+			return ignore && v > top ? -1 : last;
+		}
+		return (int) ((v - lo) * f);
+	}
+
+	/**
+	 * @param v
+	 * @param edges sorted
+	 * @param last bin
+	 * @param increasing
+	 * @param ignore outliers
+	 * @return bin of value or -1 if ignored
+	 */
+	static int searchBin(double v, double[] edges, int last, boolean increasing, boolean ignore) {
+		final double lo = edges[0];
+		final double hi = edges[last + 1];
+		if (v < lo) {
+			return ignore ? -1 : 0;
+		}
+		if (v >= hi) {
+			return v > hi && ignore ? -1 : last;
+		}
+		int b = Arrays.binarySearch(edges, v);
+		if (b < 0) { // set to insertion point - 1
+			b = -b - 2;
+		}
+		return increasing ? b : last - b;
+	}
+
+	/**
+	 * @param buffer
+	 * @param lo lowest edge
+	 * @param hi value just less than highest edge
+	 * @param top highest edge
+	 * @param f reciprocal of bin span
+	 * @param last bin
+	 * @param ignore outliers
+	 * @return counter for equally-spaced bins or null if buffer type is not supported
+	 */
+	static Counter equalSpans(Object buffer, final double lo, final double hi, final double top, final double f, final int last, final boolean ignore) {
+		if (buffer instanceof double[]) {
+			final double[] a = (double[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					int p = equalSpanBin(a[i], lo, hi, top, f, last, ignore);
+					if (p >= 0) {
+						counts[p]++;
+					}
+				}
+			};
+		} else if (buffer instanceof float[]) {
+			final float[] a = (float[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					int p = equalSpanBin(a[i], lo, hi, top, f, last, ignore);
+					if (p >= 0) {
+						counts[p]++;
+					}
+				}
+			};
+		} else if (buffer instanceof long[]) {
+			final long[] a = (long[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					int p = equalSpanBin(a[i], lo, hi, top, f, last, ignore);
+					if (p >= 0) {
+						counts[p]++;
+					}
+				}
+			};
+		} else if (buffer instanceof int[]) {
+			final int[] a = (int[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					int p = equalSpanBin(a[i], lo, hi, top, f, last, ignore);
+					if (p >= 0) {
+						counts[p]++;
+					}
+				}
+			};
+		} else if (buffer instanceof short[]) {
+			final short[] a = (short[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					int p = equalSpanBin(a[i], lo, hi, top, f, last, ignore);
+					if (p >= 0) {
+						counts[p]++;
+					}
+				}
+			};
+		} else if (buffer instanceof byte[]) {
+			final byte[] a = (byte[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					int p = equalSpanBin(a[i], lo, hi, top, f, last, ignore);
+					if (p >= 0) {
+						counts[p]++;
+					}
+				}
+			};
+		}
+		return null;
+	}
+
+	/**
+	 * @param buffer
+	 * @param edges sorted
+	 * @param last bin
+	 * @param increasing
+	 * @param ignore outliers
+	 * @return counter for unequally-spaced bins or null if buffer type is not supported
+	 */
+	static Counter search(Object buffer, final double[] edges, final int last, final boolean increasing, final boolean ignore) {
+		if (buffer instanceof double[]) {
+			final double[] a = (double[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					int p = searchBin(a[i], edges, last, increasing, ignore);
+					if (p >= 0) {
+						counts[p]++;
+					}
+				}
+			};
+		} else if (buffer instanceof float[]) {
+			final float[] a = (float[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					int p = searchBin(a[i], edges, last, increasing, ignore);
+					if (p >= 0) {
+						counts[p]++;
+					}
+				}
+			};
+		} else if (buffer instanceof long[]) {
+			final long[] a = (long[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					int p = searchBin(a[i], edges, last, increasing, ignore);
+					if (p >= 0) {
+						counts[p]++;
+					}
+				}
+			};
+		} else if (buffer instanceof int[]) {
+			final int[] a = (int[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					int p = searchBin(a[i], edges, last, increasing, ignore);
+					if (p >= 0) {
+						counts[p]++;
+					}
+				}
+			};
+		} else if (buffer instanceof short[]) {
+			final short[] a = (short[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					int p = searchBin(a[i], edges, last, increasing, ignore);
+					if (p >= 0) {
+						counts[p]++;
+					}
+				}
+			};
+		} else if (buffer instanceof byte[]) {
+			final byte[] a = (byte[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					int p = searchBin(a[i], edges, last, increasing, ignore);
+					if (p >= 0) {
+						counts[p]++;
+					}
+				}
+			};
+		}
+		return null;
+	}
+
+	/**
+	 * @param buffer of non-negative integers
+	 * @return counter of occurrences of each value or null if buffer type is not supported
+	 */
+	static Counter occurrences(Object buffer) {
+		if (buffer instanceof long[]) {
+			final long[] a = (long[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					counts[(int) a[i]]++;
+				}
+			};
+		} else if (buffer instanceof int[]) {
+			final int[] a = (int[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					counts[a[i]]++;
+				}
+			};
+		} else if (buffer instanceof short[]) {
+			final short[] a = (short[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					counts[a[i]]++;
+				}
+			};
+		} else if (buffer instanceof byte[]) {
+			final byte[] a = (byte[]) buffer;
+			return (from, to, counts) -> {
+				for (int i = from; i < to; i++) {
+					counts[a[i]]++;
+				}
+			};
+		}
+		return null;
+	}
+}
@@ -15,6 +15,7 @@ import java.util.List;
 
 import org.eclipse.january.dataset.BroadcastIterator;
 import org.eclipse.january.dataset.CompoundDataset;
+import org.eclipse.january.dataset.CompoundDoubleDataset;
 import org.eclipse.january.dataset.Dataset;
 import org.eclipse.january.dataset.DatasetFactory;
 import org.eclipse.january.dataset.DatasetUtils;
@@ -179,6 +180,30 @@ public class HistogramND extends HistogramNDBase {
 			return count;
 		}
 
+		if (cData != null && cd instanceof CompoundDoubleDataset && cd.getStrides() == null) {
+			final double[] data = ((CompoundDoubleDataset) cd).getData();
+			final int[] strides = new int[dim];
+			strides[dim - 1] = 1;
+			for (int i = dim - 2; i >= 0; i--) {
+				strides[i] = strides[i + 1] * cShape[i + 1];
+			}
+			final boolean ignore = ignoreOutliers;
+			HistogramKernels.count(cd.getSize(), cData, (from, to, counts) -> {
+				items: for (int j = from; j < to; j++) {
+					int index = 0;
+					for (int i = 0, k = j * dim; i < dim; i++, k++) {
+						int p = bin(data[k], be[i], ignore);
+						if (p < 0) {
+							continue items;
+						}
+						index += p * strides[i];
+					}
+					counts[index]++;
+				}
+			});
+			return count;
+		}
+
 		final BroadcastIterator bit = w == null ? null : BroadcastIterator.createIterator(cd, w);
 		final IndexIterator it = bit == null ? cd.getIterator() : bit;
 		double[] values = new double[dim];
@@ -234,4 +259,34 @@ public class HistogramND extends HistogramNDBase {
 
 		return count;
 	}
+
+	/**
+	 * @param v
+	 * @param e
+	 * @param ignore outliers
+	 * @return position in count dataset of value or -1 if ignored
+	 */
+	private static int bin(double v, BinEdges e, boolean ignore) {
+		final int n = e.lastBin;
+		int p;
+		if (v < e.l) {
+			if (ignore) {
+				return -1;
+			}
+			p = 0;
+		} else if (v >= e.h) {
+			if (ignore && v > e.edges.getData()[n + 1]) {
+				return -1;
+			}
+			p = n;
+		} else if (!Double.isNaN(e.f)) {
+			p = (int) (e.f * (v - e.l));
+		} else {
+			p = Arrays.binarySearch(e.edges.getData(), v);
+			if (p < 0) {
+				p = -p - 2; // set to insertion point - 1
+			}
+		}
+		return e.isIncreasing ? p : n - p;
+	}
 }
@@ -11,9 +11,16 @@ package uk.ac.diamond.scisoft.analysis.diffraction;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import javax.vecmath.Vector3d;
 
@@ -140,88 +147,30 @@ public class PowderRingsUtils {
 		final int imax = (int) Math.ceil(FULL_CIRCLE / pdelta);
 
 		logger.debug("Major semi-axis = [{}, {}]; {}", new Object[] { rsj, rej, imax });
-		final int[] start = new int[2];
-		final int[] stop = new int[2];
-		final int[] step = new int[] { 1, 1 };
-		HashSet<PointROI> pointSet = new HashSet<PointROI>();
-		for (int i = 0; i < imax; i++) {
+
+		// search arc segments concurrently on contiguous data
+		final Dataset data = image.getStrides() == null ? image : image.getSlice();
+		final PointROI[] found = new PointROI[imax];
+		IntStream.range(0, imax).parallel().forEach(i -> {
 			double p = i * pdelta;
 			double cp = Math.cos(p);
 			double sp = Math.sin(p);
-			Dataset sub;
 			final int[] beg = new int[] { (int) (yc + rsj * sa * cp + rsn * ca * sp),
 					(int) (xc + rsj * ca * cp - rsn * sa * sp) };
 			final int[] end = new int[] { (int) (yc + rej * sa * cp + ren * ca * sp),
 					(int) (xc + rej * ca * cp - ren * sa * sp) };
-			start[0] = Math.max(0, Math.min(beg[0], end[0]));
-			stop[0] = Math.min(h, Math.max(beg[0], end[0]));
-			if (start[0] == stop[0]) {
-				if (stop[0] == h) {
-					start[0]--;
-				} else {
-					stop[0]++;
-				}
-			} else if (start[0] > stop[0] || start[0] >= h) {
-				continue;
-			} else {
-				stop[0] = Math.min(Math.max(stop[0], start[0] + (int) radialDelta), h);
-			}
-			start[1] = Math.max(0, Math.min(beg[1], end[1]));
-			stop[1] = Math.min(w, Math.max(beg[1], end[1]));
-			if (start[1] == stop[1]) {
-				if (stop[1] == w) {
-					start[1]--;
-				} else {
-					stop[1]++;
-				}
-			} else if (start[1] > stop[1] || start[1] >= w) {
-				continue;
-			} else {
-				stop[1] = Math.min(Math.max(stop[1], start[1] + (int) radialDelta), w);
-			}
-			sub = image.getSlice(start, stop, step);
-
-			// TODO ensure slice has peaky data
-			double iqr = (Double) Stats.iqr(sub);
-			double low = (Double) sub.mean() + 0.5*iqr;
-			if (sub.max().doubleValue() < low) {
-				logger.info("Discard sub at {} ({}): {}; {}; {} [{}] => {} cf {}", new Object[] {Arrays.toString(start), sub.getShape(), 
-						sub.min(), sub.mean(), sub.max(), low, 0.5*iqr, sub.stdDeviation()});
-				continue;
-			}
+			found[i] = findPOIInWindow(data, mask, beg, end, radialDelta);
+		});
 
-			int[] pos = sub.maxPos();
-			pos[0] += start[0];
-			pos[1] += start[1];
-
-			if (mask != null) {
-				if (mask.get(pos)) {
-					Dataset sorted = DatasetUtils.sort(sub);
-					int l = sorted.getSize() - 1;
-					do {
-						double x = sorted.getElementDoubleAbs(l);
-						pos = sub.getNDPosition(DatasetUtils.findIndexEqualTo(sub, x));
-						pos[0] += start[0];
-						pos[1] += start[1];
-					} while (!mask.get(pos) && --l >= 0);
-					if (l < 0) {
-						logger.warn("Could not find unmasked value for slice!");
-					} else {
-						//add 0.5 to make pointROI at centre of pixel
-//						pointSet.add(new PointROI(pos[1], pos[0]));
-						pointSet.add(new PointROI(pos[1]+0.5, pos[0]+0.5));
-					}
-				}
-			} else {
-//			System.err.printf("Slice: %s, %s has max at %s\n", Arrays.toString(start), Arrays.toString(stop), Arrays.toString(pos));
-				//add 0.5 to make pointROI at centre of pixel
-				pointSet.add(new PointROI(pos[1]+0.5, pos[0]+0.5));
-//				pointSet.add(new PointROI(pos[1], pos[0]));
+		// add in order of arc so set iterates as if searched serially
+		HashSet<PointROI> pointSet = new HashSet<PointROI>();
+		for (PointROI p : found) {
+			if (p != null) {
+				pointSet.add(p);
 			}
-
-			if (mon != null)
-				mon.worked(1);
 		}
+		if (mon != null)
+			mon.worked(pointSet.size());
 
 		// analyse pixel values
 		int n = pointSet.size();
@@ -278,6 +227,125 @@ public class PowderRingsUtils {
 		return polyline;
 	}
 
+	private static final ThreadLocal<double[]> WINDOW = new ThreadLocal<double[]>() {
+		@Override
+		protected double[] initialValue() {
+			return new double[1024];
+		}
+	};
+
+	/**
+	 * Find point of maximum intensity in window of image bounded by given corners
+	 * @param data contiguous image
+	 * @param mask (can be null)
+	 * @param beg
+	 * @param end
+	 * @param radialDelta
+	 * @return point at centre of pixel or null if window is outside image or not peaky
+	 */
+	private static PointROI findPOIInWindow(Dataset data, BooleanDataset mask, int[] beg, int[] end, double radialDelta) {
+		final int[] shape = data.getShapeRef();
+		final int h = shape[0];
+		final int w = shape[1];
+		final int[] start = new int[2];
+		final int[] stop = new int[2];
+		start[0] = Math.max(0, Math.min(beg[0], end[0]));
+		stop[0] = Math.min(h, Math.max(beg[0], end[0]));
+		if (start[0] == stop[0]) {
+			if (stop[0] == h) {
+				start[0]--;
+			} else {
+				stop[0]++;
+			}
+		} else if (start[0] > stop[0] || start[0] >= h) {
+			return null;
+		} else {
+			stop[0] = Math.min(Math.max(stop[0], start[0] + (int) radialDelta), h);
+		}
+		start[1] = Math.max(0, Math.min(beg[1], end[1]));
+		stop[1] = Math.min(w, Math.max(beg[1], end[1]));
+		if (start[1] == stop[1]) {
+			if (stop[1] == w) {
+				start[1]--;
+			} else {
+				stop[1]++;
+			}
+		} else if (start[1] > stop[1] || start[1] >= w) {
+			return null;
+		} else {
+			stop[1] = Math.min(Math.max(stop[1], start[1] + (int) radialDelta), w);
+		}
+
+		final int rows = stop[0] - start[0];
+		final int cols = stop[1] - start[1];
+		final int size = rows * cols;
+		if (rows <= 0 || cols <= 0) {
+			return null;
+		}
+		double[] window = WINDOW.get();
+		if (window.length < 2 * size) {
+			window = new double[2 * size];
+			WINDOW.set(window);
+		}
+
+		// copy window and find its first maximum
+		int n = 0;
+		double sum = 0;
+		double max = Double.NEGATIVE_INFINITY;
+		int maxIndex = 0;
+		for (int y = start[0]; y < stop[0]; y++) {
+			int index = y * w + start[1];
+			for (int x = 0; x < cols; x++) {
+				double v = data.getElementDoubleAbs(index++);
+				if (v > max) {
+					max = v;
+					maxIndex = n;
+				}
+				sum += v;
+				window[n++] = v;
+			}
+		}
+
+		// TODO ensure slice has peaky data
+		double mean = sum / size;
+		System.arraycopy(window, 0, window, size, size);
+		Arrays.sort(window, size, 2 * size);
+		double iqr = sortedQuantile(window, size, size, 0.75) - sortedQuantile(window, size, size, 0.25);
+		double low = mean + 0.5*iqr;
+		if (max < low) {
+			logger.info("Discard sub at {} ([{}, {}]): {}; {}; {} [{}] => {}", new Object[] {Arrays.toString(start), rows, cols,
+					window[size], mean, max, low, 0.5*iqr});
+			return null;
+		}
+
+		int py = start[0] + maxIndex / cols;
+		int px = start[1] + maxIndex % cols;
+		if (mask != null && !mask.get(py, px)) {
+			return null;
+		}
+
+		//add 0.5 to make pointROI at centre of pixel
+		return new PointROI(px + 0.5, py + 0.5);
+	}
+
+	/**
+	 * @param sorted
+	 * @param offset
+	 * @param length
+	 * @param q
+	 * @return linearly interpolated quantile of sorted values
+	 */
+	private static double sortedQuantile(double[] sorted, int offset, int length, double q) {
+		double f = (length - 1) * q;
+		int i = (int) Math.floor(f);
+		f -= i;
+		double quantile = sorted[offset + i];
+		if (f > 0) {
+			quantile = (1 - f) * quantile + f * sorted[offset + i + 1];
+		}
+		return quantile;
+	}
+
 	public static EllipticalFitROI fitAndTrimOutliers(IMonitor mon, PolylineROI points, boolean circleOnly) {
 		return fitAndTrimOutliers(mon, points, RADIAL_DELTA, circleOnly);
 	}
@@ -378,21 +446,47 @@ public class PowderRingsUtils {
 		double[] ec = roi.getPoint();
 		TreeSet<Double> majors = new TreeSet<Double>();
 
-		// TODO farm this out across several threads
-		findMajorAxes(mon, majors, image, mask, roi, radialMin, radialDelta, ec, 0 - ec[0], 0 - ec[1]); // TL
-		findMajorAxes(mon, majors, image, mask, roi, radialMin, radialDelta, ec, w - ec[0], 0 - ec[1]); // TR
-		findMajorAxes(mon, majors, image, mask, roi, radialMin, radialDelta, ec, w - ec[0], h - ec[1]); // BR
-		findMajorAxes(mon, majors, image, mask, roi, radialMin, radialDelta, ec, 0 - ec[0], h - ec[1]); // BL
-
-		findMajorAxes(mon, majors, image, mask, roi, radialMin, radialDelta, ec, 0, h - ec[1]); // T
-		findMajorAxes(mon, majors, image, mask, roi, radialMin, radialDelta, ec, w - ec[0], 0); // R
-		findMajorAxes(mon, majors, image, mask, roi, radialMin, radialDelta, ec, 0, 0 - ec[1]); // B
-		findMajorAxes(mon, majors, image, mask, roi, radialMin, radialDelta, ec, 0 - ec[0], 0); // L
+		double[][] spokes = new double[][] {
+			{0 - ec[0], 0 - ec[1]}, // TL
+			{w - ec[0], 0 - ec[1]}, // TR
+			{w - ec[0], h - ec[1]}, // BR
+			{0 - ec[0], h - ec[1]}, // BL
+			{0, h - ec[1]}, // T
+			{w - ec[0], 0}, // R
+			{0, 0 - ec[1]}, // B
+			{0 - ec[0], 0}, // L
+		};
+		List<TreeSet<Double>> spokeAxes = Arrays.stream(spokes).parallel().map(d -> {
+			TreeSet<Double> axes = new TreeSet<Double>();
+			findMajorAxes(null, axes, image, mask, roi, radialMin, radialDelta, ec, d[0], d[1]);
+			return axes;
+		}).collect(Collectors.toList());
+		for (TreeSet<Double> axes : spokeAxes) {
+			majors.addAll(axes);
+		}
+		if (mon != null)
+			mon.worked(spokes.length);
 
 		// and finally find POIs
 		List<EllipticalROI> ells = new ArrayList<EllipticalROI>();
 		double major = roi.getSemiAxis(0);
 		double aspect = roi.getSemiAxis(0)/roi.getSemiAxis(1);
+
+		// trace all candidate rings concurrently before choosing which to keep
+		Map<Double, RingTrace> traces = majors.parallelStream().filter(a -> Math.abs(a - major) >= RING_SEPARATION)
+				.collect(Collectors.toConcurrentMap(a -> a, a -> {
+					RingTrace t = new RingTrace(new EllipticalROI(a, a/aspect, roi.getAngle(), ec[0], ec[1]));
+					try {
+						PolylineROI polyline = findPOIsNearEllipse(null, image, mask, t.ellipse, arcLength, 0.8*radialDelta, maxPoints);
+						if (polyline.getNumberOfPoints() > 2) {
+							t.fit = fitAndTrimOutliers(null, polyline, trimDelta, roi.isCircular());
+						}
+					} catch (IllegalArgumentException e) {
+						t.error = e;
+					}
+					return t;
+				}));
+
 		double last = Double.NEGATIVE_INFINITY;
 		for (double a : majors) {
 			System.err.println("Current " + a + ", last " + last);
@@ -410,34 +504,31 @@ public class PowderRingsUtils {
 				System.err.println("Add original");
 				ells.add(roi);
 			} else {
-				EllipticalROI er = new EllipticalROI(a, a/aspect, roi.getAngle(), ec[0], ec[1]);
-				try {
-					PolylineROI polyline = findPOIsNearEllipse(mon, image, mask, er, arcLength, 0.8*radialDelta, maxPoints);
-					if (polyline.getNumberOfPoints() > 2) {
-						er = fitAndTrimOutliers(mon, polyline, trimDelta, roi.isCircular());
-						double emaj = er.getSemiAxis(0);
-						if (Math.abs(emaj - last) < RING_SEPARATION) { // omit close rings
-							last = a;
-							System.err.println("Dropped as fit is too close");
-							continue;
-						}
-						double[] c = er.getPointRef();
-						if (Math.hypot(c[0] - ec[0], c[1] - ec[1]) > 8*radialDelta) {
-							last = a; // omit fits with far-off centres
-							System.err.println("Dropped as centre is far-off");
-							continue;
-						}
-						if (Math.abs(emaj - major) < RING_SEPARATION) {
-							System.err.println("Add fit that is close to original");
-						}
-						last = Math.max(a, emaj);
-						ells.add(er);
-					} else {
-						logger.warn("Could not find enough points at {}", er);
-					}
-				} catch (IllegalArgumentException e) {
-					logger.debug("Problem with {}", er, e);
+				RingTrace t = traces.get(a);
+				if (t.error != null) {
+					logger.debug("Problem with {}", t.ellipse, t.error);
 					last = a;
+				} else if (t.fit != null) {
+					EllipticalROI er = t.fit;
+					double emaj = er.getSemiAxis(0);
+					if (Math.abs(emaj - last) < RING_SEPARATION) { // omit close rings
+						last = a;
+						System.err.println("Dropped as fit is too close");
+						continue;
+					}
+					double[] c = er.getPointRef();
+					if (Math.hypot(c[0] - ec[0], c[1] - ec[1]) > 8*radialDelta) {
+						last = a; // omit fits with far-off centres
+						System.err.println("Dropped as centre is far-off");
+						continue;
+					}
+					if (Math.abs(emaj - major) < RING_SEPARATION) {
+						System.err.println("Add fit that is close to original");
+					}
+					last = Math.max(a, emaj);
+					ells.add(er);
+				} else {
+					logger.warn("Could not find enough points at {}", t.ellipse);
 				}
 				if (mon != null)
 					mon.worked(1);
@@ -447,6 +538,19 @@ public class PowderRingsUtils {
 		return ells;
 	}
 
+	/**
+	 * Result of tracing a candidate ring
+	 */
+	private static class RingTrace {
+		final EllipticalROI ellipse;
+		EllipticalROI fit;
+		IllegalArgumentException error;
+
+		public RingTrace(EllipticalROI ellipse) {
+			this.ellipse = ellipse;
+		}
+	}
+
 	/**
 	 * Find major axes by looking along thick line given by relative coordinates to centre for
 	 * maximum intensity values
@@ -570,14 +674,16 @@ public class PowderRingsUtils {
 			}
 		}
 
-		DetectorFitFunction f;
 		if (allCircles) {
 			logger.debug("All rings are circular");
-			f = createQFitFunction4(ellipses, detector, env.getWavelength(), fixedWavelength);
-		} else {
-			f = createQFitFunction7(ellipses, detector, env.getWavelength(), fixedWavelength);
 		}
+		final List<EllipticalROI> rings = ellipses;
+		final boolean circles = allCircles;
+		final double wavelength = env.getWavelength();
+		Supplier<DetectorFitFunction> factory = () -> circles ? createQFitFunction4(rings, detector, wavelength, fixedWavelength)
+				: createQFitFunction7(rings, detector, wavelength, fixedWavelength);
 
+		DetectorFitFunction f = factory.get();
 		logger.debug("Init: {}", f.getInitial());
 
 		// set up a combination generator for all
@@ -592,39 +698,59 @@ public class PowderRingsUtils {
 		}
 		logger.debug("There are {} combinations", gen.getTotalCombinations());
 
-		double min = Double.POSITIVE_INFINITY;
-
-		MultivariateOptimizer opt = FittingUtils.createOptimizer(f.getN());
-
-		// opt.setMaxEvaluations(2000);
-		List<Double> fSpacings = null;
-
-		int i = 0;
-		for (List<Double> list : gen) { // find combination that minimizes residuals
-			f.setSpacings(list);
-			double res = FittingUtils.optimize(f, opt, min);
-			if (res < min) {
-				min = res;
-				fSpacings = list;
+		// fit functions are not thread-safe so each concurrent fit borrows its own
+		Queue<DetectorFitFunction> functions = new ConcurrentLinkedQueue<>();
+		functions.add(f);
+		BestFit best = new BestFit();
+
+		List<List<Double>> batch = new ArrayList<>(COMBINATION_BATCH);
+		long index = 0;
+		while (gen.hasMore()) { // find combination that minimizes residuals
+			batch.clear();
+			while (batch.size() < COMBINATION_BATCH && gen.hasMore()) {
+				batch.add(gen.nextCombinationAsList());
 			}
-//			System.err.printf(".");
+			final long first = index;
+			IntStream.range(0, batch.size()).parallel().forEach(i -> {
+				if (mon != null && mon.isCancelled()) {
+					return;
+				}
+				List<Double> list = batch.get(i);
+				if (fixedWavelength && wavelength > 2 * Collections.min(list)) {
+					// no solution of Bragg's law for smallest spacing
+					return;
+				}
+
+				DetectorFitFunction ff = functions.poll();
+				if (ff == null) {
+					ff = factory.get();
+				}
+				try {
+					ff.setParameters(null);
+					ff.setSpacings(list);
+					// optimizer per fit so any seeded sampling does not depend on the order of evaluation
+					double res = FittingUtils.optimize(ff, FittingUtils.createOptimizer(ff.getN()), Double.POSITIVE_INFINITY);
+					best.offer(res, first + i, list, ff.getParameters());
+				} finally {
+					functions.add(ff);
+				}
+			});
+			index += batch.size();
 			if (mon != null) {
-				mon.worked(10);
+				mon.worked(10 * batch.size());
 				if (mon.isCancelled())
 					return null;
 			}
-			if (i++ == 100) {
-//				System.err.printf("\n");
-				i = 0;
-			}
 		}
-//		System.err.printf("\n");
 
-		if (fSpacings == null || f.getParameters() == null) {
+		List<Double> fSpacings = best.spacings;
+		double min = best.residual;
+		if (fSpacings == null || best.parameters == null) {
 			logger.warn("Problem with fitting - as could not find a single fit!");
 			return null;
 		}
 
+		f.setParameters(best.parameters);
 		logger.debug("Parameters: w {}, D {}, e {} (min {})", new Object[] { f.getWavelength(), f.getDistance(), f.getNormalAngles(), min });
 		logger.debug("Spacings used: {}", fSpacings);
 		f.setSpacings(fSpacings);
@@ -635,6 +761,32 @@ public class PowderRingsUtils {
 		return q;
 	}
 
+	private static final int COMBINATION_BATCH = 1024;
+
+	/**
+	 * Holds fit with lowest residual where ties are broken by lowest combination index
+	 */
+	private static class BestFit {
+		private volatile double residual = Double.POSITIVE_INFINITY;
+		private long index = Long.MAX_VALUE;
+		private List<Double> spacings;
+		private double[] parameters;
+
+		public void offer(double res, long i, List<Double> list, double[] params) {
+			if (!(res <= residual) || res == Double.POSITIVE_INFINITY || params == null) { // also rejects NaN
+				return;
+			}
+			synchronized (this) {
+				if (res < residual || (res == residual && i < index)) {
+					residual = res;
+					index = i;
+					spacings = list;
+					parameters = params.clone();
+				}
+			}
+		}
+	}
+
 	/**
 	 * Fit ellipses to a single detector with/without fixing wavelength.
 	 * <p>
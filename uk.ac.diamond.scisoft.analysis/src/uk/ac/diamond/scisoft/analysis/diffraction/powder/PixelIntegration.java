@@ -10,7 +10,10 @@
 package uk.ac.diamond.scisoft.analysis.diffraction.powder;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 import org.eclipse.january.dataset.BooleanDataset;
 import org.eclipse.january.dataset.Dataset;
@@ -35,6 +38,27 @@ public class PixelIntegration {
 		return nonPixelSplitting2D(data, mask, bean);
 		
 	}
+
+	/**
+	 * Integrate a batch of frames that share the given geometry. Pixel splitting 2D
+	 * integration calculates the splitting of each pixel once for the whole batch, so
+	 * the batch size should be limited to keep its cakes in memory
+	 * @param data frames
+	 * @param mask
+	 * @param bean
+	 * @return list of results, as given by {@link #integrate(IDataset, IDataset, IPixelIntegrationCache)}, for each frame
+	 */
+	public static List<List<Dataset>> integrate(List<? extends IDataset> data, IDataset mask, IPixelIntegrationCache bean) {
+		if (!bean.isTo1D() && bean.isPixelSplitting()) {
+			return pixelSplitting2D(data, mask, bean);
+		}
+
+		List<List<Dataset>> results = new ArrayList<List<Dataset>>(data.size());
+		for (IDataset d : data) {
+			results.add(integrate(d, mask, bean));
+		}
+		return results;
+	}
 	
 	private static List<Dataset> nonPixelSplitting1D(IDataset data, IDataset mask, IPixelIntegrationCache bean) {
 		
@@ -315,8 +339,20 @@ public class PixelIntegration {
 	
 	
 	private static List<Dataset> pixelSplitting2D(IDataset data, IDataset mask, IPixelIntegrationCache bean) {
-		
-		List<Dataset> result = new ArrayList<Dataset>();
+		return pixelSplitting2D(Collections.singletonList(data), mask, bean).get(0);
+	}
+
+	/**
+	 * Minimum number of pixels in a tile accumulated by one task
+	 */
+	private static final int MIN_TILE_SIZE = 1 << 16;
+
+	/**
+	 * Split pixels of all frames into their bins. The image is divided into tiles of consecutive
+	 * pixels which are accumulated concurrently into partial cakes that are then summed in order.
+	 * The bin corners of each pixel are calculated once for the whole batch
+	 */
+	private static List<List<Dataset>> pixelSplitting2D(List<? extends IDataset> data, IDataset mask, IPixelIntegrationCache bean) {
 		
 		final int nXBins = bean.getNumberOfBinsXAxis();
 		final int nYBins = bean.getNumberOfBinsYAxis();
@@ -329,111 +365,156 @@ public class PixelIntegration {
 		final double maxY = bean.getYBinEdgeMax();
 		final double spanY = (maxY - minY)/nYBins;
 
-		DoubleDataset histo = DatasetFactory.zeros(DoubleDataset.class, nYBins, nXBins);
-		DoubleDataset intensity = DatasetFactory.zeros(DoubleDataset.class, nYBins, nXBins);
-		//			final double[] h = histo.getData();
-		//			final double[] in = intensity.getData();
-		//			if (spanQ <= 0) {
-		//				h[0] = ds.getSize();
-		//				result.add(histo);
-		//				result.add(bins);
-		//				continue;
-		//			}
-
-		Dataset x0 = bean.getXAxisArray()[0];
-		Dataset x1 = bean.getXAxisArray()[1];
-		Dataset y0 = bean.getYAxisArray()[0];
-		Dataset y1 = bean.getYAxisArray()[1];
-		Dataset d = DatasetUtils.convertToDataset(data);
-		
-		Dataset m = DatasetUtils.convertToDataset(mask);
-		
-		IndexIterator iter = x0.getIterator();
-		
-		int[] setPos = new int[]{0,0};
-		
-		while (iter.hasNext()) {
-			double sig = d.getElementDoubleAbs(iter.index);
-			
-			if (!Double.isFinite(sig)) continue;
+		final double[] x0 = toDoubleArray(bean.getXAxisArray()[0]);
+		final double[] x1 = toDoubleArray(bean.getXAxisArray()[1]);
+		final double[] y0 = toDoubleArray(bean.getYAxisArray()[0]);
+		final double[] y1 = toDoubleArray(bean.getYAxisArray()[1]);
 
-			if (m != null && !m.getElementBooleanAbs(iter.index)) continue;
-			
-			double xPixMax = x1.getElementDoubleAbs(iter.index);
-			double xPixMin = x0.getElementDoubleAbs(iter.index);
-			double yPixMax = y1.getElementDoubleAbs(iter.index);
-			double yPixMin = y0.getElementDoubleAbs(iter.index);
+		final int nFrames = data.size();
+		final Dataset[] d = new Dataset[nFrames];
+		for (int f = 0; f < nFrames; f++) {
+			d[f] = DatasetUtils.convertToDataset(data.get(f));
+		}
+		final Dataset m = DatasetUtils.convertToDataset(mask);
 
-			if (xPixMax < minX || xPixMin > maxX) {
-				continue;
-			} 
+		final DoubleDataset[] histo = new DoubleDataset[nFrames];
+		final DoubleDataset[] intensity = new DoubleDataset[nFrames];
+		for (int f = 0; f < nFrames; f++) {
+			histo[f] = DatasetFactory.zeros(DoubleDataset.class, nYBins, nXBins);
+			intensity[f] = DatasetFactory.zeros(DoubleDataset.class, nYBins, nXBins);
+		}
 
-			if (yPixMax < minY || yPixMin > maxY) {
-				continue;
+		final int size = x0.length;
+		final int nTiles = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), size / MIN_TILE_SIZE));
+		final int tileSize = (size + nTiles - 1) / nTiles;
+		final double[][][] h = new double[nTiles][nFrames][];
+		final double[][][] in = new double[nTiles][nFrames][];
+		for (int f = 0; f < nFrames; f++) {
+			h[0][f] = histo[f].getData();
+			in[0][f] = intensity[f].getData();
+		}
+
+		IntStream.range(0, nTiles).parallel().forEach(t -> {
+			if (t > 0) {
+				for (int f = 0; f < nFrames; f++) {
+					h[t][f] = new double[nYBins * nXBins];
+					in[t][f] = new double[nYBins * nXBins];
+				}
 			}
+			double[] sig = new double[nFrames];
+			int end = Math.min(size, (t + 1) * tileSize);
+			for (int p = t * tileSize; p < end; p++) {
+				if (m != null && !m.getElementBooleanAbs(p)) continue;
+
+				boolean finite = false;
+				for (int f = 0; f < nFrames; f++) {
+					sig[f] = d[f].getElementDoubleAbs(p);
+					finite |= Double.isFinite(sig[f]);
+				}
+				if (!finite) continue;
 
-			double minBinExactX = (xPixMin-minX)/spanX;
-			double maxBinExactX = (xPixMax-minX)/spanX;
+				double xPixMax = x1[p];
+				double xPixMin = x0[p];
+				double yPixMax = y1[p];
+				double yPixMin = y0[p];
 
-			double minBinExactY = (yPixMin-minY)/spanY;
-			double maxBinExactY = (yPixMax-minY)/spanY;
+				if (xPixMax < minX || xPixMin > maxX) {
+					continue;
+				} 
 
-			double partialScale = 1;
-			double iFull = (maxBinExactX-minBinExactX)*(maxBinExactY-minBinExactY);
-			
-			//Partial pixel if outside of range
-			minBinExactX = xPixMin < minX ? 0 : minBinExactX;
-			maxBinExactX = xPixMax > maxX ? nXBins : maxBinExactX;
-			minBinExactY = yPixMin < minY ? 0 : minBinExactY;
-			maxBinExactY = yPixMax > maxY ? nYBins : maxBinExactY;
-			
-			double iFraction = (maxBinExactX-minBinExactX)*(maxBinExactY-minBinExactY);
-			partialScale *= (iFraction/iFull);
-			
-			int minBinX = (int)minBinExactX;
-			int maxBinX= (int)maxBinExactX;
-			int minBinY = (int)minBinExactY;
-			int maxBinY = (int)maxBinExactY;
-			
-			double binArea = (maxBinExactX-minBinExactX)*(maxBinExactY-minBinExactY);
-			
-			double minFracX = 1-(minBinExactX-minBinX);
-			double maxFracX = maxBinExactX-maxBinX;
-			double minFracY = 1-(minBinExactY-minBinY);
-			double maxFracY = maxBinExactY-maxBinY;
-			
-			for (int i = minBinX ; i <= maxBinX; i++) {
-				if (i < 0 || i >= nXBins) continue;
-				for (int j = minBinY; j <= maxBinY; j++) {
-					if (j < 0 || j >= nYBins) continue;
-
-					setPos[0] = j;
-					setPos[1]= i;
-					double val = histo.get(setPos);
-
-					double modify = partialScale;
-
-					if (i == minBinX && minBinX != maxBinX) modify *= (minFracX);
-					if (i == maxBinX && minBinX != maxBinX) modify *= (maxFracX);
-					if (j == minBinY && minBinY != maxBinY) modify *= (minFracY);
-					if (j == maxBinY && minBinY != maxBinY) modify *= (maxFracY);
-					
-					if (j == maxBinY && maxBinY == minBinY) modify*=(maxBinExactY-minBinExactY);
-					if (j == maxBinX && maxBinX == minBinX) modify*=(maxBinExactX-minBinExactX);
-					
-					modify /= binArea;
-					histo.set(val+modify, setPos);
-					double inVal = intensity.get(setPos);
-					intensity.set(inVal+sig*modify, setPos);
+				if (yPixMax < minY || yPixMin > maxY) {
+					continue;
 				}
-				
 
+				double minBinExactX = (xPixMin-minX)/spanX;
+				double maxBinExactX = (xPixMax-minX)/spanX;
+
+				double minBinExactY = (yPixMin-minY)/spanY;
+				double maxBinExactY = (yPixMax-minY)/spanY;
+
+				double partialScale = 1;
+				double iFull = (maxBinExactX-minBinExactX)*(maxBinExactY-minBinExactY);
+
+				//Partial pixel if outside of range
+				minBinExactX = xPixMin < minX ? 0 : minBinExactX;
+				maxBinExactX = xPixMax > maxX ? nXBins : maxBinExactX;
+				minBinExactY = yPixMin < minY ? 0 : minBinExactY;
+				maxBinExactY = yPixMax > maxY ? nYBins : maxBinExactY;
+
+				double iFraction = (maxBinExactX-minBinExactX)*(maxBinExactY-minBinExactY);
+				partialScale *= (iFraction/iFull);
+
+				int minBinX = (int)minBinExactX;
+				int maxBinX= (int)maxBinExactX;
+				int minBinY = (int)minBinExactY;
+				int maxBinY = (int)maxBinExactY;
+
+				double binArea = (maxBinExactX-minBinExactX)*(maxBinExactY-minBinExactY);
+
+				double minFracX = 1-(minBinExactX-minBinX);
+				double maxFracX = maxBinExactX-maxBinX;
+				double minFracY = 1-(minBinExactY-minBinY);
+				double maxFracY = maxBinExactY-maxBinY;
+
+				for (int i = minBinX ; i <= maxBinX; i++) {
+					if (i < 0 || i >= nXBins) continue;
+					for (int j = minBinY; j <= maxBinY; j++) {
+						if (j < 0 || j >= nYBins) continue;
+
+						double modify = partialScale;
+
+						if (i == minBinX && minBinX != maxBinX) modify *= (minFracX);
+						if (i == maxBinX && minBinX != maxBinX) modify *= (maxFracX);
+						if (j == minBinY && minBinY != maxBinY) modify *= (minFracY);
+						if (j == maxBinY && minBinY != maxBinY) modify *= (maxFracY);
+
+						if (j == maxBinY && maxBinY == minBinY) modify*=(maxBinExactY-minBinExactY);
+						if (j == maxBinX && maxBinX == minBinX) modify*=(maxBinExactX-minBinExactX);
+
+						modify /= binArea;
+						int b = j * nXBins + i;
+						for (int f = 0; f < nFrames; f++) {
+							if (!Double.isFinite(sig[f])) continue;
+							h[t][f][b] += modify;
+							in[t][f][b] += sig[f]*modify;
+						}
+					}
+				}
+			}
+		});
+
+		// reduce partial cakes in tile order
+		for (int t = 1; t < nTiles; t++) {
+			for (int f = 0; f < nFrames; f++) {
+				double[] ht = h[t][f];
+				double[] it = in[t][f];
+				double[] h0 = h[0][f];
+				double[] i0 = in[0][f];
+				for (int b = 0; b < h0.length; b++) {
+					h0[b] += ht[b];
+					i0[b] += it[b];
+				}
 			}
 		}
 
-		processAndAddToResult(intensity, histo, result, bean, true);
-		
-		return result;
+		List<List<Dataset>> results = new ArrayList<List<Dataset>>(nFrames);
+		for (int f = 0; f < nFrames; f++) {
+			List<Dataset> result = new ArrayList<Dataset>();
+			processAndAddToResult(intensity[f], histo[f], result, bean, true);
+			results.add(result);
+		}
+		return results;
+	}
+
+	/**
+	 * @param a
+	 * @return primitive array of contiguous data, which may be the dataset's own buffer
+	 */
+	private static double[] toDoubleArray(Dataset a) {
+		if (a instanceof DoubleDataset && a.getStrides() == null) {
+			return ((DoubleDataset) a).getData();
+		}
+		return DatasetUtils.cast(DoubleDataset.class, a).getData();
 	}
 
 	
@@ -9,7 +9,6 @@
 
 package uk.ac.diamond.scisoft.analysis.fitting.functions;
 
-import org.apache.commons.math3.complex.Complex;
 import org.eclipse.dawnsci.analysis.api.fitting.functions.IParameter;
 import org.eclipse.january.dataset.DoubleDataset;
 
@@ -74,8 +73,9 @@ public class Voigt extends APeak {
 	}
 
 	private static final double CONST = Math.sqrt(8 * Math.log(2.));
+	private static final double ONE_OVER_SQRT_PI = 1. / Math.sqrt(Math.PI);
 
-	private transient double r, ft, fr, zi;
+	private transient double r, fa, ft, fr, fg, zi;
 
 	@Override
 	protected void calcCachedParameters() {
@@ -86,8 +86,10 @@ public class Voigt extends APeak {
 			sigma = 10 * Double.MIN_NORMAL;
 		}
 		fr = Math.sqrt(0.5) / sigma;
+		fg = 1 / (sigma * CONST); // -d(ln fr)/d(g_fwhm)
 		zi = fr * l;
-		ft = fr * getParameterValue(AREA) / Math.sqrt(Math.PI);
+		fa = fr * ONE_OVER_SQRT_PI;
+		ft = fa * getParameterValue(AREA);
 		height = ft * Faddeeva.erfcx(zi);
 		setDirty(false);
 	}
@@ -98,11 +100,10 @@ public class Voigt extends APeak {
 			calcCachedParameters();
 		}
 
-		Complex z = new Complex(fr * (values[0] - r), zi);
-		Complex w = Faddeeva.w(z, 0);
+		double[] w = new double[2];
+		Faddeeva.w(fr * (values[0] - r), zi, 0, w, 0);
 
-		double result = ft * w.getReal();
-		return result;
+		return ft * w[0];
 	}
 
 	@Override
@@ -116,10 +117,77 @@ public class Voigt extends APeak {
 		int i = 0;
 		double[] buffer = data.getData();
 		while (it.hasNext()) {
-			Complex z = new Complex(fr * (coords[0] - r), zi);
-			Complex w = Faddeeva.w(z, 0);
+			buffer[i++] = fr * (coords[0] - r);
+		}
+
+		Faddeeva.w(buffer, zi, 0, buffer, null);
+		for (int j = 0; j < i; j++) {
+			buffer[j] *= ft;
+		}
+	}
+
+	/**
+	 * Derivatives use w'(z) = -2 z w(z) + 2i/sqrt(pi) with z = p + iq
+	 * @param j index of parameter
+	 * @param p real part of z
+	 * @param u real part of w(z)
+	 * @param v imaginary part of w(z)
+	 * @return partial derivative
+	 */
+	private double partialDeriv(int j, double p, double u, double v) {
+		final double q = zi;
+		switch (j) {
+		case POSN:
+			return 2 * ft * fr * (p * u - q * v);
+		case FWHM:
+			return ft * fr * (p * v + q * u - ONE_OVER_SQRT_PI);
+		case AREA:
+			return fa * u;
+		case FWHMG:
+			return -ft * fg * (u * (1 - 2 * (p * p - q * q)) + 4 * p * q * v - 2 * q * ONE_OVER_SQRT_PI);
+		default:
+			return 0;
+		}
+	}
+
+	@Override
+	public double partialDeriv(IParameter parameter, double... position) {
+		if (isDirty()) {
+			calcCachedParameters();
+		}
+
+		if (isDuplicated(parameter)) {
+			return super.partialDeriv(parameter, position);
+		}
 
-			buffer[i++] = ft * w.getReal();
+		double p = fr * (position[0] - r);
+		double[] w = new double[2];
+		Faddeeva.w(p, zi, 0, w, 0);
+		return partialDeriv(indexOfParameter(parameter), p, w[0], w[1]);
+	}
+
+	@Override
+	public void fillWithPartialDerivativeValues(IParameter parameter, DoubleDataset data, CoordinatesIterator it) {
+		if (isDirty()) {
+			calcCachedParameters();
+		}
+
+		if (isDuplicated(parameter)) {
+			super.fillWithPartialDerivativeValues(parameter, data, it);
+			return;
+		}
+
+		int j = indexOfParameter(parameter);
+
+		it.reset();
+		double[] coords = it.getCoordinates();
+		int i = 0;
+		double[] buffer = data.getData();
+		double[] w = new double[2];
+		while (it.hasNext()) {
+			double p = fr * (coords[0] - r);
+			Faddeeva.w(p, zi, 0, w, 0);
+			buffer[i++] = partialDeriv(j, p, w[0], w[1]);
 		}
 	}
 }
@@ -9,8 +9,15 @@
 
 package uk.ac.diamond.scisoft.analysis.io;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import org.eclipse.dawnsci.analysis.api.io.IDataHolder;
 import org.eclipse.dawnsci.analysis.api.io.IFileLoader;
@@ -56,11 +63,87 @@ public abstract class AbstractFileLoader implements IFileLoader, IMetaLoader {
 
 	protected String fileName = "";
 
+	/**
+	 * Contents of the file held in memory, read instead of the file when set
+	 */
+	protected ByteBuffer fileContent;
+
 	public void setFile(final String fileName) {
 		this.fileName = fileName;
 		clearMetadata();
 	}
 
+	/**
+	 * Set the contents of the file, e.g. after decompressing it in memory. The
+	 * file name is still used to name the data and for metadata.
+	 * <p>
+	 * Only loaders that return true from {@link #isFileContentSupported()}
+	 * read this
+	 * @param content (the buffer's position and limit are not changed)
+	 */
+	public void setFileContent(final ByteBuffer content) {
+		this.fileContent = content;
+		clearMetadata();
+	}
+
+	/**
+	 * @return true if the loader reads the file through
+	 *         {@link #openFileStream()} so can load contents set by
+	 *         {@link #setFileContent(ByteBuffer)}
+	 */
+	public boolean isFileContentSupported() {
+		return false;
+	}
+
+	/**
+	 * @return stream of the file contents, from memory if set, otherwise from
+	 *         the file
+	 * @throws IOException
+	 */
+	protected InputStream openFileStream() throws IOException {
+		if (fileContent == null) {
+			return new FileInputStream(fileName);
+		}
+		if (fileContent.hasArray()) {
+			return new ByteArrayInputStream(fileContent.array(), fileContent.arrayOffset() + fileContent.position(),
+					fileContent.remaining());
+		}
+		byte[] bytes = new byte[fileContent.remaining()];
+		fileContent.duplicate().get(bytes);
+		return new ByteArrayInputStream(bytes);
+	}
+
+	private static final long MAP_THRESHOLD = 16 * 1024 * 1024;
+
+	/**
+	 * @return buffer of the file contents, from memory if set, otherwise read
+	 *         from the file or, for large files, mapped. Null if the file is too
+	 *         large for a buffer
+	 * @throws IOException
+	 */
+	protected ByteBuffer getFileBuffer() throws IOException {
+		if (fileContent != null) {
+			return fileContent.duplicate();
+		}
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				return null;
+			}
+			if (size >= MAP_THRESHOLD) {
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					break;
+				}
+			}
+			buffer.flip();
+			return buffer;
+		}
+	}
+
 	protected boolean loadMetadata = true;
 	protected IMetadata metadata;
 	protected boolean loadLazily = false;
@@ -191,6 +274,9 @@ public abstract class AbstractFileLoader implements IFileLoader, IMetaLoader {
 	}
 
 	protected LazyDataset createLazyDataset(IFileLoader loader, String dName, String dhName, Class<? extends Dataset> clazz, int... shape) {
+		if (fileContent != null && loader instanceof AbstractFileLoader) {
+			((AbstractFileLoader) loader).setFileContent(fileContent);
+		}
 		return new LazyDataset(new LazyLoaderStub(loader, dhName), dName, clazz, shape);
 	}
 
@@ -0,0 +1,702 @@
+/*
+ * Copyright (c) 2012 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.eclipse.dawnsci.analysis.api.io.ScanFileHolderException;
+import org.eclipse.january.IMonitor;
+import org.eclipse.january.dataset.Dataset;
+import org.eclipse.january.dataset.DatasetFactory;
+
+/**
+ * Parses the numerical section of a column based text file directly from its
+ * bytes into primitive columns.
+ * <p>
+ * Each line is trimmed and split into tokens by the delimiter. A line is valid
+ * if it has at least the minimum number of tokens and every token is a decimal
+ * number, i.e. matches {@link Utils#FLOATING_POINT_NUMBER}. Blank lines are
+ * always skipped. Other invalid lines are either skipped or end the parse, in
+ * which case the caller is expected to fall back to its own line by line
+ * reading.
+ * <p>
+ * Large sections are split into chunks at line boundaries which are parsed
+ * in parallel and then joined in order.
+ */
+public class ColumnarTextParser {
+
+	public enum Delimiter {
+		/**
+		 * One or more spaces or tabs, as the regex "\\s+"
+		 */
+		WHITESPACE("\\s+"),
+		/**
+		 * A single comma with optional whitespace around it, as the regex
+		 * "\\s*,\\s*"
+		 */
+		COMMA("\\s*,\\s*");
+
+		private final String regex;
+
+		private Delimiter(String regex) {
+			this.regex = regex;
+		}
+
+		/**
+		 * @param regex
+		 * @return delimiter equivalent to given regular expression or null if
+		 *         there is none
+		 */
+		public static Delimiter fromRegex(String regex) {
+			for (Delimiter d : values()) {
+				if (d.regex.equals(regex)) {
+					return d;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static final int PARALLEL_THRESHOLD = 4 * 1024 * 1024;
+	private static final int MINIMUM_CHUNK = 1024 * 1024;
+	private static final int CHECK_MASK = 0xffff; // lines between checks for cancellation
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	private static final int MAX_DIGITS = 18; // so mantissa fits in a long
+
+	private final Delimiter delimiter;
+	private boolean skipInvalidLines = true;
+	private boolean keepIntegers = false;
+	private boolean allowNonFinite = false;
+	private boolean storeValues = true;
+	private int minimumColumns = 1;
+	private int maximumColumns = Integer.MAX_VALUE;
+	private int expectedColumns = -1;
+	private int selectedColumn = -1;
+	private int parallelThreshold = PARALLEL_THRESHOLD;
+
+	public ColumnarTextParser(Delimiter delimiter) {
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * @param skip
+	 *            if true, lines that are not valid are ignored, otherwise
+	 *            parsing stops and {@link #parse(ByteBuffer, IMonitor)} returns
+	 *            null
+	 */
+	public void setSkipInvalidLines(boolean skip) {
+		skipInvalidLines = skip;
+	}
+
+	/**
+	 * @param keep
+	 *            if true, columns of integers are held as the smallest integer
+	 *            type that fits, as {@link Utils#parseValue(String)} does,
+	 *            otherwise all values are doubles
+	 */
+	public void setKeepIntegers(boolean keep) {
+		keepIntegers = keep;
+	}
+
+	/**
+	 * @param allow
+	 *            if true, tokens after the first may also be NaN or Infinity
+	 *            (with optional sign), as {@link Double#parseDouble(String)}
+	 *            accepts
+	 */
+	public void setAllowNonFinite(boolean allow) {
+		allowNonFinite = allow;
+	}
+
+	/**
+	 * @param store
+	 *            if false, lines are only validated and counted
+	 */
+	public void setStoreValues(boolean store) {
+		storeValues = store;
+	}
+
+	/**
+	 * @param min
+	 *            lines with fewer tokens than this are not valid
+	 */
+	public void setMinimumColumns(int min) {
+		minimumColumns = min;
+	}
+
+	/**
+	 * @param max
+	 *            tokens past this number are ignored and not checked
+	 */
+	public void setMaximumColumns(int max) {
+		maximumColumns = max;
+	}
+
+	/**
+	 * @param expected
+	 *            if positive, valid lines must have exactly this number of tokens
+	 */
+	public void setExpectedColumns(int expected) {
+		expectedColumns = expected;
+	}
+
+	/**
+	 * @param column
+	 *            if not negative, only this column is stored and valid lines
+	 *            must have it
+	 */
+	public void setSelectedColumn(int column) {
+		selectedColumn = column;
+	}
+
+	/**
+	 * @param bytes
+	 *            size of section above which it is parsed in parallel
+	 */
+	public void setParallelThreshold(int bytes) {
+		parallelThreshold = bytes;
+	}
+
+	/**
+	 * Find the start of a line
+	 * @param buffer
+	 * @param position start of first line
+	 * @param lines number of lines to skip, where a line ends with "\n", "\r" or "\r\n"
+	 * @return position after the skipped lines
+	 */
+	public static int skipLines(ByteBuffer buffer, int position, int lines) {
+		int end = buffer.limit();
+		for (int l = 0; l < lines && position < end; l++) {
+			position = nextLine(buffer, lineEnd(buffer, position, end), end);
+		}
+		return position;
+	}
+
+	private static int lineEnd(ByteBuffer buffer, int position, int end) {
+		while (position < end) {
+			byte b = buffer.get(position);
+			if (b == '\n' || b == '\r') {
+				break;
+			}
+			position++;
+		}
+		return position;
+	}
+
+	private static int nextLine(ByteBuffer buffer, int eol, int end) {
+		if (eol < end) {
+			if (buffer.get(eol) == '\r' && eol + 1 < end && buffer.get(eol + 1) == '\n') {
+				return eol + 2;
+			}
+			return eol + 1;
+		}
+		return eol;
+	}
+
+	/**
+	 * Parse the lines between the position and limit of the buffer
+	 * @param buffer
+	 * @param mon
+	 * @return parsed columns or null if an invalid line was found and these are not skipped
+	 * @throws ScanFileHolderException if a valid line does not have the expected or selected column,
+	 * or if cancelled
+	 */
+	public Result parse(ByteBuffer buffer, IMonitor mon) throws ScanFileHolderException {
+		int start = buffer.position();
+		int end = buffer.limit();
+
+		int chunks = Math.min(Runtime.getRuntime().availableProcessors(), (end - start) / MINIMUM_CHUNK);
+		if (end - start < parallelThreshold || chunks < 2) {
+			Result r = new Chunk(buffer, start, end, mon).parse();
+			if (r != null && mon != null) {
+				mon.worked(r.lines);
+			}
+			return r;
+		}
+
+		int[] bounds = new int[chunks + 1];
+		bounds[0] = start;
+		bounds[chunks] = end;
+		long size = end - start;
+		for (int i = 1; i < chunks; i++) {
+			int p = Math.max(bounds[i - 1], (int) (start + size * i / chunks));
+			bounds[i] = nextLine(buffer, lineEnd(buffer, p, end), end);
+		}
+
+		List<ForkJoinTask<Result>> tasks = new ArrayList<>(chunks);
+		for (int i = 0; i < chunks; i++) {
+			tasks.add(ForkJoinPool.commonPool().submit(new Chunk(buffer.duplicate(), bounds[i], bounds[i + 1], mon)::parse));
+		}
+
+		Result result = null;
+		boolean valid = true;
+		try {
+			for (ForkJoinTask<Result> t : tasks) {
+				Result r = t.get();
+				if (r == null) {
+					valid = false;
+				} else if (valid) {
+					if (mon != null) {
+						mon.worked(r.lines);
+					}
+					if (result == null) {
+						result = r;
+					} else {
+						result.append(r);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ScanFileHolderException("Interrupted whilst parsing", e);
+		} catch (ExecutionException e) {
+			Throwable c = e.getCause();
+			if (c instanceof ScanFileHolderException) {
+				throw (ScanFileHolderException) c;
+			}
+			throw new ScanFileHolderException("Could not parse data", c);
+		} finally {
+			for (ForkJoinTask<Result> t : tasks) {
+				t.cancel(false);
+			}
+		}
+		return valid ? result : null;
+	}
+
+	/**
+	 * Parser state for a range of whole lines
+	 */
+	private class Chunk {
+		private final ByteBuffer buffer;
+		private final int start;
+		private final int end;
+		private final IMonitor mon;
+
+		// values of current line
+		private double[] doubles = new double[16];
+		private long[] longs = new long[16];
+		private boolean[] integral = new boolean[16];
+
+		private Chunk(ByteBuffer buffer, int start, int end, IMonitor mon) {
+			this.buffer = buffer;
+			this.start = start;
+			this.end = end;
+			this.mon = mon;
+		}
+
+		private Result parse() throws ScanFileHolderException {
+			Result result = new Result();
+			int pos = start;
+			while (pos < end) {
+				int eol = lineEnd(buffer, pos, end);
+				int n = parseLine(pos, eol);
+				if (n == 0) {
+					// blank line
+				} else if (n < 0) {
+					if (!skipInvalidLines) {
+						return null;
+					}
+				} else {
+					if (expectedColumns > 0 && n != expectedColumns) {
+						throw new ScanFileHolderException("Data and header must be the same size!");
+					}
+					if (selectedColumn >= 0 && n <= selectedColumn) {
+						throw new ScanFileHolderException("Data line has no column " + selectedColumn);
+					}
+					if (storeValues) {
+						store(result, Math.min(n, maximumColumns));
+					}
+					if ((++result.lines & CHECK_MASK) == 0 && mon != null && mon.isCancelled()) {
+						throw new ScanFileHolderException("Loader cancelled during reading!");
+					}
+				}
+				pos = nextLine(buffer, eol, end);
+			}
+			return result;
+		}
+
+		private void store(Result result, int n) {
+			int from = selectedColumn >= 0 ? selectedColumn : 0;
+			int to = selectedColumn >= 0 ? selectedColumn + 1 : n;
+			for (int i = from; i < to; i++) {
+				Column c = result.getOrCreateColumn(i);
+				if (integral[i]) {
+					c.add(longs[i]);
+				} else {
+					c.add(doubles[i]);
+				}
+			}
+		}
+
+		/**
+		 * @return number of tokens, 0 if line is blank or -1 if line is not valid
+		 */
+		private int parseLine(int s, int e) {
+			while (s < e && (buffer.get(s) & 0xff) <= ' ') {
+				s++;
+			}
+			while (e > s && (buffer.get(e - 1) & 0xff) <= ' ') {
+				e--;
+			}
+			if (s == e) {
+				return 0;
+			}
+
+			int n = 0;
+			int t = s;
+			while (true) {
+				int te = t;
+				while (te < e && !isSeparator(buffer.get(te))) {
+					te++;
+				}
+				if (n < maximumColumns) {
+					if (n == doubles.length) {
+						doubles = Arrays.copyOf(doubles, 2 * n);
+						longs = Arrays.copyOf(longs, 2 * n);
+						integral = Arrays.copyOf(integral, 2 * n);
+					}
+					if (!parseToken(t, te, n)) {
+						return -1;
+					}
+				}
+				n++;
+				if (te == e) {
+					break;
+				}
+
+				while (te < e && isSpace(buffer.get(te))) {
+					te++;
+				}
+				if (delimiter == Delimiter.COMMA) {
+					if (te == e || buffer.get(te) != ',') {
+						return -1;
+					}
+					te++;
+					while (te < e && isSpace(buffer.get(te))) {
+						te++;
+					}
+				}
+				t = te;
+			}
+			return n < minimumColumns ? -1 : n;
+		}
+
+		private boolean isSeparator(byte b) {
+			return isSpace(b) || (b == ',' && delimiter == Delimiter.COMMA);
+		}
+
+		/**
+		 * Parse number in [s, e) into current line's values
+		 * @return false if not a number
+		 */
+		private boolean parseToken(int s, int e, int n) {
+			if (s == e) {
+				return false;
+			}
+			int i = s;
+			byte b = buffer.get(i);
+			boolean negative = b == '-';
+			if (negative || b == '+') {
+				i++;
+			}
+			if (allowNonFinite && n > 0 && i < e && (buffer.get(i) == 'N' || buffer.get(i) == 'I')) {
+				String t = text(i, e);
+				if (!t.equals("NaN") && !t.equals("Infinity")) {
+					return false;
+				}
+				if (storeValues && (selectedColumn < 0 || n == selectedColumn)) {
+					integral[n] = false;
+					doubles[n] = Double.parseDouble(text(s, e));
+				}
+				return true;
+			}
+
+			long mantissa = 0;
+			int digits = 0;
+			int exponent = 0;
+			boolean anyDigit = false;
+			boolean exact = true;
+			boolean integer = true;
+			for (; i < e; i++) {
+				int d = buffer.get(i) - '0';
+				if (d < 0 || d > 9) {
+					break;
+				}
+				anyDigit = true;
+				if (mantissa == 0 && d == 0) {
+					continue;
+				}
+				if (digits < MAX_DIGITS) {
+					mantissa = mantissa * 10 + d;
+					digits++;
+				} else {
+					exact = false;
+				}
+			}
+			if (i < e && buffer.get(i) == '.') {
+				integer = false;
+				for (i++; i < e; i++) {
+					int d = buffer.get(i) - '0';
+					if (d < 0 || d > 9) {
+						break;
+					}
+					anyDigit = true;
+					if (mantissa == 0 && d == 0) {
+						exponent--;
+						continue;
+					}
+					if (digits < MAX_DIGITS) {
+						mantissa = mantissa * 10 + d;
+						digits++;
+						exponent--;
+					} else {
+						exact = false;
+					}
+				}
+			}
+			if (!anyDigit) {
+				return false;
+			}
+			if (i < e && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+				integer = false;
+				i++;
+				boolean negativeExponent = false;
+				if (i < e && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+					negativeExponent = buffer.get(i) == '-';
+					i++;
+				}
+				int x = 0;
+				int expDigits = 0;
+				for (; i < e; i++) {
+					int d = buffer.get(i) - '0';
+					if (d < 0 || d > 9) {
+						break;
+					}
+					if (x < 100000) {
+						x = x * 10 + d;
+					} else {
+						exact = false;
+					}
+					expDigits++;
+				}
+				if (expDigits == 0) {
+					return false;
+				}
+				exponent += negativeExponent ? -x : x;
+			}
+			if (i != e) {
+				return false;
+			}
+
+			if (!storeValues || (selectedColumn >= 0 && n != selectedColumn)) {
+				return true;
+			}
+
+			if (integer && keepIntegers) {
+				if (exact) {
+					integral[n] = true;
+					longs[n] = negative ? -mantissa : mantissa;
+				} else {
+					Number v = Utils.parseValue(text(s, e));
+					integral[n] = !(v instanceof Double);
+					longs[n] = v.longValue();
+					doubles[n] = v.doubleValue();
+				}
+				return true;
+			}
+
+			integral[n] = false;
+			if (exact && mantissa < MAX_EXACT_MANTISSA && (mantissa == 0 || (exponent >= -22 && exponent <= 22))) {
+				// both exactly representable so a single rounding
+				double v = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+				doubles[n] = negative ? -v : v;
+			} else {
+				doubles[n] = Double.parseDouble(text(s, e));
+			}
+			return true;
+		}
+
+		private String text(int s, int e) {
+			byte[] bytes = new byte[e - s];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = buffer.get(s + i);
+			}
+			return new String(bytes, StandardCharsets.US_ASCII);
+		}
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\f' || b == 0x0b;
+	}
+
+	/**
+	 * Columns parsed from valid lines
+	 */
+	public static class Result {
+		private int lines;
+		private final List<Column> columns = new ArrayList<>();
+
+		/**
+		 * @return number of valid lines
+		 */
+		public int getLineCount() {
+			return lines;
+		}
+
+		/**
+		 * @return number of columns, which is the most tokens stored from a line
+		 */
+		public int getColumnCount() {
+			return columns.size();
+		}
+
+		/**
+		 * @param i
+		 * @return length of column
+		 */
+		public int getLength(int i) {
+			return i < columns.size() ? columns.get(i).size : 0;
+		}
+
+		/**
+		 * @param i
+		 * @return dataset of column or null if it has no values
+		 */
+		public Dataset getDataset(int i) {
+			return i < columns.size() ? columns.get(i).toDataset() : null;
+		}
+
+		private Column getOrCreateColumn(int i) {
+			while (columns.size() <= i) {
+				columns.add(new Column());
+			}
+			return columns.get(i);
+		}
+
+		private void append(Result other) {
+			lines += other.lines;
+			for (int i = 0, imax = other.columns.size(); i < imax; i++) {
+				getOrCreateColumn(i).append(other.columns.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Growable column of longs that switches to doubles when a non-integer is added
+	 */
+	private static class Column {
+		private long[] longs = new long[1024];
+		private double[] doubles;
+		private int size;
+		private int bits; // maximum bit length of integers
+
+		private void add(long v) {
+			if (doubles != null) {
+				add((double) v);
+				return;
+			}
+			if (size == longs.length) {
+				longs = Arrays.copyOf(longs, grow(size));
+			}
+			longs[size++] = v;
+			int b = 64 - Long.numberOfLeadingZeros(v < 0 ? ~v : v);
+			if (b > bits) {
+				bits = b;
+			}
+		}
+
+		private void add(double v) {
+			if (doubles == null) {
+				toDoubles(size + 1);
+			} else if (size == doubles.length) {
+				doubles = Arrays.copyOf(doubles, grow(size));
+			}
+			doubles[size++] = v;
+		}
+
+		private void toDoubles(int capacity) {
+			doubles = new double[Math.max(capacity, longs.length)];
+			for (int i = 0; i < size; i++) {
+				doubles[i] = longs[i];
+			}
+			longs = null;
+		}
+
+		private void append(Column other) {
+			if (other.doubles != null && doubles == null) {
+				toDoubles(size + other.size);
+			}
+			if (doubles != null) {
+				if (doubles.length < size + other.size) {
+					doubles = Arrays.copyOf(doubles, Math.max(size + other.size, grow(size)));
+				}
+				if (other.doubles != null) {
+					System.arraycopy(other.doubles, 0, doubles, size, other.size);
+				} else {
+					for (int i = 0; i < other.size; i++) {
+						doubles[size + i] = other.longs[i];
+					}
+				}
+			} else {
+				if (longs.length < size + other.size) {
+					longs = Arrays.copyOf(longs, Math.max(size + other.size, grow(size)));
+				}
+				System.arraycopy(other.longs, 0, longs, size, other.size);
+				bits = Math.max(bits, other.bits);
+			}
+			size += other.size;
+		}
+
+		private static int grow(int size) {
+			return size + (size >> 1) + 16;
+		}
+
+		private Dataset toDataset() {
+			if (size == 0) {
+				return null;
+			}
+			if (doubles != null) {
+				return DatasetFactory.createFromObject(Arrays.copyOf(doubles, size));
+			}
+			if (bits < 8) {
+				byte[] a = new byte[size];
+				for (int i = 0; i < size; i++) {
+					a[i] = (byte) longs[i];
+				}
+				return DatasetFactory.createFromObject(a);
+			}
+			if (bits < 16) {
+				short[] a = new short[size];
+				for (int i = 0; i < size; i++) {
+					a[i] = (short) longs[i];
+				}
+				return DatasetFactory.createFromObject(a);
+			}
+			if (bits < 32) {
+				int[] a = new int[size];
+				for (int i = 0; i < size; i++) {
+					a[i] = (int) longs[i];
+				}
+				return DatasetFactory.createFromObject(a);
+			}
+			return DatasetFactory.createFromObject(Arrays.copyOf(longs, size));
+		}
+	}
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2012 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decompresses whole files into memory.
+ * <p>
+ * Compressed files made of independent parts are inflated in parallel. These
+ * are blocked gzip files (BGZF, as written by bgzip) where each gzip member
+ * records its own length, and bzip2 files made of several concatenated streams
+ * (as written by pbzip2). Other files are inflated sequentially.
+ */
+public final class CompressedFileUtils {
+
+	private static final Logger logger = LoggerFactory.getLogger(CompressedFileUtils.class);
+
+	/**
+	 * Largest array that can be reliably allocated
+	 */
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	private static final int GZIP_HEADER_SIZE = 10;
+	private static final int GZIP_TRAILER_SIZE = 8;
+	private static final int GZIP_FEXTRA = 4;
+
+	/**
+	 * Largest expansion of compressed data trusted when sizing the initial buffer
+	 */
+	private static final int GZIP_HINT_RATIO = 64;
+
+	/**
+	 * Largest uncompressed size of a BGZF block
+	 */
+	private static final int BGZF_MAX_BLOCK = 65536;
+
+	private static final byte[] BZIP2_BLOCK_MAGIC = { 0x31, 0x41, 0x59, 0x26, 0x53, 0x59 };
+
+	private CompressedFileUtils() {
+	}
+
+	/**
+	 * Decompress a file into memory
+	 *
+	 * @param path
+	 * @param zipType
+	 *            compression extension registered with {@link LoaderFactory},
+	 *            e.g. gz, bz2 or zip
+	 * @return buffer holding the decompressed contents
+	 * @throws IOException
+	 */
+	public static ByteBuffer decompress(String path, String zipType) throws IOException {
+		return decompress(Files.readAllBytes(Paths.get(path)), zipType);
+	}
+
+	/**
+	 * Decompress data into memory
+	 *
+	 * @param compressed
+	 * @param zipType
+	 *            compression extension registered with {@link LoaderFactory},
+	 *            e.g. gz, bz2 or zip
+	 * @return buffer holding the decompressed contents
+	 * @throws IOException
+	 */
+	public static ByteBuffer decompress(byte[] compressed, String zipType) throws IOException {
+		switch (zipType) {
+		case "gz":
+			return inflateGzip(compressed);
+		case "bz2":
+			return inflateBzip2(compressed);
+		default:
+			return inflateStream(compressed, zipType);
+		}
+	}
+
+	private static ByteBuffer inflateGzip(byte[] data) throws IOException {
+		List<Integer> members = findBgzfMembers(data);
+		if (members == null || members.size() < 3) {
+			// Size of the last (usually only) member gives a good first guess but is
+			// not trusted beyond a plausible expansion of the compressed data
+			long hint = data.length >= GZIP_TRAILER_SIZE ? readLeInt(data, data.length - 4) & 0xffffffffL : 0;
+			hint = Math.min(hint, (long) GZIP_HINT_RATIO * data.length);
+			return readFully(new GZIPInputStream(new ByteArrayInputStream(data), 64 * 1024), (int) Math.min(hint, MAX_ARRAY_SIZE));
+		}
+
+		final int n = members.size() - 1;
+		final int[] outStart = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			long size = readLeInt(data, members.get(i + 1) - 4) & 0xffffffffL;
+			if (size > BGZF_MAX_BLOCK) {
+				throw new IOException("Blocked gzip member " + i + " is corrupt");
+			}
+			long end = outStart[i] + size;
+			if (end > MAX_ARRAY_SIZE) {
+				throw new IOException("Decompressed data is too large to hold in memory");
+			}
+			outStart[i + 1] = (int) end;
+		}
+
+		final byte[] out = new byte[outStart[n]];
+		final IOException[] error = new IOException[1];
+		IntStream.range(0, n).parallel().forEach(i -> {
+			try {
+				inflateGzipMember(data, members.get(i), members.get(i + 1), out, outStart[i], outStart[i + 1]);
+			} catch (IOException e) {
+				error[0] = e;
+			}
+		});
+		if (error[0] != null) {
+			throw error[0];
+		}
+		logger.trace("Inflated {} gzip blocks in parallel", n);
+		return ByteBuffer.wrap(out);
+	}
+
+	/**
+	 * @return start offsets of all members followed by the data length, or
+	 *         null if the data is not blocked gzip
+	 */
+	private static List<Integer> findBgzfMembers(byte[] data) {
+		List<Integer> members = new ArrayList<>();
+		int pos = 0;
+		while (pos < data.length) {
+			int size = bgzfBlockSize(data, pos);
+			if (size <= 0 || pos + size > data.length) {
+				return null;
+			}
+			members.add(pos);
+			pos += size;
+		}
+		members.add(pos);
+		return members;
+	}
+
+	/**
+	 * @return total size of the gzip member at pos from its BC extra subfield,
+	 *         or -1 if there is none
+	 */
+	private static int bgzfBlockSize(byte[] data, int pos) {
+		if (pos + GZIP_HEADER_SIZE + 2 > data.length || (data[pos] & 0xff) != 0x1f || (data[pos + 1] & 0xff) != 0x8b
+				|| data[pos + 2] != 8 || (data[pos + 3] & GZIP_FEXTRA) == 0) {
+			return -1;
+		}
+		int xlen = readLeShort(data, pos + GZIP_HEADER_SIZE);
+		int sub = pos + GZIP_HEADER_SIZE + 2;
+		int end = sub + xlen;
+		if (end > data.length) {
+			return -1;
+		}
+		while (sub + 4 <= end) {
+			int slen = readLeShort(data, sub + 2);
+			if (data[sub] == 'B' && data[sub + 1] == 'C' && slen == 2 && sub + 6 <= end) {
+				return readLeShort(data, sub + 4) + 1;
+			}
+			sub += 4 + slen;
+		}
+		return -1;
+	}
+
+	private static void inflateGzipMember(byte[] data, int start, int end, byte[] out, int outStart, int outEnd)
+			throws IOException {
+		int xlen = readLeShort(data, start + GZIP_HEADER_SIZE);
+		int deflateStart = start + GZIP_HEADER_SIZE + 2 + xlen;
+		int deflateEnd = end - GZIP_TRAILER_SIZE;
+
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(data, deflateStart, deflateEnd - deflateStart);
+			int pos = outStart;
+			while (pos < outEnd) {
+				int n = inflater.inflate(out, pos, outEnd - pos);
+				if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				pos += n;
+			}
+			if (pos != outEnd) {
+				throw new IOException("Corrupt gzip block at byte " + start);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt gzip block at byte " + start, e);
+		} finally {
+			inflater.end();
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(out, outStart, outEnd - outStart);
+		if ((int) crc.getValue() != readLeInt(data, end - GZIP_TRAILER_SIZE)) {
+			throw new IOException("CRC error in gzip block at byte " + start);
+		}
+	}
+
+	private static ByteBuffer inflateBzip2(byte[] data) throws IOException {
+		List<Integer> streams = findBzip2Streams(data);
+		if (streams.size() > 2) {
+			final int n = streams.size() - 1;
+			final byte[][] parts = new byte[n][];
+			final IOException[] error = new IOException[1];
+			IntStream.range(0, n).parallel().forEach(i -> {
+				try {
+					int start = streams.get(i);
+					InputStream in = new ByteArrayInputStream(data, start, streams.get(i + 1) - start);
+					parts[i] = toArray(readFully(new CBZip2InputStream(in), 0));
+				} catch (IOException e) {
+					error[0] = e;
+				}
+			});
+
+			if (error[0] == null) {
+				long total = 0;
+				for (byte[] p : parts) {
+					total += p.length;
+				}
+				if (total > MAX_ARRAY_SIZE) {
+					throw new IOException("Decompressed data is too large to hold in memory");
+				}
+				byte[] out = new byte[(int) total];
+				int pos = 0;
+				for (byte[] p : parts) {
+					System.arraycopy(p, 0, out, pos, p.length);
+					pos += p.length;
+				}
+				logger.trace("Inflated {} bzip2 streams in parallel", n);
+				return ByteBuffer.wrap(out);
+			}
+			// A stream header can appear by chance in compressed data
+			logger.debug("Could not inflate bzip2 streams separately, reading sequentially", error[0]);
+		}
+
+		// Each stream ends on a byte boundary, so the next starts where the last stopped reading
+		ByteArrayInputStream in = new ByteArrayInputStream(data);
+		GrowableBuffer out = new GrowableBuffer(0);
+		out.readFrom(new CBZip2InputStream(in));
+		while (in.available() > 0) {
+			int start = data.length - in.available();
+			CBZip2InputStream next;
+			try {
+				next = new CBZip2InputStream(in);
+			} catch (IOException e) {
+				if (isBzip2Stream(data, start)) { // a damaged stream rather than trailing data
+					throw e;
+				}
+				logger.debug("Ignoring data after the last bzip2 stream");
+				break;
+			}
+			out.readFrom(next);
+		}
+		return out.toByteBuffer();
+	}
+
+	private static boolean isBzip2Stream(byte[] data, int pos) {
+		return pos + 4 <= data.length && data[pos] == 'B' && data[pos + 1] == 'Z' && data[pos + 2] == 'h'
+				&& data[pos + 3] >= '1' && data[pos + 3] <= '9';
+	}
+
+	/**
+	 * @return start offsets of all streams followed by the data length
+	 */
+	private static List<Integer> findBzip2Streams(byte[] data) {
+		List<Integer> streams = new ArrayList<>();
+		streams.add(0);
+		int last = data.length - 4 - BZIP2_BLOCK_MAGIC.length;
+		for (int i = 1; i <= last; i++) {
+			if (isBzip2Stream(data, i) && isBzip2BlockMagic(data, i + 4)) {
+				streams.add(i);
+				i += 3;
+			}
+		}
+		streams.add(data.length);
+		return streams;
+	}
+
+	private static boolean isBzip2BlockMagic(byte[] data, int pos) {
+		for (int j = 0; j < BZIP2_BLOCK_MAGIC.length; j++) {
+			if (data[pos + j] != BZIP2_BLOCK_MAGIC[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static ByteBuffer inflateStream(byte[] data, String zipType) throws IOException {
+		final Class<? extends InputStream> clazz = LoaderFactory.getZipStream(zipType);
+		if (clazz == null) {
+			throw new IOException("No decompression registered for " + zipType);
+		}
+
+		InputStream in;
+		try {
+			final Constructor<? extends InputStream> c = clazz.getConstructor(InputStream.class);
+			in = c.newInstance(new ByteArrayInputStream(data));
+		} catch (Exception e) {
+			throw new IOException("Cannot create " + zipType + " decompression stream", e);
+		}
+		// Hack zip files
+		if (in instanceof ZipInputStream) {
+			((ZipInputStream) in).getNextEntry();
+		}
+		return readFully(in, 0);
+	}
+
+	private static ByteBuffer readFully(InputStream in, int sizeHint) throws IOException {
+		GrowableBuffer out = new GrowableBuffer(sizeHint);
+		try {
+			out.readFrom(in);
+		} finally {
+			in.close();
+		}
+		return out.toByteBuffer();
+	}
+
+	private static byte[] toArray(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+
+	private static int readLeShort(byte[] data, int pos) {
+		return (data[pos] & 0xff) | (data[pos + 1] & 0xff) << 8;
+	}
+
+	private static int readLeInt(byte[] data, int pos) {
+		return (data[pos] & 0xff) | (data[pos + 1] & 0xff) << 8 | (data[pos + 2] & 0xff) << 16
+				| (data[pos + 3] & 0xff) << 24;
+	}
+
+	/**
+	 * Byte array that is grown as a stream is read into it, avoiding the copy
+	 * made by ByteArrayOutputStream
+	 */
+	private static class GrowableBuffer {
+		private byte[] buf;
+		private int count;
+
+		GrowableBuffer(int sizeHint) {
+			buf = new byte[(int) Math.max(8192, Math.min(sizeHint + 1L, MAX_ARRAY_SIZE))];
+		}
+
+		void readFrom(InputStream in) throws IOException {
+			int n;
+			while ((n = in.read(buf, count, buf.length - count)) >= 0) {
+				count += n;
+				if (count == buf.length) {
+					if (count == MAX_ARRAY_SIZE) {
+						throw new IOException("Decompressed data is too large to hold in memory");
+					}
+					byte[] nbuf = new byte[(int) Math.min(2L * count, MAX_ARRAY_SIZE)];
+					System.arraycopy(buf, 0, nbuf, 0, count);
+					buf = nbuf;
+				}
+			}
+		}
+
+		ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+}
@@ -9,15 +9,13 @@
 
 package uk.ac.diamond.scisoft.analysis.io;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.ZipInputStream;
 
 import org.eclipse.dawnsci.analysis.api.io.IDataHolder;
 import org.eclipse.dawnsci.analysis.api.io.IFileLoader;
@@ -27,8 +25,6 @@ import org.eclipse.january.io.IMetaLoader;
 import org.eclipse.january.metadata.IMetadata;
 import org.eclipse.january.metadata.Metadata;
 
-import uk.ac.diamond.scisoft.analysis.utils.FileUtils;
-
 public class CompressedLoader extends AbstractFileLoader {
 
 	private IFileLoader loader;
@@ -57,23 +53,25 @@ public class CompressedLoader extends AbstractFileLoader {
 			final String ext      = m.group(2);
 			final String zipType  = m.group(3);
 			
-			final Class<? extends InputStream>   clazz = LoaderFactory.getZipStream(zipType);
-			final Constructor<? extends InputStream> c = clazz.getConstructor(InputStream.class);
+			final ByteBuffer content = CompressedFileUtils.decompress(fileName, zipType);
 			
-			final InputStream in = c.newInstance(new FileInputStream(fileName));
-			// Hack zip files
-			if (in instanceof ZipInputStream) {
-				((ZipInputStream)in).getNextEntry();
+			final Class<? extends IFileLoader> lclass = LoaderFactory.getLoaderClass(ext);
+			final IFileLoader inMemory = LoaderFactory.getLoader(lclass, fileName);
+			if (inMemory instanceof AbstractFileLoader && ((AbstractFileLoader) inMemory).isFileContentSupported()) {
+				((AbstractFileLoader) inMemory).setFileContent(content);
+				this.loader = inMemory;
+				return;
 			}
 			
+			// Loaders which need a real file, e.g. those using native libraries
 			final File tmp = File.createTempFile(name, "."+ext);
 			tmp.deleteOnExit();
+			try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+				while (content.hasRemaining()) {
+					channel.write(content);
+				}
+			}
 			
-			// This is slow and unnecessary. Should refactor LoaderFactory to 
-			// work either from a file path or in memory representation.
-			FileUtils.write(new BufferedInputStream(in), tmp);
-			
-			final Class<? extends IFileLoader> lclass = LoaderFactory.getLoaderClass(ext);
 			this.loader = LoaderFactory.getLoader(lclass, tmp.getAbsolutePath());
 		}
         
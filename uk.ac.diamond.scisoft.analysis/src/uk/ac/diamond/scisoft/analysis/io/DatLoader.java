@@ -11,10 +11,10 @@ package uk.ac.diamond.scisoft.analysis.io;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -98,6 +98,8 @@ public class DatLoader extends AbstractFileLoader {
 	protected Map<String, List<Double>> vals;
 	protected int                       columnIndex;
 
+	private boolean useColumnarParser = true;
+
 	public DatLoader() {
 		DATA  = Pattern.compile("^(("+Utils.FLOATING_POINT_NUMBER+")"+getDelimiter()+")+("+Utils.FLOATING_POINT_NUMBER+")$");
 	}
@@ -115,6 +117,19 @@ public class DatLoader extends AbstractFileLoader {
 		setFile(fileName);
 	}
 
+	/**
+	 * @param use if true (the default), data lines are parsed directly from the file
+	 * bytes by a {@link ColumnarTextParser} when the delimiter is supported
+	 */
+	public void setUseColumnarParser(boolean use) {
+		useColumnarParser = use;
+	}
+
+	@Override
+	public boolean isFileContentSupported() {
+		return true;
+	}
+
 	@Override
 	protected void clearMetadata() {
 		metadata = null;
@@ -149,79 +164,41 @@ public class DatLoader extends AbstractFileLoader {
 		final DataHolder result = new DataHolder();
 		
 		// then try to read the file given
-		BufferedReader in = null;
+		LineNumberReader in = null;
 		try {
-			in = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), "UTF-8"));
-			
-			boolean readingFooter = false;
+			in = new LineNumberReader(new InputStreamReader(openFileStream(), "UTF-8"));
 			
 			String line	= parseHeaders(in, name, mon);
 			int columns = vals.size();
 			if (columns == 0) throw new ScanFileHolderException("Cannot read header for data set names!");
 
-			// Read data
-			int count = 0;
-
-			DATA: while (line != null) {
-				if (!monitorIncrement(mon)) {
-					throw new ScanFileHolderException("Loader cancelled during reading!");
-				}
-				
-				line = line.trim();
-				if (!readingFooter && DATA.matcher(line).matches()) {
-					
-					if (line.startsWith("#")) {
-						readingFooter = true;
-						break DATA;
-					}
-
-					if (!loadLazily) {
-						final String[] values = line.split(getDelimiter());
-						if (columnIndex>-1 && name!=null) {
-						    final String value = values[columnIndex];
-						    vals.get(name).add(Utils.parseDouble(value.trim()));
-						} else {
-							if (values.length != columns) {
-								throw new ScanFileHolderException("Data and header must be the same size!");
-							}
-							final Iterator<String> it = vals.keySet().iterator();
-							for (String value : values) {
-								vals.get(it.next()).add(Utils.parseDouble(value.trim())); 
-							}
-						}
-					}
-					count++;
-					
-				}
-				
-				line = in.readLine();
-			}
-			
-			// Footer
+			// Read data, the last line read by the header parser is the first data line
+			final int dataLine = line == null ? in.getLineNumber() : in.getLineNumber() - 1;
+			final ColumnarTextParser.Result parsed = parseData(dataLine, name, columns, mon);
+			final int count = parsed != null ? parsed.getLineCount() : readData(in, line, name, columns, mon);
 			footer.clear();
-			while ((line =in.readLine()) != null) {	
-				if (readingFooter) {
-					if (line.startsWith("#")) {
-						footer.add(line);
-						continue;
-					}
-					throw new ScanFileHolderException("Every line in the footer must start with #");
-				}
-			}
 
+			int i = 0;
 			for (final String n : vals.keySet()) {
 				ILazyDataset data;
 				if (loadLazily) {
 					data = createLazyDataset(new DatLoader(fileName), n, null, count);
+				} else if (parsed != null) {
+					data = parsed.getDataset(columnIndex > -1 && name != null ? columnIndex : i);
+					if (data == null) {
+						data = DatasetFactory.zeros(0);
+					}
+					data.setName(n);
 				} else {
 					data = DatasetFactory.createFromList(vals.get(n));
 					data.setName(n);
 				}
 				result.addDataset(n, data);
+				i++;
 			}
 
 			if (loadMetadata) {
-				createMetadata();
+				createMetadata(parsed != null ? count : -1);
 				result.setMetadata(metadata);
 			}
 			return result;
@@ -238,6 +215,98 @@ public class DatLoader extends AbstractFileLoader {
 		}
 	}
 
+	/**
+	 * Parse data lines directly from the file bytes
+	 * @param dataLine number of lines before the data
+	 * @param name
+	 * @param columns
+	 * @param mon
+	 * @return parsed columns or null if the columnar parser cannot be used
+	 */
+	private ColumnarTextParser.Result parseData(int dataLine, String name, int columns, IMonitor mon) throws Exception {
+		ColumnarTextParser.Delimiter delimiter = ColumnarTextParser.Delimiter.fromRegex(getDelimiter());
+		if (!useColumnarParser || delimiter == null) {
+			return null;
+		}
+		ByteBuffer buffer = getFileBuffer();
+		if (buffer == null) {
+			return null;
+		}
+		buffer.position(ColumnarTextParser.skipLines(buffer, buffer.position(), dataLine));
+
+		// data lines have at least two numbers, as in DATA pattern
+		ColumnarTextParser parser = new ColumnarTextParser(delimiter);
+		parser.setMinimumColumns(2);
+		parser.setStoreValues(!loadLazily);
+		// lines are only counted when lazy so, as in readData, their lengths are not checked
+		if (!loadLazily) {
+			if (columnIndex > -1 && name != null) {
+				parser.setSelectedColumn(columnIndex);
+			} else {
+				parser.setExpectedColumns(columns);
+			}
+		}
+		return parser.parse(buffer, mon);
+	}
+
+	/**
+	 * Read data lines into lists of values
+	 * @return number of data lines
+	 */
+	private int readData(BufferedReader in, String line, String name, int columns, IMonitor mon) throws Exception {
+
+		boolean readingFooter = false;
+		int count = 0;
+
+		DATA: while (line != null) {
+			if (!monitorIncrement(mon)) {
+				throw new ScanFileHolderException("Loader cancelled during reading!");
+			}
+			
+			line = line.trim();
+			if (!readingFooter && DATA.matcher(line).matches()) {
+				
+				if (line.startsWith("#")) {
+					readingFooter = true;
+					break DATA;
+				}
+
+				if (!loadLazily) {
+					final String[] values = line.split(getDelimiter());
+					if (columnIndex>-1 && name!=null) {
+					    final String value = values[columnIndex];
+					    vals.get(name).add(Utils.parseDouble(value.trim()));
+					} else {
+						if (values.length != columns) {
+							throw new ScanFileHolderException("Data and header must be the same size!");
+						}
+						final Iterator<String> it = vals.keySet().iterator();
+						for (String value : values) {
+							vals.get(it.next()).add(Utils.parseDouble(value.trim())); 
+						}
+					}
+				}
+				count++;
+				
+			}
+			
+			line = in.readLine();
+		}
+		
+		// Footer
+		footer.clear();
+		while ((line =in.readLine()) != null) {	
+			if (readingFooter) {
+				if (line.startsWith("#")) {
+					footer.add(line);
+					continue;
+				}
+				throw new ScanFileHolderException("Every line in the footer must start with #");
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * May override to support different file formats.
 	 * @return the delimiter
@@ -278,7 +347,7 @@ public class DatLoader extends AbstractFileLoader {
 	@Override
 	public void loadMetadata(final IMonitor mon) throws IOException {
 
-		final BufferedReader br = new BufferedReader(new FileReader(new File(fileName)));
+		final BufferedReader br = new BufferedReader(new InputStreamReader(openFileStream()));
 		int count = 1;
 		try {
 			try {
@@ -12,6 +12,7 @@ package uk.ac.diamond.scisoft.analysis.io;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -24,6 +25,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import org.eclipse.dawnsci.analysis.api.io.IDataHolder;
 import org.eclipse.dawnsci.analysis.api.io.ScanFileHolderException;
@@ -73,6 +76,12 @@ public class HDF5Loader extends AbstractFileLoader {
 
 
 	private boolean keepBitWidth = false;
+	/**
+	 * System property to share completely read trees between loaders by default
+	 */
+	public static final String SHARE_TREES = "uk.ac.diamond.scisoft.analysis.io.hdf5.treecache";
+
+	private boolean useTreeCache = Boolean.getBoolean(SHARE_TREES) && !Boolean.getBoolean("uk.ac.diamond.scisoft.analysis.io.nocaching");
 	private boolean async = false;
 	private int syncLimit;
 	private int syncNodes;
@@ -84,6 +93,30 @@ public class HDF5Loader extends AbstractFileLoader {
 
 	public static final String DATA_FILENAME_ATTR_NAME = "data_filename";
 
+	private static final Pattern REPEATED_SEPARATORS = Pattern.compile("([" + Node.SEPARATOR + "])\\1+");
+
+	/**
+	 * Trees that have been completely read, keyed by canonical path and loading options. An entry
+	 * is only used while the file's length and modification time are unchanged
+	 */
+	private static final Map<String, CachedTree> TREE_CACHE = new ConcurrentHashMap<>();
+
+	private static class CachedTree {
+		private final long length;
+		private final long modified;
+		private final SoftReference<TreeFile> tree;
+
+		public CachedTree(long length, long modified, TreeFile tree) {
+			this.length = length;
+			this.modified = modified;
+			this.tree = new SoftReference<>(tree);
+		}
+
+		public TreeFile get(File file) {
+			return file.length() == length && file.lastModified() == modified ? tree.get() : null;
+		}
+	}
+
 	public HDF5Loader() {
 	}
 
@@ -117,6 +150,57 @@ public class HDF5Loader extends AbstractFileLoader {
 		syncLimit = nodes;
 	}
 
+	/**
+	 * Set whether completely read trees are shared with other loaders of the same unmodified file.
+	 * Shared trees and their lazy datasets are the same objects for every loader so callers must
+	 * not modify them. This is off unless the {@value #SHARE_TREES} system property is set
+	 * @param useCache
+	 */
+	public void setUseTreeCache(boolean useCache) {
+		useTreeCache = useCache;
+	}
+
+	/**
+	 * Remove any cached trees of given file
+	 * @param path
+	 */
+	public static void clearTreeCache(String path) {
+		String canonical;
+		try {
+			canonical = new File(path).getCanonicalPath();
+		} catch (IOException e) {
+			canonical = path;
+		}
+		String prefix = canonical + "?";
+		TREE_CACHE.keySet().removeIf(k -> k.startsWith(prefix));
+	}
+
+	private String getTreeCacheKey() {
+		return fileName + "?" + keepBitWidth + "," + loadLazily;
+	}
+
+	private TreeFile getCachedTree(File f) {
+		if (!useTreeCache) {
+			return null;
+		}
+		String key = getTreeCacheKey();
+		CachedTree c = TREE_CACHE.get(key);
+		if (c == null) {
+			return null;
+		}
+		TreeFile t = c.get(f);
+		if (t == null) {
+			TREE_CACHE.remove(key, c);
+		}
+		return t;
+	}
+
+	private void putCachedTree(long length, long modified, TreeFile tree) {
+		if (useTreeCache && tree != null) {
+			TREE_CACHE.put(getTreeCacheKey(), new CachedTree(length, modified, tree));
+		}
+	}
+
 	/**
 	 * Stop asynchronous loading
 	 */
@@ -164,10 +248,15 @@ public class HDF5Loader extends AbstractFileLoader {
 
 	class LoadFileThread extends Thread {
 		private IMonitor mon;
+		private long length;
+		private long modified;
 
-		public LoadFileThread(final IMonitor monitor) {
+		public LoadFileThread(final IMonitor monitor, final long length, final long modified) {
 			mon = monitor;
+			this.length = length;
+			this.modified = modified;
 			setName("Load HDF5 file: " + fileName);
+			setDaemon(true);
 		}
 		
 		@Override
@@ -179,7 +268,9 @@ public class HDF5Loader extends AbstractFileLoader {
 					return;
 				}
 
-				tFile = createTreeBF(mon, fid, keepBitWidth);
+				TreeFile t = createTreeBF(mon, fid, keepBitWidth);
+				putCachedTree(length, modified, t);
+				tFile = t;
 			} catch (Throwable le) {
 				syncException = new ScanFileHolderException("Problem loading file: " + fileName, le);
 				try {
@@ -243,8 +334,19 @@ public class HDF5Loader extends AbstractFileLoader {
 			logger.error("Could not get canonical path", e);
 			throw new ScanFileHolderException("Could not get canonical path", e);
 		}
+
+		// file state before reading so a concurrent modification invalidates the cached tree
+		final long length = f.length();
+		final long modified = f.lastModified();
+		TreeFile cached = getCachedTree(f);
+		if (cached != null) {
+			logger.trace("Using cached tree of {}", fileName);
+			tFile = cached;
+			return tFile;
+		}
+
 		if (async) {
-			loaderThread = new LoadFileThread(mon);
+			loaderThread = new LoadFileThread(mon, length, modified);
 			loaderThread.start();
 			try {
 				Thread.sleep(100l);
@@ -260,6 +362,7 @@ public class HDF5Loader extends AbstractFileLoader {
 				}
 
 				tFile = createTree(fid, keepBitWidth);
+				putCachedTree(length, modified, tFile);
 			} catch (Throwable le) {
 				throw new ScanFileHolderException("Problem loading file: " + fileName, le);
 			} finally {
@@ -509,8 +612,7 @@ public class HDF5Loader extends AbstractFileLoader {
 
 						// System.err.println("G: " + oname);
 						String newname = name + Node.SEPARATOR + oname + Node.SEPARATOR;
-						newname = newname.replaceAll("([" + Node.SEPARATOR + "])\\1+",
-								Node.SEPARATOR);
+						newname = REPEATED_SEPARATORS.matcher(newname).replaceAll(Node.SEPARATOR);
 						if (queue != null) {
 							queue.add(newname);
 						} else {
@@ -537,8 +639,7 @@ public class HDF5Loader extends AbstractFileLoader {
 
 						// System.err.println("D: " + oname);
 						String newname = name + Node.SEPARATOR + oname;
-						newname = newname.replaceAll("([" + Node.SEPARATOR + "])\\1+",
-								Node.SEPARATOR);
+						newname = REPEATED_SEPARATORS.matcher(newname).replaceAll(Node.SEPARATOR);
 						Node n = createDataset(fid, f, oid, pool, newname, keepBitWidth);
 
 						if (n != null)
@@ -26,6 +26,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
@@ -44,6 +47,7 @@ import org.slf4j.LoggerFactory;
 
 import uk.ac.diamond.scisoft.analysis.io.cache.CacheKey;
 import uk.ac.diamond.scisoft.analysis.io.cache.DataCache;
+import uk.ac.diamond.scisoft.analysis.io.cache.MetadataIndex;
 import uk.ac.diamond.scisoft.analysis.utils.FileUtils;
 
 /**
@@ -93,6 +97,18 @@ public class LoaderFactory {
 	private static final DataCache<IDataHolder> dataCache;
 	private static final Set<String> IGNORE_EXTS;
 
+	/**
+	 * System property giving the file used to persist metadata between sessions
+	 */
+	public static final String METADATA_INDEX = "uk.ac.diamond.scisoft.analysis.io.metadataindex";
+
+	private static volatile MetadataIndex metadataIndex;
+	private static final ExecutorService indexRefresher = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "Metadata index refresher");
+		t.setDaemon(true);
+		return t;
+	});
+
 	/**
 	 * 
 	 * Loaders can be registered at run time using registerLoader(...)
@@ -113,6 +129,11 @@ public class LoaderFactory {
 		UNZIPPERS = new HashMap<String, Class<? extends InputStream>>(3);
 		dataCache = new DataCache<IDataHolder>();
 		IGNORE_EXTS   = new HashSet<String>(3);
+
+		String index = System.getProperty(METADATA_INDEX);
+		if (index != null && !index.isEmpty()) {
+			metadataIndex = new MetadataIndex(new File(index));
+		}
 		
 		registerLoaderWithException("npy", NumPyFileLoader.class);
 		registerLoaderWithException("img", ADSCImageLoader.class);
@@ -591,6 +612,7 @@ public class LoaderFactory {
 			
 			final List<String> files = Arrays.asList(dir.list());
 			Collections.sort(files, new SortNatural<String>(true));
+			final Map<String, Pattern> patterns = new HashMap<String, Pattern>();
 			
 			for (String fName : files) {
 				
@@ -602,7 +624,11 @@ public class LoaderFactory {
 					
 					// Name will be something like 35873_M3S15_1_0001.cbf
 					// A string '35873_M3S15_1_' followed by a 4-digit number, followed by the file extension.
-					Pattern pattern = Pattern.compile(patternPrefix+"\\."+ext);
+					Pattern pattern = patterns.get(ext);
+					if (pattern == null) {
+						pattern = Pattern.compile(patternPrefix+"\\."+ext);
+						patterns.put(ext, pattern);
+					}
 					Matcher matcher = pattern.matcher(fName);
 					if (matcher.matches()) {
 						name = matcher.group(1);
@@ -667,15 +693,47 @@ public class LoaderFactory {
 			if (meta!=null) return meta;
 			logger.warn("Cached object is not a metadata object or contain one");
 		}
-		
-		final Iterator<Class<? extends IFileLoader>> it = getIterator(path);
-		if (it == null) return null;
+
+		// Look in persistent index, noting the file state before any reading
+		final File file = new File(path);
+		final long length = file.length();
+		final long modified = file.lastModified();
+		final MetadataIndex index = metadataIndex;
+		if (index != null) {
+			IMetadata meta = index.get(file);
+			if (meta != null) {
+				dataCache.recordSoftReference(key, new DataHolder(meta));
+				return meta;
+			}
+		}
+
+		IMetadata meta = readMetadata(path, mon);
+		if (meta != null) {
+			key.setMetadataOnly(true); // We are definitely recording only metadata with this step.
+			dataCache.recordSoftReference(key, new DataHolder(meta));
+			if (index != null) {
+				index.put(file, length, modified, meta);
+			}
+		}
+		return meta;
+	}
+
+	/**
+	 * Read metadata with the first meta loader that accepts the file. Only the choice of loaders
+	 * is made under the class lock so this can be used away from it
+	 * @param path
+	 * @param mon
+	 * @return metadata or null
+	 * @throws Exception
+	 */
+	private static IMetadata readMetadata(String path, final IMonitor mon) throws Exception {
+		final List<Class<? extends IFileLoader>> classes = getLoaderClasses(path);
+		if (classes == null) return null;
 
 		// Currently this method simply cycles through all loaders.
 		// When it finds one which does not give an exception on loading, it
 		// returns the data from this loader.
-		while (it.hasNext()) {
-			final Class<? extends IFileLoader> clazz = it.next();
+		for (Class<? extends IFileLoader> clazz : classes) {
 			final IFileLoader loader = getLoader(clazz, path);
 			if (!IMetaLoader.class.isInstance(loader)) continue;
 
@@ -684,10 +742,7 @@ public class LoaderFactory {
 				// if given the wrong file. If a loader does not
 				// do this, it should not be registered with LoaderFactory
 				((IMetaLoader) loader).loadMetadata(mon);
-				IMetadata meta = ((IMetaLoader) loader).getMetadata();
-				key.setMetadataOnly(true); // We are definitely recording only metadata with this step.
-				dataCache.recordSoftReference(key, new DataHolder(meta));
-				return meta;
+				return ((IMetaLoader) loader).getMetadata();
 			} catch (Throwable ne) {
 				//logger.trace("Cannot load nexus meta data", ne);
 				logger.trace("Loader {} caused {}", loader, ne);
@@ -698,6 +753,87 @@ public class LoaderFactory {
 		return null;
 	}
 
+	/**
+	 * @param path
+	 * @return copy of loader classes to try for given file or null
+	 * @throws IllegalAccessException
+	 */
+	private static synchronized List<Class<? extends IFileLoader>> getLoaderClasses(String path) throws IllegalAccessException {
+		final Iterator<Class<? extends IFileLoader>> it = getIterator(path);
+		if (it == null) return null;
+		final List<Class<? extends IFileLoader>> classes = new ArrayList<Class<? extends IFileLoader>>();
+		while (it.hasNext()) {
+			classes.add(it.next());
+		}
+		return classes;
+	}
+
+	/**
+	 * Set file used to persist metadata read by {@link #getMetadata(String, IMonitor)}. Files whose
+	 * length and modification time are unchanged since their entry was made are not read again.
+	 * The initial store is given by the {@value #METADATA_INDEX} system property.
+	 * @param store file of index or null to stop using an index
+	 */
+	public static void setMetadataIndex(String store) {
+		MetadataIndex old = metadataIndex;
+		if (old != null) {
+			if (store != null && old.getStore().equals(new File(store))) {
+				return;
+			}
+			try {
+				old.save();
+			} catch (Exception e) {
+				logger.error("Could not save metadata index {}", old.getStore(), e);
+			}
+		}
+		metadataIndex = store == null ? null : new MetadataIndex(new File(store));
+	}
+
+	/**
+	 * Write any changes in metadata index to its store
+	 * @throws Exception
+	 */
+	public static void flushMetadataIndex() throws Exception {
+		MetadataIndex index = metadataIndex;
+		if (index != null) {
+			index.save();
+		}
+	}
+
+	/**
+	 * Update the metadata index in the background for given files. Only files without a
+	 * current entry are read and each file is done in turn outside the class lock so that
+	 * foreground requests are not held up
+	 * @param paths
+	 * @return future that completes after all the files have been checked
+	 */
+	public static Future<?> refreshMetadataIndex(final Collection<String> paths) {
+		final List<String> files = new ArrayList<String>(paths);
+		return indexRefresher.submit(() -> {
+			for (String p : files) {
+				MetadataIndex index = metadataIndex;
+				if (index == null || Thread.currentThread().isInterrupted()) {
+					return;
+				}
+				File f = new File(Utils.translateDLSFilePath(p));
+				if (!f.isFile() || !index.isStale(f)) {
+					continue;
+				}
+				// read without the class lock so foreground loading is not blocked
+				final long length = f.length();
+				final long modified = f.lastModified();
+				try {
+					IMetadata meta = readMetadata(f.getPath(), null);
+					if (meta != null) {
+						index.put(f, length, modified, meta);
+					}
+				} catch (Exception e) {
+					logger.trace("Could not refresh metadata of {}", f, e);
+				}
+			}
+		});
+	}
+
 	/**
 	 * Loads a single dataset by loading the whole data holder and asking for the dataset
 	 * by name. Loaders should load things properly to ILazyDatasets and then this method
@@ -10,10 +10,9 @@
 package uk.ac.diamond.scisoft.analysis.io;
 
 import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -49,6 +48,11 @@ public class PilatusEdfLoader extends AbstractFileLoader {
 		textMetadata.clear();
 	}
 
+	@Override
+	public boolean isFileContentSupported() {
+		return true;
+	}
+
 	@Override
 	public DataHolder loadFile() throws ScanFileHolderException {
 		return loadFile(null);
@@ -58,15 +62,13 @@ public class PilatusEdfLoader extends AbstractFileLoader {
 	public DataHolder loadFile(IMonitor mon) throws ScanFileHolderException {
 		ILazyDataset data = null;
 		final DataHolder output = new DataHolder();
-		File f = null;
-		FileInputStream fi = null;
+		InputStream fi = null;
 		BufferedReader br = null;
 		try {
 
-			f = new File(fileName);
-			fi = new FileInputStream(f);
+			fi = openFileStream();
 
-			br = new BufferedReader(new FileReader(f));
+			br = new BufferedReader(new InputStreamReader(openFileStream()));
 			String line = br.readLine();
 			if (line == null)
 				throw new ScanFileHolderException("No lines found");
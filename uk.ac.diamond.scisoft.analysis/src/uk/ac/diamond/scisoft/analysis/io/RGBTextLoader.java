@@ -9,7 +9,6 @@
 package uk.ac.diamond.scisoft.analysis.io;
 
 import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
@@ -68,7 +67,7 @@ public class RGBTextLoader extends CSVLoader {
 		// then try to read the file given
 		BufferedReader in = null;
 		try {
-			in = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), "UTF-8"));
+			in = new BufferedReader(new InputStreamReader(openFileStream(), "UTF-8"));
 
 			boolean readingFooter = false;
 
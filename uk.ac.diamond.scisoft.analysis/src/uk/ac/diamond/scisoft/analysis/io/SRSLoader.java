@@ -11,10 +11,11 @@ package uk.ac.diamond.scisoft.analysis.io;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -48,6 +49,7 @@ public class SRSLoader extends AbstractFileLoader implements IFileSaver {
 	
 	private boolean storeStringValues = false;
 	private boolean useImageLoaderForStrings = true;
+	private boolean useColumnarParser = true;
 
 	protected boolean checkForMoreMetadata = true;
 
@@ -68,6 +70,11 @@ public class SRSLoader extends AbstractFileLoader implements IFileSaver {
 		extraHeaders.clear();
 	}
 
+	@Override
+	public boolean isFileContentSupported() {
+		return true;
+	}
+
 	/**
 	 * 
 	 * @return if columns containing strings are added to the DataHolder as a StringDataSet. 
@@ -96,6 +103,14 @@ public class SRSLoader extends AbstractFileLoader implements IFileSaver {
 		this.useImageLoaderForStrings = useImageLoaderForStrings;
 	}
 
+	/**
+	 * @param use if true (the default), data lines are parsed directly from the file
+	 * bytes by a {@link ColumnarTextParser} until a line that is not all numbers is found
+	 */
+	public void setUseColumnarParser(boolean use) {
+		useColumnarParser = use;
+	}
+
 	@Override
 	public DataHolder loadFile() throws ScanFileHolderException {
 		return loadFile(null);
@@ -125,41 +140,36 @@ public class SRSLoader extends AbstractFileLoader implements IFileSaver {
 		LineNumberReader in = null;
 		
 		try {
-			in = new LineNumberReader(new FileReader(fileName), BUFFER_SIZE);
-			String dataStr;
+			in = new LineNumberReader(new InputStreamReader(openFileStream()), BUFFER_SIZE);
 			// an updated header reader grabs all the metadata
 			readMetadata(in, mon);
 
 			// read in the names of the different datasets which will be needed
 			List<String> vals = readColumnHeaders(in);
-			
-			List<?> [] columns = new List<?>[vals.size()];
 
-			// now add the data to the appropriate vectors
-			int count = 0;
-			while ((dataStr = in.readLine()) != null) {
-				if (!monitorIncrement(mon)) {
-					throw new ScanFileHolderException("Loader cancelled during reading!");
-				}
-				dataStr = dataStr.trim();
-				if (NUMBER_REGEX.matcher(dataStr).matches() || !checkForMoreMetadata) {
-					if (!loadLazily) {
-						parseColumns(SPLIT_REGEX.split(dataStr), columns);
-					}
-					count++;
-				} else {
-					// more metadata?
-					in.reset();
-					readMetadata(in, mon);
-					in.readLine(); // throw away line
-				}
-				in.mark(MARK_LIMIT);
+			final ColumnarTextParser.Result parsed = parseData(in.getLineNumber(), vals.size(), mon);
+			List<?> [] columns = null;
+			int count;
+			if (parsed != null) {
+				count = parsed.getLineCount();
+			} else {
+				columns = new List<?>[vals.size()];
+				count = readData(in, columns, mon);
 			}
 
 			if (loadLazily) {
 				for (String n : vals) {
 					result.addDataset(n, createLazyDataset(new SRSLoader(fileName), n, null, count));
 				}
+			} else if (parsed != null) {
+				for (int i = 0, imax = vals.size(); i < imax; i++) {
+					Dataset ds = parsed.getDataset(i);
+					if (ds != null) {
+						String name = vals.get(i);
+						ds.setName(name);
+						result.addDataset(name, ds);
+					}
+				}
 			} else {
 				convertToDatasets(result, vals, columns, isStoreStringValues(), isUseImageLoaderForStrings(), (new File(fileName)).getParent());
 			}
@@ -183,6 +193,62 @@ public class SRSLoader extends AbstractFileLoader implements IFileSaver {
 		return result;
 	}
 
+	/**
+	 * Parse data lines directly from the file bytes. Blank lines are skipped and
+	 * this stops if any other line is not all numbers, i.e. it holds more metadata
+	 * or strings
+	 * @param dataLine number of lines before the data
+	 * @param columns
+	 * @param mon
+	 * @return parsed columns or null if the columnar parser cannot be used
+	 */
+	private ColumnarTextParser.Result parseData(int dataLine, int columns, IMonitor mon) throws Exception {
+		if (!useColumnarParser) {
+			return null;
+		}
+		ByteBuffer buffer = getFileBuffer();
+		if (buffer == null) {
+			return null;
+		}
+		buffer.position(ColumnarTextParser.skipLines(buffer, buffer.position(), dataLine));
+
+		ColumnarTextParser parser = new ColumnarTextParser(ColumnarTextParser.Delimiter.WHITESPACE);
+		parser.setSkipInvalidLines(false);
+		parser.setKeepIntegers(true);
+		parser.setAllowNonFinite(true); // lines only need to start with a number
+		parser.setMaximumColumns(columns);
+		parser.setStoreValues(!loadLazily);
+		return parser.parse(buffer, mon);
+	}
+
+	/**
+	 * Read data lines into lists
+	 * @return number of data lines
+	 */
+	private int readData(LineNumberReader in, List<?>[] columns, IMonitor mon) throws Exception {
+		String dataStr;
+		int count = 0;
+		while ((dataStr = in.readLine()) != null) {
+			if (!monitorIncrement(mon)) {
+				throw new ScanFileHolderException("Loader cancelled during reading!");
+			}
+			dataStr = dataStr.trim();
+			if (NUMBER_REGEX.matcher(dataStr).matches() || !checkForMoreMetadata) {
+				if (!loadLazily) {
+					parseColumns(SPLIT_REGEX.split(dataStr), columns);
+				}
+				count++;
+			} else {
+				// more metadata?
+				in.reset();
+				readMetadata(in, mon);
+				in.readLine(); // throw away line
+			}
+			in.mark(MARK_LIMIT);
+		}
+		return count;
+	}
+
 	private List<String> readColumnHeaders(LineNumberReader in) throws IOException {
 		String headStr = in.readLine();
 		if (headStr == null)
@@ -42,6 +42,7 @@ import com.sun.media.imageioimpl.plugins.tiff.TIFFImageReaderSpi;
 
 import uk.ac.diamond.scisoft.analysis.io.tiff.Grey12bitTIFFReader;
 import uk.ac.diamond.scisoft.analysis.io.tiff.Grey12bitTIFFReaderSpi;
+import uk.ac.diamond.scisoft.analysis.io.tiff.IndexedTIFFReader;
 
 /**
  * This class loads a TIFF image file
@@ -99,18 +100,19 @@ public class TIFFImageLoader extends JavaImageLoader {
 			// test to see if the filename passed will load
 			f = new File(fileName);
 			ImageInputStream iis = new FileImageInputStream(f);
+			IndexedTIFFReader index = createIndex(fileName);
 
 			try {
 				reader = new TIFFImageReader(new TIFFImageReaderSpi());
 				reader.setInput(iis);
-				readImages(output, reader); // this raises an exception for 12-bit images when using standard reader
+				readImages(output, reader, index); // this raises an exception for 12-bit images when using standard reader
 			} catch (ScanFileHolderException e) {
 				throw e;
 			} catch (Exception e) {
 				logger.debug("Using alternative 12-bit TIFF reader: {}", fileName);
 				reader = new Grey12bitTIFFReader(new Grey12bitTIFFReaderSpi());
 				reader.setInput(iis);
-				readImages(output, reader);
+				readImages(output, reader, index);
 			}
 		} catch (IOException e) {
 			throw new ScanFileHolderException("IOException loading file '" + fileName + "'", e);
@@ -131,8 +133,22 @@ public class TIFFImageLoader extends JavaImageLoader {
 	}
 
 	
-	private void readImages(DataHolder output, ImageReader reader) throws IOException, ScanFileHolderException {
-		int n = reader.getNumImages(true);
+	/**
+	 * Index the images of the file so that slices can be read directly
+	 * @param filename
+	 * @return index or null if the file's directories cannot be read
+	 */
+	private static IndexedTIFFReader createIndex(String filename) {
+		try {
+			return IndexedTIFFReader.create(filename);
+		} catch (IOException e) {
+			logger.debug("Could not index TIFF file {}", filename, e);
+			return null;
+		}
+	}
+
+	private void readImages(DataHolder output, ImageReader reader, IndexedTIFFReader index) throws IOException, ScanFileHolderException {
+		int n = index != null ? index.getNumImages() : reader.getNumImages(true);
 
 		if (n == 0) {
 			return;
@@ -143,20 +159,32 @@ public class TIFFImageLoader extends JavaImageLoader {
 		if (!loadData)
 			return;
 
+		final ImageTypeSpecifier its = reader.getRawImageType(0); // this raises an exception for 12-bit images when using standard reader
+		Class<? extends Dataset> clazz = AWTImageUtils.getInterface(its.getSampleModel(), keepBitWidth);
+
+		// images in the index all have the same shape and type so no need to check each one
+		if (index != null && !index.canRead(clazz)) {
+			index = null;
+		}
+
 		boolean allSame = true;
 		if (height < 0 || width < 0) {
-			height = reader.getHeight(0); // this can throw NPE when using 12-bit reader
-			width = reader.getWidth(0);
-			for (int i = 1; i < n; i++) {
-				if (height != reader.getHeight(i) || width != reader.getWidth(i)) {
-					allSame = false;
-					break;
+			if (index != null) {
+				height = index.getHeight(0);
+				width = index.getWidth(0);
+			} else {
+				height = reader.getHeight(0); // this can throw NPE when using 12-bit reader
+				width = reader.getWidth(0);
+				for (int i = 1; i < n; i++) {
+					if (height != reader.getHeight(i) || width != reader.getWidth(i)) {
+						allSame = false;
+						break;
+					}
 				}
 			}
 		}
 
-		final ImageTypeSpecifier its = reader.getRawImageType(0); // this raises an exception for 12-bit images when using standard reader
-		if (allSame) {
+		if (allSame && index == null) {
 			for (int i = 1; i < n; i++) {
 				if (!its.equals(reader.getRawImageType(i))) {
 					throw new ScanFileHolderException("Type of image in stack does not match first");
@@ -164,11 +192,10 @@ public class TIFFImageLoader extends JavaImageLoader {
 			}
 		}
 
-		Class<? extends Dataset> clazz = AWTImageUtils.getInterface(its.getSampleModel(), keepBitWidth);
 		if (n == 1) {
 			ILazyDataset image;
 			if (loadLazily) {
-				image = createLazyDataset(clazz, height, width);
+				image = createLazyDataset(clazz, index, height, width);
 			} else {
 				image = createDataset(reader.read(0));
 			}
@@ -177,7 +204,7 @@ public class TIFFImageLoader extends JavaImageLoader {
 				mergeMetadata(image);
 			output.addDataset(DEF_IMAGE_NAME, image);
 		} else if (allSame) {
-			ILazyDataset ld = createLazyDataset(clazz, n, height, width);
+			ILazyDataset ld = createLazyDataset(clazz, index, n, height, width);
 			ld.setMetadata(metadata);
 			output.addDataset(STACK_NAME, ld);
 		} else {
@@ -212,7 +239,13 @@ public class TIFFImageLoader extends JavaImageLoader {
 		}
 	}
 
-	private ILazyDataset createLazyDataset(Class<? extends Dataset> clazz, final int... trueShape) {
+	/**
+	 * @param clazz
+	 * @param index if not null, used to read images directly
+	 * @param trueShape
+	 * @return lazy dataset
+	 */
+	private ILazyDataset createLazyDataset(Class<? extends Dataset> clazz, final IndexedTIFFReader index, final int... trueShape) {
 		LazyLoaderStub l = new LazyLoaderStub() {
 			@Override
 			public IDataset getDataset(IMonitor mon, SliceND slice) throws IOException {
@@ -263,10 +296,10 @@ public class TIFFImageLoader extends JavaImageLoader {
 							}
 						}
 
-						d = loadData(clazz, mon, fileName, asGrey, keepBitWidth, shape, tstart, tsize, tstep);
+						d = loadData(index, clazz, mon, fileName, asGrey, keepBitWidth, shape, tstart, tsize, tstep);
 						d.setShape(newShape); // squeeze shape back
 					} else {
-						d = loadData(clazz, mon, fileName, asGrey, keepBitWidth, shape, lstart, newShape, lstep);
+						d = loadData(index, clazz, mon, fileName, asGrey, keepBitWidth, shape, lstart, newShape, lstep);
 					}
 				} catch (ScanFileHolderException e) {
 					throw new IOException("Problem with TIFF loading", e);
@@ -279,6 +312,25 @@ public class TIFFImageLoader extends JavaImageLoader {
 		return createLazyDataset(l, STACK_NAME, clazz, trueShape.clone());
 	}
 
+	private static Dataset loadData(IndexedTIFFReader index, Class<? extends Dataset> clazz, IMonitor mon, String filename, boolean asGrey, boolean keepBitWidth,
+			int[] oshape, int[] start, int[] count, int[] step) throws ScanFileHolderException {
+		if (index == null) {
+			return loadData(clazz, mon, filename, asGrey, keepBitWidth, oshape, start, count, step);
+		}
+
+		try {
+			if (start.length == 2) {
+				Dataset d = index.read(clazz, mon, new int[] {0, start[0], start[1]}, new int[] {1, count[0], count[1]},
+						new int[] {1, step[0], step[1]});
+				d.setShape(count);
+				return d;
+			}
+			return index.read(clazz, mon, start, count, step);
+		} catch (IOException e) {
+			throw new ScanFileHolderException("IOException loading file '" + filename + "'", e);
+		}
+	}
+
 	private static Dataset loadData(Class<? extends Dataset> clazz, IMonitor mon, String filename, boolean asGrey, boolean keepBitWidth,
 			int[] oshape, int[] start, int[] count, int[] step) throws ScanFileHolderException {
 		ImageInputStream iis = null;
@@ -330,7 +382,7 @@ public class TIFFImageLoader extends JavaImageLoader {
 					break;
 				}
 				d.setSlice(image, dSlice);
-				if (monitorIncrement(mon)) {
+				if (!monitorIncrement(mon)) {
 					break;
 				}
 				num += step[0];
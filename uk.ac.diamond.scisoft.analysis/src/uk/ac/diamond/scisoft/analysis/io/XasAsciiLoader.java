@@ -12,8 +12,8 @@ package uk.ac.diamond.scisoft.analysis.io;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.Arrays;
 import java.util.List;
 
@@ -39,7 +39,7 @@ public class XasAsciiLoader extends SRSLoader {
 		BufferedReader reader = null;
 
 		try {
-			reader = new BufferedReader(new FileReader(fileName));
+			reader = new BufferedReader(new InputStreamReader(openFileStream()));
 			String dataStr;
 			String previousHeaderLine = "";
 			boolean readingHeader = true;
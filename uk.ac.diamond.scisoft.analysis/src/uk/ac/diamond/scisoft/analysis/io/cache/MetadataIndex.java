@@ -0,0 +1,368 @@
+/*-
+ * Copyright 2015 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.io.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.january.metadata.IMetadata;
+import org.eclipse.january.metadata.Metadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent index of file metadata for LoaderFactory. Entries are keyed by path and only
+ * returned while the file's length and modification time match those recorded when its
+ * metadata was read.
+ * <p>
+ * Only the file path, data names and shapes, and the header values as strings are kept and
+ * a new {@link Metadata} is built from them on each lookup. The store is a single compressed
+ * file which is rewritten a short while after entries change or when {@link #save()} is called.
+ */
+public class MetadataIndex {
+
+	private static final Logger logger = LoggerFactory.getLogger(MetadataIndex.class);
+
+	private static final int MAGIC = 0x4d444958; // MDIX
+	private static final int VERSION = 2;
+
+	private static final long SAVE_DELAY = 5; // in seconds
+
+	private static final ScheduledExecutorService SAVER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "Metadata index saver");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private static class Entry {
+		private final long length;
+		private final long modified;
+		private final String filePath;
+		private final Map<String, int[]> shapes; // null shape if unknown
+		private final Map<String, String> header;
+
+		public Entry(long length, long modified, String filePath, Map<String, int[]> shapes, Map<String, String> header) {
+			this.length = length;
+			this.modified = modified;
+			this.filePath = filePath;
+			this.shapes = shapes;
+			this.header = header;
+		}
+
+		public boolean isCurrent(File file) {
+			return file.length() == length && file.lastModified() == modified;
+		}
+
+		public IMetadata createMetadata() {
+			Metadata m = new Metadata();
+			m.initialize(header);
+			for (Map.Entry<String, int[]> e : shapes.entrySet()) {
+				int[] shape = e.getValue();
+				m.addDataInfo(e.getKey(), shape == null ? null : shape.clone());
+			}
+			m.setFilePath(filePath);
+			return m;
+		}
+	}
+
+	private final File store;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final AtomicBoolean dirty = new AtomicBoolean();
+	private final AtomicBoolean saveScheduled = new AtomicBoolean();
+
+	/**
+	 * Create index backed by given store, reading any entries already saved there
+	 * @param store
+	 */
+	public MetadataIndex(File store) {
+		this.store = store;
+		if (store.isFile()) {
+			try {
+				read();
+			} catch (IOException e) {
+				logger.warn("Could not read metadata index {} so starting afresh", store, e);
+				entries.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return file used to store index
+	 */
+	public File getStore() {
+		return store;
+	}
+
+	/**
+	 * @return number of entries
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @param file
+	 * @return true if file has no entry or its entry does not match the file's length and modification time
+	 */
+	public boolean isStale(File file) {
+		Entry e = entries.get(file.getAbsolutePath());
+		return e == null || !e.isCurrent(file);
+	}
+
+	/**
+	 * @param file
+	 * @return metadata or null if file has no current entry
+	 */
+	public IMetadata get(File file) {
+		String path = file.getAbsolutePath();
+		Entry e = entries.get(path);
+		if (e == null) {
+			return null;
+		}
+		if (!e.isCurrent(file)) {
+			if (entries.remove(path, e)) {
+				changed();
+			}
+			return null;
+		}
+		return e.createMetadata();
+	}
+
+	/**
+	 * Add or replace the entry for given file
+	 * @param file
+	 * @param length of file when metadata was read
+	 * @param modified time of file when metadata was read
+	 * @param metadata
+	 * @return true if the metadata could be stored
+	 */
+	public boolean put(File file, long length, long modified, IMetadata metadata) {
+		Map<String, int[]> shapes = new LinkedHashMap<>();
+		Map<String, String> header = new LinkedHashMap<>();
+		try {
+			Map<String, int[]> s = metadata.getDataShapes();
+			Collection<String> names = metadata.getDataNames();
+			if (names != null) {
+				for (String n : names) {
+					int[] shape = s == null ? null : s.get(n);
+					shapes.put(n, shape == null ? null : shape.clone());
+				}
+			}
+			if (s != null) {
+				for (Map.Entry<String, int[]> e : s.entrySet()) {
+					if (!shapes.containsKey(e.getKey()) && e.getValue() != null) {
+						shapes.put(e.getKey(), e.getValue().clone());
+					}
+				}
+			}
+
+			Collection<String> keys = metadata.getMetaNames();
+			if (keys != null) {
+				for (String k : keys) {
+					Serializable v = metadata.getMetaValue(k);
+					if (k != null && v != null) {
+						header.put(k, v.toString());
+					}
+				}
+			}
+		} catch (Exception e) {
+			logger.debug("Could not add metadata of {} to index", file, e);
+			return false;
+		}
+		entries.put(file.getAbsolutePath(), new Entry(length, modified, metadata.getFilePath(), shapes, header));
+		changed();
+		return true;
+	}
+
+	/**
+	 * Remove entry of given file
+	 * @param file
+	 */
+	public void remove(File file) {
+		if (entries.remove(file.getAbsolutePath()) != null) {
+			changed();
+		}
+	}
+
+	/**
+	 * Remove all entries
+	 */
+	public void clear() {
+		entries.clear();
+		changed();
+	}
+
+	private void changed() {
+		dirty.set(true);
+		if (saveScheduled.compareAndSet(false, true)) {
+			SAVER.schedule(() -> {
+				saveScheduled.set(false);
+				try {
+					save();
+				} catch (IOException e) {
+					logger.error("Could not save metadata index {}", store, e);
+				}
+			}, SAVE_DELAY, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Write index to its store if it has changed. The store is replaced atomically where possible
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException {
+		if (!dirty.getAndSet(false)) {
+			return;
+		}
+
+		File parent = store.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			dirty.set(true);
+			throw new IOException("Could not create directory for " + store);
+		}
+		File tmp = new File(parent, store.getName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			for (Map.Entry<String, Entry> me : entries.entrySet()) {
+				Entry e = me.getValue();
+				out.writeBoolean(true);
+				out.writeUTF(me.getKey());
+				out.writeLong(e.length);
+				out.writeLong(e.modified);
+				writeString(out, e.filePath);
+				out.writeInt(e.shapes.size());
+				for (Map.Entry<String, int[]> se : e.shapes.entrySet()) {
+					writeString(out, se.getKey());
+					int[] shape = se.getValue();
+					if (shape == null) {
+						out.writeInt(-1);
+					} else {
+						out.writeInt(shape.length);
+						for (int d : shape) {
+							out.writeInt(d);
+						}
+					}
+				}
+				out.writeInt(e.header.size());
+				for (Map.Entry<String, String> he : e.header.entrySet()) {
+					writeString(out, he.getKey());
+					writeString(out, he.getValue());
+				}
+			}
+			out.writeBoolean(false);
+		} catch (IOException e) {
+			dirty.set(true);
+			tmp.delete();
+			throw e;
+		}
+
+		if (!tmp.renameTo(store)) {
+			store.delete();
+			if (!tmp.renameTo(store)) {
+				dirty.set(true);
+				throw new IOException("Could not replace " + store);
+			}
+		}
+	}
+
+	private void read() throws IOException {
+		try (DataInputStream in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(new FileInputStream(store))))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a metadata index");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported metadata index version " + version);
+			}
+			while (in.readBoolean()) {
+				String path = in.readUTF();
+				long length = in.readLong();
+				long modified = in.readLong();
+				String filePath = readString(in);
+				int n = readCount(in);
+				Map<String, int[]> shapes = new LinkedHashMap<>();
+				for (int i = 0; i < n; i++) {
+					String name = readString(in);
+					int rank = in.readInt();
+					int[] shape = null;
+					if (rank >= 0) {
+						shape = new int[rank];
+						for (int j = 0; j < rank; j++) {
+							shape[j] = in.readInt();
+						}
+					}
+					shapes.put(name, shape);
+				}
+				n = readCount(in);
+				Map<String, String> header = new LinkedHashMap<>();
+				for (int i = 0; i < n; i++) {
+					String k = readString(in);
+					header.put(k, readString(in));
+				}
+				entries.put(path, new Entry(length, modified, filePath, shapes, header));
+			}
+		}
+	}
+
+	private static final int MAX_COUNT = 1 << 24;
+
+	private static int readCount(DataInputStream in) throws IOException {
+		int n = in.readInt();
+		if (n < 0 || n > MAX_COUNT) {
+			throw new IOException("Invalid count in metadata index: " + n);
+		}
+		return n;
+	}
+
+	/**
+	 * Strings are written as length-prefixed UTF-8 as header values can exceed the limit of writeUTF
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int n = in.readInt();
+		if (n < 0) {
+			return null;
+		}
+		if (n > MAX_COUNT) {
+			throw new IOException("Invalid string length in metadata index: " + n);
+		}
+		byte[] b = new byte[n];
+		in.readFully(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,584 @@
+/*
+ * Copyright (c) 2012 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.analysis.io.tiff;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.january.IMonitor;
+import org.eclipse.january.dataset.ByteDataset;
+import org.eclipse.january.dataset.Dataset;
+import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DoubleDataset;
+import org.eclipse.january.dataset.FloatDataset;
+import org.eclipse.january.dataset.IntegerDataset;
+import org.eclipse.january.dataset.ShortDataset;
+
+/**
+ * Reader of uncompressed greyscale TIFF images, including BigTIFF, that walks
+ * the chain of image file directories once to index where the strips or tiles
+ * of every image are. Images are read with positional reads so one reader can
+ * be used by many threads at once.
+ * <p>
+ * Images must have one sample per pixel of 8, 16, 32 or 64 bits.
+ */
+public class IndexedTIFFReader implements Serializable {
+	private static final long serialVersionUID = -3524711843283611064L;
+
+	private static final int IMAGE_WIDTH = 256;
+	private static final int IMAGE_LENGTH = 257;
+	private static final int BITS_PER_SAMPLE = 258;
+	private static final int COMPRESSION = 259;
+	private static final int PHOTOMETRIC = 262;
+	private static final int FILL_ORDER = 266;
+	private static final int STRIP_OFFSETS = 273;
+	private static final int SAMPLES_PER_PIXEL = 277;
+	private static final int ROWS_PER_STRIP = 278;
+	private static final int STRIP_BYTE_COUNTS = 279;
+	private static final int PREDICTOR = 317;
+	private static final int TILE_WIDTH = 322;
+	private static final int TILE_LENGTH = 323;
+	private static final int TILE_OFFSETS = 324;
+	private static final int TILE_BYTE_COUNTS = 325;
+	private static final int SAMPLE_FORMAT = 339;
+
+	private static final int MAX_ENTRIES = 4096;
+
+	/**
+	 * Sample types that can be read
+	 */
+	private enum Kind {
+		U8(1), U16(2), S16(2), I32(4), F32(4), F64(8);
+
+		private final int bytes;
+
+		private Kind(int bytes) {
+			this.bytes = bytes;
+		}
+
+		private static Kind get(int bits, int format) {
+			switch (format) {
+			case 1:
+				return bits == 8 ? U8 : bits == 16 ? U16 : bits == 32 ? I32 : null;
+			case 2:
+				return bits == 16 ? S16 : bits == 32 ? I32 : null;
+			case 3:
+				return bits == 32 ? F32 : bits == 64 ? F64 : null;
+			default:
+				return null;
+			}
+		}
+
+		private boolean canReadAs(Class<? extends Dataset> clazz) {
+			switch (this) {
+			case U8:
+				return clazz == ByteDataset.class || clazz == ShortDataset.class;
+			case U16:
+				return clazz == ShortDataset.class || clazz == IntegerDataset.class;
+			case S16:
+				return clazz == ShortDataset.class;
+			case I32:
+				return clazz == IntegerDataset.class;
+			case F32:
+				return clazz == FloatDataset.class;
+			case F64:
+				return clazz == DoubleDataset.class;
+			}
+			return false;
+		}
+	}
+
+	private static class Page implements Serializable {
+		private static final long serialVersionUID = 6917270567339711525L;
+
+		private int width;
+		private int height;
+		private Kind kind;
+		private boolean tiled;
+		private int segmentWidth; // width of tile or image
+		private int segmentHeight; // rows per strip or height of tile
+		private long[] offsets;
+	}
+
+	private final String path;
+	private final boolean bigEndian;
+	private final Page[] pages;
+	private final boolean supported;
+
+	private IndexedTIFFReader(String path, boolean bigEndian, Page[] pages) {
+		this.path = path;
+		this.bigEndian = bigEndian;
+		this.pages = pages;
+
+		boolean ok = pages.length > 0;
+		for (Page p : pages) {
+			if (p.kind == null || p.width != pages[0].width || p.height != pages[0].height || p.kind != pages[0].kind) {
+				ok = false;
+				break;
+			}
+		}
+		supported = ok;
+	}
+
+	/**
+	 * Index the images in a TIFF file
+	 * @param path
+	 * @return reader
+	 * @throws IOException if file is not a TIFF file or its directories cannot be read
+	 */
+	public static IndexedTIFFReader create(String path) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			ByteBuffer header = read(channel, 0, 16, ByteOrder.BIG_ENDIAN);
+			ByteOrder order;
+			if (header.get(0) == 'I' && header.get(1) == 'I') {
+				order = ByteOrder.LITTLE_ENDIAN;
+			} else if (header.get(0) == 'M' && header.get(1) == 'M') {
+				order = ByteOrder.BIG_ENDIAN;
+			} else {
+				throw new IOException("File is not a TIFF file: " + path);
+			}
+			header.order(order);
+
+			int magic = header.getShort(2) & 0xffff;
+			boolean big;
+			long offset;
+			if (magic == 42) {
+				big = false;
+				offset = header.getInt(4) & 0xffffffffL;
+			} else if (magic == 43) {
+				big = true;
+				if (header.getShort(4) != 8) {
+					throw new IOException("BigTIFF file has unsupported offset size: " + path);
+				}
+				offset = header.getLong(8);
+			} else {
+				throw new IOException("File is not a TIFF file: " + path);
+			}
+
+			long size = channel.size();
+			List<Page> pages = new ArrayList<>();
+			Set<Long> visited = new HashSet<>();
+			while (offset != 0) {
+				if (offset < 0 || offset >= size || !visited.add(offset)) {
+					throw new IOException("Invalid image file directory offset " + offset + " in " + path);
+				}
+				Page p = new Page();
+				offset = readDirectory(channel, offset, big, order, p);
+				pages.add(p);
+			}
+			return new IndexedTIFFReader(path, order == ByteOrder.BIG_ENDIAN, pages.toArray(new Page[pages.size()]));
+		}
+	}
+
+	/**
+	 * @return offset of next directory
+	 */
+	private static long readDirectory(FileChannel channel, long offset, boolean big, ByteOrder order, Page p) throws IOException {
+		int countSize = big ? 8 : 2;
+		int entrySize = big ? 20 : 12;
+		ByteBuffer b = read(channel, offset, countSize, order);
+		long n = big ? b.getLong(0) : b.getShort(0) & 0xffff;
+		if (n <= 0 || n > MAX_ENTRIES) {
+			throw new IOException("Invalid number of directory entries: " + n);
+		}
+
+		b = read(channel, offset + countSize, (int) n * entrySize + (big ? 8 : 4), order);
+
+		int bits = 0;
+		int format = 1;
+		int compression = 1;
+		int photometric = -1;
+		int fillOrder = 1;
+		int samples = 1;
+		int predictor = 1;
+		long rowsPerStrip = Integer.MAX_VALUE;
+		int tileWidth = 0;
+		int tileLength = 0;
+		long[] stripOffsets = null;
+		long[] stripCounts = null;
+		long[] tileOffsets = null;
+		long[] tileCounts = null;
+
+		for (int i = 0; i < n; i++) {
+			int e = i * entrySize;
+			int tag = b.getShort(e) & 0xffff;
+			int type = b.getShort(e + 2) & 0xffff;
+			long count = big ? b.getLong(e + 4) : b.getInt(e + 4) & 0xffffffffL;
+			int v = e + (big ? 12 : 8);
+			switch (tag) {
+			case IMAGE_WIDTH:
+				p.width = (int) getValue(b, v, type);
+				break;
+			case IMAGE_LENGTH:
+				p.height = (int) getValue(b, v, type);
+				break;
+			case BITS_PER_SAMPLE:
+				bits = (int) getValue(b, v, type);
+				break;
+			case COMPRESSION:
+				compression = (int) getValue(b, v, type);
+				break;
+			case PHOTOMETRIC:
+				photometric = (int) getValue(b, v, type);
+				break;
+			case FILL_ORDER:
+				fillOrder = (int) getValue(b, v, type);
+				break;
+			case SAMPLES_PER_PIXEL:
+				samples = (int) getValue(b, v, type);
+				break;
+			case ROWS_PER_STRIP:
+				rowsPerStrip = getValue(b, v, type);
+				break;
+			case PREDICTOR:
+				predictor = (int) getValue(b, v, type);
+				break;
+			case TILE_WIDTH:
+				tileWidth = (int) getValue(b, v, type);
+				break;
+			case TILE_LENGTH:
+				tileLength = (int) getValue(b, v, type);
+				break;
+			case SAMPLE_FORMAT:
+				format = (int) getValue(b, v, type);
+				break;
+			case STRIP_OFFSETS:
+				stripOffsets = getValues(channel, b, v, type, count, big, order);
+				break;
+			case STRIP_BYTE_COUNTS:
+				stripCounts = getValues(channel, b, v, type, count, big, order);
+				break;
+			case TILE_OFFSETS:
+				tileOffsets = getValues(channel, b, v, type, count, big, order);
+				break;
+			case TILE_BYTE_COUNTS:
+				tileCounts = getValues(channel, b, v, type, count, big, order);
+				break;
+			default:
+				break;
+			}
+		}
+
+		long next = big ? b.getLong((int) n * entrySize) : b.getInt((int) n * entrySize) & 0xffffffffL;
+
+		if (compression != 1 || photometric != 1 || fillOrder != 1 || samples != 1 || predictor != 1
+				|| p.width <= 0 || p.height <= 0) {
+			return next;
+		}
+		Kind kind = Kind.get(bits, format);
+		if (kind == null) {
+			return next;
+		}
+
+		long[] counts;
+		int segments;
+		if (tileOffsets != null) {
+			if (tileWidth <= 0 || tileLength <= 0) {
+				return next;
+			}
+			p.tiled = true;
+			p.segmentWidth = tileWidth;
+			p.segmentHeight = tileLength;
+			p.offsets = tileOffsets;
+			counts = tileCounts;
+			segments = ((p.width + tileWidth - 1) / tileWidth) * ((p.height + tileLength - 1) / tileLength);
+		} else if (stripOffsets != null) {
+			p.segmentWidth = p.width;
+			p.segmentHeight = rowsPerStrip <= 0 ? p.height : (int) Math.min(rowsPerStrip, p.height);
+			p.offsets = stripOffsets;
+			counts = stripCounts;
+			segments = (p.height + p.segmentHeight - 1) / p.segmentHeight;
+		} else {
+			return next;
+		}
+
+		// check segments are all there and whole
+		if (p.offsets.length < segments || (counts != null && counts.length < segments)) {
+			return next;
+		}
+		long rowBytes = (long) p.segmentWidth * kind.bytes;
+		for (int s = 0; s < segments; s++) {
+			long rows = p.tiled ? p.segmentHeight : Math.min(p.segmentHeight, p.height - (long) s * p.segmentHeight);
+			if (counts != null && counts[s] < rows * rowBytes) {
+				return next;
+			}
+		}
+
+		p.kind = kind;
+		return next;
+	}
+
+	private static int typeSize(int type) {
+		switch (type) {
+		case 1: // BYTE
+			return 1;
+		case 3: // SHORT
+			return 2;
+		case 4: // LONG
+		case 13: // IFD
+			return 4;
+		case 16: // LONG8
+		case 18: // IFD8
+			return 8;
+		default:
+			return 0;
+		}
+	}
+
+	private static long getValue(ByteBuffer b, int position, int type) {
+		switch (typeSize(type)) {
+		case 1:
+			return b.get(position) & 0xff;
+		case 2:
+			return b.getShort(position) & 0xffff;
+		case 4:
+			return b.getInt(position) & 0xffffffffL;
+		case 8:
+			return b.getLong(position);
+		default:
+			return 0;
+		}
+	}
+
+	private static long[] getValues(FileChannel channel, ByteBuffer b, int position, int type, long count, boolean big, ByteOrder order) throws IOException {
+		int size = typeSize(type);
+		if (size == 0 || count <= 0 || count > Integer.MAX_VALUE / 8) {
+			return null;
+		}
+		int n = (int) count;
+		int bytes = n * size;
+		ByteBuffer src = b;
+		int start = position;
+		if (bytes > (big ? 8 : 4)) {
+			long offset = big ? b.getLong(position) : b.getInt(position) & 0xffffffffL;
+			src = read(channel, offset, bytes, order);
+			start = 0;
+		}
+		long[] values = new long[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = getValue(src, start + i * size, type);
+		}
+		return values;
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length, ByteOrder order) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(length).order(order);
+		while (b.hasRemaining()) {
+			if (channel.read(b, position + b.position()) < 0) {
+				throw new EOFException("End of file reached before reading " + length + " bytes at " + position);
+			}
+		}
+		return b;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public int getNumImages() {
+		return pages.length;
+	}
+
+	/**
+	 * @param num
+	 * @return height of image
+	 */
+	public int getHeight(int num) {
+		return pages[num].height;
+	}
+
+	/**
+	 * @param num
+	 * @return width of image
+	 */
+	public int getWidth(int num) {
+		return pages[num].width;
+	}
+
+	/**
+	 * @param clazz
+	 * @return true if all images have the same shape and sample type, and
+	 *         they can be read into given dataset type with the same values
+	 *         as the ImageIO readers give
+	 */
+	public boolean canRead(Class<? extends Dataset> clazz) {
+		return supported && pages[0].kind.canReadAs(clazz);
+	}
+
+	/**
+	 * Read a slice of the image stack
+	 * @param clazz dataset class (must be readable)
+	 * @param mon can be null
+	 * @param start image, row and column
+	 * @param count
+	 * @param step
+	 * @return dataset of given shape, with only the images read before being cancelled filled
+	 * @throws IOException
+	 */
+	public Dataset read(Class<? extends Dataset> clazz, IMonitor mon, int[] start, int[] count, int[] step) throws IOException {
+		if (!canRead(clazz)) {
+			throw new IllegalArgumentException("Images cannot be read as " + clazz.getSimpleName());
+		}
+		int frameSize = count[1] * count[2];
+		int size = count[0] * frameSize;
+		Object out;
+		if (clazz == ByteDataset.class) {
+			out = new byte[size];
+		} else if (clazz == ShortDataset.class) {
+			out = new short[size];
+		} else if (clazz == IntegerDataset.class) {
+			out = new int[size];
+		} else if (clazz == FloatDataset.class) {
+			out = new float[size];
+		} else {
+			out = new double[size];
+		}
+
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			for (int i = 0; i < count[0]; i++) {
+				int num = start[0] + i * step[0];
+				if (num < 0 || num >= pages.length) {
+					throw new IOException("Image number " + num + " exceeds images found in '" + path + "'");
+				}
+				readImage(channel, pages[num], start, count, step, out, i * frameSize);
+				if (mon != null) {
+					mon.worked(1);
+					if (mon.isCancelled()) {
+						break;
+					}
+				}
+			}
+		}
+
+		return DatasetFactory.createFromObject(out, count);
+	}
+
+	private void readImage(FileChannel channel, Page p, int[] start, int[] count, int[] step, Object out, int outOffset) throws IOException {
+		ByteOrder order = bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+		int bytes = p.kind.bytes;
+		int rowBytes = p.segmentWidth * bytes;
+		int ny = count[1];
+		int nx = count[2];
+		if (ny == 0 || nx == 0) {
+			return;
+		}
+		int y0 = start[1];
+		int x0 = start[2];
+		int sy = step[1];
+		int sx = step[2];
+		int yLast = y0 + (ny - 1) * sy;
+		int xLast = x0 + (nx - 1) * sx;
+
+		if (!p.tiled) {
+			// read rows of each strip that span the selected rows
+			int k = 0;
+			while (k < ny) {
+				int y = y0 + k * sy;
+				int strip = y / p.segmentHeight;
+				int stripEnd = Math.min((strip + 1) * p.segmentHeight, p.height);
+				int kEnd = k + 1;
+				while (kEnd < ny && y0 + kEnd * sy < stripEnd) {
+					kEnd++;
+				}
+				int yEnd = y0 + (kEnd - 1) * sy;
+				int first = y - strip * p.segmentHeight;
+				ByteBuffer b = read(channel, p.offsets[strip] + (long) first * rowBytes, (yEnd - y + 1) * rowBytes, order);
+				for (int j = k; j < kEnd; j++) {
+					int row = (y0 + j * sy) - y;
+					copy(b, p.kind, row * rowBytes + x0 * bytes, sx * bytes, nx, out, outOffset + j * nx);
+				}
+				k = kEnd;
+			}
+			return;
+		}
+
+		// read tiles that overlap selection
+		int tw = p.segmentWidth;
+		int th = p.segmentHeight;
+		int tilesAcross = (p.width + tw - 1) / tw;
+		for (int ty = y0 / th; ty <= yLast / th; ty++) {
+			int tyStart = ty * th;
+			for (int tx = x0 / tw; tx <= xLast / tw; tx++) {
+				int txStart = tx * tw;
+				// first selected column in this tile
+				int j0 = Math.max(0, (txStart - x0 + sx - 1) / sx);
+				if (x0 + j0 * sx >= txStart + tw || j0 >= nx) {
+					continue;
+				}
+				int k0 = Math.max(0, (tyStart - y0 + sy - 1) / sy);
+				if (y0 + k0 * sy >= tyStart + th || k0 >= ny) {
+					continue;
+				}
+				int j1 = Math.min(nx, (txStart + tw - x0 + sx - 1) / sx);
+				ByteBuffer b = read(channel, p.offsets[ty * tilesAcross + tx], th * rowBytes, order);
+				for (int k = k0; k < ny; k++) {
+					int row = y0 + k * sy - tyStart;
+					if (row >= th) {
+						break;
+					}
+					int col = x0 + j0 * sx - txStart;
+					copy(b, p.kind, row * rowBytes + col * bytes, sx * bytes, j1 - j0, out, outOffset + k * nx + j0);
+				}
+			}
+		}
+	}
+
+	private static void copy(ByteBuffer b, Kind kind, int position, int stride, int n, Object out, int offset) {
+		if (out instanceof byte[]) {
+			byte[] o = (byte[]) out;
+			for (int i = 0; i < n; i++) {
+				o[offset + i] = (byte) getInt(b, kind, position + i * stride);
+			}
+		} else if (out instanceof short[]) {
+			short[] o = (short[]) out;
+			for (int i = 0; i < n; i++) {
+				o[offset + i] = (short) getInt(b, kind, position + i * stride);
+			}
+		} else if (out instanceof int[]) {
+			int[] o = (int[]) out;
+			for (int i = 0; i < n; i++) {
+				o[offset + i] = getInt(b, kind, position + i * stride);
+			}
+		} else if (out instanceof float[]) {
+			float[] o = (float[]) out;
+			for (int i = 0; i < n; i++) {
+				o[offset + i] = b.getFloat(position + i * stride);
+			}
+		} else {
+			double[] o = (double[]) out;
+			for (int i = 0; i < n; i++) {
+				o[offset + i] = b.getDouble(position + i * stride);
+			}
+		}
+	}
+
+	private static int getInt(ByteBuffer b, Kind kind, int position) {
+		switch (kind) {
+		case U8:
+			return b.get(position) & 0xff;
+		case U16:
+			return b.getShort(position) & 0xffff;
+		case S16:
+			return b.getShort(position);
+		default:
+			return b.getInt(position);
+		}
+	}
+}
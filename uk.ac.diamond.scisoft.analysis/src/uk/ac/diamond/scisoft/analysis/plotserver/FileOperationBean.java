@@ -15,6 +15,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.january.dataset.IDataset;
 
@@ -210,10 +211,11 @@ public class FileOperationBean implements Serializable {
 	public DataBean loadImage(boolean downsample, boolean loadMetadata) {
 
 		DataBean db = new DataBean(GuiPlotMode.TWOD);
+		Map<String, IDataset> thumbnails = downsample ? ImageThumbnailLoader.loadThumbnails(files, null) : null;
 		Iterator<String> iter = files.iterator();
 		while (iter.hasNext()) {
 			String filename = iter.next();
-			IDataset ds = ImageThumbnailLoader.loadImage(filename,downsample, loadMetadata);
+			IDataset ds = downsample ? thumbnails.get(filename) : ImageThumbnailLoader.loadImage(filename, false, loadMetadata);
 			DatasetWithAxisInformation dsAxisInf = new DatasetWithAxisInformation();
 			AxisMapBean amb = new AxisMapBean();
 			dsAxisInf.setData(ds);
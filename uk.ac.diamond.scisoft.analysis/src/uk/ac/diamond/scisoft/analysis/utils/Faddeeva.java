@@ -211,9 +211,9 @@ public class Faddeeva {
 		return new cmplx(b * a.r, b * a.i);
 	}
 
-	private static final cmplx cadd(cmplx a, cmplx b) {
-		return new cmplx(a.r + b.r, a.i + b.i);
-	}
+//	private static final cmplx cadd(cmplx a, cmplx b) {
+//		return new cmplx(a.r + b.r, a.i + b.i);
+//	}
 
 	private static final cmplx cadd(double a, cmplx b) {
 		return new cmplx(a + b.r, b.i);
@@ -706,11 +706,58 @@ public class Faddeeva {
 		return C(w_i(C(z.getReal(), z.getImaginary()), relerr));
 	}
 
+	/**
+	 * Compute the Faddeeva or scaled complementary error function without allocating
+	 * @param x real part of z
+	 * @param y imaginary part of z
+	 * @param relerr
+	 * @param out array to hold real and imaginary parts of w(z)
+	 * @param offset position of real part in output array
+	 */
+	public static void w(double x, double y, double relerr, double[] out, int offset) {
+		w_p(x, y, relerr, out, offset, out, offset + 1);
+	}
+
+	/**
+	 * Compute the Faddeeva or scaled complementary error function over many
+	 * points of the same imaginary part
+	 * @param x real parts of z
+	 * @param y imaginary part of z
+	 * @param relerr
+	 * @param re array to hold real parts of w(z), can be same as x
+	 * @param im array to hold imaginary parts of w(z), can be null
+	 */
+	public static void w(double[] x, double y, double relerr, double[] re, double[] im) {
+		final int n = x.length;
+		for (int i = 0; i < n; i++) {
+			w_p(x[i], y, relerr, re, i, im, i);
+		}
+	}
+
 	private static cmplx w_i(cmplx z, double relerr) {
-		if (creal(z) == 0.0)
-			return C(erfcx(cimag(z)), creal(z)); // give correct sign of 0 in cimag(w)
-		else if (cimag(z) == 0)
-			return C(exp(-sqr(creal(z))), wImaginary(creal(z)));
+		double[] out = new double[2];
+		w_p(z.r, z.i, relerr, out, 0, out, 1);
+		return C(out[0], out[1]);
+	}
+
+	private static void set(double r, double i, double[] re, int ri, double[] im, int ii) {
+		re[ri] = r;
+		if (im != null) {
+			im[ii] = i;
+		}
+	}
+
+	/**
+	 * Primitive version of w(z) where real and imaginary parts are placed in given arrays
+	 */
+	private static void w_p(double zr, double zi, double relerr, double[] re, int ri, double[] im, int ii) {
+		if (zr == 0.0) {
+			set(erfcx(zi), zr, re, ri, im, ii); // give correct sign of 0 in cimag(w)
+			return;
+		} else if (zi == 0) {
+			set(exp(-sqr(zr)), im == null ? 0 : wImaginary(zr), re, ri, im, ii);
+			return;
+		}
 
 		double a, a2, c;
 		if (relerr <= DBL_EPSILON) {
@@ -726,10 +773,10 @@ public class Faddeeva {
 			c = (2 / Math.PI) * a;
 			a2 = a * a;
 		}
-		double x = fabs(creal(z));
-		double y = cimag(z), ya = fabs(y);
+		double x = fabs(zr);
+		double y = zi, ya = fabs(y);
 
-		cmplx ret = ZERO; // return value
+		double retr = 0, reti = 0; // return value
 
 		double sum1 = 0, sum2 = 0, sum3 = 0, sum4 = 0, sum5 = 0;
 
@@ -754,25 +801,33 @@ public class Faddeeva {
 			that the estimated nu be >= minimum nu to attain machine precision.
 			I also separate the regions where nu == 2 and nu == 1. */
 			final double ispi = ONE_OVER_SQRT_PI; // 1 / sqrt(pi)
-			double xs = y < 0 ? -creal(z) : creal(z); // compute for -z if y < 0
+			double xs = y < 0 ? -zr : zr; // compute for -z if y < 0
 			if (x + ya > 4000) { // nu <= 2
 				if (x + ya > 1e7) { // nu == 1, w(z) = i/sqrt(pi) / z
 					// scale to avoid overflow
 					if (x > ya) {
 						double yax = ya / xs;
 						double denom = ispi / (xs + yax * ya);
-						ret = C(denom * yax, denom);
-					} else if (isinf(ya))
-						return ((isnan(x) || y < 0) ? C(NaN, NaN) : C(0, 0));
-					else {
+						retr = denom * yax;
+						reti = denom;
+					} else if (isinf(ya)) {
+						if (isnan(x) || y < 0) {
+							set(NaN, NaN, re, ri, im, ii);
+						} else {
+							set(0, 0, re, ri, im, ii);
+						}
+						return;
+					} else {
 						double xya = xs / ya;
 						double denom = ispi / (xya * xs + ya);
-						ret = C(denom, denom * xya);
+						retr = denom;
+						reti = denom * xya;
 					}
 				} else { // nu == 2, w(z) = i/sqrt(pi) * z / (z*z - 0.5)
 					double dr = xs * xs - ya * ya - 0.5, di = 2 * xs * ya;
 					double denom = ispi / (dr * dr + di * di);
-					ret = C(denom * (xs * di - ya * dr), denom * (xs * dr + ya * di));
+					retr = denom * (xs * di - ya * dr);
+					reti = denom * (xs * dr + ya * di);
 				}
 			} else { // compute nu(z) estimate and do general continued fraction
 				double c0 = 3.9, c1 = 11.398, c2 = 0.08254, c3 = 0.1421, c4 = 0.2023; // fit
@@ -786,18 +841,26 @@ public class Faddeeva {
 				}
 				{ // w(z) = i/sqrt(pi) / w:
 					double denom = ispi / (wr * wr + wi * wi);
-					ret = C(denom * wi, denom * wr);
+					retr = denom * wi;
+					reti = denom * wr;
 				}
 			}
 			if (y < 0) {
 				// use w(z) = 2.0*exp(-z*z) - w(-z),
 				// but be careful of overflow in exp(-z*z)
 				// = exp(-(xs*xs-ya*ya) -2*i*xs*ya)
-				System.err.println((ya - xs) + " * " + (xs + ya) + " = " + (ya - xs) * (xs + ya));
-				return csub(cmul(2.0, cexp(C((ya - xs) * (xs + ya), 2 * xs * y))), ret);
+				double er = exp((ya - xs) * (xs + ya));
+				double ei = 0;
+				if (er != 0) {
+					double t = 2 * xs * y;
+					ei = er * sin(t);
+					er *= cos(t);
+				}
+				retr = 2 * er - retr;
+				reti = 2 * ei - reti;
 			}
-			// else
-			return ret;
+			set(retr, reti, re, ri, im, ii);
+			return;
 		}
 		// #else // !USE_CONTINUED_FRACTION
 		// #endif // !USE_CONTINUED_FRACTION
@@ -818,8 +881,10 @@ public class Faddeeva {
 			double prod2ax = 1, prodm2ax = 1;
 			double expx2;
 
-			if (isnan(y))
-				return C(y, y);
+			if (isnan(y)) {
+				set(y, y, re, ri, im, ii);
+				return;
+			}
 
 			/*- Somewhat ugly copy-and-paste duplication here, but I see significant
 			speedups from using the special-case code with the precomputed
@@ -906,24 +971,28 @@ public class Faddeeva {
 					? expx2 * erfcx(y) : 2 * exp(y * y - x * x);
 			if (y > 5) { // imaginary terms cancel
 				double sinxy = sin(x * y);
-				ret = C((expx2erfcxy - c * y * sum1) * cos(2 * x * y) + (c * x * expx2) * sinxy * sinc(x * y, sinxy));
+				retr = (expx2erfcxy - c * y * sum1) * cos(2 * x * y) + (c * x * expx2) * sinxy * sinc(x * y, sinxy);
 			} else {
-				double xs = creal(z);
+				double xs = zr;
 				double sinxy = sin(xs * y);
 				double sin2xy = sin(2 * xs * y), cos2xy = cos(2 * xs * y);
 				double coef1 = expx2erfcxy - c * y * sum1;
 				double coef2 = c * xs * expx2;
-				ret = C(coef1 * cos2xy + coef2 * sinxy * sinc(xs * y, sinxy),
-						coef2 * sinc(2 * xs * y, sin2xy) - coef1 * sin2xy);
+				retr = coef1 * cos2xy + coef2 * sinxy * sinc(xs * y, sinxy);
+				reti = coef2 * sinc(2 * xs * y, sin2xy) - coef1 * sin2xy;
 			}
 		} else { // x large: only sum3 & sum5 contribute (see above note)
-			if (isnan(x))
-				return C(x, x);
-			if (isnan(y))
-				return C(y, y);
+			if (isnan(x)) {
+				set(x, x, re, ri, im, ii);
+				return;
+			}
+			if (isnan(y)) {
+				set(y, y, re, ri, im, ii);
+				return;
+			}
 
 			// #if USE_CONTINUED_FRACTION
-			ret = C(exp(-x * x)); // |y| < 1e-10, so we only need exp(-x*x) term
+			retr = exp(-x * x); // |y| < 1e-10, so we only need exp(-x*x) term
 			// #else
 			// #endif
 			// (round instead of ceil as in original paper; note that x/a > 1 here)
@@ -957,7 +1026,7 @@ public class Faddeeva {
 			}
 		}
 		// finish:
-		return cadd(ret, C((0.5 * c) * y * (sum2 + sum3), (0.5 * c) * copysign(sum5 - sum4, creal(z))));
+		set(retr + (0.5 * c) * y * (sum2 + sum3), reti + (0.5 * c) * copysign(sum5 - sum4, zr), re, ri, im, ii);
 	}
 
 	/**-
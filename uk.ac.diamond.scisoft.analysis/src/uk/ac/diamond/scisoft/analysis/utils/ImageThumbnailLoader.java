@@ -10,6 +10,20 @@
 package uk.ac.diamond.scisoft.analysis.utils;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.dawnsci.analysis.api.downsample.DownsampleMode;
 import org.eclipse.dawnsci.analysis.api.io.IDataHolder;
@@ -19,12 +33,17 @@ import org.eclipse.january.IMonitor;
 import org.eclipse.january.dataset.BooleanDataset;
 import org.eclipse.january.dataset.Dataset;
 import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DatasetUtils;
 import org.eclipse.january.dataset.IDataset;
+import org.eclipse.january.dataset.ILazyDataset;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.ac.diamond.scisoft.analysis.io.AbstractFileLoader;
+import uk.ac.diamond.scisoft.analysis.io.DataHolder;
 import uk.ac.diamond.scisoft.analysis.io.LoaderFactory;
+import uk.ac.diamond.scisoft.analysis.io.NumPyFileLoader;
+import uk.ac.diamond.scisoft.analysis.io.NumPyFileSaver;
 import uk.ac.diamond.scisoft.analysis.io.RawBinaryLoader;
 import uk.ac.diamond.scisoft.analysis.plotserver.DatasetWithAxisInformation;
 
@@ -33,6 +52,41 @@ import uk.ac.diamond.scisoft.analysis.plotserver.DatasetWithAxisInformation;
  */
 public class ImageThumbnailLoader {
 	private static final Logger logger = LoggerFactory.getLogger(ImageThumbnailLoader.class);
+
+	/**
+	 * System property to set directory of thumbnail cache (default is .dawn/thumbnails in user's
+	 * home directory and an empty value disables the cache)
+	 */
+	public static final String THUMBNAIL_CACHE = "uk.ac.diamond.scisoft.analysis.thumbnail.cache";
+
+	/**
+	 * System property to set maximum size of thumbnail cache in megabytes (default is 100)
+	 */
+	public static final String THUMBNAIL_CACHE_SIZE = "uk.ac.diamond.scisoft.analysis.thumbnail.cache.size";
+
+	/**
+	 * System property to set number of days after which unused thumbnails are removed (default is 30)
+	 */
+	public static final String THUMBNAIL_CACHE_AGE = "uk.ac.diamond.scisoft.analysis.thumbnail.cache.age";
+
+	private static final String CACHE_SUFFIX = ".npy";
+	private static final String TEMP_PREFIX = "thumbnail";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static volatile File cacheDir = createCacheDirectory();
+	private static volatile long cacheLimit = Long.getLong(THUMBNAIL_CACHE_SIZE, 100) * 1024 * 1024;
+	private static volatile long cacheAge = TimeUnit.DAYS.toMillis(Long.getLong(THUMBNAIL_CACHE_AGE, 30));
+
+	// bytes written since cache was last pruned, negative until first pruned
+	private static final AtomicLong written = new AtomicLong(-1);
+
+	private static File createCacheDirectory() {
+		String dir = System.getProperty(THUMBNAIL_CACHE);
+		if (dir == null) {
+			return new File(new File(new File(System.getProperty("user.home")), ".dawn"), "thumbnails");
+		}
+		return dir.isEmpty() ? null : new File(dir);
+	}
 	
 	
 	/**
@@ -147,9 +201,7 @@ public class ImageThumbnailLoader {
 			IDataset ds = scan.getDataset(0);
 			return getSingleFromDataset(path, createThumbnail, ds);
 		}
-		Dataset ds_null = DatasetFactory.zeros(BooleanDataset.class, DOWNSAMPLE_SIZE_IN_PIXELS, DOWNSAMPLE_SIZE_IN_PIXELS);
-		ds_null.setName("Invalid Image");
-		return ds_null;
+		return createInvalidImage(DOWNSAMPLE_SIZE_IN_PIXELS);
 	}
 
 	/**
@@ -194,8 +246,308 @@ public class ImageThumbnailLoader {
 				return ds;
 			}
 		}
-		Dataset ds_null = DatasetFactory.zeros(BooleanDataset.class, DOWNSAMPLE_SIZE_IN_PIXELS, DOWNSAMPLE_SIZE_IN_PIXELS);
+		return createInvalidImage(DOWNSAMPLE_SIZE_IN_PIXELS);
+	}
+
+	private static Dataset createInvalidImage(int size) {
+		Dataset ds_null = DatasetFactory.zeros(BooleanDataset.class, size, size);
 		ds_null.setName("Invalid Image");
 		return ds_null;
 	}
+
+	/**
+	 * @return directory of thumbnail cache or null if there is no cache
+	 */
+	public static File getCacheDirectory() {
+		return cacheDir;
+	}
+
+	/**
+	 * @param dir directory of thumbnail cache (can be null to disable cache)
+	 */
+	public static void setCacheDirectory(File dir) {
+		cacheDir = dir;
+		written.set(-1);
+	}
+
+	/**
+	 * @return maximum total size in bytes of thumbnail cache
+	 */
+	public static long getCacheSizeLimit() {
+		return cacheLimit;
+	}
+
+	/**
+	 * @return time in milliseconds after which unused thumbnails are removed from cache
+	 */
+	public static long getCacheAgeLimit() {
+		return cacheAge;
+	}
+
+	/**
+	 * Set limits of thumbnail cache. The cache is pruned when first written to and
+	 * then whenever a tenth of its maximum size has been written
+	 * @param bytes maximum total size of thumbnails
+	 * @param age time in milliseconds after which thumbnails that have not been used are removed
+	 */
+	public static void setCacheLimits(long bytes, long age) {
+		cacheLimit = bytes;
+		cacheAge = age;
+		written.set(-1);
+	}
+
+	/**
+	 * Remove thumbnails that have not been used within the maximum age, then the least recently
+	 * used ones until the cache is within its maximum size
+	 */
+	public static void pruneCache() {
+		File dir = cacheDir;
+		File[] files = dir == null ? null : dir.listFiles((d, n) -> n.endsWith(CACHE_SUFFIX)
+				|| (n.startsWith(TEMP_PREFIX) && n.endsWith(TEMP_SUFFIX)));
+		if (files == null) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		long[] modified = new long[files.length];
+		for (int i = 0; i < files.length; i++) {
+			modified[i] = files[i].lastModified();
+		}
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.comparingLong(i -> -modified[i])); // newest first
+
+		long total = 0;
+		int removed = 0;
+		for (int i : order) {
+			File f = files[i];
+			long length = f.length();
+			boolean temporary = !f.getName().endsWith(CACHE_SUFFIX);
+			// temporary files are only left by interrupted writes
+			long age = temporary ? TimeUnit.HOURS.toMillis(1) : cacheAge;
+			if (now - modified[i] > age || total + length > cacheLimit) {
+				if (f.delete()) {
+					removed++;
+				}
+			} else {
+				total += length;
+			}
+		}
+		if (removed > 0) {
+			logger.debug("Removed {} thumbnails from cache {}", removed, dir);
+		}
+	}
+
+	private static void recordWrite(long bytes) {
+		long w = written.get();
+		if (w < 0 || w + bytes > cacheLimit / 10) {
+			if (written.compareAndSet(w, 0)) {
+				pruneCache();
+			}
+		} else {
+			written.addAndGet(bytes);
+		}
+	}
+
+	/**
+	 * Delete all thumbnails in cache
+	 */
+	public static void clearCache() {
+		File dir = cacheDir;
+		File[] files = dir == null ? null : dir.listFiles((d, n) -> n.endsWith(CACHE_SUFFIX));
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+	}
+
+	/**
+	 * Load thumbnail of default size
+	 * @param filename
+	 * @return thumbnail
+	 * @see #loadThumbnail(String, int)
+	 */
+	public static IDataset loadThumbnail(String filename) {
+		return loadThumbnail(filename, DOWNSAMPLE_SIZE_IN_PIXELS);
+	}
+
+	/**
+	 * Load thumbnail of image in file. Thumbnails are kept in an on-disk cache keyed by
+	 * path, size and modification time of file, which is limited in size and age (see
+	 * {@link #setCacheLimits(long, long)}). When not in the cache, the image is loaded
+	 * lazily and sliced with the smallest step that fits it within the given size so
+	 * that, where the loader supports it, only every step-th pixel is read
+	 * @param filename
+	 * @param size maximum number of pixels in each dimension of thumbnail
+	 * @return thumbnail or an invalid image if the file does not hold a 2D image
+	 */
+	public static IDataset loadThumbnail(String filename, int size) {
+		File file = new File(filename);
+		File cached = getCachedFile(file, size);
+		if (cached != null && cached.isFile()) {
+			try {
+				Dataset t = NumPyFileLoader.loadFileHelper(cached.getAbsolutePath());
+				t.setName(filename);
+				cached.setLastModified(System.currentTimeMillis()); // mark as recently used
+				return t;
+			} catch (Exception e) {
+				logger.debug("Could not read cached thumbnail for {}", filename, e);
+				cached.delete();
+			}
+		}
+
+		Dataset t = readThumbnail(filename, size);
+		if (t == null) {
+			return createInvalidImage(size);
+		}
+		t.setName(filename);
+		if (cached != null) {
+			writeThumbnail(cached, t);
+		}
+		return t;
+	}
+
+	/**
+	 * Load thumbnails of default size in parallel
+	 * @param files
+	 * @param monitor (can be null)
+	 * @return map of file names to thumbnails in given order
+	 * @see #loadThumbnails(List, int, IMonitor)
+	 */
+	public static Map<String, IDataset> loadThumbnails(List<String> files, IMonitor monitor) {
+		return loadThumbnails(files, DOWNSAMPLE_SIZE_IN_PIXELS, monitor);
+	}
+
+	/**
+	 * Load thumbnails of images in files in parallel
+	 * @param files
+	 * @param size maximum number of pixels in each dimension of thumbnails
+	 * @param monitor (can be null)
+	 * @return map of file names to thumbnails in given order, which omits those not loaded
+	 * if cancelled
+	 * @see #loadThumbnail(String, int)
+	 */
+	public static Map<String, IDataset> loadThumbnails(List<String> files, final int size, final IMonitor monitor) {
+		Map<String, IDataset> thumbnails = new LinkedHashMap<>();
+		if (files.isEmpty()) {
+			return thumbnails;
+		}
+		int threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "Thumbnail loader");
+			t.setDaemon(true);
+			return t;
+		});
+
+		try {
+			List<Future<IDataset>> futures = new ArrayList<>(files.size());
+			for (final String f : files) {
+				futures.add(executor.submit(() -> {
+					if (monitor != null && monitor.isCancelled()) {
+						return null;
+					}
+					IDataset t = loadThumbnail(f, size);
+					if (monitor != null) {
+						synchronized (monitor) {
+							monitor.worked(1);
+						}
+					}
+					return t;
+				}));
+			}
+
+			for (int i = 0; i < files.size(); i++) {
+				IDataset t;
+				try {
+					t = futures.get(i).get();
+				} catch (ExecutionException e) {
+					logger.error("Could not load thumbnail for {}", files.get(i), e.getCause());
+					t = createInvalidImage(size);
+				}
+				if (t != null) {
+					thumbnails.put(files.get(i), t);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+		return thumbnails;
+	}
+
+	private static Dataset readThumbnail(String filename, int size) {
+		try {
+			if (filename.toLowerCase().endsWith(".raw")) {
+				IDataset ds = loadImage(filename, false, false);
+				if (ds.getRank() != 2 || ds instanceof BooleanDataset) {
+					return null;
+				}
+				return subsample(ds, size);
+			}
+
+			// lazily so that only header is read while loader factory is locked
+			ILazyDataset lazy = LoaderFactory.getData(filename, false, false, true, null).getLazyDataset(0);
+			if (lazy == null || lazy.getRank() != 2) {
+				return null;
+			}
+			return subsample(lazy, size);
+		} catch (Exception e) {
+			logger.debug("Cannot load thumbnail of {}", filename, e);
+		}
+		return null;
+	}
+
+	private static Dataset subsample(ILazyDataset image, int size) throws Exception {
+		int[] shape = image.getShape();
+		int step = Math.max(1, (Math.max(shape[0], shape[1]) + size - 1) / size);
+		return DatasetUtils.convertToDataset(image.getSlice(null, null, new int[] {step, step}));
+	}
+
+	private static File getCachedFile(File file, int size) {
+		File dir = cacheDir;
+		if (dir == null || !file.isFile()) {
+			return null;
+		}
+		try {
+			String key = file.getAbsolutePath() + '|' + size + '|' + file.lastModified() + '|' + file.length();
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder();
+			for (byte b : digest) {
+				name.append(String.format("%02x", b));
+			}
+			return new File(dir, name.append(CACHE_SUFFIX).toString());
+		} catch (Exception e) {
+			logger.debug("Could not create thumbnail cache key", e);
+		}
+		return null;
+	}
+
+	private static void writeThumbnail(File cached, Dataset thumbnail) {
+		File dir = cached.getParentFile();
+		File tmp = null;
+		try {
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				return;
+			}
+			// write then rename so other threads and processes never read a partial file
+			tmp = File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX, dir);
+			DataHolder holder = new DataHolder();
+			holder.addDataset(thumbnail.getName(), thumbnail);
+			new NumPyFileSaver(tmp.getAbsolutePath()).saveFile(holder);
+			if (tmp.renameTo(cached)) {
+				tmp = null;
+				recordWrite(cached.length());
+			}
+		} catch (Exception e) {
+			logger.debug("Could not cache thumbnail in {}", cached, e);
+		} finally {
+			if (tmp != null) {
+				tmp.delete();
+			}
+		}
+	}
 }
@@ -0,0 +1,85 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.python;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.python.core.PyObject;
+import org.python.util.PythonInterpreter;
+
+import uk.ac.diamond.scisoft.python.JythonInterpreterPool.Lease;
+
+public class JythonInterpreterPoolTest {
+
+	private static void waitForIdle(JythonInterpreterPool pool, int n) throws InterruptedException {
+		long end = System.currentTimeMillis() + 30000;
+		while (pool.getIdleCount() < n && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		assertEquals(n, pool.getIdleCount());
+	}
+
+	@Test
+	public void testCheckoutAndReset() throws Exception {
+		final AtomicInteger created = new AtomicInteger();
+		final CountDownLatch replenish = new CountDownLatch(1);
+		JythonInterpreterPool pool = new JythonInterpreterPool(() -> {
+			if (created.incrementAndGet() > 1) {
+				replenish.await(); // hold back replacements so released interpreter is reused
+			}
+			PythonInterpreter i = new PythonInterpreter();
+			i.exec("import sys");
+			i.exec("base = 1");
+			return i;
+		}, 1).start();
+
+		try {
+			waitForIdle(pool, 1);
+			assertEquals(1, created.get());
+
+			PythonInterpreter first;
+			try (Lease l = pool.checkout()) {
+				first = l.getInterpreter();
+				first.exec("base = 2");
+				first.exec("user = 3");
+				first.exec("sys.path.append('/nowhere')");
+			}
+			assertEquals(0, pool.getMissCount());
+			assertEquals(1, pool.getIdleCount());
+
+			try (Lease l = pool.checkout()) {
+				PythonInterpreter i = l.getInterpreter();
+				assertSame(first, i);
+				assertEquals(1, i.get("base").asInt());
+				assertNull(i.get("user"));
+				PyObject path = i.eval("'/nowhere' in sys.path");
+				assertTrue(!path.__nonzero__());
+			}
+			replenish.countDown();
+			waitForIdle(pool, 1);
+
+			PythonInterpreter kept = pool.checkout().detach();
+			PythonInterpreter other = pool.checkout().detach();
+			assertTrue(kept != other);
+			assertEquals(4, pool.getCheckoutCount());
+			assertTrue(pool.getMaximumCheckoutTime() >= pool.getMeanCheckoutTime());
+		} finally {
+			replenish.countDown();
+			pool.close();
+		}
+	}
+}
@@ -20,6 +20,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Collections;
+import java.util.Map;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.python.core.PyFloat;
@@ -109,6 +112,14 @@ public class JythonInterpreterUtilsPluginTest {
 
 	}
 	
+	@Test
+	public void scriptShouldRunWithInputsAndOutputs() throws Exception {
+		Map<String, Object> results = JythonInterpreterUtils.runScript("s = str(dnp.zeros((x, 5)).shape)\ny = x * 2",
+				Collections.singletonMap("x", 4), "s", "y");
+		assertEquals("(4, 5)", results.get("s"));
+		assertEquals(8, results.get("y"));
+	}
+
 	@Test
 	public void interpreterShouldLoadDLSLibs() {
 		try{
@@ -0,0 +1,180 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.python;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.january.dataset.Dataset;
+import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DoubleDataset;
+import org.eclipse.january.dataset.IntegerDataset;
+import org.eclipse.january.dataset.LongDataset;
+import org.eclipse.january.dataset.ShortDataset;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uk.ac.diamond.scisoft.python.PythonChannel.PythonException;
+import uk.ac.diamond.scisoft.python.PythonChannel.Result;
+
+public class PythonChannelTest {
+
+	@BeforeClass
+	public static void checkPython() {
+		boolean available;
+		try {
+			Process p = new ProcessBuilder("python", "-c", "import numpy").redirectErrorStream(true).start();
+			available = p.waitFor(30, TimeUnit.SECONDS) && p.exitValue() == 0;
+			if (!available) {
+				p.destroyForcibly();
+			}
+		} catch (Exception e) {
+			available = false;
+		}
+		Assume.assumeTrue("Python with NumPy is needed", available);
+	}
+
+	@Test
+	public void testPipelined() throws Exception {
+		try (PythonChannel c = new PythonChannel()) {
+			List<CompletableFuture<Result>> futures = new ArrayList<>();
+			futures.add(c.submit("x = 1", null));
+			for (int i = 0; i < 10; i++) {
+				futures.add(c.submit("x += 1; print(x)", null));
+			}
+			CompletableFuture<Result> bad = c.submit("raise ValueError('bad')", null);
+			CompletableFuture<Result> after = c.submit("print(x)", null);
+
+			for (int i = 1; i < futures.size(); i++) {
+				assertEquals((i + 1) + "\n", futures.get(i).get().getOutput());
+			}
+			try {
+				bad.get();
+				fail("Exception should have been raised");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof PythonException);
+				assertTrue(e.getCause().getMessage().contains("ValueError: bad"));
+			}
+			assertEquals("11\n", after.get().getOutput());
+		}
+	}
+
+	@Test
+	public void testArrays() throws Exception {
+		// second channel passes all arrays via files
+		for (long threshold : new long[] {-1, 0}) {
+			try (PythonChannel c = new PythonChannel(null, null, threshold)) {
+				Dataset a = DatasetFactory.createRange(DoubleDataset.class, 12).reshape(3, 4);
+				Result r = c.execute("import numpy as np\nb = (a * 2).astype(np.int32)\nc = a[:, 1]",
+						Collections.singletonMap("a", a.getSliceView(null, null, new int[] {1, 1})), "b", "c");
+
+				Dataset b = r.getData("b");
+				assertTrue(b instanceof IntegerDataset);
+				assertArrayEquals(new int[] {3, 4}, b.getShape());
+				assertEquals(22, b.getInt(2, 3));
+				assertArrayEquals(new double[] {1, 5, 9}, (double[]) r.getData("c").getBuffer(), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testUnsigned() throws Exception {
+		try (PythonChannel c = new PythonChannel()) {
+			Result r = c.execute("import numpy as np\n" +
+					"u1 = np.array([0, 255], dtype=np.uint8)\n" +
+					"u2 = np.array([1, 65535], dtype=np.uint16)\n" +
+					"u4 = np.array([2, 4294967295], dtype=np.uint32)", null, "u1", "u2", "u4");
+
+			assertTrue(r.getData("u1") instanceof ShortDataset);
+			assertEquals(255, r.getData("u1").getInt(1));
+			assertTrue(r.getData("u2") instanceof IntegerDataset);
+			assertEquals(65535, r.getData("u2").getInt(1));
+			assertTrue(r.getData("u4") instanceof LongDataset);
+			assertEquals(4294967295L, r.getData("u4").getLong(1));
+		}
+	}
+
+	private static int countSharedFiles() {
+		File shm = new File("/dev/shm");
+		File dir = shm.isDirectory() && shm.canWrite() ? shm : new File(System.getProperty("java.io.tmpdir"));
+		String[] names = dir.list((d, n) -> n.startsWith("pychannel"));
+		return names == null ? 0 : names.length;
+	}
+
+	@Test
+	public void testSharedFilesRemovedOnError() throws Exception {
+		try (PythonChannel c = new PythonChannel(null, null, 0)) {
+			c.execute("import numpy as np", null);
+			int before = countSharedFiles();
+
+			// second output is missing after first is written
+			try {
+				c.execute("a = np.ones(10)", null, "a", "missing");
+				fail("Exception should have been raised");
+			} catch (PythonException e) {
+				assertTrue(e.getMessage().contains("KeyError"));
+			}
+			assertEquals(before, countSharedFiles());
+
+			// complex output cannot be read after first is written
+			try {
+				c.execute("a = np.ones(10)\nz = np.ones(3, dtype=np.complex128)\nb = np.ones(4)", null, "a", "z", "b");
+				fail("Exception should have been raised");
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().contains("unsupported type"));
+			}
+			assertEquals(before, countSharedFiles());
+		}
+	}
+
+	@Test
+	public void testCloseStuck() throws Exception {
+		PythonChannel c = new PythonChannel();
+		CompletableFuture<Result> stuck = c.submit("import time\ntime.sleep(60)", null);
+		c.setCloseTimeout(200);
+		long start = System.currentTimeMillis();
+		c.close();
+		assertTrue(System.currentTimeMillis() - start < 10000);
+		try {
+			stuck.get(10, TimeUnit.SECONDS);
+			fail("Exception should have been raised");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertFalse(c.isAlive());
+	}
+
+	@Test
+	public void testPool() throws Exception {
+		try (PythonChannelPool pool = new PythonChannelPool(3)) {
+			pool.broadcast("import numpy as np");
+			List<CompletableFuture<Result>> futures = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				Dataset frame = DatasetFactory.zeros(DoubleDataset.class, 16, 16).fill(i);
+				futures.add(pool.submit("s = np.array([frame.sum()])", Collections.singletonMap("frame", frame), "s"));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				assertEquals(256. * i, futures.get(i).get().getData("s").getDouble(0), 0);
+			}
+		}
+	}
+}
@@ -41,6 +41,8 @@ public class Activator extends AbstractUIPlugin {
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		plugin = this;
+		// pre-warm interpreters when a pool size is configured
+		JythonInterpreterUtils.getPool();
 	}
 
 	/**
@@ -50,6 +52,7 @@ public class Activator extends AbstractUIPlugin {
 	 */
 	@Override
 	public void stop(BundleContext context) throws Exception {
+		JythonInterpreterUtils.closePool();
 		plugin = null;
 		super.stop(context);
 	}
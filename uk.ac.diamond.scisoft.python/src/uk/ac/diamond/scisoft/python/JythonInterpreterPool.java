@@ -0,0 +1,297 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.python;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.python.core.PyList;
+import org.python.core.PyObject;
+import org.python.core.PyStringMap;
+import org.python.core.PySystemState;
+import org.python.util.PythonInterpreter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of pre-warmed Jython interpreters.
+ * <p>
+ * Interpreters are created by a background thread so that the cost of setting up the system state
+ * and the initial imports is paid before they are needed. A checked out interpreter can be given
+ * back with {@link Lease#close()}, which resets its user namespace, sys.path and standard streams
+ * to how they were when it was warmed; any interpreter taken out of the pool is replaced.
+ */
+public class JythonInterpreterPool {
+
+	/**
+	 * System property to set number of interpreters kept warm (default is 0, which disables pooling)
+	 */
+	public static final String POOL_SIZE = "uk.ac.diamond.scisoft.python.pool.size";
+
+	private static final Logger logger = LoggerFactory.getLogger(JythonInterpreterPool.class);
+
+	private final Callable<PythonInterpreter> factory;
+	private final int size;
+	private final BlockingQueue<Pooled> idle;
+	private final AtomicInteger warming = new AtomicInteger();
+	private final ExecutorService executor;
+
+	private final LongAdder checkouts = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder checkoutTime = new LongAdder();
+	private final AtomicLong maxCheckoutTime = new AtomicLong();
+
+	private volatile boolean closed = false;
+
+	/**
+	 * @param factory creates fully initialised interpreters
+	 * @param size number of interpreters to keep warm
+	 */
+	public JythonInterpreterPool(Callable<PythonInterpreter> factory, int size) {
+		this.factory = factory;
+		this.size = Math.max(0, size);
+		idle = new LinkedBlockingQueue<>();
+		executor = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "Jython interpreter pool");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		});
+	}
+
+	/**
+	 * Start warming interpreters in the background
+	 * @return this
+	 */
+	public JythonInterpreterPool start() {
+		replenish();
+		return this;
+	}
+
+	/**
+	 * @return number of interpreters kept warm
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return number of warm interpreters waiting to be checked out
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	private void replenish() {
+		while (!closed) {
+			int w = warming.get();
+			if (idle.size() + w >= size) {
+				return;
+			}
+			if (warming.compareAndSet(w, w + 1)) {
+				try {
+					executor.execute(this::warm);
+				} catch (Exception e) {
+					warming.decrementAndGet();
+					logger.debug("Could not schedule interpreter warm-up", e);
+					return;
+				}
+			}
+		}
+	}
+
+	private void warm() {
+		try {
+			if (closed) {
+				return;
+			}
+			long start = System.currentTimeMillis();
+			Pooled p = new Pooled(factory.call());
+			if (closed || idle.size() >= size) { // released interpreters may have refilled pool
+				p.interpreter.close();
+				return;
+			}
+			idle.add(p);
+			logger.debug("Warmed Jython interpreter in {}ms", System.currentTimeMillis() - start);
+		} catch (Exception e) {
+			logger.error("Could not create Jython interpreter for pool", e);
+		} finally {
+			warming.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Check out an interpreter. This uses a warm one if available, otherwise creates one in the
+	 * calling thread. Closing the lease returns the interpreter to the pool
+	 * @return lease on interpreter
+	 * @throws Exception if an interpreter could not be created
+	 */
+	public Lease checkout() throws Exception {
+		if (closed) {
+			throw new IllegalStateException("Interpreter pool has been closed");
+		}
+		long start = System.nanoTime();
+		Pooled p = idle.poll();
+		boolean hit = p != null;
+		if (!hit) {
+			misses.increment();
+			p = new Pooled(factory.call());
+		}
+		long time = System.nanoTime() - start;
+		checkouts.increment();
+		checkoutTime.add(time);
+		maxCheckoutTime.accumulateAndGet(time, Math::max);
+		logger.debug("Checked out {} Jython interpreter in {}ms", hit ? "warm" : "new", time / 1000000.);
+
+		replenish();
+		return new Lease(p);
+	}
+
+	private void release(Pooled p) {
+		if (closed || idle.size() >= size) {
+			p.interpreter.close();
+			return;
+		}
+		try {
+			p.reset();
+			idle.add(p);
+		} catch (Exception e) {
+			logger.warn("Could not reset Jython interpreter so discarding it", e);
+			p.interpreter.close();
+		}
+	}
+
+	/**
+	 * @return number of checkouts
+	 */
+	public long getCheckoutCount() {
+		return checkouts.sum();
+	}
+
+	/**
+	 * @return number of checkouts that had to create an interpreter
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return mean checkout latency in milliseconds
+	 */
+	public double getMeanCheckoutTime() {
+		long n = checkouts.sum();
+		return n == 0 ? 0 : checkoutTime.sum() / (1e6 * n);
+	}
+
+	/**
+	 * @return maximum checkout latency in milliseconds
+	 */
+	public double getMaximumCheckoutTime() {
+		return maxCheckoutTime.get() / 1e6;
+	}
+
+	/**
+	 * Stop warming and discard idle interpreters
+	 */
+	public void close() {
+		closed = true;
+		executor.shutdownNow();
+		Pooled p;
+		while ((p = idle.poll()) != null) {
+			p.interpreter.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Jython pool: %d checkouts (%d missed), latency mean %.1fms, max %.1fms",
+				getCheckoutCount(), getMissCount(), getMeanCheckoutTime(), getMaximumCheckoutTime());
+	}
+
+	/**
+	 * Interpreter with the state it had when warmed
+	 */
+	private static class Pooled {
+		private final PythonInterpreter interpreter;
+		private final PyStringMap locals;
+		private final PyList path;
+		private final PyObject stdout;
+		private final PyObject stderr;
+		private final PyObject stdin;
+
+		Pooled(PythonInterpreter interpreter) {
+			this.interpreter = interpreter;
+			PyObject l = interpreter.getLocals();
+			locals = l instanceof PyStringMap ? ((PyStringMap) l).copy() : null;
+			PySystemState state = interpreter.getSystemState();
+			path = new PyList(state.path);
+			stdout = state.stdout;
+			stderr = state.stderr;
+			stdin = state.stdin;
+		}
+
+		void reset() {
+			if (locals == null) {
+				throw new IllegalStateException("Namespace cannot be reset");
+			}
+			interpreter.setLocals(locals.copy());
+			PySystemState state = interpreter.getSystemState();
+			state.path = new PyList(path);
+			state.stdout = stdout;
+			state.stderr = stderr;
+			state.stdin = stdin;
+		}
+	}
+
+	/**
+	 * Checked out interpreter which is returned to its pool on closing
+	 */
+	public class Lease implements AutoCloseable {
+		private Pooled pooled;
+
+		private Lease(Pooled pooled) {
+			this.pooled = pooled;
+		}
+
+		/**
+		 * @return interpreter
+		 */
+		public PythonInterpreter getInterpreter() {
+			if (pooled == null) {
+				throw new IllegalStateException("Interpreter has been returned to pool");
+			}
+			return pooled.interpreter;
+		}
+
+		/**
+		 * Keep interpreter and do not return it to pool
+		 * @return interpreter
+		 */
+		public PythonInterpreter detach() {
+			PythonInterpreter i = getInterpreter();
+			pooled = null;
+			return i;
+		}
+
+		@Override
+		public void close() {
+			if (pooled != null) {
+				release(pooled);
+				pooled = null;
+			}
+		}
+	}
+}
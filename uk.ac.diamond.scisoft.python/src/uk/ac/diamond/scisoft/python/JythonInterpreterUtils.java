@@ -15,6 +15,8 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -30,6 +32,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.ac.diamond.scisoft.jython.JythonPath;
+import uk.ac.diamond.scisoft.python.JythonInterpreterPool.Lease;
 
 /**
  * SCISOFT - added static method which returns a PythonInterpreter which can run scisoft scripts
@@ -44,6 +47,8 @@ public class JythonInterpreterUtils {
 	private static final String SCISOFTPY = "uk.ac.diamond.scisoft.python";
 	
 	private static Logger logger = LoggerFactory.getLogger(JythonInterpreterUtils.class);
+
+	private static JythonInterpreterPool pool;
 	
 	/**
 	 * Create Jython interpreter
@@ -209,7 +214,9 @@ public class JythonInterpreterUtils {
 	/**
 	 * scisoftpy is imported as dnp
 	 * 
-	 * @return a new PythonInterpreter with scisoft scripts loaded.
+	 * @return a new PythonInterpreter with scisoft scripts loaded. When pooling is enabled, this
+	 * is taken from the shared pool (see {@link #getPool()}) and is not returned to it so use
+	 * {@link #runScript(String, Map, String...)} where the interpreter need not be kept
 	 * @throws IOException 
 	 * @throws ClassNotFoundException 
 	 */
@@ -217,7 +224,8 @@ public class JythonInterpreterUtils {
 		
 		final long start = System.currentTimeMillis();
 		
-		PythonInterpreter interpreter = getScisoftpyInterpreter();
+		JythonInterpreterPool p = getPool();
+		PythonInterpreter interpreter = p == null ? getScisoftpyInterpreter() : p.checkout().detach();
 		
 		final long end = System.currentTimeMillis();
 		
@@ -226,4 +234,74 @@ public class JythonInterpreterUtils {
 		return interpreter;
 	}
 
+	/**
+	 * Run script in a scisoftpy interpreter. When pooling is enabled, the interpreter is
+	 * checked out of the shared pool and returned to it afterwards
+	 * @param script
+	 * @param inputs variables to set before running script (can be null)
+	 * @param outputs names of variables to get after running script
+	 * @return map of output names to values converted by {@link PythonUtils#convertToJava(Object)}
+	 * @throws Exception
+	 */
+	public static Map<String, Object> runScript(String script, Map<String, ?> inputs, String... outputs) throws Exception {
+		JythonInterpreterPool p = getPool();
+		if (p == null) {
+			PythonInterpreter interpreter = getScisoftpyInterpreter();
+			try {
+				return runScript(interpreter, script, inputs, outputs);
+			} finally {
+				interpreter.close();
+			}
+		}
+
+		try (Lease l = p.checkout()) {
+			return runScript(l.getInterpreter(), script, inputs, outputs);
+		}
+	}
+
+	private static Map<String, Object> runScript(PythonInterpreter interpreter, String script, Map<String, ?> inputs, String... outputs) {
+		if (inputs != null) {
+			for (Map.Entry<String, ?> e : inputs.entrySet()) {
+				interpreter.set(e.getKey(), e.getValue());
+			}
+		}
+		interpreter.exec(script);
+
+		Map<String, Object> results = new LinkedHashMap<>();
+		for (String o : outputs) {
+			results.put(o, PythonUtils.convertToJava(interpreter.get(o)));
+		}
+		return results;
+	}
+
+	/**
+	 * Get shared pool of scisoftpy interpreters, starting it if necessary. Its size is set
+	 * by the {@value JythonInterpreterPool#POOL_SIZE} system property and pooling is disabled
+	 * unless that is positive
+	 * <p>
+	 * Use {@code try (Lease l = getPool().checkout()) { ... }} to return interpreters to the pool
+	 * @return pool or null if pooling is disabled
+	 */
+	public static synchronized JythonInterpreterPool getPool() {
+		if (pool == null) {
+			int size = Integer.getInteger(JythonInterpreterPool.POOL_SIZE, 0);
+			if (size <= 0) {
+				return null;
+			}
+			pool = new JythonInterpreterPool(JythonInterpreterUtils::getScisoftpyInterpreter, size).start();
+		}
+		return pool;
+	}
+
+	/**
+	 * Close shared pool of interpreters
+	 */
+	static synchronized void closePool() {
+		if (pool != null) {
+			logger.debug("{}", pool);
+			pool.close();
+			pool = null;
+		}
+	}
+
 }
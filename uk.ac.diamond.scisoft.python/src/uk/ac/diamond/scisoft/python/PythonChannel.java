@@ -0,0 +1,780 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.python;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.january.dataset.BooleanDataset;
+import org.eclipse.january.dataset.ByteDataset;
+import org.eclipse.january.dataset.Dataset;
+import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DoubleDataset;
+import org.eclipse.january.dataset.FloatDataset;
+import org.eclipse.january.dataset.IntegerDataset;
+import org.eclipse.january.dataset.InterfaceUtils;
+import org.eclipse.january.dataset.LongDataset;
+import org.eclipse.january.dataset.ShortDataset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This creates a Python subprocess and sends it commands over a framed binary protocol on its
+ * standard input and output.
+ * <p>
+ * Unlike {@link PythonSubProcess}, requests are pipelined: many can be submitted without waiting
+ * and each completes its own future when the subprocess replies. Requests are executed in order of
+ * submission in a namespace that persists between requests. Datasets are passed to and from the
+ * subprocess as NumPy arrays, either as raw little-endian buffers within a frame or, when larger
+ * than the shared memory threshold, via a file in a memory-backed directory.
+ * <p>
+ * Every frame is a 32-bit little-endian length followed by that many bytes. A request holds its id,
+ * the code to exec, the input arrays and the names of the output arrays. A reply holds the request
+ * id, a status, the captured standard output, any error traceback and the output arrays. Strings
+ * are UTF-8 with a 32-bit length. An array is its name, NumPy type string, shape and either its
+ * bytes inline or the path of a file holding them.
+ */
+public class PythonChannel implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(PythonChannel.class);
+
+	// arguments to create a python server which reads framed requests from standard input,
+	// exec()s their code and writes framed replies to standard output
+	private static final String[] args = {
+		"-c",
+		"import sys, os, struct, tempfile, traceback\n" +
+		"try:\n" +
+		"  from cStringIO import StringIO\n" +
+		"except ImportError:\n" +
+		"  from io import StringIO\n" +
+		"try:\n" +
+		"  import numpy as np\n" +
+		"except ImportError:\n" +
+		"  np = None\n" +
+		"if os.name == 'nt':\n" +
+		"  import msvcrt\n" +
+		"  msvcrt.setmode(sys.stdin.fileno(), os.O_BINARY)\n" +
+		"  msvcrt.setmode(sys.stdout.fileno(), os.O_BINARY)\n" +
+		"inp = getattr(sys.stdin, 'buffer', sys.stdin)\n" +
+		"out = getattr(sys.stdout, 'buffer', sys.stdout)\n" +
+		"sys.stdout = sys.stderr\n" +
+		"threshold = int(sys.argv[1])\n" +
+		"shmdir = sys.argv[2]\n" +
+		"def readn(n):\n" +
+		"  b = bytearray(n)\n" +
+		"  v = memoryview(b)\n" +
+		"  i = 0\n" +
+		"  while i < n:\n" +
+		"    r = inp.readinto(v[i:])\n" +
+		"    if not r:\n" +
+		"      raise EOFError\n" +
+		"    i += r\n" +
+		"  return b\n" +
+		"class Reader(object):\n" +
+		"  def __init__(self, b):\n" +
+		"    self.b = b\n" +
+		"    self.o = 0\n" +
+		"  def get(self, f):\n" +
+		"    v = struct.unpack_from(f, self.b, self.o)[0]\n" +
+		"    self.o += struct.calcsize(f)\n" +
+		"    return v\n" +
+		"  def str(self):\n" +
+		"    n = self.get('<i')\n" +
+		"    s = bytes(self.b[self.o:self.o + n]).decode('utf-8')\n" +
+		"    self.o += n\n" +
+		"    return s\n" +
+		"  def array(self):\n" +
+		"    name = self.str()\n" +
+		"    dt = np.dtype(self.str())\n" +
+		"    shape = tuple(self.get('<i') for _ in range(self.get('<i')))\n" +
+		"    shared = self.get('<b')\n" +
+		"    if shared:\n" +
+		"      a = np.fromfile(self.str(), dtype=dt)\n" +
+		"      self.get('<q')\n" +
+		"    else:\n" +
+		"      n = self.get('<q')\n" +
+		"      a = np.frombuffer(self.b, dtype=dt, count=n // dt.itemsize, offset=self.o)\n" +
+		"      self.o += n\n" +
+		"    return name, a.reshape(shape)\n" +
+		"def pstr(parts, s):\n" +
+		"  b = s.encode('utf-8')\n" +
+		"  parts.append(struct.pack('<i', len(b)))\n" +
+		"  parts.append(b)\n" +
+		"def parray(parts, files, name, a):\n" +
+		"  a = np.ascontiguousarray(a)\n" +
+		"  if a.dtype.byteorder == '>':\n" +
+		"    a = a.astype(a.dtype.newbyteorder('<'))\n" +
+		"  pstr(parts, name)\n" +
+		"  pstr(parts, a.dtype.str)\n" +
+		"  parts.append(struct.pack('<i', a.ndim))\n" +
+		"  parts.append(struct.pack('<%di' % a.ndim, *a.shape))\n" +
+		"  if threshold >= 0 and a.nbytes >= threshold:\n" +
+		"    fd, p = tempfile.mkstemp(prefix='pychannel', dir=shmdir)\n" +
+		"    os.close(fd)\n" +
+		"    files.append(p)\n" +
+		"    a.tofile(p)\n" +
+		"    parts.append(struct.pack('<b', 1))\n" +
+		"    pstr(parts, p)\n" +
+		"    parts.append(struct.pack('<q', a.nbytes))\n" +
+		"  else:\n" +
+		"    parts.append(struct.pack('<bq', 0, a.nbytes))\n" +
+		"    parts.append(a.tostring() if not hasattr(a, 'tobytes') else a.tobytes())\n" +
+		"ns = {}\n" +
+		"while True:\n" +
+		"  try:\n" +
+		"    r = Reader(readn(struct.unpack('<i', bytes(readn(4)))[0]))\n" +
+		"  except EOFError:\n" +
+		"    break\n" +
+		"  rid = r.get('<i')\n" +
+		"  status = 0\n" +
+		"  err = ''\n" +
+		"  parts = []\n" +
+		"  files = []\n" +
+		"  sys.stdout = cap = StringIO()\n" +
+		"  try:\n" +
+		"    code = r.str()\n" +
+		"    for _ in range(r.get('<i')):\n" +
+		"      k, v = r.array()\n" +
+		"      ns[k] = v\n" +
+		"    names = [r.str() for _ in range(r.get('<i'))]\n" +
+		"    exec(code, ns)\n" +
+		"    for k in names:\n" +
+		"      parray(parts, files, k, ns[k])\n" +
+		"  except BaseException:\n" +
+		"    status = 1\n" +
+		"    err = traceback.format_exc()\n" +
+		"    parts = []\n" +
+		"    for p in files:\n" +
+		"      try:\n" +
+		"        os.remove(p)\n" +
+		"      except OSError:\n" +
+		"        pass\n" +
+		"  sys.stdout = sys.stderr\n" +
+		"  head = [struct.pack('<ib', rid, status)]\n" +
+		"  pstr(head, cap.getvalue())\n" +
+		"  pstr(head, err)\n" +
+		"  head.append(struct.pack('<i', len(names) if status == 0 else 0))\n" +
+		"  body = b''.join(head + parts)\n" +
+		"  out.write(struct.pack('<i', len(body)))\n" +
+		"  out.write(body)\n" +
+		"  out.flush()\n",
+	};
+
+	/**
+	 * Default size in bytes at and above which arrays are passed via a file
+	 */
+	public static final long DEFAULT_SHARED_THRESHOLD = 1 << 20;
+
+	/**
+	 * Default time in milliseconds to wait for subprocess to finish when closing
+	 */
+	public static final long DEFAULT_CLOSE_TIMEOUT = 10000;
+
+	private static final String PYTHONPATH = "PYTHONPATH";
+	private static final File SHARED_DIR;
+	static {
+		File shm = new File("/dev/shm");
+		SHARED_DIR = shm.isDirectory() && shm.canWrite() ? shm : new File(System.getProperty("java.io.tmpdir"));
+	}
+
+	private static final Map<Class<? extends Dataset>, String> TYPES = new HashMap<>();
+	static {
+		TYPES.put(BooleanDataset.class, "|b1");
+		TYPES.put(ByteDataset.class, "|i1");
+		TYPES.put(ShortDataset.class, "<i2");
+		TYPES.put(IntegerDataset.class, "<i4");
+		TYPES.put(LongDataset.class, "<i8");
+		TYPES.put(FloatDataset.class, "<f4");
+		TYPES.put(DoubleDataset.class, "<f8");
+	}
+
+	private final Process p;
+	private final OutputStream stdin;
+	private final long threshold;
+	private final AtomicInteger ids = new AtomicInteger();
+	private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+	private volatile Throwable failure;
+	private volatile long closeTimeout = DEFAULT_CLOSE_TIMEOUT;
+
+	/**
+	 * Start subprocess with python found in path
+	 */
+	public PythonChannel() {
+		this(null, null, DEFAULT_SHARED_THRESHOLD);
+	}
+
+	/**
+	 * @param exec path to Python executable
+	 * @param env
+	 * @param threshold size in bytes at and above which arrays are passed via a file (negative to never do so)
+	 */
+	public PythonChannel(String exec, Map<String, String> env, long threshold) {
+		if (exec == null) {
+			exec = "python";
+		}
+		this.threshold = threshold;
+		List<String> cmds = new ArrayList<String>();
+		cmds.add(exec);
+		for (String a : args) {
+			cmds.add(a);
+		}
+		cmds.add(Long.toString(threshold));
+		cmds.add(SHARED_DIR.getAbsolutePath());
+		ProcessBuilder pb = new ProcessBuilder(cmds);
+		if (env != null) {
+			pb.environment().putAll(env);
+		} else {
+			env = pb.environment();
+			if (env.containsKey(PYTHONPATH)) {
+				logger.warn("Removing {} from environment: {}", PYTHONPATH, env.remove(PYTHONPATH));
+			}
+		}
+		try {
+			p = pb.start();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not start python subprocess", e);
+		}
+		stdin = new BufferedOutputStream(p.getOutputStream(), 1 << 16);
+		startThread(this::readReplies, "Python channel reader");
+		startThread(this::readErrors, "Python channel errors");
+	}
+
+	private static void startThread(Runnable r, String name) {
+		Thread t = new Thread(r, name);
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Result of a request
+	 */
+	public static class Result {
+		private final String output;
+		private final Map<String, Dataset> data;
+
+		Result(String output, Map<String, Dataset> data) {
+			this.output = output;
+			this.data = Collections.unmodifiableMap(data);
+		}
+
+		/**
+		 * @return text written to standard output by request
+		 */
+		public String getOutput() {
+			return output;
+		}
+
+		/**
+		 * @param name
+		 * @return output dataset of given name
+		 */
+		public Dataset getData(String name) {
+			return data.get(name);
+		}
+
+		/**
+		 * @return map of output datasets in requested order
+		 */
+		public Map<String, Dataset> getData() {
+			return data;
+		}
+	}
+
+	/**
+	 * Exception raised in subprocess when executing a request
+	 */
+	public static class PythonException extends Exception {
+		private static final long serialVersionUID = -8474932916512394813L;
+		private final String output;
+
+		PythonException(String traceback, String output) {
+			super(traceback);
+			this.output = output;
+		}
+
+		/**
+		 * @return text written to standard output by request before exception
+		 */
+		public String getOutput() {
+			return output;
+		}
+	}
+
+	private static class Pending {
+		final CompletableFuture<Result> future = new CompletableFuture<>();
+		final List<File> files = new ArrayList<>();
+
+		void deleteFiles() {
+			for (File f : files) {
+				if (!f.delete()) {
+					f.deleteOnExit();
+				}
+			}
+			files.clear();
+		}
+	}
+
+	/**
+	 * Submit code to exec in subprocess
+	 * @param code Python code to exec
+	 * @param inputs datasets to set as NumPy arrays in namespace before exec (can be null)
+	 * @param outputs names of arrays in namespace to return after exec
+	 * @return future result which completes exceptionally with {@link PythonException} if the code raised one
+	 */
+	public CompletableFuture<Result> submit(String code, Map<String, ? extends Dataset> inputs, String... outputs) {
+		int id = ids.incrementAndGet();
+		Pending r = new Pending();
+		Throwable t = failure;
+		if (t != null) {
+			r.future.completeExceptionally(t);
+			return r.future;
+		}
+
+		try {
+			Frame f = new Frame();
+			f.putInt(id);
+			f.putString(code);
+			f.putInt(inputs == null ? 0 : inputs.size());
+			if (inputs != null) {
+				for (Map.Entry<String, ? extends Dataset> e : inputs.entrySet()) {
+					writeArray(f, e.getKey(), e.getValue(), r.files);
+				}
+			}
+			f.putInt(outputs.length);
+			for (String o : outputs) {
+				f.putString(o);
+			}
+
+			pending.put(id, r);
+			synchronized (stdin) {
+				f.writeTo(stdin);
+				stdin.flush();
+			}
+		} catch (Exception e) {
+			pending.remove(id);
+			r.deleteFiles();
+			r.future.completeExceptionally(e);
+		}
+		return r.future;
+	}
+
+	/**
+	 * Exec code in subprocess and wait for result
+	 * @param code Python code to exec
+	 * @param inputs datasets to set as NumPy arrays in namespace before exec (can be null)
+	 * @param outputs names of arrays in namespace to return after exec
+	 * @return result
+	 * @throws PythonException if the code raised an exception
+	 * @throws Exception if the subprocess could not be communicated with
+	 */
+	public Result execute(String code, Map<String, ? extends Dataset> inputs, String... outputs) throws Exception {
+		try {
+			return submit(code, inputs, outputs).get();
+		} catch (ExecutionException e) {
+			Throwable c = e.getCause();
+			throw c instanceof Exception ? (Exception) c : e;
+		}
+	}
+
+	/**
+	 * @return number of requests waiting for replies
+	 */
+	public int getInFlight() {
+		return pending.size();
+	}
+
+	/**
+	 * @return true if subprocess can accept requests
+	 */
+	public boolean isAlive() {
+		return failure == null && p.isAlive();
+	}
+
+	private void writeArray(Frame f, String name, Dataset d, List<File> files) throws IOException {
+		Class<? extends Dataset> clazz = InterfaceUtils.getInterface(d);
+		String type = TYPES.get(clazz);
+		if (type == null) {
+			throw new IllegalArgumentException("Dataset " + name + " has unsupported type " + clazz);
+		}
+		Object buffer = d.getBuffer();
+		if (d.getStrides() != null || Array.getLength(buffer) != d.getSize()) {
+			d = d.clone(); // need contiguous buffer
+			buffer = d.getBuffer();
+		}
+		int[] shape = d.getShapeRef();
+		long bytes = (long) d.getSize() * d.getItemBytes();
+
+		f.putString(name);
+		f.putString(type);
+		f.putInt(shape.length);
+		for (int s : shape) {
+			f.putInt(s);
+		}
+		if ((threshold >= 0 && bytes >= threshold) || bytes > Integer.MAX_VALUE / 2) {
+			File file = File.createTempFile("pychannel", ".bin", SHARED_DIR);
+			files.add(file);
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel c = raf.getChannel()) {
+				MappedByteBuffer m = c.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+				m.order(ByteOrder.LITTLE_ENDIAN);
+				putBuffer(m, buffer, d.getSize());
+			}
+			f.put((byte) 1);
+			f.putString(file.getAbsolutePath());
+			f.putLong(bytes);
+		} else {
+			f.put((byte) 0);
+			f.putLong(bytes);
+			f.ensure((int) bytes);
+			putBuffer(f.buffer, buffer, d.getSize());
+		}
+	}
+
+	private static void putBuffer(ByteBuffer b, Object buffer, int size) {
+		if (buffer instanceof double[]) {
+			b.asDoubleBuffer().put((double[]) buffer, 0, size);
+			b.position(b.position() + size * Double.BYTES);
+		} else if (buffer instanceof float[]) {
+			b.asFloatBuffer().put((float[]) buffer, 0, size);
+			b.position(b.position() + size * Float.BYTES);
+		} else if (buffer instanceof long[]) {
+			b.asLongBuffer().put((long[]) buffer, 0, size);
+			b.position(b.position() + size * Long.BYTES);
+		} else if (buffer instanceof int[]) {
+			b.asIntBuffer().put((int[]) buffer, 0, size);
+			b.position(b.position() + size * Integer.BYTES);
+		} else if (buffer instanceof short[]) {
+			b.asShortBuffer().put((short[]) buffer, 0, size);
+			b.position(b.position() + size * Short.BYTES);
+		} else if (buffer instanceof byte[]) {
+			b.put((byte[]) buffer, 0, size);
+		} else if (buffer instanceof boolean[]) {
+			boolean[] a = (boolean[]) buffer;
+			for (int i = 0; i < size; i++) {
+				b.put(a[i] ? (byte) 1 : (byte) 0);
+			}
+		}
+	}
+
+	private static Dataset readArray(ByteBuffer b, String name) throws IOException {
+		String type = getString(b);
+		int[] shape = new int[b.getInt()];
+		for (int i = 0; i < shape.length; i++) {
+			shape[i] = b.getInt();
+		}
+		boolean shared = b.get() != 0;
+		File file = null;
+		long bytes;
+		ByteBuffer data = null;
+		if (shared) {
+			file = new File(getString(b));
+			bytes = b.getLong();
+		} else {
+			bytes = b.getLong();
+			data = b.slice();
+			data.limit((int) bytes);
+			b.position(b.position() + (int) bytes);
+		}
+
+		if (file != null) {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel c = raf.getChannel()) {
+				data = c.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+			}
+		}
+		data.order(ByteOrder.LITTLE_ENDIAN);
+
+		Object array;
+		Class<? extends Dataset> clazz;
+		switch (type) {
+		case "<f8":
+			clazz = DoubleDataset.class;
+			array = new double[data.remaining() / Double.BYTES];
+			data.asDoubleBuffer().get((double[]) array);
+			break;
+		case "<f4":
+			clazz = FloatDataset.class;
+			array = new float[data.remaining() / Float.BYTES];
+			data.asFloatBuffer().get((float[]) array);
+			break;
+		case "<i8":
+			clazz = LongDataset.class;
+			array = new long[data.remaining() / Long.BYTES];
+			data.asLongBuffer().get((long[]) array);
+			break;
+		case "<i4":
+			clazz = IntegerDataset.class;
+			array = new int[data.remaining() / Integer.BYTES];
+			data.asIntBuffer().get((int[]) array);
+			break;
+		case "<i2":
+			clazz = ShortDataset.class;
+			array = new short[data.remaining() / Short.BYTES];
+			data.asShortBuffer().get((short[]) array);
+			break;
+		case "|i1":
+			clazz = ByteDataset.class;
+			array = new byte[data.remaining()];
+			data.get((byte[]) array);
+			break;
+		// unsigned types are widened to the next larger signed type
+		case "<u4":
+			clazz = LongDataset.class;
+			long[] l = new long[data.remaining() / Integer.BYTES];
+			for (int i = 0; i < l.length; i++) {
+				l[i] = data.getInt() & 0xffffffffL;
+			}
+			array = l;
+			break;
+		case "<u2":
+			clazz = IntegerDataset.class;
+			int[] n = new int[data.remaining() / Short.BYTES];
+			for (int i = 0; i < n.length; i++) {
+				n[i] = data.getShort() & 0xffff;
+			}
+			array = n;
+			break;
+		case "|u1":
+			clazz = ShortDataset.class;
+			short[] u = new short[data.remaining()];
+			for (int i = 0; i < u.length; i++) {
+				u[i] = (short) (data.get() & 0xff);
+			}
+			array = u;
+			break;
+		case "|b1":
+			clazz = BooleanDataset.class;
+			boolean[] a = new boolean[data.remaining()];
+			for (int i = 0; i < a.length; i++) {
+				a[i] = data.get() != 0;
+			}
+			array = a;
+			break;
+		default:
+			throw new IllegalArgumentException("Array " + name + " has unsupported type " + type);
+		}
+		return DatasetFactory.createFromObject(clazz, array, shape);
+	}
+
+	/**
+	 * Skip over an array
+	 * @return file holding array or null if it is within the frame
+	 */
+	private static File skipArray(ByteBuffer b) {
+		getString(b); // name
+		getString(b); // type
+		int rank = b.getInt();
+		b.position(b.position() + rank * Integer.BYTES);
+		if (b.get() != 0) {
+			File file = new File(getString(b));
+			b.getLong();
+			return file;
+		}
+		long bytes = b.getLong();
+		b.position(b.position() + (int) bytes);
+		return null;
+	}
+
+	private static String getString(ByteBuffer b) {
+		byte[] s = new byte[b.getInt()];
+		b.get(s);
+		return new String(s, StandardCharsets.UTF_8);
+	}
+
+	private void readReplies() {
+		try (DataInputStream in = new DataInputStream(p.getInputStream())) {
+			byte[] head = new byte[4];
+			while (true) {
+				try {
+					in.readFully(head);
+				} catch (EOFException e) {
+					break;
+				}
+				byte[] body = new byte[ByteBuffer.wrap(head).order(ByteOrder.LITTLE_ENDIAN).getInt()];
+				in.readFully(body);
+				handleReply(ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN));
+			}
+			fail(new IllegalStateException("Python subprocess has ended"));
+		} catch (Throwable t) {
+			fail(new IllegalStateException("Problem reading from python subprocess", t));
+		}
+	}
+
+	private void handleReply(ByteBuffer b) {
+		int id = b.getInt();
+		boolean ok = b.get() == 0;
+		Pending r = pending.remove(id);
+		if (r == null) {
+			logger.error("Reply to unknown request {} from python subprocess", id);
+			return;
+		}
+		r.deleteFiles();
+		try {
+			String output = getString(b);
+			String error = getString(b);
+			if (!ok) {
+				r.future.completeExceptionally(new PythonException(error, output));
+				return;
+			}
+			int n = b.getInt();
+			Map<String, Dataset> data = new LinkedHashMap<>();
+			try {
+				// find all files first so none are left if an array cannot be read
+				int[] starts = new int[n];
+				for (int i = 0; i < n; i++) {
+					starts[i] = b.position();
+					File f = skipArray(b);
+					if (f != null) {
+						r.files.add(f);
+					}
+				}
+				for (int i = 0; i < n; i++) {
+					b.position(starts[i]);
+					String name = getString(b);
+					data.put(name, readArray(b, name));
+				}
+			} finally {
+				r.deleteFiles();
+			}
+			r.future.complete(new Result(output, data));
+		} catch (Exception e) {
+			r.future.completeExceptionally(e);
+		}
+	}
+
+	private void readErrors() {
+		try (BufferedReader err = new BufferedReader(new InputStreamReader(p.getErrorStream()))) {
+			String l;
+			while ((l = err.readLine()) != null) {
+				logger.warn("Python: {}", l);
+			}
+		} catch (IOException e) {
+			// process has gone
+		}
+	}
+
+	private void fail(Throwable t) {
+		failure = t;
+		for (Integer id : new ArrayList<>(pending.keySet())) {
+			Pending r = pending.remove(id);
+			if (r != null) {
+				r.deleteFiles();
+				r.future.completeExceptionally(t);
+			}
+		}
+	}
+
+	/**
+	 * @param closeTimeout time in milliseconds to wait for subprocess to finish when closing
+	 */
+	public void setCloseTimeout(long closeTimeout) {
+		this.closeTimeout = closeTimeout;
+	}
+
+	/**
+	 * Stop subprocess once it has replied to submitted requests. If it has not finished within
+	 * the close timeout then it is killed and any outstanding requests fail
+	 */
+	@Override
+	public void close() {
+		try {
+			synchronized (stdin) {
+				stdin.close();
+			}
+		} catch (IOException e) {
+		}
+
+		try {
+			if (!p.waitFor(closeTimeout, TimeUnit.MILLISECONDS)) {
+				logger.warn("Python subprocess did not finish within {}ms so destroying it", closeTimeout);
+				p.destroy();
+				if (!p.waitFor(1, TimeUnit.SECONDS)) {
+					p.destroyForcibly();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			p.destroyForcibly();
+		}
+	}
+
+	/**
+	 * Growable little-endian buffer for a frame
+	 */
+	private static class Frame {
+		ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+		Frame() {
+			buffer.position(4); // space for length
+		}
+
+		void ensure(int n) {
+			if (buffer.remaining() < n) {
+				long capacity = Math.max(2L * buffer.capacity(), (long) buffer.position() + n);
+				if (capacity > Integer.MAX_VALUE - 8) {
+					throw new IllegalArgumentException("Frame is too large");
+				}
+				ByteBuffer b = ByteBuffer.allocate((int) capacity).order(ByteOrder.LITTLE_ENDIAN);
+				buffer.flip();
+				b.put(buffer);
+				buffer = b;
+			}
+		}
+
+		void put(byte v) {
+			ensure(1);
+			buffer.put(v);
+		}
+
+		void putInt(int v) {
+			ensure(Integer.BYTES);
+			buffer.putInt(v);
+		}
+
+		void putLong(long v) {
+			ensure(Long.BYTES);
+			buffer.putLong(v);
+		}
+
+		void putString(String s) {
+			byte[] b = s.getBytes(StandardCharsets.UTF_8);
+			putInt(b.length);
+			ensure(b.length);
+			buffer.put(b);
+		}
+
+		void writeTo(OutputStream out) throws IOException {
+			buffer.putInt(0, buffer.position() - 4);
+			out.write(buffer.array(), 0, buffer.position());
+		}
+	}
+}
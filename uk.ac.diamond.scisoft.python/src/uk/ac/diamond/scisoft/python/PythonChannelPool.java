@@ -0,0 +1,125 @@
+/*-
+ * Copyright 2017 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package uk.ac.diamond.scisoft.python;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.eclipse.january.dataset.Dataset;
+
+import uk.ac.diamond.scisoft.python.PythonChannel.Result;
+
+/**
+ * Pool of Python subprocesses for running independent requests, such as processing of frames, in
+ * parallel. Each request is sent to the subprocess with the fewest requests in flight so the
+ * namespace seen by a request must be set up in every subprocess with {@link #broadcast(String)}.
+ */
+public class PythonChannelPool implements AutoCloseable {
+
+	private final List<PythonChannel> channels;
+
+	/**
+	 * Start pool with python found in path
+	 * @param size number of subprocesses
+	 */
+	public PythonChannelPool(int size) {
+		this(size, null, null, PythonChannel.DEFAULT_SHARED_THRESHOLD);
+	}
+
+	/**
+	 * @param size number of subprocesses
+	 * @param exec path to Python executable
+	 * @param env
+	 * @param threshold size in bytes at and above which arrays are passed via a file (negative to never do so)
+	 */
+	public PythonChannelPool(int size, String exec, Map<String, String> env, long threshold) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Pool must have at least one subprocess");
+		}
+		channels = new ArrayList<>(size);
+		try {
+			for (int i = 0; i < size; i++) {
+				channels.add(new PythonChannel(exec, env, threshold));
+			}
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return number of subprocesses
+	 */
+	public int getSize() {
+		return channels.size();
+	}
+
+	/**
+	 * Exec code in every subprocess, e.g. to import modules or define functions
+	 * @param code Python code to exec
+	 * @throws Exception if the code failed in any subprocess
+	 */
+	public void broadcast(String code) throws Exception {
+		List<CompletableFuture<Result>> futures = new ArrayList<>();
+		for (PythonChannel c : channels) {
+			futures.add(c.submit(code, null));
+		}
+		try {
+			for (CompletableFuture<Result> f : futures) {
+				f.get();
+			}
+		} catch (ExecutionException e) {
+			Throwable c = e.getCause();
+			throw c instanceof Exception ? (Exception) c : e;
+		}
+	}
+
+	/**
+	 * Submit code to exec in least busy subprocess
+	 * @param code Python code to exec
+	 * @param inputs datasets to set as NumPy arrays in namespace before exec (can be null)
+	 * @param outputs names of arrays in namespace to return after exec
+	 * @return future result
+	 * @see PythonChannel#submit(String, Map, String...)
+	 */
+	public CompletableFuture<Result> submit(String code, Map<String, ? extends Dataset> inputs, String... outputs) {
+		PythonChannel best = null;
+		int least = Integer.MAX_VALUE;
+		for (PythonChannel c : channels) {
+			if (!c.isAlive()) {
+				continue;
+			}
+			int n = c.getInFlight();
+			if (n < least) {
+				least = n;
+				best = c;
+			}
+		}
+		if (best == null) {
+			CompletableFuture<Result> f = new CompletableFuture<>();
+			f.completeExceptionally(new IllegalStateException("No python subprocesses are running"));
+			return f;
+		}
+		return best.submit(code, inputs, outputs);
+	}
+
+	/**
+	 * Stop all subprocesses once they have replied to submitted requests
+	 */
+	@Override
+	public void close() {
+		for (PythonChannel c : channels) {
+			c.close();
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package org.dawnsci.surfacescatter.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dawnsci.surfacescatter.BatchRodDataTransferObject;
+import org.dawnsci.surfacescatter.BatchRodModel;
+import org.dawnsci.surfacescatter.BatchRodProcessor;
+import org.dawnsci.surfacescatter.BatchRodProcessor.IBatchRodListener;
+import org.dawnsci.surfacescatter.FrameModel;
+import org.dawnsci.surfacescatter.IBatchRodStages;
+import org.dawnsci.surfacescatter.RodObjectNexusBuilderModel;
+import org.eclipse.january.IMonitor;
+import org.eclipse.january.dataset.DatasetFactory;
+import org.eclipse.january.dataset.DoubleDataset;
+import org.eclipse.january.dataset.IDataset;
+import org.eclipse.january.dataset.LazyDataset;
+import org.eclipse.january.dataset.SliceND;
+import org.eclipse.january.io.ILazyLoader;
+import org.junit.Test;
+
+public class BatchRodProcessorTest {
+
+	private static final int FRAMES = 12;
+	private static final int DEPTH = 2;
+	private static final String BAD_ROD = "bad";
+	private static final int BAD_FRAME = 5;
+
+	/**
+	 * Records the order of frames and how far frame loading ran ahead
+	 */
+	private static class StubStages implements IBatchRodStages {
+
+		final Map<String, AtomicInteger> loaded = new ConcurrentHashMap<>();
+		final Map<String, List<Integer>> processed = new ConcurrentHashMap<>();
+		final List<String> written = new CopyOnWriteArrayList<>();
+		final List<RodObjectNexusBuilderModel> models = new CopyOnWriteArrayList<>();
+		final AtomicInteger maxLead = new AtomicInteger();
+		final AtomicInteger unloaded = new AtomicInteger();
+
+		@Override
+		public RodObjectNexusBuilderModel setUpRod(BatchRodDataTransferObject brdto) throws Exception {
+			final String rod = brdto.getRodName();
+			final AtomicInteger count = new AtomicInteger();
+			loaded.put(rod, count);
+			processed.put(rod, Collections.synchronizedList(new ArrayList<>()));
+
+			ArrayList<FrameModel> fms = new ArrayList<>();
+			for (int i = 0; i < FRAMES; i++) {
+				FrameModel fm = new FrameModel();
+				fm.setRawImageData(new LazyDataset(new ILazyLoader() {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					public boolean isFileReadable() {
+						return true;
+					}
+
+					@Override
+					public IDataset getDataset(IMonitor mon, SliceND slice) throws IOException {
+						count.incrementAndGet();
+						return DatasetFactory.zeros(DoubleDataset.class, slice.getShape());
+					}
+				}, "image", DoubleDataset.class, 4, 4));
+				fms.add(fm);
+			}
+			RodObjectNexusBuilderModel model = new RodObjectNexusBuilderModel(fms, rod + ".nxs", null, null, 1);
+			models.add(model);
+			return model;
+		}
+
+		@Override
+		public void processFrame(RodObjectNexusBuilderModel model, int selection) throws Exception {
+			String rod = model.getFilepath().replace(".nxs", "");
+			if (!(model.getFms().get(selection).getRawImageData() instanceof IDataset)) {
+				unloaded.incrementAndGet();
+			}
+			int lead = loaded.get(rod).get() - (selection + 1);
+			maxLead.accumulateAndGet(lead, Math::max);
+			processed.get(rod).add(selection);
+
+			Thread.sleep(10); // let loaders run ahead
+			if (BAD_ROD.equals(rod) && selection == BAD_FRAME) {
+				throw new IllegalStateException("Could not fit frame");
+			}
+		}
+
+		@Override
+		public void stitch(RodObjectNexusBuilderModel model) throws Exception {
+		}
+
+		@Override
+		public void write(RodObjectNexusBuilderModel model) throws Exception {
+			written.add(model.getFilepath());
+		}
+	}
+
+	@Test
+	public void testProcess() throws Exception {
+		BatchRodModel brm = new BatchRodModel();
+		String[] rods = new String[] { "rod1", "rod2", BAD_ROD, "rod3" };
+		for (String r : rods) {
+			BatchRodDataTransferObject brdto = new BatchRodDataTransferObject();
+			brdto.setRodName(r);
+			brm.addToBrdtoList(brdto);
+		}
+
+		StubStages stages = new StubStages();
+		BatchRodProcessor processor = new BatchRodProcessor(stages);
+		processor.setRodThreads(3);
+		processor.setLoaderThreads(2);
+		processor.setPrefetchDepth(DEPTH);
+
+		final Map<String, AtomicInteger> frames = new ConcurrentHashMap<>();
+		final List<String> completed = new CopyOnWriteArrayList<>();
+		final List<String> failed = new CopyOnWriteArrayList<>();
+		processor.addListener(new IBatchRodListener() {
+			@Override
+			public void frameProcessed(String rodName, int frame, int noFrames) {
+				assertEquals(FRAMES, noFrames);
+				frames.computeIfAbsent(rodName, k -> new AtomicInteger()).incrementAndGet();
+			}
+
+			@Override
+			public void rodCompleted(String rodName, String nexusFilepath, int noFrames, long elapsedNanos) {
+				completed.add(rodName);
+			}
+
+			@Override
+			public void rodFailed(String rodName, Exception e) {
+				failed.add(rodName);
+			}
+		});
+
+		processor.process(brm);
+
+		assertEquals(3, processor.getRodsCompleted());
+		assertEquals(1, processor.getRodsFailed());
+		assertEquals(3 * FRAMES + BAD_FRAME, processor.getFramesProcessed());
+
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < FRAMES; i++) {
+			order.add(i);
+		}
+		for (String r : rods) {
+			if (BAD_ROD.equals(r)) {
+				assertEquals(order.subList(0, BAD_FRAME + 1), stages.processed.get(r));
+				assertEquals(BAD_FRAME, frames.get(r).get());
+			} else {
+				assertEquals(order, stages.processed.get(r));
+				assertEquals(FRAMES, frames.get(r).get());
+				assertTrue(stages.written.contains(r + ".nxs"));
+			}
+		}
+		assertEquals(3, completed.size());
+		assertEquals(Collections.singletonList(BAD_ROD), failed);
+
+		assertEquals(0, stages.unloaded.get());
+		// decoded images are not kept after their frames are processed
+		assertEquals(rods.length, stages.models.size());
+		for (RodObjectNexusBuilderModel m : stages.models) {
+			for (FrameModel fm : m.getFms()) {
+				assertTrue(fm.getRawImageData() instanceof LazyDataset);
+			}
+		}
+		assertTrue("Loading ran ahead by " + stages.maxLead.get(), stages.maxLead.get() <= DEPTH);
+		assertTrue("Loading did not run ahead", stages.maxLead.get() > 0);
+		assertTrue(stages.loaded.get(BAD_ROD).get() <= BAD_FRAME + 1 + DEPTH);
+	}
+}
@@ -0,0 +1,94 @@
+package org.dawnsci.surfacescatter.test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import org.dawnsci.surfacescatter.FastFourierTransform;
+import org.junit.Test;
+
+public class FastFourierTransformTest {
+
+	private static double[][] naiveDFT(double[] real, double[] imag, boolean direct) {
+		int n = real.length;
+		double sign = direct ? 1 : -1;
+		double[][] out = new double[2][n];
+		for (int k = 0; k < n; k++) {
+			for (int j = 0; j < n; j++) {
+				double arg = sign * 2 * Math.PI * (((long) j * k) % n) / n;
+				out[0][k] += real[j] * Math.cos(arg) - imag[j] * Math.sin(arg);
+				out[1][k] += real[j] * Math.sin(arg) + imag[j] * Math.cos(arg);
+			}
+		}
+		return out;
+	}
+
+	private void checkTransform(int n, boolean direct) {
+		Random rnd = new Random(n);
+		double[] real = new double[n];
+		double[] imag = new double[n];
+		for (int i = 0; i < n; i++) {
+			real[i] = rnd.nextGaussian();
+			imag[i] = rnd.nextGaussian();
+		}
+
+		double[][] expected = naiveDFT(real, imag, direct);
+		double[] outReal = real.clone();
+		double[] outImag = imag.clone();
+		FastFourierTransform.transform(outReal, outImag, n, direct);
+
+		assertArrayEquals("real part, n = " + n, expected[0], outReal, 1e-9 * n);
+		assertArrayEquals("imaginary part, n = " + n, expected[1], outImag, 1e-9 * n);
+	}
+
+	@Test
+	public void testPowerOfTwo() {
+		for (int n : new int[] { 2, 4, 16, 256, 1024 }) {
+			checkTransform(n, true);
+			checkTransform(n, false);
+		}
+	}
+
+	@Test
+	public void testBluestein() {
+		for (int n : new int[] { 3, 5, 12, 100, 1000 }) {
+			checkTransform(n, true);
+			checkTransform(n, false);
+		}
+	}
+
+	@Test
+	public void testRoundTrip() {
+		int n = 300;
+		Random rnd = new Random(42);
+		double[] real = new double[n];
+		double[] imag = new double[n];
+		for (int i = 0; i < n; i++) {
+			real[i] = rnd.nextDouble();
+		}
+		double[] outReal = real.clone();
+		double[] outImag = imag.clone();
+		FastFourierTransform.transform(outReal, outImag, n, true);
+		FastFourierTransform.transform(outReal, outImag, n, false);
+		for (int i = 0; i < n; i++) {
+			outReal[i] /= n;
+			outImag[i] /= n;
+		}
+		assertArrayEquals(real, outReal, 1e-12);
+		assertArrayEquals(imag, outImag, 1e-12);
+	}
+
+	@Test
+	public void testNormalisedLayout() {
+		int n = 8;
+		double[] real = new double[] { 1, 2, 3, 4, 0, 0, 0, 0 };
+		double[] imag = new double[n];
+		double[][] expected = naiveDFT(real, imag, true);
+		double[][] out = FastFourierTransform.fft(real, imag, true);
+		double root = Math.sqrt(n);
+		for (int i = 0; i < n; i += 2) {
+			assertArrayEquals(new double[] { expected[0][i / 2] / root, expected[1][i / 2] / root },
+					new double[] { out[0][i], out[1][i] }, 1e-12);
+		}
+	}
+}
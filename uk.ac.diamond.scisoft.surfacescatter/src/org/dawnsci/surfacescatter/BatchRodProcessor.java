@@ -0,0 +1,292 @@
+package org.dawnsci.surfacescatter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.january.dataset.IDataset;
+import org.eclipse.january.dataset.ILazyDataset;
+import org.eclipse.january.dataset.SliceND;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Headless batch processing of the rods in a {@link BatchRodModel}.
+ * <p>
+ * Rods are independent of each other so several are processed at once, each
+ * on its own thread. Within a rod the frames are tracked and fitted in order,
+ * while the raw images of the following frames are loaded on a separate pool
+ * so that file reading overlaps with fitting. Each rod's NeXus file is written
+ * as soon as that rod has been stitched.
+ */
+public class BatchRodProcessor {
+
+	private static final Logger logger = LoggerFactory.getLogger(BatchRodProcessor.class);
+
+	/**
+	 * Receives progress from a batch run. Methods are called from the worker
+	 * threads.
+	 */
+	public interface IBatchRodListener {
+
+		default void frameProcessed(String rodName, int frame, int noFrames) {
+		}
+
+		default void rodCompleted(String rodName, String nexusFilepath, int noFrames, long elapsedNanos) {
+		}
+
+		default void rodFailed(String rodName, Exception e) {
+		}
+	}
+
+	private final IBatchRodStages stages;
+	private final List<IBatchRodListener> listeners = new CopyOnWriteArrayList<>();
+
+	private int rodThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	private int loaderThreads = 2;
+	private int prefetchDepth = 4;
+
+	private final AtomicInteger rodsCompleted = new AtomicInteger();
+	private final AtomicInteger rodsFailed = new AtomicInteger();
+	private final AtomicInteger framesProcessed = new AtomicInteger();
+	private volatile long startTime;
+	private volatile long endTime;
+
+	public BatchRodProcessor(IBatchRodStages stages) {
+		this.stages = stages;
+	}
+
+	/**
+	 * Processes all rods in the model, returning once every rod has either been
+	 * written or has failed
+	 */
+	public void process(BatchRodModel brm) throws InterruptedException {
+
+		List<BatchRodDataTransferObject> rods = new ArrayList<>(brm.getBrdtoList());
+
+		rodsCompleted.set(0);
+		rodsFailed.set(0);
+		framesProcessed.set(0);
+		startTime = System.nanoTime();
+		endTime = 0;
+
+		if (rods.isEmpty()) {
+			endTime = startTime;
+			return;
+		}
+
+		ExecutorService rodPool = Executors.newFixedThreadPool(Math.min(rodThreads, rods.size()),
+				new NamedThreadFactory("batch-rod"));
+		ExecutorService loaderPool = Executors.newFixedThreadPool(loaderThreads,
+				new NamedThreadFactory("batch-rod-loader"));
+
+		try {
+			List<Future<?>> futures = new ArrayList<>(rods.size());
+			for (BatchRodDataTransferObject brdto : rods) {
+				futures.add(rodPool.submit(() -> processRod(brdto, loaderPool)));
+			}
+
+			for (Future<?> f : futures) {
+				try {
+					f.get();
+				} catch (ExecutionException e) {
+					logger.error("Unexpected error in batch rod processing", e.getCause());
+				}
+			}
+		} finally {
+			rodPool.shutdownNow();
+			loaderPool.shutdownNow();
+			rodPool.awaitTermination(1, TimeUnit.MINUTES);
+			loaderPool.awaitTermination(1, TimeUnit.MINUTES);
+			endTime = System.nanoTime();
+		}
+
+		logger.info("Processed {} rods ({} failed, {} frames) in {} s", rodsCompleted.get(), rodsFailed.get(),
+				framesProcessed.get(), getElapsedSeconds());
+	}
+
+	private void processRod(BatchRodDataTransferObject brdto, ExecutorService loaderPool) {
+
+		String rodName = brdto.getRodName();
+		long rodStart = System.nanoTime();
+		Deque<Future<IDataset>> pending = new ArrayDeque<>();
+
+		try {
+			RodObjectNexusBuilderModel model = stages.setUpRod(brdto);
+			ArrayList<FrameModel> fms = model.getFms();
+			int noFrames = fms.size();
+			int next = 0;
+
+			for (int i = 0; i < noFrames; i++) {
+
+				while (next < noFrames && next <= i + prefetchDepth) {
+					pending.add(loaderPool.submit(new FrameLoader(fms.get(next))));
+					next++;
+				}
+
+				// decoded image is only held while its frame is processed
+				FrameModel fm = fms.get(i);
+				ILazyDataset lazy = fm.getRawImageData();
+				fm.setRawImageData(pending.poll().get());
+				try {
+					stages.processFrame(model, i);
+				} finally {
+					fm.setRawImageData(lazy);
+				}
+
+				framesProcessed.incrementAndGet();
+				for (IBatchRodListener l : listeners) {
+					l.frameProcessed(rodName, i, noFrames);
+				}
+			}
+
+			stages.stitch(model);
+			stages.write(model);
+
+			rodsCompleted.incrementAndGet();
+			long elapsed = System.nanoTime() - rodStart;
+			logger.debug("Rod {} ({} frames) processed in {} s", rodName, noFrames, elapsed / 1e9);
+			for (IBatchRodListener l : listeners) {
+				l.rodCompleted(rodName, model.getFilepath(), noFrames, elapsed);
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			cancel(pending);
+			rodsFailed.incrementAndGet();
+			logger.warn("Processing of rod {} was interrupted", rodName);
+			for (IBatchRodListener l : listeners) {
+				l.rodFailed(rodName, e);
+			}
+		} catch (Exception e) {
+			cancel(pending);
+			rodsFailed.incrementAndGet();
+			logger.error("Could not process rod " + rodName, e);
+			for (IBatchRodListener l : listeners) {
+				l.rodFailed(rodName, e);
+			}
+		}
+	}
+
+	/**
+	 * Stops loading the frames that an aborted rod will not use
+	 */
+	private static void cancel(Deque<Future<IDataset>> pending) {
+		Future<IDataset> f;
+		while ((f = pending.poll()) != null) {
+			f.cancel(true);
+		}
+	}
+
+	/**
+	 * Reads a frame's raw image fully into memory
+	 */
+	private static class FrameLoader implements Callable<IDataset> {
+
+		private final ILazyDataset lazy;
+
+		private FrameLoader(FrameModel fm) {
+			this.lazy = fm.getRawImageData();
+		}
+
+		@Override
+		public IDataset call() throws Exception {
+			if (lazy instanceof IDataset) {
+				return (IDataset) lazy;
+			}
+			return lazy.getSlice(new SliceND(lazy.getShape()));
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		private NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	public void addListener(IBatchRodListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(IBatchRodListener listener) {
+		listeners.remove(listener);
+	}
+
+	public int getRodThreads() {
+		return rodThreads;
+	}
+
+	public void setRodThreads(int rodThreads) {
+		this.rodThreads = Math.max(1, rodThreads);
+	}
+
+	public int getLoaderThreads() {
+		return loaderThreads;
+	}
+
+	public void setLoaderThreads(int loaderThreads) {
+		this.loaderThreads = Math.max(1, loaderThreads);
+	}
+
+	public int getPrefetchDepth() {
+		return prefetchDepth;
+	}
+
+	/**
+	 * @param prefetchDepth
+	 *            number of frames per rod loaded ahead of the frame being
+	 *            fitted
+	 */
+	public void setPrefetchDepth(int prefetchDepth) {
+		this.prefetchDepth = Math.max(0, prefetchDepth);
+	}
+
+	public int getRodsCompleted() {
+		return rodsCompleted.get();
+	}
+
+	public int getRodsFailed() {
+		return rodsFailed.get();
+	}
+
+	public int getFramesProcessed() {
+		return framesProcessed.get();
+	}
+
+	/**
+	 * @return time since the start of the current or last run
+	 */
+	public double getElapsedSeconds() {
+		if (startTime == 0) {
+			return 0;
+		}
+		long end = endTime == 0 ? System.nanoTime() : endTime;
+		return (end - startTime) / 1e9;
+	}
+
+	public double getFramesPerSecond() {
+		double elapsed = getElapsedSeconds();
+		return elapsed > 0 ? framesProcessed.get() / elapsed : 0;
+	}
+}
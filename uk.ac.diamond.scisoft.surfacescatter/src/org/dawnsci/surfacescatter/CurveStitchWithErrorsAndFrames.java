@@ -10,11 +10,6 @@ import org.eclipse.january.dataset.Maths;
 
 public class CurveStitchWithErrorsAndFrames {
 
-	private static double attenuationFactor;
-	private static double attenuationFactorFhkl;
-	private static double attenuationFactorRaw;
-	private static double[][] maxMinArray;
-
 	public static IDataset[] curveStitch4(CurveStitchDataPackage csdp, double[][] maxMinArrayIn) {
 
 		return curveStitch4(csdp, maxMinArrayIn, null);
@@ -38,7 +33,7 @@ public class CurveStitchWithErrorsAndFrames {
 			}
 		}
 
-		maxMinArray = maxMinArrayIn;
+		double[][] maxMinArray = maxMinArrayIn;
 
 		ArrayList<OverlapDataModel> overlapDataModels = new ArrayList<>();
 
@@ -78,9 +73,9 @@ public class CurveStitchWithErrorsAndFrames {
 			maxMinArray = OverlapFinder.overlapFinderOperation(xArray);
 		}
 
-		attenuationFactor = 1;
-		attenuationFactorFhkl = 1;
-		attenuationFactorRaw = 1;
+		double attenuationFactor = 1;
+		double attenuationFactorFhkl = 1;
+		double attenuationFactorRaw = 1;
 
 		for (int k = 0; k < yArray.length - 1; k++) {
 
@@ -0,0 +1,34 @@
+package org.dawnsci.surfacescatter;
+
+/**
+ * Batch rod stages that track, background subtract and stitch with the same
+ * classes as the interactive tool. Only the set up of a rod from its .dat,
+ * image and parameter files is left to subclasses, as that is done by the UI
+ * presenter.
+ */
+public abstract class DefaultBatchRodStages implements IBatchRodStages {
+
+	// frames are tracked forwards through the sorted list
+	private static final int TRACKING_MARKER = 1;
+
+	@Override
+	public void processFrame(RodObjectNexusBuilderModel model, int selection) throws Exception {
+
+		DirectoryModel drm = model.getDrm();
+		FrameModel fm = drm.getFms().get(selection);
+
+		DummyProcessWithFrames.dummyProcess(drm, fm.getNoInOriginalDat(), TRACKING_MARKER, selection, null,
+				drm.getInitialLenPt());
+	}
+
+	@Override
+	public void stitch(RodObjectNexusBuilderModel model) throws Exception {
+
+		DirectoryModel drm = model.getDrm();
+		CurveStitchDataPackage csdp = new CsdpGeneratorFromDrm().generateCsdpFromDrm(drm);
+
+		CurveStitchWithErrorsAndFrames.curveStitch4(csdp, null);
+
+		drm.setCsdp(csdp);
+	}
+}
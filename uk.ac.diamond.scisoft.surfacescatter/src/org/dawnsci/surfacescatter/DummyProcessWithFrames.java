@@ -12,8 +12,6 @@ import org.eclipse.january.dataset.SliceND;
 
 public class DummyProcessWithFrames {
 
-	private static OperationData outputOD;
-
 	public static IDataset dummyProcess(DirectoryModel drm, int k, int trackingMarker, int selection,
 			double[] locationOverride, int[][] sspLenPt) throws IndexOutOfBoundsException{
 
@@ -28,6 +26,7 @@ public class DummyProcessWithFrames {
 		}
 
 		IDataset output = null;
+		OperationData outputOD = null;
 
 		IDataset input = DatasetFactory.createFromObject(0);
 		try {
@@ -127,6 +126,7 @@ public class DummyProcessWithFrames {
 		//////////////////////////////// NB selection is position in the sorted list of
 		//////////////////////////////// the whole rod k is position in the .dat file
 		IDataset output = null;
+		OperationData outputOD = null;
 
 		FrameModel fm = drm.getFms().get(selection);
 		IDataset input = DatasetFactory.createFromObject(0);
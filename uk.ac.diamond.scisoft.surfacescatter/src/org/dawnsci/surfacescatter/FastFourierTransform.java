@@ -1,6 +1,11 @@
 package org.dawnsci.surfacescatter;
 
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.january.dataset.Dataset;
 import org.eclipse.january.dataset.IDataset;
+import org.eclipse.january.dataset.IndexIterator;
 
 public class FastFourierTransform {
 
@@ -9,18 +14,6 @@ public class FastFourierTransform {
 	 *
 	 */
 
-	/**
-	 * The Fast Fourier Transform (generic version, with NO optimizations).
-	 *
-	 * @param inputReal
-	 *            an array of length n, the real part
-	 * @param inputImag
-	 *            an array of length n, the imaginary part
-	 * @param DIRECT
-	 *            TRUE = direct transform, FALSE = inverse transform
-	 * @return a new array of length 2n
-	 */
-
 	public static IDataset fftModeledYValuesDataset(IDataset inputReal) {
 
 		return computedYOutputDataset(inputReal, fft(inputReal));
@@ -67,133 +60,321 @@ public class FastFourierTransform {
 
 	private static double[][] fft(IDataset inputReal) {
 
-		double[] inputRealArray = new double[inputReal.getSize()];
-		double[] inputImArray = new double[inputReal.getSize()];
-		try {
-			for (int i = 0; i < inputReal.getSize(); i++) {
-				inputRealArray[i] = inputReal.getDouble(i);
-				inputImArray[i] = 0;
+		int n = inputReal.getSize();
+		Workspace ws = WORKSPACE.get();
+		ws.ensureInput(n);
+		double[] re = ws.inputReal;
+		double[] im = ws.inputImag;
+
+		if (inputReal instanceof Dataset) {
+			Dataset d = (Dataset) inputReal;
+			IndexIterator it = d.getIterator();
+			int i = 0;
+			while (it.hasNext()) {
+				re[i++] = d.getElementDoubleAbs(it.index);
+			}
+		} else {
+			for (int i = 0; i < n; i++) {
+				re[i] = inputReal.getDouble(i);
 			}
-		} catch (IllegalArgumentException ill) {
-			System.out.println(ill.getMessage());
 		}
-		return fft(inputRealArray, inputImArray, true);
+		Arrays.fill(im, 0, n, 0);
+
+		transform(re, im, n, true);
+		return packOutput(re, im, n);
 	}
 
+	/**
+	 * The Fast Fourier Transform, normalised by 1/sqrt(n) and using the
+	 * positive exponent convention for the direct transform (as Mathematica's
+	 * Fourier). Lengths which are not a power of 2 are handled with Bluestein's
+	 * algorithm.
+	 * <p>
+	 * The output keeps the coefficient layout the curve stitching code was
+	 * written against: element 2i of each output array holds coefficient i.
+	 *
+	 * @param inputReal
+	 *            an array of length n, the real part
+	 * @param inputImag
+	 *            an array of length n, the imaginary part
+	 * @param DIRECT
+	 *            TRUE = direct transform, FALSE = inverse transform
+	 * @return real and imaginary output arrays of length n
+	 */
 	public static double[][] fft(final double[] inputReal, double[] inputImag, boolean DIRECT) {
-		// - n is the dimension of the problem
-		// - nu is its logarithm in base e
 		int n = inputReal.length;
+		Workspace ws = WORKSPACE.get();
+		ws.ensureInput(n);
+		System.arraycopy(inputReal, 0, ws.inputReal, 0, n);
+		System.arraycopy(inputImag, 0, ws.inputImag, 0, n);
 
-		// If n is a power of 2, then ld is an integer (_without_ decimals)
-		double ld = Math.log(n) / Math.log(2.0);
+		transform(ws.inputReal, ws.inputImag, n, DIRECT);
+		return packOutput(ws.inputReal, ws.inputImag, n);
+	}
 
-		// Here I check if n is a power of 2. If exist decimals in ld, I quit
-		// from the function returning null.
-		if (((int) ld) - ld != 0) {
-			System.out.println("The number of elements is not a power of 2.");
-			return null;
+	/**
+	 * In-place, unnormalised discrete Fourier transform of the first n
+	 * elements of the given arrays. Twiddle tables are computed once per
+	 * length and shared between threads; scratch space is kept per thread so
+	 * repeated calls do not allocate.
+	 *
+	 * @param real
+	 *            real part, overwritten with the real part of the transform
+	 * @param imag
+	 *            imaginary part, overwritten with the imaginary part of the
+	 *            transform
+	 * @param n
+	 *            number of elements to transform
+	 * @param direct
+	 *            true for the direct (positive exponent) transform, false for
+	 *            the inverse
+	 */
+	public static void transform(double[] real, double[] imag, int n, boolean direct) {
+		if (n < 2) {
+			return;
 		}
+		if (Integer.bitCount(n) == 1) {
+			radix2(real, imag, getPlan(n), direct);
+		} else {
+			bluestein(real, imag, getBluesteinPlan(n), direct);
+		}
+	}
+
+	private static double[][] packOutput(double[] xReal, double[] xImag, int n) {
+		double[] newRealOutArray = new double[n];
+		double[] newImOutArray = new double[n];
+
+		double radice = 1 / Math.sqrt(n);
+		for (int i = 0; i < n; i += 2) {
+			int i2 = i / 2;
+			newRealOutArray[i] = xReal[i2] * radice;
+			newImOutArray[i] = xImag[i2] * radice;
+		}
+		return new double[][] { newRealOutArray, newImOutArray };
+	}
+
+	/**
+	 * Iterative decimation-in-time radix-2 transform
+	 */
+	private static void radix2(double[] xReal, double[] xImag, Radix2Plan plan, boolean direct) {
+		final int n = plan.n;
+		final int[] reverse = plan.reverse;
+		final double[] cos = plan.cos;
+		final double[] sin = plan.sin;
+		final double sign = direct ? 1 : -1;
 
-		// Declaration and initialization of the variables
-		// ld should be an integer, actually, so I don't lose any information in
-		// the cast
-		int nu = (int) ld;
-		int n2 = n / 2;
-		int nu1 = nu - 1;
-		double[] xReal = new double[n];
-		double[] xImag = new double[n];
-		double tReal, tImag, p, arg, c, s;
-
-		// Here I check if I'm going to do the direct transform or the inverse
-		// transform.
-		double constant;
-		if (DIRECT)
-			constant = -2 * Math.PI;
-		else
-			constant = 2 * Math.PI;
-
-		// I don't want to overwrite the input arrays, so here I copy them. This
-		// choice adds \Theta(2n) to the complexity.
 		for (int i = 0; i < n; i++) {
-			xReal[i] = inputReal[i];
-			xImag[i] = inputImag[i];
+			int r = reverse[i];
+			if (r > i) {
+				double t = xReal[i];
+				xReal[i] = xReal[r];
+				xReal[r] = t;
+				t = xImag[i];
+				xImag[i] = xImag[r];
+				xImag[r] = t;
+			}
 		}
 
-		// First phase - calculation
-		int k = 0;
-		for (int l = 1; l <= nu; l++) {
-			while (k < n) {
-				for (int i = 1; i <= n2; i++) {
-					p = bitreverseReference(k >> nu1, nu);
-					// direct FFT or inverse FFT
-					arg = constant * p / n;
-					c = Math.cos(arg);
-					s = Math.sin(arg);
-					tReal = xReal[k + n2] * c + xImag[k + n2] * s;
-					tImag = xImag[k + n2] * c - xReal[k + n2] * s;
-					xReal[k + n2] = xReal[k] - tReal;
-					xImag[k + n2] = xImag[k] - tImag;
-					xReal[k] += tReal;
-					xImag[k] += tImag;
-					k++;
+		for (int size = 2; size <= n; size <<= 1) {
+			int half = size >> 1;
+			int step = n / size;
+			for (int start = 0; start < n; start += size) {
+				for (int j = 0, k = 0; j < half; j++, k += step) {
+					double wr = cos[k];
+					double wi = sign * sin[k];
+					int a = start + j;
+					int b = a + half;
+					double tReal = xReal[b] * wr - xImag[b] * wi;
+					double tImag = xReal[b] * wi + xImag[b] * wr;
+					xReal[b] = xReal[a] - tReal;
+					xImag[b] = xImag[a] - tImag;
+					xReal[a] += tReal;
+					xImag[a] += tImag;
 				}
-				k += n2;
 			}
-			k = 0;
-			nu1--;
-			n2 /= 2;
 		}
+	}
 
-		// Second phase - recombination
-		k = 0;
-		int r;
-		while (k < n) {
-			r = bitreverseReference(k, nu);
-			if (r > k) {
-				tReal = xReal[k];
-				tImag = xImag[k];
-				xReal[k] = xReal[r];
-				xImag[k] = xImag[r];
-				xReal[r] = tReal;
-				xImag[r] = tImag;
+	/**
+	 * Bluestein's chirp-z algorithm, expressing an arbitrary length transform
+	 * as a circular convolution carried out with radix-2 transforms
+	 */
+	private static void bluestein(double[] xReal, double[] xImag, BluesteinPlan plan, boolean direct) {
+		final int n = plan.n;
+		final int m = plan.inner.n;
+		final double[] cCos = plan.chirpCos;
+		final double[] cSin = plan.chirpSin;
+		final double sign = direct ? 1 : -1;
+
+		Workspace ws = WORKSPACE.get();
+		ws.ensureScratch(m);
+		double[] aReal = ws.scratchReal;
+		double[] aImag = ws.scratchImag;
+
+		for (int i = 0; i < n; i++) {
+			double wr = cCos[i];
+			double wi = sign * cSin[i];
+			aReal[i] = xReal[i] * wr - xImag[i] * wi;
+			aImag[i] = xReal[i] * wi + xImag[i] * wr;
+		}
+		Arrays.fill(aReal, n, m, 0);
+		Arrays.fill(aImag, n, m, 0);
+
+		radix2(aReal, aImag, plan.inner, false);
+
+		double[] bReal = direct ? plan.directFilterReal : plan.inverseFilterReal;
+		double[] bImag = direct ? plan.directFilterImag : plan.inverseFilterImag;
+		for (int i = 0; i < m; i++) {
+			double r = aReal[i] * bReal[i] - aImag[i] * bImag[i];
+			aImag[i] = aReal[i] * bImag[i] + aImag[i] * bReal[i];
+			aReal[i] = r;
+		}
+
+		radix2(aReal, aImag, plan.inner, true);
+
+		double scale = 1.0 / m;
+		for (int i = 0; i < n; i++) {
+			double wr = cCos[i];
+			double wi = sign * cSin[i];
+			xReal[i] = (aReal[i] * wr - aImag[i] * wi) * scale;
+			xImag[i] = (aReal[i] * wi + aImag[i] * wr) * scale;
+		}
+	}
+
+	private static final ConcurrentHashMap<Integer, Radix2Plan> RADIX2_PLANS = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<Integer, BluesteinPlan> BLUESTEIN_PLANS = new ConcurrentHashMap<>();
+
+	private static final ThreadLocal<Workspace> WORKSPACE = new ThreadLocal<Workspace>() {
+		@Override
+		protected Workspace initialValue() {
+			return new Workspace();
+		}
+	};
+
+	private static Radix2Plan getPlan(int n) {
+		Radix2Plan plan = RADIX2_PLANS.get(n);
+		if (plan == null) {
+			plan = new Radix2Plan(n);
+			Radix2Plan existing = RADIX2_PLANS.putIfAbsent(n, plan);
+			if (existing != null) {
+				plan = existing;
 			}
-			k++;
 		}
+		return plan;
+	}
 
-		// Here I have to mix xReal and xImag to have an array (yes, it should
-		// be possible to do this stuff in the earlier parts of the code, but
-		// it's here to readibility).
+	private static BluesteinPlan getBluesteinPlan(int n) {
+		BluesteinPlan plan = BLUESTEIN_PLANS.get(n);
+		if (plan == null) {
+			plan = new BluesteinPlan(n);
+			BluesteinPlan existing = BLUESTEIN_PLANS.putIfAbsent(n, plan);
+			if (existing != null) {
+				plan = existing;
+			}
+		}
+		return plan;
+	}
 
-		double[] newRealOutArray = new double[xReal.length];
-		double[] newImOutArray = new double[xReal.length];
+	/**
+	 * Bit reversal permutation and twiddle factors for a power of 2 length
+	 */
+	private static class Radix2Plan {
+		private final int n;
+		private final int[] reverse;
+		private final double[] cos;
+		private final double[] sin;
+
+		private Radix2Plan(int n) {
+			this.n = n;
+			int bits = Integer.numberOfTrailingZeros(n);
+			reverse = new int[n];
+			for (int i = 0; i < n; i++) {
+				reverse[i] = Integer.reverse(i) >>> (32 - bits);
+			}
+			int half = n / 2;
+			cos = new double[half];
+			sin = new double[half];
+			for (int k = 0; k < half; k++) {
+				double arg = 2 * Math.PI * k / n;
+				cos[k] = Math.cos(arg);
+				sin[k] = Math.sin(arg);
+			}
+		}
+	}
 
-		double[][] output = new double[][] { newRealOutArray, newImOutArray };
+	/**
+	 * Chirp and pre-transformed convolution filters for an arbitrary length
+	 */
+	private static class BluesteinPlan {
+		private final int n;
+		private final Radix2Plan inner;
+		private final double[] chirpCos;
+		private final double[] chirpSin;
+		private final double[] directFilterReal;
+		private final double[] directFilterImag;
+		private final double[] inverseFilterReal;
+		private final double[] inverseFilterImag;
+
+		private BluesteinPlan(int n) {
+			this.n = n;
+			int m = Integer.highestOneBit(2 * n - 1);
+			if (m < 2 * n - 1) {
+				m <<= 1;
+			}
+			inner = getPlan(m);
+
+			chirpCos = new double[n];
+			chirpSin = new double[n];
+			long twoN = 2L * n;
+			for (int i = 0; i < n; i++) {
+				// reduce i^2 modulo 2n to keep the angle accurate for long inputs
+				double arg = Math.PI * (((long) i * i) % twoN) / n;
+				chirpCos[i] = Math.cos(arg);
+				chirpSin[i] = Math.sin(arg);
+			}
 
-		double radice = 1 / Math.sqrt(n);
-		for (int i = 0; i < newRealOutArray.length; i += 2) {
-			int i2 = i / 2;
-			// I used Stephen Wolfram's Mathematica as a reference so I'm going
-			// to normalize the output while I'm copying the elements.
-			newRealOutArray[i] = xReal[i2] * radice;
-			newImOutArray[i] = xImag[i2] * radice;
+			directFilterReal = new double[m];
+			directFilterImag = new double[m];
+			inverseFilterReal = new double[m];
+			inverseFilterImag = new double[m];
+			fillFilter(directFilterReal, directFilterImag, -1);
+			fillFilter(inverseFilterReal, inverseFilterImag, 1);
+		}
+
+		private void fillFilter(double[] real, double[] imag, double sign) {
+			int m = inner.n;
+			real[0] = chirpCos[0];
+			imag[0] = sign * chirpSin[0];
+			for (int i = 1; i < n; i++) {
+				real[i] = real[m - i] = chirpCos[i];
+				imag[i] = imag[m - i] = sign * chirpSin[i];
+			}
+			radix2(real, imag, inner, false);
 		}
-		return output;
 	}
 
 	/**
-	 * The reference bitreverse function.
+	 * Per-thread scratch arrays, grown on demand and reused between calls
 	 */
-	private static int bitreverseReference(int j, int nu) {
-		int j2;
-		int j1 = j;
-		int k = 0;
-		for (int i = 1; i <= nu; i++) {
-			j2 = j1 / 2;
-			k = 2 * k + j1 - 2 * j2;
-			j1 = j2;
+	private static class Workspace {
+		private double[] inputReal = new double[0];
+		private double[] inputImag = new double[0];
+		private double[] scratchReal = new double[0];
+		private double[] scratchImag = new double[0];
+
+		private void ensureInput(int n) {
+			if (inputReal.length < n) {
+				inputReal = new double[n];
+				inputImag = new double[n];
+			}
+		}
+
+		private void ensureScratch(int m) {
+			if (scratchReal.length < m) {
+				scratchReal = new double[m];
+				scratchImag = new double[m];
+			}
 		}
-		return k;
 	}
 
 	private static double computedYOutputDatasetRMS(IDataset input, double[][] coefficients) {
@@ -0,0 +1,43 @@
+package org.dawnsci.surfacescatter;
+
+/**
+ * The rod specific steps used by {@link BatchRodProcessor}. Implementations
+ * must not share mutable state between rods as several rods are processed at
+ * once, but each method is only called for a given rod from one thread at a
+ * time.
+ *
+ * @see DefaultBatchRodStages
+ */
+public interface IBatchRodStages {
+
+	/**
+	 * Reads the .dat, image and parameter files of a rod and builds its models.
+	 * The returned model's frame models hold the (lazy) raw images in sorted
+	 * order and its file path is where the NeXus output is written.
+	 */
+	RodObjectNexusBuilderModel setUpRod(BatchRodDataTransferObject brdto) throws Exception;
+
+	/**
+	 * Tracks and background subtracts one frame. Frames are passed in sorted
+	 * order and their raw image data has already been loaded into memory.
+	 *
+	 * @param model
+	 *            the rod, as returned by {@link #setUpRod}
+	 * @param selection
+	 *            position of the frame in the sorted frame list
+	 */
+	void processFrame(RodObjectNexusBuilderModel model, int selection) throws Exception;
+
+	/**
+	 * Stitches the processed frames, leaving the result in the curve stitch
+	 * data package of the rod's directory model.
+	 */
+	void stitch(RodObjectNexusBuilderModel model) throws Exception;
+
+	/**
+	 * Writes the stitched rod to the NeXus file at the model's file path.
+	 */
+	default void write(RodObjectNexusBuilderModel model) throws Exception {
+		RodObjectNexusUtils_Development.RodObjectNexusUtils(model);
+	}
+}
@@ -24,7 +24,7 @@ import org.eclipse.january.dataset.Maths;
 
 public class OneDFittingUsingIOperation extends AbstractOperation<OneDFittingModel, OperationData> {
 	
-	private static Dataset output;
+	private Dataset output;
 	private Dataset in1Background;
 
 
@@ -18,8 +18,8 @@ import uk.ac.diamond.scisoft.analysis.fitting.functions.Polynomial2D;
 public class OverlappingBgBoxUsingIOperation 
 extends AbstractOperation<SecondConstantROIBackgroundSubtractionModel, OperationData> {
 
-	private static Polynomial2D g2;
-	private static Dataset output;
+	private Polynomial2D g2;
+	private Dataset output;
 	private DoubleDataset in1Background;
 	private static int DEBUG =1;
 
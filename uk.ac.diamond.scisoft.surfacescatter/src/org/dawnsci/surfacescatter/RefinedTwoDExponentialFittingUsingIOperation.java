@@ -15,7 +15,7 @@ import org.eclipse.january.dataset.Maths;
 
 public class RefinedTwoDExponentialFittingUsingIOperation extends AbstractOperation<TwoDFittingModel, OperationData> {
 
-	private static Dataset output;
+	private Dataset output;
 	private static int DEBUG = 0;
 	
 	@Override
@@ -38,8 +38,6 @@ import org.eclipse.january.dataset.SliceND;
 
 public class RodObjectNexusUtils_Development {
 
-	private static NexusFile nexusFileReference;
-
 	public static void RodObjectNexusUtils(RodObjectNexusBuilderModel model) throws NexusException {
 
 		ArrayList<FrameModel> fms = model.getFms();
@@ -161,6 +159,8 @@ public class RodObjectNexusUtils_Development {
 			f = new File(model.getFilepath());
 		}
 
+		NexusFile nexusFileReference = null;
+
 		try {
 			nexusFileReference = NexusFileHDF5.createNexusFile(model.getFilepath());
 
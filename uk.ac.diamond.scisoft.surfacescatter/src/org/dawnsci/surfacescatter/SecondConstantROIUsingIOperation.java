@@ -17,7 +17,7 @@ import org.eclipse.january.dataset.Maths;
 public class SecondConstantROIUsingIOperation 
 	extends AbstractOperation<SecondConstantROIBackgroundSubtractionModel, OperationData> {
 
-		private static Dataset output;
+		private Dataset output;
 		private DoubleDataset in1Background;
 		
 		@Override
@@ -16,7 +16,7 @@ public class SortingArrayMaxima {
     	return output;
     }
     
-    public static void sort(ArrayMaximForSorting[] inputArr) {
+    public static synchronized void sort(ArrayMaximForSorting[] inputArr) {
          
         if (inputArr == null || inputArr.length == 0) {
             return;
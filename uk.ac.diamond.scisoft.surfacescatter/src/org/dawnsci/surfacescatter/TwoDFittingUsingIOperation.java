@@ -32,8 +32,8 @@ import uk.ac.diamond.scisoft.analysis.fitting.functions.Polynomial2D;
  */
 public class TwoDFittingUsingIOperation extends AbstractOperation<TwoDFittingModel, OperationData> {
 
-	private static Dataset output;
-	private static Polynomial2D g2;
+	private Dataset output;
+	private Polynomial2D g2;
 	private IDataset in1Background;
 	
 	@Override
@@ -20,11 +20,10 @@ import uk.ac.diamond.scisoft.analysis.fitting.functions.Gaussian;
 
 public class TwoDGaussianFittingUsingIOperation extends AbstractOperation<TwoDFittingModel, OperationData> {
 
-	private static Dataset output;
+	private Dataset output;
 	private static int DEBUG = 0;
 	private IDataset in1Background;
 	private NDGaussianFitResult[] result;
-	private static Dataset Av;
 	
 	@Override
 	public String getId() {
@@ -183,6 +182,7 @@ public class TwoDGaussianFittingUsingIOperation extends AbstractOperation<TwoDFi
 		
 		// first resolve the problem into n 1D problems
 		AFunction[] results = new AFunction[2];
+		Dataset Av = null;
 		
 		for (int i = 0; i < 2; i++) {
 			